@@ -27,6 +27,7 @@ import rx.Flow.Subscription;
 import rx.annotations.*;
 import rx.disposables.Disposable;
 import rx.exceptions.*;
+import rx.functions.*;
 import rx.internal.*;
 import rx.internal.operators.*;
 import rx.internal.subscriptions.AbstractSubscription;
@@ -55,6 +56,8 @@ import sun.security.pkcs11.wrapper.Functions;
 public class Observable<T> implements Publisher<T> {
     /** The Observable lifecycle hook. */
     static final RxJavaObservableExecutionHook hook = RxJavaPlugins.getInstance().getObservableExecutionHook();
+    /** Adjacent map, filter and doOnEach stages are fused only if the hook won't observe the individual operators. */
+    static final boolean FUSE_STAGES = RxJavaPlugins.isDefault(hook);
 
     /** The function executed when a Subscriber subscribes or an Operator is lifted. */
     final OnSubscribe<T> onSubscribe;
@@ -181,6 +184,9 @@ public class Observable<T> implements Publisher<T> {
      * If the operator you are creating is designed to act on the individual items emitted by a source
      * Observable, use {@code lift}. If your operator is designed to transform the source Observable as a whole
      * (for instance, by applying a particular set of existing RxJava operators to it) use {@link #compose}.
+     * <p>
+     * Adjacent map, filter and doOnEach operators are fused into a single operator unless a custom
+     * {@link RxJavaObservableExecutionHook} is installed, in which case its {@code onLift} receives each of them.
      * <dl>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>{@code lift} does not operate by default on a particular {@link Scheduler}.</dd>
@@ -191,21 +197,19 @@ public class Observable<T> implements Publisher<T> {
      * @return an Observable that is the result of applying the lifted Operator to the source Observable
      * @see <a href="https://github.com/ReactiveX/RxJava/wiki/Implementing-Your-Own-Operators">RxJava wiki: Implementing Your Own Operators</a>
      */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
     public final <R> Observable<R> lift(Operator<? extends R, ? super T> lifter) {
         Objects.requireNonNull(lifter);
-        return create(s -> {
-            try {
-                Subscriber<? super T> s2 = hook.onLift(lifter).apply(s);
-                onSubscribe.accept(s2);
-            } catch (Throwable e) {
-                try {
-                    // FIXME We can't be sure the subscription was set or not at this point!
-                    s.onError(e);
-                } catch (Throwable e2) {
-                    handleUncaught(new CompositeException(Arrays.asList(e, e2)));
-                }
+        OnSubscribe<T> os = onSubscribe;
+        if (FUSE_STAGES && os instanceof LiftOnSubscribe) {
+            // merge adjacent map, filter and doOnEach stages into a single operator
+            LiftOnSubscribe<?, T> prev = (LiftOnSubscribe<?, T>)os;
+            Operator fused = OperatorFusedStages.fuse(prev.operator, lifter);
+            if (fused != null) {
+                return create(new LiftOnSubscribe(prev.parent, fused));
             }
-        });
+        }
+        return create(new LiftOnSubscribe<>(os, lifter));
     }
 
     /**
@@ -530,7 +534,7 @@ public class Observable<T> implements Publisher<T> {
         return lift(new OperatorMap<>(function));
     }
     /** A common, stateless empty flowable. */
-    static final Observable<Object> EMPTY = create(new OnSubscribeEmpty<>());
+    static final Observable<Object> EMPTY = EmptyObservable.instance();
     /**
      * Returns an Observable that emits no items to the {@link Subscriber} and immediately invokes its
      * {@link Subscriber#onComplete() onComplete()} method.
@@ -974,6 +978,10 @@ public class Observable<T> implements Publisher<T> {
      * @see <a href="http://reactivex.io/documentation/operators/flatmap.html">ReactiveX operators documentation: FlatMap</a>
      */
     public final <R> Observable<R> flatMap(Function<? super T, ? extends Observable<? extends R>> func) {
+        Object v = ScalarSource.scalarValueOf(this);
+        if (v != ScalarSource.NOT_SCALAR) {
+            return scalarFlatMap(v, func);
+        }
         return merge(map(func));
     }
     /**
@@ -1000,8 +1008,65 @@ public class Observable<T> implements Publisher<T> {
      * @since (if this graduates from Experimental/Beta to supported, replace this parenthetical with the release number)
      */
     public final <R> Observable<R> flatMap(Function<? super T, ? extends Observable<? extends R>> func, int maxConcurrent) {
+        Object v = ScalarSource.scalarValueOf(this);
+        if (v != ScalarSource.NOT_SCALAR) {
+            return scalarFlatMap(v, func);
+        }
         return merge(map(func), maxConcurrent);
     }
+    /**
+     * Returns an Observable that emits items based on applying a function that you supply to each item emitted
+     * by the source Observable, where that function returns an Observable, and then merging those resulting
+     * Observables and emitting the results of this merger, while limiting the maximum number of concurrent
+     * subscriptions to these Observables and the number of items prefetched from each of them.
+     * <p>
+     * Each inner Observable is requested {@code prefetch} items up front and is replenished in batches
+     * of {@code prefetch - prefetch / 4} items as the downstream consumes them.
+     * <dl>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code flatMap} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param func
+     *            a function that, when applied to an item emitted by the source Observable, returns an
+     *            Observable
+     * @param maxConcurrent
+     *         the maximum number of Observables that may be subscribed to concurrently
+     * @param prefetch
+     *         the number of items to prefetch and buffer from each inner Observable
+     * @return an Observable that emits the result of applying the transformation function to each item emitted
+     *         by the source Observable and merging the results of the Observables obtained from this
+     *         transformation
+     * @throws IllegalArgumentException
+     *             if {@code maxConcurrent} or {@code prefetch} is less than or equal to 0
+     * @see <a href="http://reactivex.io/documentation/operators/flatmap.html">ReactiveX operators documentation: FlatMap</a>
+     */
+    public final <R> Observable<R> flatMap(Function<? super T, ? extends Observable<? extends R>> func, int maxConcurrent, int prefetch) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent > 0 required");
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch > 0 required");
+        }
+        Object v = ScalarSource.scalarValueOf(this);
+        if (v != ScalarSource.NOT_SCALAR) {
+            return scalarFlatMap(v, func);
+        }
+        return map(func).lift(OperatorMerge.<R>instance(false, maxConcurrent, prefetch));
+    }
+    /**
+     * Maps the value of a scalar source (or the lack of it) directly, avoiding the merge machinery.
+     * @param v the scalar value, null if the source is empty
+     * @param func the function returning an Observable for the value
+     * @return the Observable emitting the mapped Observable's values or empty
+     */
+    @SuppressWarnings("unchecked")
+    private static <T, R> Observable<R> scalarFlatMap(Object v, Function<? super T, ? extends Observable<? extends R>> func) {
+        if (v == null) {
+            return empty();
+        }
+        return ScalarSource.scalarFlatMap((T)v, func);
+    }
     /**
      * Flattens an Observable that emits Observables into a single Observable that emits the items emitted by
      * those Observables, without any transformation, while limiting the maximum number of concurrent
@@ -1665,7 +1730,7 @@ public class Observable<T> implements Publisher<T> {
      * @since 2.0
      */
     public static <T> Observable<T> from(CompletableFuture<T> future) {
-        return create(new OnSubscribeCompletableFuture<>(future));
+        return new CompletableFutureObservable<>(future);
     }
     /**
      * Mirrors the one Observable in an Iterable of several Observables that first either emits an item or sends
@@ -1940,9 +2005,39 @@ public class Observable<T> implements Publisher<T> {
      *         Observables by means of the given aggregation function
      * @see <a href="http://reactivex.io/documentation/operators/combinelatest.html">ReactiveX operators documentation: CombineLatest</a>
      */
-    @SuppressWarnings("unchecked")
     public static final <T1, T2, R> Observable<R> combineLatest(Observable<? extends T1> o1, Observable<? extends T2> o2, BiFunction<? super T1, ? super T2, ? extends R> combineFunction) {
-        return combineLatest(Arrays.asList(o1, o2), Functions.fromFunc(combineFunction));
+        return combineLatest(o1, o2, combineFunction, false);
+    }
+
+    /**
+     * Combines two source Observables by emitting an item that aggregates the latest values of each of the
+     * source Observables each time an item is received from either of the source Observables, where this
+     * aggregation is defined by a specified function, optionally coalescing the combinations a slow
+     * downstream can't keep up with.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>If {@code coalesce} is true, the source Observables are consumed in an unbounded manner and the
+     *  downstream receives the newest combination whenever it requests; otherwise every combination is
+     *  emitted and the source Observables are prefetched in a bounded manner.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code combineLatest} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     *
+     * @param o1
+     *            the first source Observable
+     * @param o2
+     *            the second source Observable
+     * @param combineFunction
+     *            the aggregation function used to combine the items emitted by the source Observables
+     * @param coalesce
+     *            if true, only the newest combination is kept while the downstream is not requesting
+     * @return an Observable that emits items that are the result of combining the items emitted by the source
+     *         Observables by means of the given aggregation function
+     * @see <a href="http://reactivex.io/documentation/operators/combinelatest.html">ReactiveX operators documentation: CombineLatest</a>
+     */
+    public static final <T1, T2, R> Observable<R> combineLatest(Observable<? extends T1> o1, Observable<? extends T2> o2, 
+            BiFunction<? super T1, ? super T2, ? extends R> combineFunction, boolean coalesce) {
+        return create(new OnSubscribeCombineLatest<Object, R>(Arrays.asList(o1, o2), combineFunction, coalesce));
     }
 
     /**
@@ -1968,9 +2063,8 @@ public class Observable<T> implements Publisher<T> {
      *         Observables by means of the given aggregation function
      * @see <a href="http://reactivex.io/documentation/operators/combinelatest.html">ReactiveX operators documentation: CombineLatest</a>
      */
-    @SuppressWarnings("unchecked")
-    public static final <T1, T2, T3, R> Observable<R> combineLatest(Observable<? extends T1> o1, Observable<? extends T2> o2, Observable<? extends T3> o3, Func3<? super T1, ? super T2, ? super T3, ? extends R> combineFunction) {
-        return combineLatest(Arrays.asList(o1, o2, o3), Functions.fromFunc(combineFunction));
+    public static final <T1, T2, T3, R> Observable<R> combineLatest(Observable<? extends T1> o1, Observable<? extends T2> o2, Observable<? extends T3> o3, TriFunction<? super T1, ? super T2, ? super T3, ? extends R> combineFunction) {
+        return create(new OnSubscribeCombineLatest<Object, R>(Arrays.asList(o1, o2, o3), combineFunction, false));
     }
 
     /**
@@ -1998,10 +2092,9 @@ public class Observable<T> implements Publisher<T> {
      *         Observables by means of the given aggregation function
      * @see <a href="http://reactivex.io/documentation/operators/combinelatest.html">ReactiveX operators documentation: CombineLatest</a>
      */
-    @SuppressWarnings("unchecked")
     public static final <T1, T2, T3, T4, R> Observable<R> combineLatest(Observable<? extends T1> o1, Observable<? extends T2> o2, Observable<? extends T3> o3, Observable<? extends T4> o4,
-            Func4<? super T1, ? super T2, ? super T3, ? super T4, ? extends R> combineFunction) {
-        return combineLatest(Arrays.asList(o1, o2, o3, o4), Functions.fromFunc(combineFunction));
+            QuadFunction<? super T1, ? super T2, ? super T3, ? super T4, ? extends R> combineFunction) {
+        return create(new OnSubscribeCombineLatest<Object, R>(Arrays.asList(o1, o2, o3, o4), combineFunction, false));
     }
 
     /**
@@ -2210,8 +2303,42 @@ public class Observable<T> implements Publisher<T> {
      *         Observables by means of the given aggregation function
      * @see <a href="http://reactivex.io/documentation/operators/combinelatest.html">ReactiveX operators documentation: CombineLatest</a>
      */
-    public static final <T, R> Observable<R> combineLatest(List<? extends Observable<? extends T>> sources, FuncN<? extends R> combineFunction) {
-        return create(new OnSubscribeCombineLatest<T, R>(sources, combineFunction));
+    public static final <T, R> Observable<R> combineLatest(List<? extends Observable<? extends T>> sources, Function<? super Object[], ? extends R> combineFunction) {
+        return combineLatest(sources, combineFunction, false);
+    }
+
+    /**
+     * Combines a list of source Observables by emitting an item that aggregates the latest values of each of
+     * the source Observables each time an item is received from any of the source Observables, where this
+     * aggregation is defined by a specified function, optionally coalescing the combinations a slow
+     * downstream can't keep up with.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>If {@code coalesce} is true, the source Observables are consumed in an unbounded manner and the
+     *  downstream receives the newest combination whenever it requests; otherwise every combination is
+     *  emitted and the source Observables are prefetched in a bounded manner.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code combineLatest} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     *
+     * @param <T>
+     *            the common base type of source values
+     * @param <R>
+     *            the result type
+     * @param sources
+     *            the list of source Observables
+     * @param combineFunction
+     *            the aggregation function used to combine the items emitted by the source Observables,
+     *            it receives a fresh array of the latest values which it may keep
+     * @param coalesce
+     *            if true, only the newest combination is kept while the downstream is not requesting
+     * @return an Observable that emits items that are the result of combining the items emitted by the source
+     *         Observables by means of the given aggregation function
+     * @see <a href="http://reactivex.io/documentation/operators/combinelatest.html">ReactiveX operators documentation: CombineLatest</a>
+     */
+    public static final <T, R> Observable<R> combineLatest(List<? extends Observable<? extends T>> sources, 
+            Function<? super Object[], ? extends R> combineFunction, boolean coalesce) {
+        return create(new OnSubscribeCombineLatest<T, R>(sources, combineFunction, coalesce));
     }
 
     /**
@@ -3624,7 +3751,7 @@ public class Observable<T> implements Publisher<T> {
      * @return an Observable that emits the zipped results
      * @see <a href="http://reactivex.io/documentation/operators/zip.html">ReactiveX operators documentation: Zip</a>
      */
-    public final static <R> Observable<R> zip(Iterable<? extends Observable<?>> ws, FuncN<? extends R> zipFunction) {
+    public final static <R> Observable<R> zip(Iterable<? extends Observable<?>> ws, Function<? super Object[], ? extends R> zipFunction) {
         List<Observable<?>> os = new ArrayList<Observable<?>>();
         for (Observable<?> o : ws) {
             os.add(o);
@@ -3658,15 +3785,8 @@ public class Observable<T> implements Publisher<T> {
      * @return an Observable that emits the zipped results
      * @see <a href="http://reactivex.io/documentation/operators/zip.html">ReactiveX operators documentation: Zip</a>
      */
-    public final static <R> Observable<R> zip(Observable<? extends Observable<?>> ws, final FuncN<? extends R> zipFunction) {
-        return ws.toList().map(new Function<List<? extends Observable<?>>, Observable<?>[]>() {
-
-            @Override
-            public Observable<?>[] call(List<? extends Observable<?>> o) {
-                return o.toArray(new Observable<?>[o.size()]);
-            }
-
-        }).lift(new OperatorZip<R>(zipFunction));
+    public final static <R> Observable<R> zip(Observable<? extends Observable<?>> ws, final Function<? super Object[], ? extends R> zipFunction) {
+        return ws.toList().map(o -> o.toArray(new Observable<?>[o.size()])).lift(new OperatorZip<R>(zipFunction));
     }
 
     /**
@@ -3734,7 +3854,7 @@ public class Observable<T> implements Publisher<T> {
      * @return an Observable that emits the zipped results
      * @see <a href="http://reactivex.io/documentation/operators/zip.html">ReactiveX operators documentation: Zip</a>
      */
-    public final static <T1, T2, T3, R> Observable<R> zip(Observable<? extends T1> o1, Observable<? extends T2> o2, Observable<? extends T3> o3, Func3<? super T1, ? super T2, ? super T3, ? extends R> zipFunction) {
+    public final static <T1, T2, T3, R> Observable<R> zip(Observable<? extends T1> o1, Observable<? extends T2> o2, Observable<? extends T3> o3, TriFunction<? super T1, ? super T2, ? super T3, ? extends R> zipFunction) {
         return just(new Observable<?>[] { o1, o2, o3 }).lift(new OperatorZip<R>(zipFunction));
     }
 
@@ -3772,7 +3892,7 @@ public class Observable<T> implements Publisher<T> {
      * @return an Observable that emits the zipped results
      * @see <a href="http://reactivex.io/documentation/operators/zip.html">ReactiveX operators documentation: Zip</a>
      */
-    public final static <T1, T2, T3, T4, R> Observable<R> zip(Observable<? extends T1> o1, Observable<? extends T2> o2, Observable<? extends T3> o3, Observable<? extends T4> o4, Func4<? super T1, ? super T2, ? super T3, ? super T4, ? extends R> zipFunction) {
+    public final static <T1, T2, T3, T4, R> Observable<R> zip(Observable<? extends T1> o1, Observable<? extends T2> o2, Observable<? extends T3> o3, Observable<? extends T4> o4, QuadFunction<? super T1, ? super T2, ? super T3, ? super T4, ? extends R> zipFunction) {
         return just(new Observable<?>[] { o1, o2, o3, o4 }).lift(new OperatorZip<R>(zipFunction));
     }
 
@@ -4080,11 +4200,14 @@ public class Observable<T> implements Publisher<T> {
     /**
      * Returns an Observable that emits buffers of items it collects from the source Observable. The resulting
      * Observable emits connected, non-overlapping buffers, each containing {@code count} items. When the source
-     * Observable completes or encounters an error, the resulting Observable emits the current buffer and
-     * propagates the notification from the source Observable.
+     * Observable completes, the resulting Observable emits the current buffer and propagates the notification
+     * from the source Observable; an error is propagated immediately and the current buffer is dropped.
      * <p>
      * <img width="640" height="320" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/buffer3.png" alt="">
      * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator honors backpressure: a request for {@code n} buffers requests {@code n * count} items
+     *      from the source Observable.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>This version of {@code buffer} does not operate by default on a particular {@link Scheduler}.</dd>
      * </dl>
@@ -4102,11 +4225,17 @@ public class Observable<T> implements Publisher<T> {
     /**
      * Returns an Observable that emits buffers of items it collects from the source Observable. The resulting
      * Observable emits buffers every {@code skip} items, each containing {@code count} items. When the source
-     * Observable completes or encounters an error, the resulting Observable emits the current buffer and
-     * propagates the notification from the source Observable.
+     * Observable completes, the resulting Observable emits the current buffers and propagates the notification
+     * from the source Observable; an error is propagated immediately and the current buffers are dropped.
+     * <p>
+     * Overlapping buffers ({@code skip < count}) are read-only {@code List} views sharing one backing array, so
+     * each item is stored once regardless of how many buffers contain it.
      * <p>
      * <img width="640" height="320" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/buffer4.png" alt="">
      * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator honors backpressure: a request for {@code n} buffers requests the items needed to fill
+     *      {@code n} buffers from the source Observable.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>This version of {@code buffer} does not operate by default on a particular {@link Scheduler}.</dd>
      * </dl>
@@ -4122,7 +4251,71 @@ public class Observable<T> implements Publisher<T> {
      * @see <a href="http://reactivex.io/documentation/operators/buffer.html">ReactiveX operators documentation: Buffer</a>
      */
     public final Observable<List<T>> buffer(int count, int skip) {
-        return lift(new OperatorBufferWithSize<T>(count, skip));
+        return lift(OperatorBufferWithSize.<T>lists(count, skip));
+    }
+
+    /**
+     * Returns an Observable that emits buffers of items it collects from the source Observable into containers
+     * provided by a supplier. The resulting Observable emits connected, non-overlapping buffers, each
+     * containing {@code count} items. When the source Observable completes, the resulting Observable emits the
+     * current buffer and propagates the notification from the source Observable; an error is propagated
+     * immediately and the current buffer is dropped.
+     * <p>
+     * The supplier is called once per buffer. Together with a {@link rx.util.BufferPool BufferPool}, the
+     * consumer can hand each buffer back after processing it and avoid allocating a new container per buffer.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator honors backpressure: a request for {@code n} buffers requests {@code n * count} items
+     *      from the source Observable.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>This version of {@code buffer} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param <C> the buffer container type
+     * @param count
+     *            the maximum number of items in each buffer before it should be emitted
+     * @param bufferSupplier
+     *            returns an empty, new or recycled container for each buffer
+     * @return an Observable that emits connected, non-overlapping buffers, each containing at most
+     *         {@code count} items from the source Observable
+     * @see <a href="http://reactivex.io/documentation/operators/buffer.html">ReactiveX operators documentation: Buffer</a>
+     */
+    public final <C extends Collection<? super T>> Observable<C> buffer(int count, Supplier<C> bufferSupplier) {
+        return buffer(count, count, bufferSupplier);
+    }
+
+    /**
+     * Returns an Observable that emits buffers of items it collects from the source Observable into containers
+     * provided by a supplier. The resulting Observable emits buffers every {@code skip} items, each containing
+     * {@code count} items. When the source Observable completes, the resulting Observable emits the current
+     * buffers and propagates the notification from the source Observable; an error is propagated immediately
+     * and the current buffers are dropped.
+     * <p>
+     * The supplier is called once per buffer. Together with a {@link rx.util.BufferPool BufferPool}, the
+     * consumer can hand each buffer back after processing it and avoid allocating a new container per buffer.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator honors backpressure: a request for {@code n} buffers requests the items needed to fill
+     *      {@code n} buffers from the source Observable.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>This version of {@code buffer} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param <C> the buffer container type
+     * @param count
+     *            the maximum size of each buffer before it should be emitted
+     * @param skip
+     *            how many items emitted by the source Observable should be skipped before starting a new
+     *            buffer. Note that when {@code skip} and {@code count} are equal, this is the same operation as
+     *            {@link #buffer(int, Supplier)}.
+     * @param bufferSupplier
+     *            returns an empty, new or recycled container for each buffer
+     * @return an Observable that emits buffers for every {@code skip} item from the source Observable and
+     *         containing at most {@code count} items
+     * @see <a href="http://reactivex.io/documentation/operators/buffer.html">ReactiveX operators documentation: Buffer</a>
+     */
+    public final <C extends Collection<? super T>> Observable<C> buffer(int count, int skip, Supplier<C> bufferSupplier) {
+        return lift(new OperatorBufferWithSize<T, C>(count, skip, bufferSupplier));
     }
 
     /**
@@ -4136,7 +4329,7 @@ public class Observable<T> implements Publisher<T> {
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
      *  <dd>This operator does not support backpressure as it uses time. It requests {@code Long.MAX_VALUE}
-     *      upstream and does not obey downstream requests.</dd>
+     *      upstream; a buffer closing without a downstream request signals a {@code MissingBackpressureException}.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>This version of {@code buffer} operates by default on the {@code computation} {@link Scheduler}.</dd>
      * </dl>
@@ -4166,7 +4359,7 @@ public class Observable<T> implements Publisher<T> {
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
      *  <dd>This operator does not support backpressure as it uses time. It requests {@code Long.MAX_VALUE}
-     *      upstream and does not obey downstream requests.</dd>
+     *      upstream; a buffer closing without a downstream request signals a {@code MissingBackpressureException}.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>you specify which {@link Scheduler} this operator will use</dd>
      * </dl>
@@ -4197,7 +4390,7 @@ public class Observable<T> implements Publisher<T> {
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
      *  <dd>This operator does not support backpressure as it uses time. It requests {@code Long.MAX_VALUE}
-     *      upstream and does not obey downstream requests.</dd>
+     *      upstream; a buffer closing without a downstream request signals a {@code MissingBackpressureException}.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>This version of {@code buffer} operates by default on the {@code computation} {@link Scheduler}.</dd>
      * </dl>
@@ -4226,7 +4419,7 @@ public class Observable<T> implements Publisher<T> {
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
      *  <dd>This operator does not support backpressure as it uses time. It requests {@code Long.MAX_VALUE}
-     *      upstream and does not obey downstream requests.</dd>
+     *      upstream; a buffer closing without a downstream request signals a {@code MissingBackpressureException}.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>This version of {@code buffer} operates by default on the {@code computation} {@link Scheduler}.</dd>
      * </dl>
@@ -4259,7 +4452,7 @@ public class Observable<T> implements Publisher<T> {
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
      *  <dd>This operator does not support backpressure as it uses time. It requests {@code Long.MAX_VALUE}
-     *      upstream and does not obey downstream requests.</dd>
+     *      upstream; a buffer closing without a downstream request signals a {@code MissingBackpressureException}.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>you specify which {@link Scheduler} this operator will use</dd>
      * </dl>
@@ -4293,7 +4486,7 @@ public class Observable<T> implements Publisher<T> {
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
      *  <dd>This operator does not support backpressure as it uses time. It requests {@code Long.MAX_VALUE}
-     *      upstream and does not obey downstream requests.</dd>
+     *      upstream; a buffer closing without a downstream request signals a {@code MissingBackpressureException}.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>you specify which {@link Scheduler} this operator will use</dd>
      * </dl>
@@ -4555,8 +4748,74 @@ public class Observable<T> implements Publisher<T> {
      * @see <a href="http://reactivex.io/documentation/operators/flatmap.html">ReactiveX operators documentation: FlatMap</a>
      */
     public final <R> Observable<R> concatMap(Function<? super T, ? extends Observable<? extends R>> func) {
+        Object v = ScalarSource.scalarValueOf(this);
+        if (v != ScalarSource.NOT_SCALAR) {
+            return scalarFlatMap(v, func);
+        }
         return concat(map(func));
     }
+
+    /**
+     * Returns a new Observable that emits items resulting from applying a function to each item emitted by the
+     * source Observable, where that function returns an Observable, subscribing to all of these Observables
+     * at once and emitting their items in the order of the source items.
+     * <p>
+     * Unlike {@link #concatMap(Function)}, the inner Observables run concurrently and the items of each
+     * inner Observable are buffered until the inner Observables before it have completed.
+     * <dl>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code concatMapEager} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param func
+     *            a function that, when applied to an item emitted by the source Observable, returns an
+     *            Observable
+     * @return an Observable that emits the result of applying the transformation function to each item emitted
+     *         by the source Observable and concatinating the Observables obtained from this transformation
+     * @see <a href="http://reactivex.io/documentation/operators/flatmap.html">ReactiveX operators documentation: FlatMap</a>
+     */
+    public final <R> Observable<R> concatMapEager(Function<? super T, ? extends Observable<? extends R>> func) {
+        return concatMapEager(func, Integer.MAX_VALUE, Flow.defaultBufferSize());
+    }
+    
+    /**
+     * Returns a new Observable that emits items resulting from applying a function to each item emitted by the
+     * source Observable, where that function returns an Observable, subscribing to up to {@code maxConcurrency}
+     * of these Observables ahead of time and emitting their items in the order of the source items.
+     * <p>
+     * The items of each inner Observable are buffered, up to {@code prefetch} items, until the inner
+     * Observables before it have completed.
+     * <dl>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code concatMapEager} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param func
+     *            a function that, when applied to an item emitted by the source Observable, returns an
+     *            Observable
+     * @param maxConcurrency
+     *            the maximum number of inner Observables subscribed to at the same time
+     * @param prefetch
+     *            the number of items to prefetch and buffer from each inner Observable
+     * @return an Observable that emits the result of applying the transformation function to each item emitted
+     *         by the source Observable and concatinating the Observables obtained from this transformation
+     * @throws IllegalArgumentException
+     *             if {@code maxConcurrency} or {@code prefetch} is less than or equal to 0
+     * @see <a href="http://reactivex.io/documentation/operators/flatmap.html">ReactiveX operators documentation: FlatMap</a>
+     */
+    public final <R> Observable<R> concatMapEager(Function<? super T, ? extends Observable<? extends R>> func, int maxConcurrency, int prefetch) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency > 0 required");
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch > 0 required");
+        }
+        Object v = ScalarSource.scalarValueOf(this);
+        if (v != ScalarSource.NOT_SCALAR) {
+            return scalarFlatMap(v, func);
+        }
+        return lift(new OperatorConcatMapEager<T, R>(func, maxConcurrency, prefetch));
+    }
     
     /**
      * Returns an Observable that emits the items emitted from the current Observable, then the next, one after
@@ -4665,7 +4924,8 @@ public class Observable<T> implements Publisher<T> {
      * </ul>
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator consumes the source in an unbounded manner as it uses time to control data flow. An item
+     *      that is due while the downstream has not requested is kept until it does, unless a newer item replaces it.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>This version of {@code debounce} operates by default on the {@code computation} {@link Scheduler}.</dd>
      * </dl>
@@ -4704,7 +4964,8 @@ public class Observable<T> implements Publisher<T> {
      * </ul>
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator consumes the source in an unbounded manner as it uses time to control data flow. An item
+     *      that is due while the downstream has not requested is kept until it does, unless a newer item replaces it.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>you specify which {@link Scheduler} this operator will use</dd>
      * </dl>
@@ -4834,6 +5095,9 @@ public class Observable<T> implements Publisher<T> {
      * <p>
      * <img width="640" height="310" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/delay.png" alt="">
      * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator honors backpressure from downstream and requests the source in batches; items whose
+     *      delay has elapsed are kept until requested.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>This version of {@code delay} operates by default on the {@code compuation} {@link Scheduler}.</dd>
      * </dl>
@@ -4855,6 +5119,9 @@ public class Observable<T> implements Publisher<T> {
      * <p>
      * <img width="640" height="310" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/delay.s.png" alt="">
      * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator honors backpressure from downstream and requests the source in batches; items whose
+     *      delay has elapsed are kept until requested.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>you specify which {@link Scheduler} this operator will use</dd>
      * </dl>
@@ -4973,7 +5240,7 @@ public class Observable<T> implements Publisher<T> {
      * @see <a href="http://reactivex.io/documentation/operators/distinct.html">ReactiveX operators documentation: Distinct</a>
      */
     public final Observable<T> distinct() {
-        return lift(new OperatorDistinct<T, T>(UtilityFunctions.<T>identity()));
+        return lift(new OperatorDistinct<T, T>(Function.<T>identity()));
     }
 
     /**
@@ -4996,6 +5263,35 @@ public class Observable<T> implements Publisher<T> {
         return lift(new OperatorDistinct<T, U>(keySelector));
     }
 
+    /**
+     * Returns an Observable that emits all items emitted by the source Observable that are distinct according
+     * to a key selector function, remembering the keys seen in a {@link Set} provided by the caller.
+     * <p>
+     * An item is emitted if adding its key changes the set. Besides a regular {@link HashSet},
+     * the {@code rx.util} package offers sets which bound the memory used by long-lived subscriptions:
+     * {@link rx.util.LruSet} and {@link rx.util.ExpiringSet} forget keys not seen recently,
+     * {@link rx.util.LongHashSet} stores {@code Long} keys without boxing and {@link rx.util.BloomFilterSet}
+     * uses a fixed amount of memory but may drop a distinct item with a configurable probability.
+     * <p>
+     * <img width="640" height="310" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/distinct.key.png" alt="">
+     * <dl>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code distinct} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param keySelector
+     *            a function that projects an emitted item to a key value that is used to decide whether an item
+     *            is distinct from another one or not
+     * @param setSupplier
+     *            the function called for each Subscriber to create the set remembering the keys
+     * @return an Observable that emits those items emitted by the source Observable that have distinct keys
+     * @see <a href="http://reactivex.io/documentation/operators/distinct.html">ReactiveX operators documentation: Distinct</a>
+     */
+    public final <U> Observable<T> distinct(Function<? super T, ? extends U> keySelector, 
+            Supplier<? extends Set<? super U>> setSupplier) {
+        return lift(new OperatorDistinct<T, U>(keySelector, setSupplier));
+    }
+
     /**
      * Returns an Observable that emits all items emitted by the source Observable that are distinct from their
      * immediate predecessors.
@@ -5589,6 +5885,46 @@ public class Observable<T> implements Publisher<T> {
         return lift(new OperatorGroupBy<T, K, R>(keySelector, elementSelector));
     }
     
+    /**
+     * Groups the items emitted by an {@code Observable} according to a specified criterion, and emits these
+     * grouped items as {@link GroupedObservable}s, keeping at most {@code maxGroups} groups open at a time.
+     * <p>
+     * <img width="640" height="360" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/groupBy.png" alt="">
+     * <p>
+     * When an item with a new key arrives while {@code maxGroups} groups are open, the group selected by
+     * the {@code evictionPolicy} is completed and a later item with its key opens a new
+     * {@code GroupedObservable}. This bounds the memory used when the key space is large or unbounded.
+     * <dl>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code groupBy} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param keySelector
+     *            a function that extracts the key for each item
+     * @param elementSelector
+     *            a function that extracts the return element for each item
+     * @param maxGroups
+     *            the maximum number of groups open at the same time, positive
+     * @param evictionPolicy
+     *            selects the group to complete when a new group would exceed {@code maxGroups}
+     * @param <K>
+     *            the key type
+     * @param <R>
+     *            the element type
+     * @return an {@code Observable} that emits {@link GroupedObservable}s, each of which corresponds to a
+     *         key value and each of which emits those items from the source Observable that share that
+     *         key value while the group is open
+     * @throws IllegalArgumentException if {@code maxGroups} is not positive
+     * @see <a href="http://reactivex.io/documentation/operators/groupby.html">ReactiveX operators documentation: GroupBy</a>
+     */
+    public final <K, R> Observable<GroupedObservable<K, R>> groupBy(final Function<? super T, ? extends K> keySelector, final Function<? super T, ? extends R> elementSelector, 
+            int maxGroups, GroupEvictionPolicy evictionPolicy) {
+        if (maxGroups <= 0) {
+            throw new IllegalArgumentException("maxGroups > 0 required");
+        }
+        return lift(new OperatorGroupBy<T, K, R>(keySelector, elementSelector, maxGroups, evictionPolicy));
+    }
+    
     /**
      * Groups the items emitted by an {@code Observable} according to a specified criterion, and emits these
      * grouped items as {@link GroupedObservable}s, one {@code GroupedObservable} per group.
@@ -5713,6 +6049,91 @@ public class Observable<T> implements Publisher<T> {
         return create(new OnSubscribeJoin<T, TRight, TLeftDuration, TRightDuration, R>(this, right, leftDurationSelector, rightDurationSelector, resultSelector));
     }
 
+    /**
+     * Correlates the items emitted by two Observables which have equal keys and arrive within a time window
+     * of each other.
+     * <p>
+     * A source item arriving at time {@code tl} is paired with a {@code right} item of an equal key arriving at
+     * time {@code tr} if {@code tl <= tr < tl + leftWindow} or {@code tr <= tl < tr + rightWindow}. The live items
+     * are indexed by key, therefore each item is matched only against the items of its own key.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator does not support backpressure. It requests {@code Long.MAX_VALUE} from both sources
+     *      and signals a {@code MissingBackpressureException} if a result can't be emitted due to lack of
+     *      requests.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>This version of {@code join} uses the clock of the {@code computation} {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param right
+     *            the second Observable to join items from
+     * @param leftKey
+     *            the function that returns the key of an item emitted by the source Observable
+     * @param rightKey
+     *            the function that returns the key of an item emitted by the {@code right} Observable
+     * @param leftWindow
+     *            how long an item of the source Observable can be paired with later {@code right} items
+     * @param rightWindow
+     *            how long an item of the {@code right} Observable can be paired with later source items
+     * @param unit
+     *            the time unit of the windows
+     * @param resultSelector
+     *            a function that computes an item to be emitted by the resulting Observable for any two
+     *            matching items emitted by the two Observables
+     * @return an Observable that emits the results of the matching pairs
+     * @see <a href="http://reactivex.io/documentation/operators/join.html">ReactiveX operators documentation: Join</a>
+     */
+    public final <TRight, K, R> Observable<R> join(Observable<? extends TRight> right, 
+            Function<? super T, ? extends K> leftKey, Function<? super TRight, ? extends K> rightKey,
+            long leftWindow, long rightWindow, TimeUnit unit,
+            BiFunction<? super T, ? super TRight, ? extends R> resultSelector) {
+        return join(right, leftKey, rightKey, leftWindow, rightWindow, unit, Schedulers.computation(), resultSelector);
+    }
+
+    /**
+     * Correlates the items emitted by two Observables which have equal keys and arrive within a time window
+     * of each other, using the clock of the given {@link Scheduler}.
+     * <p>
+     * A source item arriving at time {@code tl} is paired with a {@code right} item of an equal key arriving at
+     * time {@code tr} if {@code tl <= tr < tl + leftWindow} or {@code tr <= tl < tr + rightWindow}. The live items
+     * are indexed by key, therefore each item is matched only against the items of its own key.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator does not support backpressure. It requests {@code Long.MAX_VALUE} from both sources
+     *      and signals a {@code MissingBackpressureException} if a result can't be emitted due to lack of
+     *      requests.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>you specify which {@link Scheduler}'s clock this operator will use</dd>
+     * </dl>
+     * 
+     * @param right
+     *            the second Observable to join items from
+     * @param leftKey
+     *            the function that returns the key of an item emitted by the source Observable
+     * @param rightKey
+     *            the function that returns the key of an item emitted by the {@code right} Observable
+     * @param leftWindow
+     *            how long an item of the source Observable can be paired with later {@code right} items
+     * @param rightWindow
+     *            how long an item of the {@code right} Observable can be paired with later source items
+     * @param unit
+     *            the time unit of the windows
+     * @param scheduler
+     *            the {@link Scheduler} whose clock timestamps the items
+     * @param resultSelector
+     *            a function that computes an item to be emitted by the resulting Observable for any two
+     *            matching items emitted by the two Observables
+     * @return an Observable that emits the results of the matching pairs
+     * @see <a href="http://reactivex.io/documentation/operators/join.html">ReactiveX operators documentation: Join</a>
+     */
+    public final <TRight, K, R> Observable<R> join(Observable<? extends TRight> right, 
+            Function<? super T, ? extends K> leftKey, Function<? super TRight, ? extends K> rightKey,
+            long leftWindow, long rightWindow, TimeUnit unit, Scheduler scheduler,
+            BiFunction<? super T, ? super TRight, ? extends R> resultSelector) {
+        return create(new OnSubscribeHashJoin<T, TRight, K, R>(this, right, leftKey, rightKey, 
+                leftWindow, rightWindow, unit, scheduler, resultSelector));
+    }
+
     /**
      * Returns an Observable that emits only the last item emitted by the source Observable that satisfies a
      * given condition, or notifies of a {@code NoSuchElementException} if no such items are emitted.
@@ -6123,9 +6544,105 @@ public class Observable<T> implements Publisher<T> {
     }
 
     /**
-     * Returns a {@link ConnectableObservable}, which is a variety of Observable that waits until its
-     * {@link ConnectableObservable#connect connect} method is called before it begins emitting items to those
-     * {@link Subscriber}s that have subscribed to it.
+     * Splits the items of this {@code Observable} round-robin into the given number of rails, each
+     * running on its own {@link Scheduler.Worker} of the {@link Schedulers#computation() computation}
+     * {@code Scheduler}.
+     * <dl>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code parallel} operates by default on the {@code computation} {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param rails
+     *            the number of rails, positive
+     * @return a {@link ParallelObservable} whose rails receive the items of this {@code Observable}
+     * @throws IllegalArgumentException if {@code rails} is not positive
+     */
+    public final ParallelObservable<T> parallel(int rails) {
+        return parallel(rails, Schedulers.computation(), Flow.defaultBufferSize());
+    }
+
+    /**
+     * Splits the items of this {@code Observable} round-robin into the given number of rails, each
+     * running on its own {@link Scheduler.Worker} of the given {@code Scheduler}.
+     * <p>
+     * The rails share a budget of {@code prefetch} items requested from this {@code Observable} and
+     * not yet consumed by a rail.
+     * <dl>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>you specify which {@link Scheduler} this operator will use</dd>
+     * </dl>
+     * 
+     * @param rails
+     *            the number of rails, positive
+     * @param scheduler
+     *            the {@code Scheduler} providing a {@code Worker} for each rail
+     * @param prefetch
+     *            the number of items to prefetch from this {@code Observable}, positive
+     * @return a {@link ParallelObservable} whose rails receive the items of this {@code Observable}
+     * @throws IllegalArgumentException if {@code rails} or {@code prefetch} is not positive
+     */
+    public final ParallelObservable<T> parallel(int rails, Scheduler scheduler, int prefetch) {
+        return parallel(rails, null, scheduler, prefetch);
+    }
+
+    /**
+     * Splits the items of this {@code Observable} by key into the given number of rails, each
+     * running on its own {@link Scheduler.Worker} of the {@link Schedulers#computation() computation}
+     * {@code Scheduler}; items with the same key go to the same rail.
+     * <dl>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code parallel} operates by default on the {@code computation} {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param rails
+     *            the number of rails, positive
+     * @param keySelector
+     *            the function extracting the key whose hash selects the rail of an item
+     * @return a {@link ParallelObservable} whose rails receive the items of this {@code Observable}
+     * @throws IllegalArgumentException if {@code rails} is not positive
+     */
+    public final ParallelObservable<T> parallel(int rails, Function<? super T, ?> keySelector) {
+        return parallel(rails, Objects.requireNonNull(keySelector), Schedulers.computation(), Flow.defaultBufferSize());
+    }
+
+    /**
+     * Splits the items of this {@code Observable} by key into the given number of rails, each
+     * running on its own {@link Scheduler.Worker} of the given {@code Scheduler}; items with the same
+     * key go to the same rail.
+     * <p>
+     * The rails share a budget of {@code prefetch} items requested from this {@code Observable} and
+     * not yet consumed by a rail.
+     * <dl>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>you specify which {@link Scheduler} this operator will use</dd>
+     * </dl>
+     * 
+     * @param rails
+     *            the number of rails, positive
+     * @param keySelector
+     *            the function extracting the key whose hash selects the rail of an item, null
+     *            for round-robin
+     * @param scheduler
+     *            the {@code Scheduler} providing a {@code Worker} for each rail
+     * @param prefetch
+     *            the number of items to prefetch from this {@code Observable}, positive
+     * @return a {@link ParallelObservable} whose rails receive the items of this {@code Observable}
+     * @throws IllegalArgumentException if {@code rails} or {@code prefetch} is not positive
+     */
+    public final ParallelObservable<T> parallel(int rails, Function<? super T, ?> keySelector, Scheduler scheduler, int prefetch) {
+        if (rails <= 0) {
+            throw new IllegalArgumentException("rails > 0 required");
+        }
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch > 0 required");
+        }
+        return new ParallelSource<>(this, rails, keySelector, Objects.requireNonNull(scheduler), prefetch);
+    }
+
+    /**
+     * Returns a {@link ConnectableObservable}, which is a variety of Observable that waits until its
+     * {@link ConnectableObservable#connect connect} method is called before it begins emitting items to those
+     * {@link Subscriber}s that have subscribed to it.
      * <p>
      * <img width="640" height="510" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/publishConnect.png" alt="">
      * <dl>
@@ -7108,7 +7625,8 @@ public class Observable<T> implements Publisher<T> {
      * <img width="640" height="305" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/sample.png" alt="">
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator consumes the source in an unbounded manner as it uses time to control data flow. An item
+     *      that is due while the downstream has not requested is kept until it does, unless a newer item replaces it.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>{@code sample} operates by default on the {@code computation} {@link Scheduler}.</dd>
      * </dl>
@@ -7134,7 +7652,8 @@ public class Observable<T> implements Publisher<T> {
      * <img width="640" height="305" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/sample.s.png" alt="">
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator consumes the source in an unbounded manner as it uses time to control data flow. An item
+     *      that is due while the downstream has not requested is kept until it does, unless a newer item replaces it.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>you specify which {@link Scheduler} this operator will use</dd>
      * </dl>
@@ -7254,6 +7773,32 @@ public class Observable<T> implements Publisher<T> {
         return publish().refCount();
     }
 
+    /**
+     * Returns a new {@link Observable} that multicasts (shares) the original {@link Observable} by
+     * spreading its {@link Subscriber}s over the given number of shards. As long as there is at least
+     * one {@link Subscriber} this {@link Observable} will be subscribed and emitting data. 
+     * When all subscribers have unsubscribed it will unsubscribe from the source {@link Observable}.
+     * <p>
+     * Each shard is a {@link #publish()}.{@link ConnectableObservable#refCount()} over a shared
+     * connection to the source, therefore subscribers joining and leaving affect only the state of a
+     * single shard. This helps in case of high fan-out with lots of subscriber churn.
+     * <dl>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code share} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param shards the number of inner publish groups, positive
+     * @return an {@code Observable} that upon connection causes the source {@code Observable} to emit items
+     *         to its {@link Subscriber}s
+     * @see #share()
+     */
+    public final Observable<T> share(int shards) {
+        if (shards == 1) {
+            return share();
+        }
+        return create(new OnSubscribeShardedRefCount<>(this, shards));
+    }
+
     /**
      * Returns an Observable that skips the first {@code num} items emitted by the source Observable and emits
      * the remainder.
@@ -7437,6 +7982,433 @@ public class Observable<T> implements Publisher<T> {
         return lift(new OperatorSkipWhile<T>(predicate));
     }
 
+    /**
+     * Returns an Observable that emits the items of each sliding window of the source Observable combined
+     * with an associative function, such as a sum, minimum or maximum.
+     * <p>
+     * Unlike {@code window(size, skip).flatMap(w -> w.reduce(...))}, the windows are not materialized: the
+     * items of all open windows share a single two-stack aggregator, so each item is combined a constant
+     * number of times (amortized) no matter how much the windows overlap. When the source Observable
+     * completes, the aggregates of the still open, partial windows are emitted in their opening order.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator honors backpressure: a request for {@code n} aggregates requests the items needed to
+     *      fill {@code n} windows from the source Observable.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>This version of {@code slidingReduce} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param size
+     *            the number of items in each window
+     * @param skip
+     *            the number of items after which a new window opens
+     * @param identity
+     *            the identity of {@code combiner}, the aggregate of an empty window
+     * @param combiner
+     *            an associative function combining two aggregates in arrival order
+     * @return an Observable that emits the aggregate of each window
+     * @see <a href="http://reactivex.io/documentation/operators/window.html">ReactiveX operators documentation: Window</a>
+     */
+    public final Observable<T> slidingReduce(int size, int skip, T identity, BinaryOperator<T> combiner) {
+        return lift(new OperatorSlidingReduce<T, T>(size, skip, () -> SlidingAggregator.reduce(identity, combiner)));
+    }
+
+    /**
+     * Returns an Observable that emits the items of each sliding window of the source Observable combined
+     * with an associative function, such as a sum, minimum or maximum.
+     * <p>
+     * The windows are not materialized: the items of all open windows share a single two-stack aggregator
+     * driven by one timer task, so each item is combined a constant number of times (amortized) no
+     * matter how much the windows overlap. When the source Observable completes, the aggregates of the
+     * still open, partial windows are emitted in their opening order.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Closing a window
+     *      without a downstream request signals a {@code MissingBackpressureException}.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>This version of {@code slidingReduce} operates by default on the {@code computation} {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param timespan
+     *            the length of each window
+     * @param timeshift
+     *            the period of time after which a new window opens
+     * @param unit
+     *            the unit of time that applies to the {@code timespan} and {@code timeshift} arguments
+     * @param identity
+     *            the identity of {@code combiner}, the aggregate of an empty window
+     * @param combiner
+     *            an associative function combining two aggregates in arrival order
+     * @return an Observable that emits the aggregate of each window
+     * @see <a href="http://reactivex.io/documentation/operators/window.html">ReactiveX operators documentation: Window</a>
+     */
+    public final Observable<T> slidingReduce(long timespan, long timeshift, TimeUnit unit, 
+            T identity, BinaryOperator<T> combiner) {
+        return slidingReduce(timespan, timeshift, unit, Schedulers.computation(), identity, combiner);
+    }
+
+    /**
+     * Returns an Observable that emits the items of each sliding window of the source Observable combined
+     * with an associative function, such as a sum, minimum or maximum.
+     * <p>
+     * The windows are not materialized: the items of all open windows share a single two-stack aggregator
+     * driven by one timer task, so each item is combined a constant number of times (amortized) no
+     * matter how much the windows overlap. When the source Observable completes, the aggregates of the
+     * still open, partial windows are emitted in their opening order.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Closing a window
+     *      without a downstream request signals a {@code MissingBackpressureException}.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>you specify which {@link Scheduler} this operator will use</dd>
+     * </dl>
+     * 
+     * @param timespan
+     *            the length of each window
+     * @param timeshift
+     *            the period of time after which a new window opens
+     * @param unit
+     *            the unit of time that applies to the {@code timespan} and {@code timeshift} arguments
+     * @param scheduler
+     *            the {@link Scheduler} to use when determining the end and start of a window
+     * @param identity
+     *            the identity of {@code combiner}, the aggregate of an empty window
+     * @param combiner
+     *            an associative function combining two aggregates in arrival order
+     * @return an Observable that emits the aggregate of each window
+     * @see <a href="http://reactivex.io/documentation/operators/window.html">ReactiveX operators documentation: Window</a>
+     */
+    public final Observable<T> slidingReduce(long timespan, long timeshift, TimeUnit unit, Scheduler scheduler, 
+            T identity, BinaryOperator<T> combiner) {
+        return lift(new OperatorSlidingReduceTimed<T, T>(timespan, timeshift, unit, scheduler, 
+                () -> SlidingAggregator.reduce(identity, combiner)));
+    }
+
+    /**
+     * Returns an Observable that emits the {@code long} values extracted from each sliding window of the source
+     * Observable combined with an associative function, such as {@code Long::sum} or {@code Math::max}. The
+     * values are aggregated without boxing.
+     * <p>
+     * Unlike {@code window(size, skip).flatMap(w -> w.reduce(...))}, the windows are not materialized: the
+     * items of all open windows share a single two-stack aggregator, so each item is combined a constant
+     * number of times (amortized) no matter how much the windows overlap. When the source Observable
+     * completes, the aggregates of the still open, partial windows are emitted in their opening order.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator honors backpressure: a request for {@code n} aggregates requests the items needed to
+     *      fill {@code n} windows from the source Observable.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>This version of {@code slidingReduceLong} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param size
+     *            the number of items in each window
+     * @param skip
+     *            the number of items after which a new window opens
+     * @param valueSelector
+     *            extracts the {@code long} value to aggregate from each item
+     * @param identity
+     *            the identity of {@code combiner}, the aggregate of an empty window
+     * @param combiner
+     *            an associative function combining two aggregates in arrival order
+     * @return an Observable that emits the aggregate of each window
+     * @see <a href="http://reactivex.io/documentation/operators/window.html">ReactiveX operators documentation: Window</a>
+     */
+    public final Observable<Long> slidingReduceLong(int size, int skip, 
+            ToLongFunction<? super T> valueSelector, long identity, LongBinaryOperator combiner) {
+        return lift(new OperatorSlidingReduce<T, Long>(size, skip, 
+                () -> SlidingAggregator.reduceLong(valueSelector, identity, combiner)));
+    }
+
+    /**
+     * Returns an Observable that emits the {@code long} values extracted from each sliding window of the source
+     * Observable combined with an associative function, such as {@code Long::sum} or {@code Math::max}. The
+     * values are aggregated without boxing.
+     * <p>
+     * The windows are not materialized: the items of all open windows share a single two-stack aggregator
+     * driven by one timer task, so each item is combined a constant number of times (amortized) no
+     * matter how much the windows overlap. When the source Observable completes, the aggregates of the
+     * still open, partial windows are emitted in their opening order.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Closing a window
+     *      without a downstream request signals a {@code MissingBackpressureException}.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>This version of {@code slidingReduceLong} operates by default on the {@code computation} {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param timespan
+     *            the length of each window
+     * @param timeshift
+     *            the period of time after which a new window opens
+     * @param unit
+     *            the unit of time that applies to the {@code timespan} and {@code timeshift} arguments
+     * @param valueSelector
+     *            extracts the {@code long} value to aggregate from each item
+     * @param identity
+     *            the identity of {@code combiner}, the aggregate of an empty window
+     * @param combiner
+     *            an associative function combining two aggregates in arrival order
+     * @return an Observable that emits the aggregate of each window
+     * @see <a href="http://reactivex.io/documentation/operators/window.html">ReactiveX operators documentation: Window</a>
+     */
+    public final Observable<Long> slidingReduceLong(long timespan, long timeshift, TimeUnit unit, 
+            ToLongFunction<? super T> valueSelector, long identity, LongBinaryOperator combiner) {
+        return slidingReduceLong(timespan, timeshift, unit, Schedulers.computation(), 
+                valueSelector, identity, combiner);
+    }
+
+    /**
+     * Returns an Observable that emits the {@code long} values extracted from each sliding window of the source
+     * Observable combined with an associative function, such as {@code Long::sum} or {@code Math::max}. The
+     * values are aggregated without boxing.
+     * <p>
+     * The windows are not materialized: the items of all open windows share a single two-stack aggregator
+     * driven by one timer task, so each item is combined a constant number of times (amortized) no
+     * matter how much the windows overlap. When the source Observable completes, the aggregates of the
+     * still open, partial windows are emitted in their opening order.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Closing a window
+     *      without a downstream request signals a {@code MissingBackpressureException}.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>you specify which {@link Scheduler} this operator will use</dd>
+     * </dl>
+     * 
+     * @param timespan
+     *            the length of each window
+     * @param timeshift
+     *            the period of time after which a new window opens
+     * @param unit
+     *            the unit of time that applies to the {@code timespan} and {@code timeshift} arguments
+     * @param scheduler
+     *            the {@link Scheduler} to use when determining the end and start of a window
+     * @param valueSelector
+     *            extracts the {@code long} value to aggregate from each item
+     * @param identity
+     *            the identity of {@code combiner}, the aggregate of an empty window
+     * @param combiner
+     *            an associative function combining two aggregates in arrival order
+     * @return an Observable that emits the aggregate of each window
+     * @see <a href="http://reactivex.io/documentation/operators/window.html">ReactiveX operators documentation: Window</a>
+     */
+    public final Observable<Long> slidingReduceLong(long timespan, long timeshift, TimeUnit unit, Scheduler scheduler, 
+            ToLongFunction<? super T> valueSelector, long identity, LongBinaryOperator combiner) {
+        return lift(new OperatorSlidingReduceTimed<T, Long>(timespan, timeshift, unit, scheduler, 
+                () -> SlidingAggregator.reduceLong(valueSelector, identity, combiner)));
+    }
+
+    /**
+     * Returns an Observable that emits the {@code double} values extracted from each sliding window of the
+     * source Observable combined with an associative function, such as {@code Double::sum} or {@code Math::min}.
+     * The values are aggregated without boxing.
+     * <p>
+     * Unlike {@code window(size, skip).flatMap(w -> w.reduce(...))}, the windows are not materialized: the
+     * items of all open windows share a single two-stack aggregator, so each item is combined a constant
+     * number of times (amortized) no matter how much the windows overlap. When the source Observable
+     * completes, the aggregates of the still open, partial windows are emitted in their opening order.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator honors backpressure: a request for {@code n} aggregates requests the items needed to
+     *      fill {@code n} windows from the source Observable.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>This version of {@code slidingReduceDouble} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param size
+     *            the number of items in each window
+     * @param skip
+     *            the number of items after which a new window opens
+     * @param valueSelector
+     *            extracts the {@code double} value to aggregate from each item
+     * @param identity
+     *            the identity of {@code combiner}, the aggregate of an empty window
+     * @param combiner
+     *            an associative function combining two aggregates in arrival order
+     * @return an Observable that emits the aggregate of each window
+     * @see <a href="http://reactivex.io/documentation/operators/window.html">ReactiveX operators documentation: Window</a>
+     */
+    public final Observable<Double> slidingReduceDouble(int size, int skip, 
+            ToDoubleFunction<? super T> valueSelector, double identity, DoubleBinaryOperator combiner) {
+        return lift(new OperatorSlidingReduce<T, Double>(size, skip, 
+                () -> SlidingAggregator.reduceDouble(valueSelector, identity, combiner)));
+    }
+
+    /**
+     * Returns an Observable that emits the {@code double} values extracted from each sliding window of the
+     * source Observable combined with an associative function, such as {@code Double::sum} or {@code Math::min}.
+     * The values are aggregated without boxing.
+     * <p>
+     * The windows are not materialized: the items of all open windows share a single two-stack aggregator
+     * driven by one timer task, so each item is combined a constant number of times (amortized) no
+     * matter how much the windows overlap. When the source Observable completes, the aggregates of the
+     * still open, partial windows are emitted in their opening order.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Closing a window
+     *      without a downstream request signals a {@code MissingBackpressureException}.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>This version of {@code slidingReduceDouble} operates by default on the {@code computation} {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param timespan
+     *            the length of each window
+     * @param timeshift
+     *            the period of time after which a new window opens
+     * @param unit
+     *            the unit of time that applies to the {@code timespan} and {@code timeshift} arguments
+     * @param valueSelector
+     *            extracts the {@code double} value to aggregate from each item
+     * @param identity
+     *            the identity of {@code combiner}, the aggregate of an empty window
+     * @param combiner
+     *            an associative function combining two aggregates in arrival order
+     * @return an Observable that emits the aggregate of each window
+     * @see <a href="http://reactivex.io/documentation/operators/window.html">ReactiveX operators documentation: Window</a>
+     */
+    public final Observable<Double> slidingReduceDouble(long timespan, long timeshift, TimeUnit unit, 
+            ToDoubleFunction<? super T> valueSelector, double identity, DoubleBinaryOperator combiner) {
+        return slidingReduceDouble(timespan, timeshift, unit, Schedulers.computation(), 
+                valueSelector, identity, combiner);
+    }
+
+    /**
+     * Returns an Observable that emits the {@code double} values extracted from each sliding window of the
+     * source Observable combined with an associative function, such as {@code Double::sum} or {@code Math::min}.
+     * The values are aggregated without boxing.
+     * <p>
+     * The windows are not materialized: the items of all open windows share a single two-stack aggregator
+     * driven by one timer task, so each item is combined a constant number of times (amortized) no
+     * matter how much the windows overlap. When the source Observable completes, the aggregates of the
+     * still open, partial windows are emitted in their opening order.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Closing a window
+     *      without a downstream request signals a {@code MissingBackpressureException}.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>you specify which {@link Scheduler} this operator will use</dd>
+     * </dl>
+     * 
+     * @param timespan
+     *            the length of each window
+     * @param timeshift
+     *            the period of time after which a new window opens
+     * @param unit
+     *            the unit of time that applies to the {@code timespan} and {@code timeshift} arguments
+     * @param scheduler
+     *            the {@link Scheduler} to use when determining the end and start of a window
+     * @param valueSelector
+     *            extracts the {@code double} value to aggregate from each item
+     * @param identity
+     *            the identity of {@code combiner}, the aggregate of an empty window
+     * @param combiner
+     *            an associative function combining two aggregates in arrival order
+     * @return an Observable that emits the aggregate of each window
+     * @see <a href="http://reactivex.io/documentation/operators/window.html">ReactiveX operators documentation: Window</a>
+     */
+    public final Observable<Double> slidingReduceDouble(long timespan, long timeshift, TimeUnit unit, 
+            Scheduler scheduler, ToDoubleFunction<? super T> valueSelector, double identity, 
+            DoubleBinaryOperator combiner) {
+        return lift(new OperatorSlidingReduceTimed<T, Double>(timespan, timeshift, unit, scheduler, 
+                () -> SlidingAggregator.reduceDouble(valueSelector, identity, combiner)));
+    }
+
+    /**
+     * Returns an Observable that emits the average of the {@code double} values extracted from each sliding
+     * window of the source Observable; the average of an empty window is {@code NaN}.
+     * <p>
+     * Unlike {@code window(size, skip).flatMap(w -> w.reduce(...))}, the windows are not materialized: the
+     * items of all open windows share a single two-stack aggregator, so each item is combined a constant
+     * number of times (amortized) no matter how much the windows overlap. When the source Observable
+     * completes, the aggregates of the still open, partial windows are emitted in their opening order.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator honors backpressure: a request for {@code n} aggregates requests the items needed to
+     *      fill {@code n} windows from the source Observable.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>This version of {@code slidingAverage} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param size
+     *            the number of items in each window
+     * @param skip
+     *            the number of items after which a new window opens
+     * @param valueSelector
+     *            extracts the {@code double} value to average from each item
+     * @return an Observable that emits the average of each window
+     * @see <a href="http://reactivex.io/documentation/operators/window.html">ReactiveX operators documentation: Window</a>
+     */
+    public final Observable<Double> slidingAverage(int size, int skip, ToDoubleFunction<? super T> valueSelector) {
+        return lift(new OperatorSlidingReduce<T, Double>(size, skip, () -> SlidingAggregator.average(valueSelector)));
+    }
+
+    /**
+     * Returns an Observable that emits the average of the {@code double} values extracted from each sliding
+     * window of the source Observable; the average of an empty window is {@code NaN}.
+     * <p>
+     * The windows are not materialized: the items of all open windows share a single two-stack aggregator
+     * driven by one timer task, so each item is combined a constant number of times (amortized) no
+     * matter how much the windows overlap. When the source Observable completes, the aggregates of the
+     * still open, partial windows are emitted in their opening order.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Closing a window
+     *      without a downstream request signals a {@code MissingBackpressureException}.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>This version of {@code slidingAverage} operates by default on the {@code computation} {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param timespan
+     *            the length of each window
+     * @param timeshift
+     *            the period of time after which a new window opens
+     * @param unit
+     *            the unit of time that applies to the {@code timespan} and {@code timeshift} arguments
+     * @param valueSelector
+     *            extracts the {@code double} value to average from each item
+     * @return an Observable that emits the average of each window
+     * @see <a href="http://reactivex.io/documentation/operators/window.html">ReactiveX operators documentation: Window</a>
+     */
+    public final Observable<Double> slidingAverage(long timespan, long timeshift, TimeUnit unit, 
+            ToDoubleFunction<? super T> valueSelector) {
+        return slidingAverage(timespan, timeshift, unit, Schedulers.computation(), valueSelector);
+    }
+
+    /**
+     * Returns an Observable that emits the average of the {@code double} values extracted from each sliding
+     * window of the source Observable; the average of an empty window is {@code NaN}.
+     * <p>
+     * The windows are not materialized: the items of all open windows share a single two-stack aggregator
+     * driven by one timer task, so each item is combined a constant number of times (amortized) no
+     * matter how much the windows overlap. When the source Observable completes, the aggregates of the
+     * still open, partial windows are emitted in their opening order.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Closing a window
+     *      without a downstream request signals a {@code MissingBackpressureException}.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>you specify which {@link Scheduler} this operator will use</dd>
+     * </dl>
+     * 
+     * @param timespan
+     *            the length of each window
+     * @param timeshift
+     *            the period of time after which a new window opens
+     * @param unit
+     *            the unit of time that applies to the {@code timespan} and {@code timeshift} arguments
+     * @param scheduler
+     *            the {@link Scheduler} to use when determining the end and start of a window
+     * @param valueSelector
+     *            extracts the {@code double} value to average from each item
+     * @return an Observable that emits the average of each window
+     * @see <a href="http://reactivex.io/documentation/operators/window.html">ReactiveX operators documentation: Window</a>
+     */
+    public final Observable<Double> slidingAverage(long timespan, long timeshift, TimeUnit unit, Scheduler scheduler, 
+            ToDoubleFunction<? super T> valueSelector) {
+        return lift(new OperatorSlidingReduceTimed<T, Double>(timespan, timeshift, unit, scheduler, 
+                () -> SlidingAggregator.average(valueSelector)));
+    }
+
     /**
      * Returns an Observable that emits the items in a specified {@link Observable} before it begins to emit
      * items emitted by the source Observable.
@@ -7747,9 +8719,45 @@ public class Observable<T> implements Publisher<T> {
      * @see <a href="http://reactivex.io/documentation/operators/flatmap.html">ReactiveX operators documentation: FlatMap</a>
      */
     public final <R> Observable<R> switchMap(Function<? super T, ? extends Observable<? extends R>> func) {
+        Object v = ScalarSource.scalarValueOf(this);
+        if (v != ScalarSource.NOT_SCALAR) {
+            return scalarFlatMap(v, func);
+        }
         return switchOnNext(map(func));
     }
 
+    /**
+     * Returns a new Observable by applying a function that you supply to each item emitted by the source
+     * Observable that returns an Observable, and then emitting the items emitted by the most recently emitted
+     * of these Observables, buffering up to {@code prefetch} items of it.
+     * <p>
+     * <img width="640" height="350" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/switchMap.png" alt="">
+     * <dl>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code switchMap} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param func
+     *            a function that, when applied to an item emitted by the source Observable, returns an
+     *            Observable
+     * @param prefetch
+     *            the number of items to prefetch and buffer from the current inner Observable
+     * @return an Observable that emits the items emitted by the Observable returned from applying {@code func} to the most recently emitted item emitted by the source Observable
+     * @throws IllegalArgumentException
+     *             if {@code prefetch} is less than or equal to 0
+     * @see <a href="http://reactivex.io/documentation/operators/flatmap.html">ReactiveX operators documentation: FlatMap</a>
+     */
+    public final <R> Observable<R> switchMap(Function<? super T, ? extends Observable<? extends R>> func, int prefetch) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch > 0 required");
+        }
+        Object v = ScalarSource.scalarValueOf(this);
+        if (v != ScalarSource.NOT_SCALAR) {
+            return scalarFlatMap(v, func);
+        }
+        return map(func).lift(OperatorSwitch.<R>instance(prefetch));
+    }
+
     /**
      * Returns an Observable that emits only the first {@code num} items emitted by the source Observable.
      * <p>
@@ -8195,7 +9203,8 @@ public class Observable<T> implements Publisher<T> {
      * <img width="640" height="305" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/throttleLast.png" alt="">
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator consumes the source in an unbounded manner as it uses time to control data flow. An item
+     *      that is due while the downstream has not requested is kept until it does, unless a newer item replaces it.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>{@code throttleLast} operates by default on the {@code computation} {@link Scheduler}.</dd>
      * </dl>
@@ -8224,7 +9233,8 @@ public class Observable<T> implements Publisher<T> {
      * <img width="640" height="305" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/throttleLast.s.png" alt="">
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator consumes the source in an unbounded manner as it uses time to control data flow. An item
+     *      that is due while the downstream has not requested is kept until it does, unless a newer item replaces it.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>you specify which {@link Scheduler} this operator will use</dd>
      * </dl>
@@ -8264,7 +9274,8 @@ public class Observable<T> implements Publisher<T> {
      * </ul>
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator consumes the source in an unbounded manner as it uses time to control data flow. An item
+     *      that is due while the downstream has not requested is kept until it does, unless a newer item replaces it.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>{@code throttleWithTimeout} operates by default on the {@code computation} {@link Scheduler}.</dd>
      * </dl>
@@ -8303,7 +9314,8 @@ public class Observable<T> implements Publisher<T> {
      * </ul>
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator consumes the source in an unbounded manner as it uses time to control data flow. An item
+     *      that is due while the downstream has not requested is kept until it does, unless a newer item replaces it.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>you specify which {@link Scheduler} this operator will use</dd>
      * </dl>
@@ -8806,6 +9818,58 @@ public class Observable<T> implements Publisher<T> {
         return lift(new OperatorToObservableSortedList<T>(sortFunction));
     }
 
+    /**
+     * Returns an Observable that emits a list that contains the items emitted by the source Observable, in a
+     * sorted order based on a specified comparator.
+     * <p>
+     * The items are collected into an array presized by {@code capacityHint}; large inputs are sorted by a
+     * stable parallel merge sort running on the common {@code ForkJoinPool}.
+     * <p>
+     * <img width="640" height="310" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/toSortedList.f.png" alt="">
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator requests and buffers everything from the source; the resulting list is emitted when
+     *      requested.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code toSortedList} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param comparator
+     *            the comparator defining the order of the items
+     * @param capacityHint
+     *            the expected number of items, used to size the initial buffer
+     * @return an Observable that emits a list that contains the items emitted by the source Observable in
+     *         sorted order
+     * @see <a href="http://reactivex.io/documentation/operators/to.html">ReactiveX operators documentation: To</a>
+     */
+    public final Observable<List<T>> toSortedList(Comparator<? super T> comparator, int capacityHint) {
+        return lift(new OperatorToObservableSortedList<T>(comparator, capacityHint));
+    }
+
+    /**
+     * Returns an Observable that emits a single list of the {@code k} greatest items emitted by the source
+     * Observable according to a comparator, in descending order.
+     * <p>
+     * Only the current top {@code k} items are kept, in a bounded heap, therefore this takes O(n log k) time
+     * and O(k) memory regardless of the number of items emitted by the source Observable. If the source emits
+     * fewer than {@code k} items, all of them are emitted in the list.
+     * <dl>
+     *  <dt><b>Backpressure Support:</b></dt>
+     *  <dd>This operator requests everything from the source; the resulting list is emitted when requested.</dd>
+     *  <dt><b>Scheduler:</b></dt>
+     *  <dd>{@code topK} does not operate by default on a particular {@link Scheduler}.</dd>
+     * </dl>
+     * 
+     * @param k
+     *            the maximum number of items to emit in the list, positive
+     * @param comparator
+     *            the comparator defining the order of the items
+     * @return an Observable that emits a list of the greatest items in descending order
+     */
+    public final Observable<List<T>> topK(int k, Comparator<? super T> comparator) {
+        return lift(new OperatorTopK<T>(k, comparator));
+    }
+
     /**
      * Merges the specified Observable into this Observable sequence by using the {@code resultSelector}
      * function only when the source Observable (this instance) emits an item.
@@ -8918,7 +9982,9 @@ public class Observable<T> implements Publisher<T> {
      * <img width="640" height="335" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/window7.png" alt="">
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Opening a window
+     *      without a downstream request signals a {@code MissingBackpressureException}; the windows themselves
+     *      buffer their items until requested.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>This version of {@code window} operates by default on the {@code computation} {@link Scheduler}.</dd>
      * </dl>
@@ -8946,7 +10012,9 @@ public class Observable<T> implements Publisher<T> {
      * <img width="640" height="335" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/window7.s.png" alt="">
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Opening a window
+     *      without a downstream request signals a {@code MissingBackpressureException}; the windows themselves
+     *      buffer their items until requested.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>you specify which {@link Scheduler} this operator will use</dd>
      * </dl>
@@ -8977,7 +10045,9 @@ public class Observable<T> implements Publisher<T> {
      * <img width="640" height="335" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/window7.s.png" alt="">
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Opening a window
+     *      without a downstream request signals a {@code MissingBackpressureException}; the windows themselves
+     *      buffer their items until requested.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>you specify which {@link Scheduler} this operator will use</dd>
      * </dl>
@@ -9008,7 +10078,9 @@ public class Observable<T> implements Publisher<T> {
      * <img width="640" height="375" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/window5.png" alt="">
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Opening a window
+     *      without a downstream request signals a {@code MissingBackpressureException}; the windows themselves
+     *      buffer their items until requested.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>This version of {@code window} operates by default on the {@code computation} {@link Scheduler}.</dd>
      * </dl>
@@ -9036,7 +10108,9 @@ public class Observable<T> implements Publisher<T> {
      * <img width="640" height="370" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/window6.png" alt="">
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Opening a window
+     *      without a downstream request signals a {@code MissingBackpressureException}; the windows themselves
+     *      buffer their items until requested.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>This version of {@code window} operates by default on the {@code computation} {@link Scheduler}.</dd>
      * </dl>
@@ -9067,7 +10141,9 @@ public class Observable<T> implements Publisher<T> {
      * <img width="640" height="370" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/window6.s.png" alt="">
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Opening a window
+     *      without a downstream request signals a {@code MissingBackpressureException}; the windows themselves
+     *      buffer their items until requested.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>you specify which {@link Scheduler} this operator will use</dd>
      * </dl>
@@ -9099,7 +10175,9 @@ public class Observable<T> implements Publisher<T> {
      * <img width="640" height="375" src="https://raw.github.com/wiki/ReactiveX/RxJava/images/rx-operators/window5.s.png" alt="">
      * <dl>
      *  <dt><b>Backpressure Support:</b></dt>
-     *  <dd>This operator does not support backpressure as it uses time to control data flow.</dd>
+     *  <dd>This operator does not support backpressure as it uses time to control data flow. Opening a window
+     *      without a downstream request signals a {@code MissingBackpressureException}; the windows themselves
+     *      buffer their items until requested.</dd>
      *  <dt><b>Scheduler:</b></dt>
      *  <dd>you specify which {@link Scheduler} this operator will use</dd>
      * </dl>
@@ -9251,6 +10329,39 @@ public class Observable<T> implements Publisher<T> {
         }
     }
 
+    /**
+     * Subscribes to the parent with the Subscriber returned by the lifted Operator.
+     * <p>
+     * Kept as a distinct type so {@link #lift} can recognize and fuse adjacent operators.
+     *
+     * @param <T> the parent's value type
+     * @param <R> the lifted value type
+     */
+    private static final class LiftOnSubscribe<T, R> implements OnSubscribe<R> {
+        final OnSubscribe<T> parent;
+        final Operator<? extends R, ? super T> operator;
+        
+        public LiftOnSubscribe(OnSubscribe<T> parent, Operator<? extends R, ? super T> operator) {
+            this.parent = parent;
+            this.operator = operator;
+        }
+        
+        @Override
+        public void accept(Subscriber<? super R> s) {
+            try {
+                Subscriber<? super T> s2 = hook.onLift(operator).apply(s);
+                parent.accept(s2);
+            } catch (Throwable e) {
+                try {
+                    // FIXME We can't be sure the subscription was set or not at this point!
+                    s.onError(e);
+                } catch (Throwable e2) {
+                    handleUncaught(new CompositeException(Arrays.asList(e, e2)));
+                }
+            }
+        }
+    }
+
     /**
      * An Observable that invokes {@link Subscriber#onError onError} when the {@link Subscriber} subscribes to it.
      * 
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.internal.Conformance;
+import rx.internal.subscriptions.QueueSubscription;
+
+/**
+ * Base class for synchronous intermediate operators which can run inside the
+ * poll loop of a fused consumer.
+ * <p>
+ * If the upstream is a {@link QueueSubscription}, this subscriber hands itself to the
+ * child as the subscription and forwards the fusion request; otherwise the child
+ * receives the upstream subscription directly. Since the subclasses run user code
+ * inside {@code poll()}, the fusion is refused if the consumer is a thread boundary.
+ *
+ * @param <T> the upstream value type
+ * @param <R> the downstream value type
+ */
+abstract class AbstractFuseableSubscriber<T, R> implements Subscriber<T>, QueueSubscription<R> {
+    /** The downstream subscriber. */
+    final Subscriber<? super R> child;
+    /** The upstream subscription. */
+    Subscription subscription;
+    /** The upstream queue view, null if the upstream doesn't support fusion. */
+    QueueSubscription<T> qs;
+    
+    public AbstractFuseableSubscriber(Subscriber<? super R> child) {
+        this.child = child;
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    public final void onSubscribe(Subscription subscription) {
+        if (!Conformance.onSubscribeOnce(this.subscription, this)) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        if (subscription instanceof QueueSubscription) {
+            this.qs = (QueueSubscription<T>)subscription;
+            child.onSubscribe(this);
+        } else {
+            child.onSubscribe(subscription);
+        }
+    }
+    
+    @Override
+    public void onError(Throwable throwable) {
+        child.onError(throwable);
+    }
+    
+    @Override
+    public void onComplete() {
+        child.onComplete();
+    }
+    
+    @Override
+    public final void request(long n) {
+        subscription.request(n);
+    }
+    
+    @Override
+    public final void cancel() {
+        subscription.cancel();
+    }
+    
+    @Override
+    public int requestFusion(int mode) {
+        if ((mode & BOUNDARY) != 0) {
+            return NONE;
+        }
+        return qs.requestFusion(mode);
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return qs.isEmpty();
+    }
+    
+    @Override
+    public final void clear() {
+        qs.clear();
+    }
+}
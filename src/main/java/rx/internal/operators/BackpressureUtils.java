@@ -75,4 +75,34 @@ final class BackpressureUtils {
                 return current;
         }
     }
+
+    /**
+     * Multiplies two non-negative request amounts, capping the result at {@code Long.MAX_VALUE}.
+     * 
+     * @param a
+     *            the first amount
+     * @param b
+     *            the second amount
+     * @return the product or {@code Long.MAX_VALUE} if it would overflow
+     */
+    static long multiplyCap(long a, long b) {
+        if (b != 0L && a > Long.MAX_VALUE / b) {
+            return Long.MAX_VALUE;
+        }
+        return a * b;
+    }
+
+    /**
+     * Adds two non-negative request amounts, capping the result at {@code Long.MAX_VALUE}.
+     * 
+     * @param a
+     *            the first amount
+     * @param b
+     *            the second amount
+     * @return the sum or {@code Long.MAX_VALUE} if it would overflow
+     */
+    static long addCap(long a, long b) {
+        long u = a + b;
+        return u < 0L ? Long.MAX_VALUE : u;
+    }
 }
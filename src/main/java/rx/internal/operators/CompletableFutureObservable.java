@@ -0,0 +1,47 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.concurrent.CompletableFuture;
+
+import rx.Observable;
+
+/**
+ * An Observable which emits the value or error of a CompletableFuture and can be
+ * short-circuited as a scalar source once the future completed normally with a value.
+ *
+ * @param <T> the value type
+ */
+public final class CompletableFutureObservable<T> extends Observable<T> implements ScalarSource<T> {
+    final CompletableFuture<? extends T> future;
+    
+    public CompletableFutureObservable(CompletableFuture<? extends T> future) {
+        super(new OnSubscribeCompletableFuture<>(future));
+        this.future = future;
+    }
+    
+    @Override
+    public boolean isScalar() {
+        CompletableFuture<? extends T> f = future;
+        return f.isDone() && !f.isCompletedExceptionally() && f.getNow(null) != null;
+    }
+    
+    @Override
+    public T scalarValue() {
+        return future.getNow(null);
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import rx.Observable;
+
+/**
+ * An Observable which completes immediately and can be short-circuited as an empty scalar source.
+ *
+ * @param <T> the value type
+ */
+public final class EmptyObservable<T> extends Observable<T> implements ScalarSource<T> {
+    /** A common, stateless instance. */
+    static final EmptyObservable<Object> INSTANCE = new EmptyObservable<>();
+    
+    private EmptyObservable() {
+        super(new OnSubscribeEmpty<>());
+    }
+    /**
+     * Returns the common, stateless instance.
+     * @param <T> the value type
+     * @return the common instance
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EmptyObservable<T> instance() {
+        return (EmptyObservable<T>)INSTANCE;
+    }
+    
+    @Override
+    public boolean isScalar() {
+        return true;
+    }
+    
+    @Override
+    public T scalarValue() {
+        return null;
+    }
+}
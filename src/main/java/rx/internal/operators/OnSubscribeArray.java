@@ -20,7 +20,7 @@ import java.util.Objects;
 
 import rx.Flow.Subscriber;
 import rx.Observable.OnSubscribe;
-import rx.internal.subscriptions.AbstractSubscription;
+import rx.internal.subscriptions.*;
 
 /**
  * 
@@ -38,43 +38,76 @@ public final class OnSubscribeArray<T> implements OnSubscribe<T> {
             t.onComplete();
             return;
         }
-        t.onSubscribe(new AbstractSubscription<T>(t) {
-            int index = 0;
-            @Override
-            protected void onRequested(long n) {
-                if (n == Long.MAX_VALUE) {
-                    for (T e : array) {
-                        if (isDisposed()) {
-                            return;
-                        }
-                        t.onNext(e);
+        t.onSubscribe(new ArraySubscription<>(t, array));
+    }
+    /**
+     * Emits the array elements on request or, if fused, lets the consumer poll them.
+     */
+    static final class ArraySubscription<T> extends AbstractSubscription<T> implements QueueSubscription<T> {
+        final Subscriber<? super T> t;
+        final T[] array;
+        int index;
+        public ArraySubscription(Subscriber<? super T> t, T[] array) {
+            super(t);
+            this.t = t;
+            this.array = array;
+        }
+        @Override
+        protected void onRequested(long n) {
+            if (n == Long.MAX_VALUE) {
+                for (T e : array) {
+                    if (isDisposed()) {
+                        return;
                     }
-                    t.onComplete();
-                    return;
+                    t.onNext(e);
                 }
-                long r0 = n;
-                T[] a = array;
-                for (;;) {
-                    long c = r0;
-                    while (r0 > 0 && index < a.length) {
-                        if (isDisposed()) {
-                            return;
-                        }
-                        t.onNext(a[index]);
-                        r0--;
-                        index++;
-                    }
-                    if (index == a.length) {
-                        t.onComplete();
-                        break;
-                    } else {
-                        r0 = produced(c);
-                    }
-                    if (r0 <= 0) {
-                        break;
+                t.onComplete();
+                return;
+            }
+            long r0 = n;
+            T[] a = array;
+            for (;;) {
+                long c = r0;
+                while (r0 > 0 && index < a.length) {
+                    if (isDisposed()) {
+                        return;
                     }
+                    t.onNext(a[index]);
+                    r0--;
+                    index++;
+                }
+                if (index == a.length) {
+                    t.onComplete();
+                    break;
+                } else {
+                    r0 = produced(c);
                 }
+                if (r0 <= 0) {
+                    break;
+                }
+            }
+        }
+        @Override
+        public int requestFusion(int mode) {
+            return mode & SYNC;
+        }
+        @Override
+        public T poll() {
+            int i = index;
+            T[] a = array;
+            if (i == a.length) {
+                return null;
             }
-        });
+            index = i + 1;
+            return Objects.requireNonNull(a[i]);
+        }
+        @Override
+        public boolean isEmpty() {
+            return index == array.length;
+        }
+        @Override
+        public void clear() {
+            index = array.length;
+        }
     }
 }
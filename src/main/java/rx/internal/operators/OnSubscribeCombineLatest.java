@@ -15,19 +15,20 @@
  */
 package rx.internal.operators;
 
-import java.util.BitSet;
+import static rx.internal.UnsafeAccess.*;
+
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.function.*;
 
+import rx.Flow;
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
 import rx.Observable;
 import rx.Observable.OnSubscribe;
-import rx.Producer;
-import rx.Subscriber;
-import rx.exceptions.MissingBackpressureException;
-import rx.functions.FuncN;
-import rx.internal.util.RxRingBuffer;
+import rx.functions.*;
+import rx.internal.*;
+import rx.internal.queues.MpscLinkedQueue;
+import rx.internal.subscriptions.AbstractSubscription;
 
 /**
  * Returns an Observable that combines the emissions of multiple source observables. Once each
@@ -36,6 +37,18 @@ import rx.internal.util.RxRingBuffer;
  * Observable with a specified function.
  * <p>
  * <img width="640" src="https://github.com/ReactiveX/RxJava/wiki/images/rx-operators/combineLatest.png" alt="">
+ * <p>
+ * Each source has a single slot holding its latest value and the combinations are computed by a
+ * single-consumer drain loop; no lock is taken on any path.
+ * <ul>
+ * <li>In the default mode, the sources are prefetched and their items travel through a lock-free queue
+ * so every combination is emitted; the queue holds at most {@code prefetch} items per source.</li>
+ * <li>In the coalescing mode, the sources are consumed unbounded and atomically swap their item into their
+ * slot. A slow downstream only receives the newest combination available when it requests, the
+ * intermediate ones are never computed and the memory use is constant.</li>
+ * </ul>
+ * The 2, 3 and 4 argument combine functions are called with the slots directly, the N-ary combine
+ * function receives a copy which it may keep.
  * 
  * @param <T>
  *            the common basetype of the source values
@@ -43,278 +56,432 @@ import rx.internal.util.RxRingBuffer;
  *            the result type of the combinator function
  */
 public final class OnSubscribeCombineLatest<T, R> implements OnSubscribe<R> {
+    /*
+     * Raw types are used so we can use a single implementation for all arities, the types are
+     * cast on the edges the same way as in OperatorZip.
+     */
     final List<? extends Observable<? extends T>> sources;
-    final FuncN<? extends R> combinator;
+    final Function<? super Object[], ? extends R> combiner;
+    /** True if the combine function may keep the array it receives so each combination has to be copied. */
+    final boolean copyRow;
+    final boolean coalesce;
+    final int prefetch;
+
+    public OnSubscribeCombineLatest(List<? extends Observable<? extends T>> sources, 
+            Function<? super Object[], ? extends R> combiner, boolean coalesce) {
+        this(sources, combiner, true, coalesce);
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public OnSubscribeCombineLatest(List<? extends Observable<? extends T>> sources, 
+            BiFunction combiner, boolean coalesce) {
+        this(sources, a -> (R)combiner.apply(a[0], a[1]), false, coalesce);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public OnSubscribeCombineLatest(List<? extends Observable<? extends T>> sources, 
+            TriFunction combiner, boolean coalesce) {
+        this(sources, a -> (R)combiner.apply(a[0], a[1], a[2]), false, coalesce);
+    }
 
-    public OnSubscribeCombineLatest(List<? extends Observable<? extends T>> sources, FuncN<? extends R> combinator) {
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public OnSubscribeCombineLatest(List<? extends Observable<? extends T>> sources, 
+            QuadFunction combiner, boolean coalesce) {
+        this(sources, a -> (R)combiner.apply(a[0], a[1], a[2], a[3]), false, coalesce);
+    }
+    
+    private OnSubscribeCombineLatest(List<? extends Observable<? extends T>> sources, 
+            Function<? super Object[], ? extends R> combiner, boolean copyRow, boolean coalesce) {
         this.sources = sources;
-        this.combinator = combinator;
-        if (sources.size() > 128) {
-            // For design simplicity this is limited to 128. If more are really needed we'll need to adjust 
-            // the design of how RxRingBuffer is used in the implementation below.
-            throw new IllegalArgumentException("More than 128 sources to combineLatest is not supported.");
-        }
+        this.combiner = combiner;
+        this.copyRow = copyRow;
+        this.coalesce = coalesce;
+        this.prefetch = Flow.defaultBufferSize();
     }
 
     @Override
-    public void call(final Subscriber<? super R> child) {
-        if (sources.isEmpty()) {
+    public void accept(Subscriber<? super R> child) {
+        int n = sources.size();
+        if (n == 0) {
+            AbstractSubscription.setEmptyOn(child);
             child.onComplete();
             return;
         }
-        if (sources.size() == 1) {
-            child.setProducer(new SingleSourceProducer<T, R>(child, sources.get(0), combinator));
-        } else {
-            child.setProducer(new MultiSourceProducer<T, R>(child, sources, combinator));
-        }
-
+        LatestCoordinator<R> parent = new LatestCoordinator<>(child, combiner, n, copyRow, coalesce, prefetch);
+        child.onSubscribe(parent);
+        parent.subscribe(sources);
     }
-
-    /*
-     * benjchristensen => This implementation uses a buffer enqueue/drain pattern. It could be optimized to have a fast-path to
-     * skip the buffer and emit directly when no conflict, but that is quite complicated and I don't have the time to attempt it right now.
-     */
-    final static class MultiSourceProducer<T, R> implements Producer {
-        private final AtomicBoolean started = new AtomicBoolean();
-        private final AtomicLong requested = new AtomicLong();
-        private final List<? extends Observable<? extends T>> sources;
-        private final Subscriber<? super R> child;
-        private final FuncN<? extends R> combinator;
-        private final MultiSourceRequestableSubscriber<T, R>[] subscribers;
-
-        /* following are guarded by WIP */
-        private final RxRingBuffer buffer = RxRingBuffer.getSpmcInstance();
-        private final Object[] collectedValues;
-        private final BitSet haveValues;
-        private volatile int haveValuesCount; // does this need to be volatile or is WIP sufficient?
-        private final BitSet completion;
-        private volatile int completionCount; // does this need to be volatile or is WIP sufficient?
-
-        @SuppressWarnings("unused")
-        private volatile long counter;
-        @SuppressWarnings("rawtypes")
-        private static final AtomicLongFieldUpdater<MultiSourceProducer> WIP = AtomicLongFieldUpdater.newUpdater(MultiSourceProducer.class, "counter");
-
-        @SuppressWarnings("unchecked")
-        public MultiSourceProducer(final Subscriber<? super R> child, final List<? extends Observable<? extends T>> sources, FuncN<? extends R> combinator) {
-            this.sources = sources;
+    
+    static final class LatestCoordinator<R> implements Subscription {
+        final Subscriber<? super R> child;
+        final Function<? super Object[], ? extends R> combiner;
+        final CombinerInner[] inners;
+        final boolean copyRow;
+        final boolean coalesce;
+        /** 
+         * The latest value of each source, null marks a source without a value yet. Swapped atomically by 
+         * the sources in the coalescing mode, accessed from the drain loop only otherwise.
+         */
+        final Object[] latest;
+        /** The snapshot of the slots in the coalescing mode, accessed from the drain loop only. */
+        final Object[] row;
+        /** The (source index, value) pairs in arrival order, used in the default mode only. */
+        final MpscLinkedQueue<Entry> queue;
+        
+        /** The number of slots holding a value. */
+        volatile int ready;
+        static final long READY = addressOf(LatestCoordinator.class, "ready");
+        
+        /** The number of sources which completed after emitting at least one item. */
+        volatile int complete;
+        static final long COMPLETE = addressOf(LatestCoordinator.class, "complete");
+        
+        /** Set if any slot changed since the last coalesced combination. */
+        volatile boolean updated;
+        
+        /** Set if a source completed without emitting anything so no combination is possible anymore. */
+        volatile boolean empty;
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(LatestCoordinator.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(LatestCoordinator.class, "wip");
+        
+        volatile Throwable error;
+        static final long ERROR = addressOf(LatestCoordinator.class, "error");
+        
+        volatile boolean cancelled;
+        
+        public LatestCoordinator(Subscriber<? super R> child, Function<? super Object[], ? extends R> combiner, 
+                int n, boolean copyRow, boolean coalesce, int prefetch) {
             this.child = child;
-            this.combinator = combinator;
-
-            int n = sources.size();
-            this.subscribers = new MultiSourceRequestableSubscriber[n];
-            this.collectedValues = new Object[n];
-            this.haveValues = new BitSet(n);
-            this.completion = new BitSet(n);
+            this.combiner = combiner;
+            this.copyRow = copyRow;
+            this.coalesce = coalesce;
+            this.latest = new Object[n];
+            CombinerInner[] a = new CombinerInner[n];
+            for (int i = 0; i < n; i++) {
+                a[i] = new CombinerInner(this, i, prefetch);
+            }
+            this.inners = a;
+            if (coalesce) {
+                this.row = new Object[n];
+                this.queue = null;
+            } else {
+                this.row = null;
+                this.queue = new MpscLinkedQueue<>();
+            }
         }
-
+        
+        void subscribe(List<? extends Observable<?>> sources) {
+            CombinerInner[] a = inners;
+            for (int i = 0; i < a.length && !cancelled; i++) {
+                sources.get(i).unsafeSubscribe(a[i]);
+            }
+        }
+        
         @Override
         public void request(long n) {
-            BackpressureUtils.getAndAddRequest(requested, n);
-            if (!started.get() && started.compareAndSet(false, true)) {
-                /*
-                 * NOTE: this logic will ONLY work if we don't have more sources than the size of the buffer.
-                 * 
-                 * We would likely need to make an RxRingBuffer that can be sized to [numSources * n] instead
-                 * of the current global default size it has.
-                 */
-                int sizePerSubscriber = Flow.defaultBufferSize() / sources.size();
-                int leftOver = Flow.defaultBufferSize() % sources.size();
-                for (int i = 0; i < sources.size(); i++) {
-                    Observable<? extends T> o = sources.get(i);
-                    int toRequest = sizePerSubscriber;
-                    if (i == sources.size() - 1) {
-                        toRequest += leftOver;
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            drain();
+        }
+        
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                cancelAll();
+            }
+        }
+        
+        void cancelAll() {
+            for (CombinerInner inner : inners) {
+                inner.cancel();
+            }
+        }
+        
+        void innerNext(int index, Object value) {
+            if (coalesce) {
+                if (UNSAFE.getAndSetObject(latest, slotAddress(index), value) == null) {
+                    UNSAFE.getAndAddInt(this, READY, 1);
+                }
+                updated = true;
+            } else {
+                queue.offer(new Entry(index, value));
+            }
+            drain();
+        }
+        
+        void innerError(Throwable e) {
+            if (UNSAFE.compareAndSwapObject(this, ERROR, null, e)) {
+                drain();
+            }
+        }
+        
+        void innerComplete(boolean hasValue) {
+            if (hasValue) {
+                UNSAFE.getAndAddInt(this, COMPLETE, 1);
+            } else {
+                empty = true;
+            }
+            drain();
+        }
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) != 0) {
+                return;
+            }
+            if (coalesce) {
+                drainCoalesced();
+            } else {
+                drainQueued();
+            }
+        }
+        
+        void drainQueued() {
+            int missed = 1;
+            final Subscriber<? super R> c = child;
+            final MpscLinkedQueue<Entry> q = queue;
+            final Object[] values = latest;
+            final int n = values.length;
+            for (;;) {
+                long r = requested;
+                long e = 0L;
+                for (;;) {
+                    if (checkTerminated()) {
+                        return;
+                    }
+                    // read the completion count first so all items of the completed sources are already queued
+                    boolean d = complete == n;
+                    Entry entry = q.peek();
+                    if (entry == null) {
+                        if (d) {
+                            c.onComplete();
+                            return;
+                        }
+                        break;
+                    }
+                    int index = entry.index;
+                    boolean first = values[index] == null;
+                    int k = first ? ready + 1 : ready;
+                    if (k == n && e == r) {
+                        // the item would produce a combination the downstream hasn't requested
+                        break;
+                    }
+                    q.poll();
+                    ready = k;
+                    values[index] = entry.value;
+                    inners[index].replenish();
+                    if (k == n) {
+                        if (!emit(copyRow ? values.clone() : values)) {
+                            return;
+                        }
+                        e++;
                     }
-                    MultiSourceRequestableSubscriber<T, R> s = new MultiSourceRequestableSubscriber<T, R>(i, toRequest, child, this);
-                    subscribers[i] = s;
-                    o.unsafeSubscribe(s);
+                }
+                if (e != 0L && r != Long.MAX_VALUE) {
+                    UNSAFE.getAndAddLong(this, REQUESTED, -e);
+                }
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
                 }
             }
-            tick();
         }
-
-        /**
-         * This will only allow one thread at a time to do the work, but ensures via `counter` increment/decrement
-         * that there is always once who acts on each `tick`. Same concept as used in OperationObserveOn.
-         */
-        void tick() {
-            if (WIP.getAndIncrement(this) == 0) {
-                int emitted = 0;
-                do {
-                    // we only emit if requested > 0
-                    if (requested.get() > 0) {
-                        Object o = buffer.poll();
-                        if (o != null) {
-                            if (buffer.isCompleted(o)) {
-                                child.onComplete();
-                            } else {
-                                buffer.accept(o, child);
-                                emitted++;
-                                requested.decrementAndGet();
-                            }
+        
+        void drainCoalesced() {
+            int missed = 1;
+            final Subscriber<? super R> c = child;
+            final Object[] values = latest;
+            final Object[] snapshot = row;
+            final int n = values.length;
+            for (;;) {
+                long r = requested;
+                long e = 0L;
+                for (;;) {
+                    if (checkTerminated()) {
+                        return;
+                    }
+                    // read the completion count first so the final values of the completed sources are already in their slots
+                    boolean d = complete == n;
+                    if (!updated || ready != n) {
+                        if (d) {
+                            c.onComplete();
+                            return;
                         }
+                        break;
+                    }
+                    if (e == r) {
+                        break;
                     }
-                } while (WIP.decrementAndGet(this) > 0);
-                if (emitted > 0) {
-                    for (MultiSourceRequestableSubscriber<T, R> s : subscribers) {
-                        s.requestUpTo(emitted);
+                    // clear the flag before taking the snapshot so a concurrent update triggers another round
+                    updated = false;
+                    for (int i = 0; i < n; i++) {
+                        snapshot[i] = UNSAFE.getObjectVolatile(values, slotAddress(i));
                     }
+                    if (!emit(copyRow ? snapshot.clone() : snapshot)) {
+                        return;
+                    }
+                    e++;
+                }
+                if (e != 0L && r != Long.MAX_VALUE) {
+                    UNSAFE.getAndAddLong(this, REQUESTED, -e);
+                }
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
                 }
             }
         }
-
-        public void onComplete()(int index, boolean hadValue) {
-            if (!hadValue) {
-                child.onComplete();
-                return;
+        
+        boolean checkTerminated() {
+            if (cancelled) {
+                return true;
             }
-            boolean done = false;
-            synchronized (this) {
-                if (!completion.get(index)) {
-                    completion.set(index);
-                    completionCount++;
-                    done = completionCount == collectedValues.length;
-                }
+            Throwable ex = error;
+            if (ex != null) {
+                cancelAll();
+                child.onError(ex);
+                return true;
             }
-            if (done) {
-                buffer.onComplete();
-                tick();
+            if (empty) {
+                cancelAll();
+                child.onComplete();
+                return true;
             }
+            return false;
         }
-
-        /**
-         * @return boolean true if propagated value
-         */
-        public boolean onNext(int index, T t) {
-            synchronized (this) {
-                if (!haveValues.get(index)) {
-                    haveValues.set(index);
-                    haveValuesCount++;
-                }
-                collectedValues[index] = t;
-                if (haveValuesCount != collectedValues.length) {
-                    // haven't received value from each source yet so won't emit
-                    return false;
-                } else {
-                    try {
-                        buffer.onNext(combinator.call(collectedValues));
-                    } catch (MissingBackpressureException e) {
-                        onError(e);
-                    } catch (Throwable e) {
-                        onError(e);
-                    }
+        
+        boolean emit(Object[] values) {
+            R v;
+            try {
+                v = combiner.apply(values);
+                if (v == null) {
+                    throw new NullPointerException("The combine function returned a null value");
                 }
+            } catch (Throwable t) {
+                cancelAll();
+                child.onError(t);
+                return false;
             }
-            tick();
+            child.onNext(v);
             return true;
         }
-
-        public void onError(Throwable e) {
-            child.onError(e);
+        
+        static final long ARRAY_BASE = UNSAFE.arrayBaseOffset(Object[].class);
+        static final int ARRAY_SHIFT = 31 - Integer.numberOfLeadingZeros(UNSAFE.arrayIndexScale(Object[].class));
+        
+        static long slotAddress(int slot) {
+            return ARRAY_BASE + ((long)slot << ARRAY_SHIFT);
         }
     }
-
-    final static class MultiSourceRequestableSubscriber<T, R> extends Subscriber<T> {
-
-        final MultiSourceProducer<T, R> producer;
+    
+    static final class Entry {
         final int index;
-        final AtomicLong emitted = new AtomicLong();
-        boolean hasValue = false;
-
-        public MultiSourceRequestableSubscriber(int index, int initial, Subscriber<? super R> child, MultiSourceProducer<T, R> producer) {
-            super(child);
+        final Object value;
+        public Entry(int index, Object value) {
             this.index = index;
-            this.producer = producer;
-            request(initial);
-        }
-
-        public void requestUpTo(long n) {
-            do {
-                long r = emitted.get();
-                long u = Math.min(r, n);
-                if (emitted.compareAndSet(r, r - u)) {
-                    request(u);
-                    break;
-                }
-            } while (true);
+            this.value = value;
         }
-
-        @Override
-        public void onComplete() {
-            producer.onComplete()(index, hasValue);
+    }
+    
+    static final class CombinerInner implements Subscriber<Object> {
+        final LatestCoordinator<?> parent;
+        final int index;
+        final int prefetch;
+        final int limit;
+        /** The number of items consumed since the last replenishment, accessed from the drain loop only. */
+        int produced;
+        /** Set if this source emitted at least one item, accessed from the source's thread only. */
+        boolean hasValue;
+        boolean done;
+        
+        volatile Subscription subscription;
+        static final long SUBSCRIPTION = addressOf(CombinerInner.class, "subscription");
+        
+        static final Subscription CANCELLED = new Subscription() {
+            @Override
+            public void request(long n) {
+                
+            }
+            @Override
+            public void cancel() {
+                
+            }
+        };
+        
+        public CombinerInner(LatestCoordinator<?> parent, int index, int prefetch) {
+            this.parent = parent;
+            this.index = index;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
         }
-
+        
         @Override
-        public void onError(Throwable e) {
-            producer.onError(e);
+        public void onSubscribe(Subscription s) {
+            Conformance.subscriptionNonNull(s);
+            if (!UNSAFE.compareAndSwapObject(this, SUBSCRIPTION, null, s)) {
+                Subscription curr = subscription;
+                if (curr != CANCELLED) {
+                    Conformance.onSubscribeOnce(curr, this);
+                }
+                s.cancel();
+                return;
+            }
+            // the coalescing mode overwrites the slots and never replenishes
+            s.request(parent.coalesce ? Long.MAX_VALUE : prefetch);
         }
-
+        
         @Override
-        public void onNext(T t) {
-            hasValue = true;
-            emitted.incrementAndGet();
-            boolean emitted = producer.onNext(index, t);
-            if (!emitted) {
-                request(1);
+        public void onNext(Object item) {
+            if (done) {
+                return;
             }
+            hasValue = true;
+            parent.innerNext(index, item);
         }
-
-    }
-
-    final static class SingleSourceProducer<T, R> implements Producer {
-        final AtomicBoolean started = new AtomicBoolean();
-        final Observable<? extends T> source;
-        final Subscriber<? super R> child;
-        final FuncN<? extends R> combinator;
-        final SingleSourceRequestableSubscriber<T, R> subscriber;
-
-        public SingleSourceProducer(final Subscriber<? super R> child, Observable<? extends T> source, FuncN<? extends R> combinator) {
-            this.source = source;
-            this.child = child;
-            this.combinator = combinator;
-            this.subscriber = new SingleSourceRequestableSubscriber<T, R>(child, combinator);
-        }
-
+        
         @Override
-        public void request(final long n) {
-            subscriber.requestMore(n);
-            if (started.compareAndSet(false, true)) {
-                source.unsafeSubscribe(subscriber);
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
             }
-
-        }
-
-    }
-
-    final static class SingleSourceRequestableSubscriber<T, R> extends Subscriber<T> {
-
-        private final Subscriber<? super R> child;
-        private final FuncN<? extends R> combinator;
-
-        SingleSourceRequestableSubscriber(Subscriber<? super R> child, FuncN<? extends R> combinator) {
-            super(child);
-            this.child = child;
-            this.combinator = combinator;
+            done = true;
+            parent.innerError(throwable);
         }
-
-        public void requestMore(long n) {
-            request(n);
-        }
-
+        
         @Override
-        public void onNext(T t) {
-            child.onNext(combinator.call(t));
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            parent.innerComplete(hasValue);
         }
-
-        @Override
-        public void onError(Throwable e) {
-            child.onError(e);
+        
+        void replenish() {
+            int p = produced + 1;
+            if (p == limit) {
+                produced = 0;
+                subscription.request(p);
+            } else {
+                produced = p;
+            }
         }
-
-        @Override
-        public void onComplete() {
-            child.onComplete();
+        
+        void cancel() {
+            Subscription s = subscription;
+            if (s != CANCELLED) {
+                s = (Subscription)UNSAFE.getAndSetObject(this, SUBSCRIPTION, CANCELLED);
+                if (s != null && s != CANCELLED) {
+                    s.cancel();
+                }
+            }
         }
     }
 }
@@ -0,0 +1,473 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.*;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.exceptions.MissingBackpressureException;
+import rx.internal.*;
+import rx.internal.queues.SpscLinkedQueue;
+import rx.schedulers.Scheduler;
+
+/**
+ * Correlates the items of two sequences having equal keys and arriving within a time window of each other.
+ * <p>
+ * A left item arriving at time {@code tl} matches a right item of the same key arriving at {@code tr} if
+ * {@code tl <= tr < tl + leftWindow} or {@code tr <= tl < tr + rightWindow}.
+ * <p>
+ * Each side is the single writer of its own SPSC queue of timestamped entries. The queues are consumed by
+ * a serialized drain loop which owns both per-key indexes, therefore no locks are involved and matching
+ * an item costs O(matching items) instead of a scan over all live opposite items. Each side's index keeps
+ * its entries per key and in a global arrival-ordered list; an item arriving on one side evicts the expired
+ * entries of the other side from the head of that list, which is the oldest entry of its key as well.
+ * It also evicts its own side's entries which have been expired for longer than a short reordering grace
+ * period, so a side's index stays bounded while the other side is silent; the grace covers an opposite item
+ * which got its timestamp but was not yet queued when the drain loop consumed the arriving item.
+ * <p>
+ * An entry whose window is 0 is indexed too and stays until the other side moves past its instant, so
+ * items stamped at the same instant match regardless of the order or the drain pass they are consumed in.
+ * <p>
+ * The operator doesn't support backpressure: the sources are consumed unbounded and emitting a result
+ * without a downstream request signals a {@link MissingBackpressureException}.
+ *
+ * @param <TLeft> the left value type
+ * @param <TRight> the right value type
+ * @param <K> the key type
+ * @param <R> the result type
+ */
+public final class OnSubscribeHashJoin<TLeft, TRight, K, R> implements OnSubscribe<R> {
+    /** How far an opposite item can lag behind in time due to cross-queue reordering, in nanoseconds. */
+    static final long REORDER_GRACE = TimeUnit.MILLISECONDS.toNanos(100);
+    final Observable<? extends TLeft> left;
+    final Observable<? extends TRight> right;
+    final Function<? super TLeft, ? extends K> leftKey;
+    final Function<? super TRight, ? extends K> rightKey;
+    final long leftWindow;
+    final long rightWindow;
+    final TimeUnit unit;
+    final Scheduler scheduler;
+    final BiFunction<? super TLeft, ? super TRight, ? extends R> resultSelector;
+    
+    public OnSubscribeHashJoin(Observable<? extends TLeft> left, Observable<? extends TRight> right,
+            Function<? super TLeft, ? extends K> leftKey, Function<? super TRight, ? extends K> rightKey,
+            long leftWindow, long rightWindow, TimeUnit unit, Scheduler scheduler,
+            BiFunction<? super TLeft, ? super TRight, ? extends R> resultSelector) {
+        if (leftWindow < 0) {
+            throw new IllegalArgumentException("leftWindow >= 0 required but it was " + leftWindow);
+        }
+        if (rightWindow < 0) {
+            throw new IllegalArgumentException("rightWindow >= 0 required but it was " + rightWindow);
+        }
+        this.left = Objects.requireNonNull(left);
+        this.right = Objects.requireNonNull(right);
+        this.leftKey = Objects.requireNonNull(leftKey);
+        this.rightKey = Objects.requireNonNull(rightKey);
+        this.leftWindow = leftWindow;
+        this.rightWindow = rightWindow;
+        this.unit = Objects.requireNonNull(unit);
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.resultSelector = Objects.requireNonNull(resultSelector);
+    }
+    
+    @Override
+    public void accept(Subscriber<? super R> child) {
+        JoinCoordinator<TLeft, TRight, K, R> parent = new JoinCoordinator<>(child, leftKey, rightKey, 
+                unit.toNanos(leftWindow), unit.toNanos(rightWindow), scheduler, resultSelector);
+        child.onSubscribe(parent);
+        left.unsafeSubscribe(parent.leftSide);
+        right.unsafeSubscribe(parent.rightSide);
+    }
+    
+    /** An item with its arrival time and key. */
+    static final class Entry {
+        final Object key;
+        final Object value;
+        final long time;
+        
+        Entry(Object key, Object value, long time) {
+            this.key = key;
+            this.value = value;
+            this.time = time;
+        }
+    }
+    
+    /** The live entries of one side, accessed from the drain loop only. */
+    static final class SideIndex {
+        final long window;
+        /** The live entries per key, in arrival order. */
+        final Map<Object, ArrayDeque<Entry>> byKey;
+        /** All live entries in arrival order. */
+        final ArrayDeque<Entry> byTime;
+        
+        SideIndex(long window) {
+            this.window = window;
+            this.byKey = new HashMap<>();
+            this.byTime = new ArrayDeque<>();
+        }
+        
+        void add(Entry e) {
+            ArrayDeque<Entry> list = byKey.get(e.key);
+            if (list == null) {
+                list = new ArrayDeque<>(4);
+                byKey.put(e.key, list);
+            }
+            list.offer(e);
+            byTime.offer(e);
+        }
+        
+        /**
+         * Removes the entries which can't match an opposite item arriving at or after the given time:
+         * their window ended at or before it and they are older than it.
+         * @param now the time
+         */
+        void evict(long now) {
+            final ArrayDeque<Entry> q = byTime;
+            Entry e;
+            while ((e = q.peek()) != null && e.time + window <= now && e.time < now) {
+                q.poll();
+                ArrayDeque<Entry> list = byKey.get(e.key);
+                // the oldest entry of a key is the head of its list
+                list.poll();
+                if (list.isEmpty()) {
+                    byKey.remove(e.key);
+                }
+            }
+        }
+        
+        boolean isEmpty() {
+            return byTime.isEmpty();
+        }
+        
+        void clear() {
+            byKey.clear();
+            byTime.clear();
+        }
+    }
+    
+    /** Consumes both sides and owns the indexes. */
+    static final class JoinCoordinator<TLeft, TRight, K, R> implements Subscription {
+        final Subscriber<? super R> child;
+        final BiFunction<? super TLeft, ? super TRight, ? extends R> resultSelector;
+        final Scheduler scheduler;
+        final JoinSide<TLeft> leftSide;
+        final JoinSide<TRight> rightSide;
+        final SideIndex leftIndex;
+        final SideIndex rightIndex;
+        
+        volatile int wip;
+        static final long WIP = addressOf(JoinCoordinator.class, "wip");
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(JoinCoordinator.class, "requested");
+        
+        volatile Throwable error;
+        static final long ERROR = addressOf(JoinCoordinator.class, "error");
+        
+        volatile boolean cancelled;
+        
+        public JoinCoordinator(Subscriber<? super R> child, 
+                Function<? super TLeft, ? extends K> leftKey, Function<? super TRight, ? extends K> rightKey,
+                long leftWindow, long rightWindow, Scheduler scheduler,
+                BiFunction<? super TLeft, ? super TRight, ? extends R> resultSelector) {
+            this.child = child;
+            this.resultSelector = resultSelector;
+            this.scheduler = scheduler;
+            this.leftSide = new JoinSide<>(this, leftKey);
+            this.rightSide = new JoinSide<>(this, rightKey);
+            this.leftIndex = new SideIndex(leftWindow);
+            this.rightIndex = new SideIndex(rightWindow);
+        }
+        
+        long now() {
+            return TimeUnit.MILLISECONDS.toNanos(scheduler.now());
+        }
+        
+        @Override
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+        }
+        
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                cancelAll();
+                drain();
+            }
+        }
+        
+        void cancelAll() {
+            leftSide.cancel();
+            rightSide.cancel();
+        }
+        
+        void innerError(Throwable e) {
+            if (UNSAFE.compareAndSwapObject(this, ERROR, null, e)) {
+                cancelAll();
+                drain();
+            }
+        }
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) == 0) {
+                drainLoop();
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        void drainLoop() {
+            int missed = 1;
+            final Queue<Entry> lq = leftSide.queue;
+            final Queue<Entry> rq = rightSide.queue;
+            final SideIndex li = leftIndex;
+            final SideIndex ri = rightIndex;
+            for (;;) {
+                for (;;) {
+                    if (cancelled) {
+                        clear();
+                        return;
+                    }
+                    Throwable ex = error;
+                    if (ex != null) {
+                        clear();
+                        child.onError(ex);
+                        return;
+                    }
+                    
+                    boolean ld = leftSide.done;
+                    boolean rd = rightSide.done;
+                    Entry le = lq.peek();
+                    Entry re = rq.peek();
+                    
+                    // nothing can match anymore once a finished side has nothing in flight
+                    if ((ld && le == null && (rd ? re == null : li.isEmpty())) || (rd && re == null && ri.isEmpty())) {
+                        clear();
+                        cancelAll();
+                        child.onComplete();
+                        return;
+                    }
+                    
+                    boolean fromLeft;
+                    if (le != null) {
+                        fromLeft = re == null || le.time <= re.time;
+                    } else
+                    if (re != null) {
+                        fromLeft = false;
+                    } else {
+                        break;
+                    }
+                    
+                    if (fromLeft) {
+                        lq.poll();
+                        // future left items arrive no earlier
+                        ri.evict(le.time);
+                        if (!match(le, ri.byKey.get(le.key), li.window, ri.window, true)) {
+                            return;
+                        }
+                        // no need to keep it if no right item can come anymore
+                        if (!(rd && rq.isEmpty())) {
+                            li.add(le);
+                            // right items arrive no earlier than the grace period before it
+                            li.evict(le.time - REORDER_GRACE);
+                        }
+                    } else {
+                        rq.poll();
+                        li.evict(re.time);
+                        if (!match(re, li.byKey.get(re.key), ri.window, li.window, false)) {
+                            return;
+                        }
+                        if (!(ld && lq.isEmpty())) {
+                            ri.add(re);
+                            ri.evict(re.time - REORDER_GRACE);
+                        }
+                    }
+                }
+                
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+        
+        /**
+         * Emits the results for an item against the live opposite entries of its key.
+         * @return false if the drain loop should quit
+         */
+        @SuppressWarnings("unchecked")
+        boolean match(Entry e, ArrayDeque<Entry> opposite, long window, long oppositeWindow, boolean isLeft) {
+            if (opposite == null) {
+                return true;
+            }
+            final long t = e.time;
+            for (Entry o : opposite) {
+                // the opposite entry may have arrived later if the queues were drained out of order,
+                // and a zero-window entry at the same instant is live only through the item's window
+                long ot = o.time;
+                if (!((ot <= t && t - ot < oppositeWindow) || (t <= ot && ot - t < window))) {
+                    continue;
+                }
+                R v;
+                try {
+                    if (isLeft) {
+                        v = resultSelector.apply((TLeft)e.value, (TRight)o.value);
+                    } else {
+                        v = resultSelector.apply((TLeft)o.value, (TRight)e.value);
+                    }
+                } catch (Throwable ex) {
+                    fail(ex);
+                    return false;
+                }
+                if (v == null) {
+                    fail(new NullPointerException("The resultSelector returned null"));
+                    return false;
+                }
+                long r = requested;
+                if (r == 0L) {
+                    fail(new MissingBackpressureException("Could not emit value due to lack of requests"));
+                    return false;
+                }
+                child.onNext(v);
+                if (r != Long.MAX_VALUE) {
+                    UNSAFE.getAndAddLong(this, REQUESTED, -1);
+                }
+                if (cancelled) {
+                    clear();
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        void fail(Throwable e) {
+            cancelAll();
+            clear();
+            child.onError(e);
+        }
+        
+        void clear() {
+            leftSide.queue.clear();
+            rightSide.queue.clear();
+            leftIndex.clear();
+            rightIndex.clear();
+        }
+    }
+    
+    /** Receives the items of one side and enqueues them with their arrival time. */
+    static final class JoinSide<T> implements Subscriber<T> {
+        final JoinCoordinator<?, ?, ?, ?> parent;
+        final Function<? super T, ?> keySelector;
+        final Queue<Entry> queue;
+        /** The time of the last item, keeps the arrival times non-decreasing; accessed by the upstream thread only. */
+        long lastTime;
+        
+        volatile boolean done;
+        
+        volatile Subscription subscription;
+        static final long SUBSCRIPTION = addressOf(JoinSide.class, "subscription");
+        
+        static final Subscription CANCELLED = new Subscription() {
+            @Override
+            public void request(long n) {
+                
+            }
+            @Override
+            public void cancel() {
+                
+            }
+        };
+        
+        public JoinSide(JoinCoordinator<?, ?, ?, ?> parent, Function<? super T, ?> keySelector) {
+            this.parent = parent;
+            this.keySelector = keySelector;
+            this.queue = new SpscLinkedQueue<>();
+        }
+        
+        @Override
+        public void onSubscribe(Subscription s) {
+            Conformance.subscriptionNonNull(s);
+            if (!UNSAFE.compareAndSwapObject(this, SUBSCRIPTION, null, s)) {
+                Subscription curr = subscription;
+                if (curr != CANCELLED) {
+                    Conformance.onSubscribeOnce(curr, this);
+                }
+                s.cancel();
+                return;
+            }
+            s.request(Long.MAX_VALUE);
+        }
+        
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                return;
+            }
+            Object key;
+            try {
+                key = keySelector.apply(item);
+            } catch (Throwable ex) {
+                done = true;
+                parent.innerError(ex);
+                return;
+            }
+            long t = Math.max(lastTime, parent.now());
+            lastTime = t;
+            queue.offer(new Entry(key, item, t));
+            parent.drain();
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            parent.innerError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            parent.drain();
+        }
+        
+        void cancel() {
+            Subscription s = subscription;
+            if (s != CANCELLED) {
+                s = (Subscription)UNSAFE.getAndSetObject(this, SUBSCRIPTION, CANCELLED);
+                if (s != null && s != CANCELLED) {
+                    s.cancel();
+                }
+            }
+        }
+    }
+}
@@ -16,11 +16,11 @@
 
 package rx.internal.operators;
 
-import java.util.Iterator;
+import java.util.*;
 
 import rx.Flow.Subscriber;
 import rx.Observable.OnSubscribe;
-import rx.internal.subscriptions.AbstractSubscription;
+import rx.internal.subscriptions.*;
 
 /**
  * 
@@ -38,10 +38,26 @@ public final class OnSubscribeIterable<T> implements OnSubscribe<T> {
             t.onComplete();
             return;
         }
-        t.onSubscribe(AbstractSubscription.create(t, (r, s) -> {
+        t.onSubscribe(new IterableSubscription<>(t, it));
+    }
+    /**
+     * Emits the iterator's elements on request or, if fused, lets the consumer poll them.
+     */
+    static final class IterableSubscription<T> extends AbstractSubscription<T> implements QueueSubscription<T> {
+        final Subscriber<? super T> t;
+        final Iterator<? extends T> it;
+        /** Set when the consumer cleared the fused queue view. */
+        boolean cleared;
+        public IterableSubscription(Subscriber<? super T> t, Iterator<? extends T> it) {
+            super(t);
+            this.t = t;
+            this.it = it;
+        }
+        @Override
+        protected void onRequested(long r) {
             if (r == Long.MAX_VALUE) {
                 while (it.hasNext()) {
-                    if (s.isDisposed()) {
+                    if (isDisposed()) {
                         return;
                     }
                     t.onNext(it.next());
@@ -53,7 +69,7 @@ public final class OnSubscribeIterable<T> implements OnSubscribe<T> {
             for (;;) {
                 long c = r0;
                 while (r0 > 0 && it.hasNext()) {
-                    if (s.isDisposed()) {
+                    if (isDisposed()) {
                         return;
                     }
                     t.onNext(it.next());
@@ -64,12 +80,35 @@ public final class OnSubscribeIterable<T> implements OnSubscribe<T> {
                     break;
                 } else 
                 if (c > 0) {
-                    r0 = s.produced(c);
+                    r0 = produced(c);
                 }
                 if (r0 <= 0) {
                     break;
                 }
             }
-        }));
+        }
+        @Override
+        public int requestFusion(int mode) {
+            // the Iterator may be user code, keep it on the producing thread
+            if ((mode & BOUNDARY) != 0) {
+                return NONE;
+            }
+            return mode & SYNC;
+        }
+        @Override
+        public T poll() {
+            if (cleared || !it.hasNext()) {
+                return null;
+            }
+            return Objects.requireNonNull(it.next());
+        }
+        @Override
+        public boolean isEmpty() {
+            return cleared || !it.hasNext();
+        }
+        @Override
+        public void clear() {
+            cleared = true;
+        }
     }
 }
@@ -0,0 +1,262 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.Queue;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.Observable.OnSubscribe;
+import rx.exceptions.MissingBackpressureException;
+import rx.internal.*;
+import rx.internal.queues.SpscArrayQueue;
+import rx.observables.ParallelObservable;
+
+/**
+ * Merges the rails of a {@link ParallelObservable} back into a single sequence, taking
+ * items from the rails in a round-robin fashion.
+ *
+ * @param <T> the value type
+ */
+public final class OnSubscribeParallelJoin<T> implements OnSubscribe<T> {
+    final ParallelObservable<? extends T> source;
+    final int prefetch;
+    
+    public OnSubscribeParallelJoin(ParallelObservable<? extends T> source, int prefetch) {
+        this.source = source;
+        this.prefetch = prefetch;
+    }
+    
+    @Override
+    public void accept(Subscriber<? super T> child) {
+        JoinSubscription<T> parent = new JoinSubscription<>(child, source.rails(), prefetch);
+        child.onSubscribe(parent);
+        source.subscribe(parent.inners);
+    }
+    
+    static final class JoinSubscription<T> implements Subscription {
+        final Subscriber<? super T> child;
+        final JoinInner<T>[] inners;
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(JoinSubscription.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(JoinSubscription.class, "wip");
+        
+        /** The number of rails that completed. */
+        volatile int done;
+        static final long DONE = addressOf(JoinSubscription.class, "done");
+        
+        volatile Throwable error;
+        static final long ERROR = addressOf(JoinSubscription.class, "error");
+        
+        volatile boolean cancelled;
+        
+        @SuppressWarnings("unchecked")
+        public JoinSubscription(Subscriber<? super T> child, int n, int prefetch) {
+            this.child = child;
+            this.inners = new JoinInner[n];
+            for (int i = 0; i < n; i++) {
+                inners[i] = new JoinInner<>(this, prefetch);
+            }
+        }
+        
+        @Override
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            drain();
+        }
+        
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                cancelAll();
+            }
+        }
+        
+        void cancelAll() {
+            for (JoinInner<T> inner : inners) {
+                inner.cancel();
+            }
+        }
+        
+        void innerError(Throwable e) {
+            if (UNSAFE.compareAndSwapObject(this, ERROR, null, e)) {
+                drain();
+            }
+        }
+        
+        void innerComplete() {
+            UNSAFE.getAndAddInt(this, DONE, 1);
+            drain();
+        }
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) != 0) {
+                return;
+            }
+            int missed = 1;
+            final JoinInner<T>[] a = inners;
+            final int n = a.length;
+            final Subscriber<? super T> c = child;
+            for (;;) {
+                if (cancelled) {
+                    return;
+                }
+                Throwable ex = error;
+                if (ex != null) {
+                    cancelAll();
+                    c.onError(ex);
+                    return;
+                }
+                
+                boolean d = done == n;
+                long r = requested;
+                long e = 0L;
+                while (e != r) {
+                    int emitted = 0;
+                    for (int i = 0; i < n && e != r; i++) {
+                        JoinInner<T> inner = a[i];
+                        T v = inner.queue.poll();
+                        if (v != null) {
+                            c.onNext(v);
+                            inner.replenish();
+                            e++;
+                            emitted++;
+                        }
+                    }
+                    if (emitted == 0 || cancelled || error != null) {
+                        break;
+                    }
+                }
+                if (e != 0L && r != Long.MAX_VALUE) {
+                    UNSAFE.getAndAddLong(this, REQUESTED, -e);
+                }
+                if (d && !cancelled && error == null) {
+                    boolean empty = true;
+                    for (JoinInner<T> inner : a) {
+                        if (!inner.queue.isEmpty()) {
+                            empty = false;
+                            break;
+                        }
+                    }
+                    if (empty) {
+                        c.onComplete();
+                        return;
+                    }
+                }
+                
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+    
+    static final class JoinInner<T> implements Subscriber<T> {
+        final JoinSubscription<T> parent;
+        final Queue<T> queue;
+        final int prefetch;
+        final int limit;
+        /** The number of items emitted since the last replenishment, accessed from the drain loop only. */
+        int produced;
+        
+        volatile Subscription subscription;
+        static final long SUBSCRIPTION = addressOf(JoinInner.class, "subscription");
+        
+        static final Subscription CANCELLED = new Subscription() {
+            @Override
+            public void request(long n) {
+                
+            }
+            @Override
+            public void cancel() {
+                
+            }
+        };
+        
+        public JoinInner(JoinSubscription<T> parent, int prefetch) {
+            this.parent = parent;
+            this.queue = new SpscArrayQueue<>(prefetch);
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+        }
+        
+        @Override
+        public void onSubscribe(Subscription s) {
+            Conformance.subscriptionNonNull(s);
+            if (!UNSAFE.compareAndSwapObject(this, SUBSCRIPTION, null, s)) {
+                Subscription curr = subscription;
+                if (curr != CANCELLED) {
+                    Conformance.onSubscribeOnce(curr, this);
+                }
+                s.cancel();
+                return;
+            }
+            s.request(prefetch);
+        }
+        
+        @Override
+        public void onNext(T item) {
+            if (!queue.offer(item)) {
+                cancel();
+                parent.innerError(new MissingBackpressureException());
+                return;
+            }
+            parent.drain();
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            parent.innerError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            parent.innerComplete();
+        }
+        
+        void replenish() {
+            int p = produced + 1;
+            if (p == limit) {
+                produced = 0;
+                subscription.request(p);
+            } else {
+                produced = p;
+            }
+        }
+        
+        void cancel() {
+            Subscription s = subscription;
+            if (s != CANCELLED) {
+                s = (Subscription)UNSAFE.getAndSetObject(this, SUBSCRIPTION, CANCELLED);
+                if (s != null && s != CANCELLED) {
+                    s.cancel();
+                }
+            }
+        }
+    }
+}
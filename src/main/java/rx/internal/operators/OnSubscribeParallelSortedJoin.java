@@ -0,0 +1,253 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.*;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.Observable.OnSubscribe;
+import rx.internal.*;
+import rx.observables.ParallelObservable;
+
+/**
+ * Merges the sorted lists of the rails of a {@link ParallelObservable} into a single
+ * sorted sequence once all rails have produced their list.
+ *
+ * @param <T> the value type
+ */
+public final class OnSubscribeParallelSortedJoin<T> implements OnSubscribe<T> {
+    final ParallelObservable<List<T>> source;
+    final Comparator<? super T> comparator;
+    
+    public OnSubscribeParallelSortedJoin(ParallelObservable<List<T>> source, Comparator<? super T> comparator) {
+        this.source = source;
+        this.comparator = comparator;
+    }
+    
+    @Override
+    public void accept(Subscriber<? super T> child) {
+        SortedJoinSubscription<T> parent = new SortedJoinSubscription<>(child, source.rails(), comparator);
+        child.onSubscribe(parent);
+        source.subscribe(parent.inners);
+    }
+    
+    static final class SortedJoinSubscription<T> implements Subscription {
+        final Subscriber<? super T> child;
+        final Comparator<? super T> comparator;
+        final SortedJoinInner<T>[] inners;
+        /** The sorted list of each rail, visible to the drain loop once remaining reaches zero. */
+        final List<T>[] lists;
+        /** The read index into each list, accessed from the drain loop only. */
+        final int[] indexes;
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(SortedJoinSubscription.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(SortedJoinSubscription.class, "wip");
+        
+        /** The number of rails yet to complete. */
+        volatile int remaining;
+        static final long REMAINING = addressOf(SortedJoinSubscription.class, "remaining");
+        
+        volatile Throwable error;
+        static final long ERROR = addressOf(SortedJoinSubscription.class, "error");
+        
+        volatile boolean cancelled;
+        
+        @SuppressWarnings("unchecked")
+        public SortedJoinSubscription(Subscriber<? super T> child, int n, Comparator<? super T> comparator) {
+            this.child = child;
+            this.comparator = comparator;
+            this.inners = new SortedJoinInner[n];
+            for (int i = 0; i < n; i++) {
+                inners[i] = new SortedJoinInner<>(this, i);
+            }
+            this.lists = new List[n];
+            this.indexes = new int[n];
+            UNSAFE.putOrderedInt(this, REMAINING, n);
+        }
+        
+        @Override
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            if (remaining == 0) {
+                drain();
+            }
+        }
+        
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                cancelAll();
+            }
+        }
+        
+        void cancelAll() {
+            for (SortedJoinInner<T> inner : inners) {
+                inner.cancel();
+            }
+        }
+        
+        void innerNext(int index, List<T> list) {
+            lists[index] = list;
+        }
+        
+        void innerError(Throwable e) {
+            if (UNSAFE.compareAndSwapObject(this, ERROR, null, e)) {
+                drain();
+            }
+        }
+        
+        void innerComplete() {
+            if (UNSAFE.getAndAddInt(this, REMAINING, -1) == 1) {
+                drain();
+            }
+        }
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) != 0) {
+                return;
+            }
+            int missed = 1;
+            final Subscriber<? super T> c = child;
+            final List<T>[] a = lists;
+            final int[] idx = indexes;
+            final int n = a.length;
+            for (;;) {
+                if (cancelled) {
+                    return;
+                }
+                Throwable ex = error;
+                if (ex != null) {
+                    cancelAll();
+                    c.onError(ex);
+                    return;
+                }
+                if (remaining == 0) {
+                    long r = requested;
+                    long e = 0L;
+                    for (;;) {
+                        // pick the smallest head among the rails; ties go to the lower rail
+                        T min = null;
+                        int minIndex = -1;
+                        for (int i = 0; i < n; i++) {
+                            List<T> list = a[i];
+                            int j = idx[i];
+                            if (list != null && j != list.size()) {
+                                T v = list.get(j);
+                                if (minIndex < 0 || comparator.compare(v, min) < 0) {
+                                    min = v;
+                                    minIndex = i;
+                                }
+                            }
+                        }
+                        if (minIndex < 0) {
+                            Arrays.fill(a, null);
+                            c.onComplete();
+                            return;
+                        }
+                        if (e == r || cancelled) {
+                            break;
+                        }
+                        idx[minIndex]++;
+                        c.onNext(min);
+                        e++;
+                    }
+                    if (e != 0L && r != Long.MAX_VALUE) {
+                        UNSAFE.getAndAddLong(this, REQUESTED, -e);
+                    }
+                }
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+    
+    static final class SortedJoinInner<T> implements Subscriber<List<T>> {
+        final SortedJoinSubscription<T> parent;
+        final int index;
+        
+        volatile Subscription subscription;
+        static final long SUBSCRIPTION = addressOf(SortedJoinInner.class, "subscription");
+        
+        static final Subscription CANCELLED = new Subscription() {
+            @Override
+            public void request(long n) {
+                
+            }
+            @Override
+            public void cancel() {
+                
+            }
+        };
+        
+        public SortedJoinInner(SortedJoinSubscription<T> parent, int index) {
+            this.parent = parent;
+            this.index = index;
+        }
+        
+        @Override
+        public void onSubscribe(Subscription s) {
+            Conformance.subscriptionNonNull(s);
+            if (!UNSAFE.compareAndSwapObject(this, SUBSCRIPTION, null, s)) {
+                Subscription curr = subscription;
+                if (curr != CANCELLED) {
+                    Conformance.onSubscribeOnce(curr, this);
+                }
+                s.cancel();
+                return;
+            }
+            s.request(Long.MAX_VALUE);
+        }
+        
+        @Override
+        public void onNext(List<T> item) {
+            parent.innerNext(index, item);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            parent.innerError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            parent.innerComplete();
+        }
+        
+        void cancel() {
+            Subscription s = subscription;
+            if (s != CANCELLED) {
+                s = (Subscription)UNSAFE.getAndSetObject(this, SUBSCRIPTION, CANCELLED);
+                if (s != null && s != CANCELLED) {
+                    s.cancel();
+                }
+            }
+        }
+    }
+}
@@ -18,7 +18,7 @@ package rx.internal.operators;
 
 import rx.Flow.Subscriber;
 import rx.Observable.OnSubscribe;
-import rx.internal.subscriptions.AbstractSubscription;
+import rx.internal.subscriptions.*;
 
 /**
  * 
@@ -32,53 +32,83 @@ public final class OnSubscribeRange implements OnSubscribe<Integer> {
     }
     @Override
     public void accept(Subscriber<? super Integer> child) {
-        int c = count;
-        int s = start;
-        child.onSubscribe(new AbstractSubscription<Integer>(child) {
-            int remaining = c;
-            int value = s;
-            @Override
-            protected void onRequested(long n) {
-                int val = value;
-                int rem = remaining;
-                if (n == Long.MAX_VALUE) {
-                    while (rem > 0) {
-                        if (isDisposed()) {
-                            return;
-                        }
-                        child.onNext(val++);
-                        rem--;
+        child.onSubscribe(new RangeSubscription(child, start, count));
+    }
+    /**
+     * Emits the range on request or, if fused, lets the consumer poll it.
+     */
+    static final class RangeSubscription extends AbstractSubscription<Integer> implements QueueSubscription<Integer> {
+        final Subscriber<? super Integer> child;
+        int remaining;
+        int value;
+        public RangeSubscription(Subscriber<? super Integer> child, int start, int count) {
+            super(child);
+            this.child = child;
+            this.value = start;
+            this.remaining = count;
+        }
+        @Override
+        protected void onRequested(long n) {
+            int val = value;
+            int rem = remaining;
+            if (n == Long.MAX_VALUE) {
+                while (rem > 0) {
+                    if (isDisposed()) {
+                        return;
                     }
+                    child.onNext(val++);
+                    rem--;
+                }
+                cancel();
+                child.onComplete();
+                return;
+            }
+            long req = n;
+            for (;;) {
+                long c = 0;
+                while (req > 0 && rem > 0) {
+                    if (isDisposed()) {
+                        return;
+                    }
+                    child.onNext(val++);
+                    req--;
+                    rem--;
+                    c++;
+                }
+                if (rem == 0) {
                     cancel();
                     child.onComplete();
-                    return;
+                    break;
+                } else {
+                    value = val;
+                    remaining = rem;
+                    req = produced(c);
                 }
-                long req = n;
-                for (;;) {
-                    long c = 0;
-                    while (req > 0 && rem > 0) {
-                        if (isDisposed()) {
-                            return;
-                        }
-                        child.onNext(val++);
-                        req--;
-                        rem--;
-                        c++;
-                    }
-                    if (rem == 0) {
-                        cancel();
-                        child.onComplete();
-                        break;
-                    } else {
-                        value = val;
-                        remaining = rem;
-                        req = produced(c);
-                    }
-                    if (req <= 0) {
-                        break;
-                    }
+                if (req <= 0) {
+                    break;
                 }
             }
-        });
+        }
+        @Override
+        public int requestFusion(int mode) {
+            return mode & SYNC;
+        }
+        @Override
+        public Integer poll() {
+            int rem = remaining;
+            if (rem == 0) {
+                return null;
+            }
+            remaining = rem - 1;
+            return value++;
+        }
+        @Override
+        public boolean isEmpty() {
+            return remaining == 0;
+        }
+        @Override
+        public void clear() {
+            remaining = 0;
+        }
     }
 }
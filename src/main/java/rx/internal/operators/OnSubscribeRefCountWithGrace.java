@@ -0,0 +1,274 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import rx.Flow.Subscriber;
+import rx.Observable.OnSubscribe;
+import rx.disposables.*;
+import rx.observables.ConnectableObservable;
+import rx.schedulers.Scheduler;
+import rx.subscribers.*;
+
+/**
+ * Returns an observable sequence that stays connected to the source as long as
+ * there is at least one subscription to the observable sequence or the
+ * last subscription has been cancelled not longer ago than the grace period.
+ * 
+ * @param <T>
+ *            the value type
+ */
+public final class OnSubscribeRefCountWithGrace<T> implements OnSubscribe<T> {
+
+    final ConnectableObservable<? extends T> source;
+    final long gracePeriod;
+    final TimeUnit unit;
+    final Scheduler scheduler;
+
+    /** The current connection, guarded by lock. */
+    CompositeDisposable baseSubscription = new CompositeDisposable();
+    /** The number of active subscribers, guarded by lock. */
+    int subscriptionCount;
+    /** Indicates the baseSubscription belongs to a live connection, guarded by lock. */
+    boolean connected;
+    /** The pending delayed disconnection, guarded by lock. */
+    Scheduler.Worker pendingDisconnect;
+
+    /** The number of times the source was connected to, guarded by lock. */
+    long connectCount;
+    /** The number of times a pending disconnection was cancelled by a new subscriber, guarded by lock. */
+    long avoidedReconnectCount;
+
+    /**
+     * Use this lock for every subscription and disconnect action.
+     */
+    final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Constructor.
+     * 
+     * @param source
+     *            observable to apply ref count to
+     * @param gracePeriod
+     *            the time to stay connected after the last subscriber cancelled
+     * @param unit
+     *            the time unit of the grace period
+     * @param scheduler
+     *            the scheduler to time the grace period on
+     */
+    public OnSubscribeRefCountWithGrace(ConnectableObservable<? extends T> source, 
+            long gracePeriod, TimeUnit unit, Scheduler scheduler) {
+        this.source = source;
+        this.gracePeriod = gracePeriod;
+        this.unit = unit;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void accept(final Subscriber<? super T> s) {
+
+        DisposableSubscriber<? super T> subscriber = DisposableSubscriber.from(s);
+        
+        lock.lock();
+        subscriptionCount++;
+        if (!connected) {
+            connected = true;
+            connectCount++;
+            
+            final AtomicBoolean writeLocked = new AtomicBoolean(true);
+
+            try {
+                CompositeDisposable currentBase = baseSubscription;
+                // watch the connection so a terminated connection is not kept warm
+                source.unsafeSubscribe(new TerminationWatcher(currentBase));
+                source.connect(onSubscribe(subscriber, currentBase, writeLocked));
+            } finally {
+                if (writeLocked.get()) {
+                    // the consumer passed to source.connect was not called
+                    lock.unlock();
+                }
+            }
+        } else {
+            try {
+                Scheduler.Worker w = pendingDisconnect;
+                if (w != null) {
+                    pendingDisconnect = null;
+                    w.dispose();
+                    avoidedReconnectCount++;
+                }
+                doSubscribe(subscriber, baseSubscription);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Consumer<Disposable> onSubscribe(final DisposableSubscriber<? super T> subscriber,
+            final CompositeDisposable currentBase, final AtomicBoolean writeLocked) {
+        return d -> {
+            try {
+                currentBase.add(d);
+                doSubscribe(subscriber, currentBase);
+            } finally {
+                lock.unlock();
+                writeLocked.set(false);
+            }
+        };
+    }
+    
+    void doSubscribe(final DisposableSubscriber<? super T> subscriber, final CompositeDisposable currentBase) {
+        subscriber.add(disconnect(currentBase));
+        
+        source.unsafeSubscribe(new AbstractSubscriber<T>() {
+            @Override
+            protected void onSubscribe() {
+                subscriber.onSubscribe(subscription);
+            }
+            @Override
+            public void onError(Throwable e) {
+                cleanup(currentBase);
+                subscriber.onError(e);
+            }
+            @Override
+            public void onNext(T t) {
+                subscriber.onNext(t);
+            }
+            @Override
+            public void onComplete() {
+                cleanup(currentBase);
+                subscriber.onComplete();
+            }
+        });
+    }
+    
+    /**
+     * Disposes the given connection and resets the state if it is still the current one.
+     * @param currentBase the connection to clean up
+     */
+    void cleanup(CompositeDisposable currentBase) {
+        lock.lock();
+        try {
+            if (baseSubscription == currentBase) {
+                reset();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /** Disposes the current connection and prepares for a new one, call while holding the lock. */
+    void reset() {
+        Scheduler.Worker w = pendingDisconnect;
+        if (w != null) {
+            pendingDisconnect = null;
+            w.dispose();
+        }
+        baseSubscription.dispose();
+        baseSubscription = new CompositeDisposable();
+        subscriptionCount = 0;
+        connected = false;
+    }
+
+    private Disposable disconnect(final CompositeDisposable current) {
+        return Disposable.from(() -> {
+            lock.lock();
+            try {
+                if (baseSubscription == current) {
+                    if (--subscriptionCount == 0) {
+                        Scheduler.Worker w = scheduler.createWorker();
+                        pendingDisconnect = w;
+                        w.schedule(() -> {
+                            lock.lock();
+                            try {
+                                if (pendingDisconnect == w) {
+                                    pendingDisconnect = null;
+                                    reset();
+                                }
+                            } finally {
+                                lock.unlock();
+                            }
+                            w.dispose();
+                        }, gracePeriod, unit);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+    
+    /**
+     * Returns the number of times the source was connected to, excluding the first connection.
+     * @return the number of reconnections
+     */
+    public long reconnectCount() {
+        lock.lock();
+        try {
+            return Math.max(0L, connectCount - 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Returns the number of times a subscriber arrived during the grace period
+     * and thus a reconnection was avoided.
+     * @return the number of avoided reconnections
+     */
+    public long avoidedReconnectCount() {
+        lock.lock();
+        try {
+            return avoidedReconnectCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Subscribes to the connectable source along the regular subscribers
+     * and cleans up the connection once it terminates, even if there are
+     * no subscribers at that moment because the grace period is in effect.
+     */
+    final class TerminationWatcher extends AbstractSubscriber<T> {
+        final CompositeDisposable currentBase;
+        
+        TerminationWatcher(CompositeDisposable currentBase) {
+            this.currentBase = currentBase;
+        }
+        @Override
+        protected void onSubscribe() {
+            currentBase.add(Disposable.from(subscription));
+            super.onSubscribe();
+        }
+        @Override
+        public void onNext(T item) {
+            // ignored
+        }
+        @Override
+        public void onError(Throwable throwable) {
+            cleanup(currentBase);
+        }
+        @Override
+        public void onComplete() {
+            cleanup(currentBase);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static rx.internal.UnsafeAccess.*;
+
+import rx.Flow.Subscriber;
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+
+/**
+ * Shares a single connection to the source among its Subscribers by spreading
+ * them, in a round-robin fashion, over a fixed number of inner publish-refCount
+ * groups (shards), which are themselves sharing a publish-refCount connection
+ * to the source.
+ * <p>
+ * Subscribers joining and leaving a shard only copy the subscriber array of that
+ * shard and contend only on the shard's connection management; the root connection
+ * is touched only when a shard gains its first or loses its last Subscriber.
+ * 
+ * @param <T> the value type
+ */
+public final class OnSubscribeShardedRefCount<T> implements OnSubscribe<T> {
+    final Observable<T>[] shards;
+    
+    volatile int index;
+    static final long INDEX = addressOf(OnSubscribeShardedRefCount.class, "index");
+    
+    @SuppressWarnings("unchecked")
+    public OnSubscribeShardedRefCount(Observable<? extends T> source, int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("shardCount > 0 required but it was " + shardCount);
+        }
+        Observable<T> root = ((Observable<T>)source).publish().refCount();
+        Observable<T>[] shards = new Observable[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = root.publish().refCount();
+        }
+        this.shards = shards;
+    }
+    
+    @Override
+    public void accept(Subscriber<? super T> s) {
+        int n = shards.length;
+        int i = (UNSAFE.getAndAddInt(this, INDEX, 1) & Integer.MAX_VALUE) % n;
+        shards[i].unsafeSubscribe(s);
+    }
+}
@@ -15,15 +15,18 @@
  */
 package rx.internal.operators;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.*;
+import java.util.function.Supplier;
 
 import rx.Observable;
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
 import rx.Observable.Operator;
-import rx.Producer;
-import rx.Subscriber;
+import rx.exceptions.MissingBackpressureException;
+import rx.internal.*;
+import rx.subscribers.AbstractSubscriber;
 
 /**
  * This operation takes
@@ -35,12 +38,22 @@ import rx.Subscriber;
  * Note that this operation can produce <strong>non-connected, connected non-overlapping, or overlapping
  * chunks</strong> depending on the input parameters.
  * </p>
-
-* @param <T> the buffered value type
+ * <p>
+ * The chunks are created by the given supplier, which may hand out recycled containers. The default
+ * {@link #lists(int, int) lists} mode emits a new {@code ArrayList} for non-overlapping chunks; overlapping
+ * chunks are read-only views into a shared append-only array, so an item is stored once no matter how
+ * many chunks contain it.
+ * </p>
+ *
+ * @param <T> the buffered value type
+ * @param <C> the chunk type
  */
-public final class OperatorBufferWithSize<T> implements Operator<List<T>, T> {
+public final class OperatorBufferWithSize<T, C extends Collection<? super T>> implements Operator<C, T> {
     final int count;
     final int skip;
+    final Supplier<? extends C> bufferSupplier;
+    /** If true, C is List&lt;T&gt; and the overlapping chunks are views. */
+    final boolean views;
 
     /**
      * @param count
@@ -51,8 +64,14 @@ public final class OperatorBufferWithSize<T> implements Operator<List<T>, T> {
      *            {@code skip < count}, this buffer operation will produce overlapping chunks and if
      *            {@code skip > count} non-overlapping chunks will be created and some values will not be pushed
      *            into a buffer at all!
+     * @param bufferSupplier
+     *            creates or hands out a recycled, empty container for each chunk
      */
-    public OperatorBufferWithSize(int count, int skip) {
+    public OperatorBufferWithSize(int count, int skip, Supplier<? extends C> bufferSupplier) {
+        this(count, skip, Objects.requireNonNull(bufferSupplier), false);
+    }
+    
+    private OperatorBufferWithSize(int count, int skip, Supplier<? extends C> bufferSupplier, boolean views) {
         if (count <= 0) {
             throw new IllegalArgumentException("count must be greater than 0");
         }
@@ -61,172 +80,423 @@ public final class OperatorBufferWithSize<T> implements Operator<List<T>, T> {
         }
         this.count = count;
         this.skip = skip;
+        this.bufferSupplier = bufferSupplier;
+        this.views = views;
+    }
+    
+    /**
+     * Creates an operator which emits {@code ArrayList}s for non-overlapping chunks and read-only
+     * {@code List} views sharing one backing array for overlapping chunks.
+     * @param <T> the value type
+     * @param count the number of elements a buffer should have before being emitted
+     * @param skip the interval with which chunks have to be created
+     * @return the operator
+     */
+    public static <T> OperatorBufferWithSize<T, List<T>> lists(int count, int skip) {
+        return new OperatorBufferWithSize<>(count, skip, () -> new ArrayList<>(count), true);
     }
 
+    @SuppressWarnings({ "unchecked", "rawtypes" })
     @Override
-    public Subscriber<? super T> call(final Subscriber<? super List<T>> child) {
-        if (count == skip) {
-            return new Subscriber<T>(child) {
-                List<T> buffer;
-
-                @Override
-                public void setProducer(final Producer producer) {
-                    child.setProducer(new Producer() {
-
-                        private volatile boolean infinite = false;
-
-                        @Override
-                        public void request(long n) {
-                            if (infinite) {
-                                return;
-                            }
-                            if (n >= Long.MAX_VALUE / count) {
-                                // n == Long.MAX_VALUE or n * count >= Long.MAX_VALUE
-                                infinite = true;
-                                producer.request(Long.MAX_VALUE);
-                            } else {
-                                producer.request(n * count);
-                            }
-                        }
-                    });
+    public Subscriber<? super T> apply(final Subscriber<? super C> child) {
+        if (skip >= count) {
+            return new ExactSubscriber<>(child, count, skip, bufferSupplier);
+        }
+        if (views) {
+            // C is List<T> in this mode
+            return new ViewSubscriber<>((Subscriber)child, count, skip);
+        }
+        return new OverlapSubscriber<>(child, count, skip, bufferSupplier);
+    }
+    
+    /**
+     * Translates the requests, emits the completed chunks and drains the chunks which were
+     * still open when the source completed.
+     *
+     * @param <T> the value type
+     * @param <C> the chunk type
+     */
+    static abstract class BaseBufferSubscriber<T, C> extends AbstractSubscriber<T> implements Subscription {
+        final Subscriber<? super C> child;
+        final int count;
+        final int skip;
+        /** The chunks open at completion, written before complete is set. */
+        final ArrayDeque<C> tail;
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(BaseBufferSubscriber.class, "requested");
+        
+        volatile int once;
+        static final long ONCE = addressOf(BaseBufferSubscriber.class, "once");
+        
+        volatile int wip;
+        static final long WIP = addressOf(BaseBufferSubscriber.class, "wip");
+        
+        volatile boolean done;
+        /** Set when the source completed normally and the tail can be drained. */
+        volatile boolean complete;
+        
+        volatile boolean cancelled;
+        
+        BaseBufferSubscriber(Subscriber<? super C> child, int count, int skip) {
+            this.child = child;
+            this.count = count;
+            this.skip = skip;
+            this.tail = new ArrayDeque<>();
+        }
+        
+        /**
+         * Releases the open chunks after an error.
+         */
+        abstract void clear();
+        
+        @Override
+        protected final void onSubscribe() {
+            child.onSubscribe(this);
+        }
+        
+        /**
+         * Emits a completed chunk, consuming one request.
+         * @param chunk the chunk to emit
+         */
+        final void emit(C chunk) {
+            long r = requested;
+            if (r == 0L) {
+                fail(new MissingBackpressureException("Could not emit the buffer due to lack of requests"));
+                return;
+            }
+            if (r != Long.MAX_VALUE) {
+                UNSAFE.getAndAddLong(this, REQUESTED, -1);
+            }
+            child.onNext(chunk);
+        }
+        
+        final void fail(Throwable e) {
+            done = true;
+            subscription.cancel();
+            clear();
+            child.onError(e);
+        }
+        
+        @Override
+        public final void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            clear();
+            child.onError(throwable);
+        }
+        
+        /**
+         * Called by onComplete once the open chunks are in the tail.
+         */
+        final void complete() {
+            done = true;
+            complete = true;
+            drain();
+        }
+        
+        @Override
+        public final void request(long n) {
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            if (complete) {
+                drain();
+                return;
+            }
+            long u;
+            if (n == Long.MAX_VALUE) {
+                u = Long.MAX_VALUE;
+            } else
+            if (once == 0 && UNSAFE.compareAndSwapInt(this, ONCE, 0, 1)) {
+                // count = 5, skip = 2, n = 3
+                // * * * * *
+                //     * * * * *
+                //         * * * * *
+                // request = 5 + 2 * (3 - 1)
+                u = BackpressureUtils.addCap(count, BackpressureUtils.multiplyCap(skip, n - 1));
+            } else {
+                // each further chunk completes skip items later
+                u = BackpressureUtils.multiplyCap(skip, n);
+            }
+            subscription.request(u);
+        }
+        
+        @Override
+        public final void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                subscription.cancel();
+                drain();
+            }
+        }
+        
+        final void drain() {
+            if (!complete || UNSAFE.getAndAddInt(this, WIP, 1) != 0) {
+                return;
+            }
+            int missed = 1;
+            final Subscriber<? super C> c = child;
+            final ArrayDeque<C> q = tail;
+            for (;;) {
+                if (cancelled) {
+                    q.clear();
+                    return;
                 }
-
-                @Override
-                public void onNext(T t) {
-                    if (buffer == null) {
-                        buffer = new ArrayList<T>(count);
+                long r = requested;
+                long e = 0L;
+                while (e != r) {
+                    C v = q.poll();
+                    if (v == null) {
+                        break;
                     }
-                    buffer.add(t);
-                    if (buffer.size() == count) {
-                        List<T> oldBuffer = buffer;
-                        buffer = null;
-                        child.onNext(oldBuffer);
+                    c.onNext(v);
+                    if (cancelled) {
+                        q.clear();
+                        return;
                     }
+                    e++;
                 }
-
-                @Override
-                public void onError(Throwable e) {
-                    buffer = null;
-                    child.onError(e);
+                if (q.isEmpty()) {
+                    // leaves wip non-zero so nothing is drained afterwards
+                    c.onComplete();
+                    return;
                 }
-
-                @Override
-                public void onComplete() {
-                    List<T> oldBuffer = buffer;
-                    buffer = null;
-                    if (oldBuffer != null) {
-                        try {
-                            child.onNext(oldBuffer);
-                        } catch (Throwable t) {
-                            onError(t);
-                            return;
-                        }
-                    }
-                    child.onComplete();
+                if (e != 0L && r != Long.MAX_VALUE) {
+                    UNSAFE.getAndAddLong(this, REQUESTED, -e);
+                }
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
                 }
-            };
+            }
         }
-        return new Subscriber<T>(child) {
-            final List<List<T>> chunks = new LinkedList<List<T>>();
-            int index;
-
-            @Override
-            public void setProducer(final Producer producer) {
-                child.setProducer(new Producer() {
-
-                    private volatile boolean firstRequest = true;
-                    private volatile boolean infinite = false;
-
-                    private void requestInfinite() {
-                        infinite = true;
-                        producer.request(Long.MAX_VALUE);
-                    }
-
-                    @Override
-                    public void request(long n) {
-                        if (n == 0) {
-                            return;
-                        }
-                        if (n < 0) {
-                            throw new IllegalArgumentException("request a negative number: " + n);
-                        }
-                        if (infinite) {
-                            return;
-                        }
-                        if (n == Long.MAX_VALUE) {
-                            requestInfinite();
-                            return;
-                        } else {
-                            if (firstRequest) {
-                                firstRequest = false;
-                                if (n - 1 >= (Long.MAX_VALUE - count) / skip) {
-                                    // count + skip * (n - 1) >= Long.MAX_VALUE
-                                    requestInfinite();
-                                    return;
-                                }
-                                // count = 5, skip = 2, n = 3
-                                // * * * * *
-                                //     * * * * *
-                                //         * * * * *
-                                // request = 5 + 2 * ( 3 - 1)
-                                producer.request(count + skip * (n - 1));
-                            } else {
-                                if (n >= Long.MAX_VALUE / skip) {
-                                    // skip * n >= Long.MAX_VALUE
-                                    requestInfinite();
-                                    return;
-                                }
-                                // count = 5, skip = 2, n = 3
-                                // (* * *) * *
-                                // (    *) * * * *
-                                //           * * * * *
-                                // request = skip * n
-                                // "()" means the items already emitted before this request
-                                producer.request(skip * n);
-                            }
-                        }
-                    }
-                });
+    }
+    
+    /** Fills one chunk at a time, dropping the items between chunks if skip &gt; count. */
+    static final class ExactSubscriber<T, C extends Collection<? super T>> extends BaseBufferSubscriber<T, C> {
+        final Supplier<? extends C> bufferSupplier;
+        
+        C buffer;
+        int size;
+        /** The number of items still to drop before the next chunk opens. */
+        int gap;
+        
+        ExactSubscriber(Subscriber<? super C> child, int count, int skip, Supplier<? extends C> bufferSupplier) {
+            super(child, count, skip);
+            this.bufferSupplier = bufferSupplier;
+        }
+        
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                return;
             }
-
-            @Override
-            public void onNext(T t) {
-                if (index++ % skip == 0) {
-                    chunks.add(new ArrayList<T>(count));
-                }
-                
-                Iterator<List<T>> it = chunks.iterator();
-                while (it.hasNext()) {
-                    List<T> chunk = it.next();
-                    chunk.add(t);
-                    if (chunk.size() == count) {
-                        it.remove();
-                        child.onNext(chunk);
-                    }
+            if (gap != 0) {
+                gap--;
+                return;
+            }
+            C b = buffer;
+            if (b == null) {
+                try {
+                    b = Objects.requireNonNull(bufferSupplier.get(), "The bufferSupplier returned null");
+                } catch (Throwable e) {
+                    fail(e);
+                    return;
                 }
+                buffer = b;
             }
-
-            @Override
-            public void onError(Throwable e) {
-                chunks.clear();
-                child.onError(e);
+            b.add(item);
+            if (++size == count) {
+                buffer = null;
+                size = 0;
+                gap = skip - count;
+                emit(b);
+            }
+        }
+        
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
             }
-            @Override
-            public void onComplete() {
+            C b = buffer;
+            if (b != null) {
+                buffer = null;
+                tail.offer(b);
+            }
+            complete();
+        }
+        
+        @Override
+        void clear() {
+            buffer = null;
+        }
+    }
+    
+    /** Adds each item to all open chunks; used with custom containers. */
+    static final class OverlapSubscriber<T, C extends Collection<? super T>> extends BaseBufferSubscriber<T, C> {
+        final Supplier<? extends C> bufferSupplier;
+        /** The open chunks, oldest first. */
+        final ArrayDeque<C> chunks;
+        
+        /** The number of items in the oldest open chunk. */
+        int size;
+        /** The number of items until the next chunk opens. */
+        int untilOpen;
+        
+        OverlapSubscriber(Subscriber<? super C> child, int count, int skip, Supplier<? extends C> bufferSupplier) {
+            super(child, count, skip);
+            this.bufferSupplier = bufferSupplier;
+            this.chunks = new ArrayDeque<>();
+        }
+        
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                return;
+            }
+            final ArrayDeque<C> q = chunks;
+            if (untilOpen == 0) {
+                C b;
                 try {
-                    for (List<T> chunk : chunks) {
-                        try {
-                            child.onNext(chunk);
-                        } catch (Throwable t) {
-                            onError(t);
-                            return;
-                        }
-                    }
-                    child.onComplete();
-                } finally {
-                    chunks.clear();
+                    b = Objects.requireNonNull(bufferSupplier.get(), "The bufferSupplier returned null");
+                } catch (Throwable e) {
+                    fail(e);
+                    return;
                 }
+                q.offer(b);
+                untilOpen = skip;
+            }
+            untilOpen--;
+            for (C b : q) {
+                b.add(item);
+            }
+            if (++size == count) {
+                // the next oldest chunk opened skip items later
+                size = count - skip;
+                emit(q.poll());
+            }
+        }
+        
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
             }
-        };
+            final ArrayDeque<C> q = chunks;
+            C b;
+            while ((b = q.poll()) != null) {
+                tail.offer(b);
+            }
+            complete();
+        }
+        
+        @Override
+        void clear() {
+            chunks.clear();
+        }
+    }
+    
+    /**
+     * Stores each item once in an append-only segment and emits the overlapping chunks as read-only
+     * views of it. When the segment is full, the items of the open chunks are carried over to a new
+     * segment; the views already emitted keep referencing the old one, which is never written again.
+     */
+    static final class ViewSubscriber<T> extends BaseBufferSubscriber<T, List<T>> {
+        /** The capacity at which the segments stop growing. */
+        final int maxCapacity;
+        
+        Object[] segment;
+        /** The number of items written into the segment. */
+        int end;
+        /** The segment index of the first item of the oldest open chunk. */
+        int start;
+        
+        ViewSubscriber(Subscriber<? super List<T>> child, int count, int skip) {
+            super(child, count, skip);
+            this.maxCapacity = (int)Math.min(4L * count, Integer.MAX_VALUE - 8);
+            this.segment = new Object[Math.min(16, maxCapacity)];
+        }
+        
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                return;
+            }
+            Object[] a = segment;
+            int e = end;
+            int s = start;
+            if (e == a.length) {
+                int live = e - s;
+                Object[] b = new Object[(int)Math.min(maxCapacity, 2L * a.length)];
+                System.arraycopy(a, s, b, 0, live);
+                segment = b;
+                a = b;
+                e = live;
+                s = 0;
+                start = 0;
+            }
+            a[e] = item;
+            end = ++e;
+            if (e - s == count) {
+                start = s + skip;
+                emit(new SegmentView<>(a, s, count));
+            }
+        }
+        
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            Object[] a = segment;
+            int e = end;
+            for (int s = start; s < e; s += skip) {
+                tail.offer(new SegmentView<>(a, s, e - s));
+            }
+            segment = null;
+            complete();
+        }
+        
+        @Override
+        void clear() {
+            segment = null;
+        }
+    }
+    
+    /**
+     * A read-only list view of a range of a segment.
+     *
+     * @param <T> the element type
+     */
+    static final class SegmentView<T> extends AbstractList<T> implements RandomAccess {
+        final Object[] array;
+        final int offset;
+        final int size;
+        
+        SegmentView(Object[] array, int offset, int size) {
+            this.array = array;
+            this.offset = offset;
+            this.size = size;
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return (T)array[offset + index];
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
     }
 }
@@ -15,18 +15,13 @@
  */
 package rx.internal.operators;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
+
+import rx.Flow.Subscriber;
 import rx.Observable;
 import rx.Observable.Operator;
-import rx.Scheduler;
-import rx.Scheduler.Worker;
-import rx.Subscriber;
-import rx.functions.Action0;
-import rx.observers.SerializedSubscriber;
+import rx.schedulers.Scheduler;
 
 /**
  * This operation takes
@@ -39,6 +34,9 @@ import rx.observers.SerializedSubscriber;
  * Note that this operation can produce <strong>non-connected, or overlapping chunks</strong> depending
  * on the input parameters.
  * </p>
+ * <p>
+ * Each subscriber is driven by a single re-armed timer task (see {@link TimedChunkSubscriber}); the list of a
+ * new buffer is presized from the number of items the previous buffer received.
  * 
  * @param <T> the buffered value type
  */
@@ -62,6 +60,15 @@ public final class OperatorBufferWithTime<T> implements Operator<List<T>, T> {
      *            the {@link Scheduler} to use for timing chunks
      */
     public OperatorBufferWithTime(long timespan, long timeshift, TimeUnit unit, int count, Scheduler scheduler) {
+        if (timespan <= 0) {
+            throw new IllegalArgumentException("timespan > 0 required but it was " + timespan);
+        }
+        if (timeshift <= 0) {
+            throw new IllegalArgumentException("timeshift > 0 required but it was " + timeshift);
+        }
+        if (count <= 0) {
+            throw new IllegalArgumentException("count > 0 required but it was " + count);
+        }
         this.timespan = timespan;
         this.timeshift = timeshift;
         this.unit = unit;
@@ -70,237 +77,37 @@ public final class OperatorBufferWithTime<T> implements Operator<List<T>, T> {
     }
 
     @Override
-    public Subscriber<? super T> call(final Subscriber<? super List<T>> child) {
-        final Worker inner = scheduler.createWorker();
-        SerializedSubscriber<List<T>> serialized = new SerializedSubscriber<List<T>>(child);
-        
-        if (timespan == timeshift) {
-            ExactSubscriber bsub = new ExactSubscriber(serialized, inner);
-            bsub.add(inner);
-            child.add(bsub);
-            bsub.scheduleExact();
-            return bsub;
-        }
-        
-        InexactSubscriber bsub = new InexactSubscriber(serialized, inner);
-        bsub.add(inner);
-        child.add(bsub);
-        bsub.startNewChunk();
-        bsub.scheduleChunk();
-        return bsub;
+    public Subscriber<? super T> apply(Subscriber<? super List<T>> child) {
+        return new BufferSubscriber<>(child, timespan, timeshift, unit, count, scheduler.createWorker());
     }
-    /** Subscriber when the buffer chunking time and lenght differ. */
-    final class InexactSubscriber extends Subscriber<T> {
-        final Subscriber<? super List<T>> child;
-        final Worker inner;
-        /** Guarded by this. */
-        final List<List<T>> chunks;
-        /** Guarded by this. */
-        boolean done;
-        public InexactSubscriber(Subscriber<? super List<T>> child, Worker inner) {
-            this.child = child;
-            this.inner = inner;
-            this.chunks = new LinkedList<List<T>>();
+    
+    /** Collects the items into lists and emits them when their buffer closes. */
+    static final class BufferSubscriber<T> extends TimedChunkSubscriber<T, List<T>, List<T>> {
+        BufferSubscriber(Subscriber<? super List<T>> child, long timespan, long timeshift, TimeUnit unit,
+                int maxCount, Scheduler.Worker worker) {
+            super(child, timespan, timeshift, unit, maxCount, worker);
         }
-
-        @Override
-        public void onNext(T t) {
-            List<List<T>> sizeReached = null;
-            synchronized (this) {
-                if (done) {
-                    return;
-                }
-                Iterator<List<T>> it = chunks.iterator();
-                while (it.hasNext()) {
-                    List<T> chunk = it.next();
-                    chunk.add(t);
-                    if (chunk.size() == count) {
-                        it.remove();
-                        if (sizeReached == null) {
-                            sizeReached = new LinkedList<List<T>>();
-                        }
-                        sizeReached.add(chunk);
-                    }
-                }
-            }
-            if (sizeReached != null) {
-                for (List<T> chunk : sizeReached) {
-                    child.onNext(chunk);
-                }
-            }
-        }
-
-        @Override
-        public void onError(Throwable e) {
-            synchronized (this) {
-                if (done) {
-                    return;
-                }
-                done = true;
-                chunks.clear();
-            }
-            child.onError(e);
-            unsubscribe();
-        }
-
+        
         @Override
-        public void onComplete() {
-            try {
-                List<List<T>> sizeReached;
-                synchronized (this) {
-                    if (done) {
-                        return;
-                    }
-                    done = true;
-                    sizeReached = new LinkedList<List<T>>(chunks);
-                    chunks.clear();
-                }
-                for (List<T> chunk : sizeReached) {
-                    child.onNext(chunk);
-                }
-            } catch (Throwable t) {
-                child.onError(t);
-                return;
-            }
-            child.onComplete();
-            unsubscribe();
-        }
-        void scheduleChunk() {
-            inner.schedulePeriodically(new Action0() {
-                @Override
-                public void call() {
-                    startNewChunk();
-                }
-            }, timeshift, timeshift, unit);
+        List<T> createChunk() {
+            return new ArrayList<>(capacityHint());
         }
-        void startNewChunk() {
-            final List<T> chunk = new ArrayList<T>();
-            synchronized (this) {
-                if (done) {
-                    return;
-                }
-                chunks.add(chunk);
-            }
-            inner.schedule(new Action0() {
-                @Override
-                public void call() {
-                    emitChunk(chunk);
-                }
-            }, timespan, unit);
-        }
-        void emitChunk(List<T> chunkToEmit) {
-            boolean emit = false;
-            synchronized (this) {
-                if (done) {
-                    return;
-                }
-                Iterator<List<T>> it = chunks.iterator();
-                while (it.hasNext()) {
-                    List<T> chunk = it.next();
-                    if (chunk == chunkToEmit) {
-                        it.remove();
-                        emit = true;
-                        break;
-                    }
-                }
-            }
-            if (emit) {
-                try {
-                    child.onNext(chunkToEmit);
-                } catch (Throwable t) {
-                    onError(t);
-                }
-            }
-        }
-    }
-    /** Subscriber when exact timed chunking is required. */
-    final class ExactSubscriber extends Subscriber<T> {
-        final Subscriber<? super List<T>> child;
-        final Worker inner;
-        /** Guarded by this. */
-        List<T> chunk;
-        /** Guarded by this. */
-        boolean done;
-        public ExactSubscriber(Subscriber<? super List<T>> child, Worker inner) {
-            this.child = child;
-            this.inner = inner;
-            this.chunk = new ArrayList<T>();
-        }
-
+        
         @Override
-        public void onNext(T t) {
-            List<T> toEmit = null;
-            synchronized (this) {
-                if (done) {
-                    return;
-                }
-                chunk.add(t);
-                if (chunk.size() == count) {
-                    toEmit = chunk;
-                    chunk = new ArrayList<T>();
-                }
-            }
-            if (toEmit != null) {
-                child.onNext(toEmit);
-            }
+        void append(List<T> chunk, T item) {
+            chunk.add(item);
         }
-
+        
         @Override
-        public void onError(Throwable e) {
-            synchronized (this) {
-                if (done) {
-                    return;
-                }
-                done = true;
-                chunk = null;
+        void closeChunk(List<T> chunk) {
+            if (produced()) {
+                child.onNext(chunk);
             }
-            child.onError(e);
-            unsubscribe();
         }
-
+        
         @Override
-        public void onComplete() {
-            try {
-                inner.unsubscribe();
-                List<T> toEmit;
-                synchronized (this) {
-                    if (done) {
-                        return;
-                    }
-                    done = true;
-                    toEmit = chunk;
-                    chunk = null;
-                }
-                child.onNext(toEmit);
-            } catch (Throwable t) {
-                child.onError(t);
-                return;
-            }
-            child.onComplete();
-            unsubscribe();
-        }
-        void scheduleExact() {
-            inner.schedulePeriodically(new Action0() {
-                @Override
-                public void call() {
-                    emit();
-                }
-            }, timespan, timespan, unit);
-        }
-        void emit() {
-            List<T> toEmit;
-            synchronized (this) {
-                if (done) {
-                    return;
-                }
-                toEmit = chunk;
-                chunk = new ArrayList<T>();
-            }
-            try {
-                child.onNext(toEmit);
-            } catch (Throwable t) {
-                onError(t);
-            }
+        void errorChunk(List<T> chunk, Throwable e) {
+            // the items of a failed buffer are dropped
         }
     }
 }
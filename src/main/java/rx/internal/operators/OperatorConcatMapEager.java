@@ -0,0 +1,340 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.Queue;
+import java.util.function.Function;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.Observable;
+import rx.Observable.Operator;
+import rx.exceptions.MissingBackpressureException;
+import rx.internal.*;
+import rx.internal.queues.*;
+import rx.subscribers.AbstractSubscriber;
+
+/**
+ * Maps each item to an Observable, subscribes to up to {@code maxConcurrency} of them at once and
+ * emits their items in the order of the source items.
+ * <p>
+ * Each inner Observable buffers up to {@code prefetch} items in its own queue until the inners
+ * before it have completed. The drain loop never blocks and counts the emitted items across inner
+ * boundaries, so a single request can be fulfilled by several consecutive inners.
+ *
+ * @param <T> the source value type
+ * @param <R> the result value type
+ */
+public final class OperatorConcatMapEager<T, R> implements Operator<R, T> {
+    final Function<? super T, ? extends Observable<? extends R>> mapper;
+    final int maxConcurrency;
+    final int prefetch;
+    
+    public OperatorConcatMapEager(Function<? super T, ? extends Observable<? extends R>> mapper, 
+            int maxConcurrency, int prefetch) {
+        this.mapper = mapper;
+        this.maxConcurrency = maxConcurrency;
+        this.prefetch = prefetch;
+    }
+    
+    @Override
+    public Subscriber<? super T> apply(Subscriber<? super R> child) {
+        return new EagerSubscriber<>(child, mapper, maxConcurrency, prefetch);
+    }
+    
+    static final class EagerSubscriber<T, R> extends AbstractSubscriber<T> implements Subscription {
+        final Subscriber<? super R> child;
+        final Function<? super T, ? extends Observable<? extends R>> mapper;
+        final int maxConcurrency;
+        final int prefetch;
+        /** The active inners in source order, offered by onNext and polled by the drain loop. */
+        final Queue<EagerInner<R>> inners;
+        /** The inner currently emitting, accessed from the drain loop only. */
+        EagerInner<R> current;
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(EagerSubscriber.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(EagerSubscriber.class, "wip");
+        
+        volatile Throwable error;
+        static final long ERROR = addressOf(EagerSubscriber.class, "error");
+        
+        volatile boolean done;
+        volatile boolean cancelled;
+        
+        public EagerSubscriber(Subscriber<? super R> child, 
+                Function<? super T, ? extends Observable<? extends R>> mapper, 
+                int maxConcurrency, int prefetch) {
+            this.child = child;
+            this.mapper = mapper;
+            this.maxConcurrency = maxConcurrency;
+            this.prefetch = prefetch;
+            this.inners = new SpscLinkedQueue<>();
+        }
+        
+        @Override
+        protected void onSubscribe() {
+            child.onSubscribe(this);
+            subscription.request(maxConcurrency == Integer.MAX_VALUE ? Long.MAX_VALUE : maxConcurrency);
+        }
+        
+        @Override
+        public void onNext(T item) {
+            if (done || cancelled) {
+                return;
+            }
+            Observable<? extends R> o;
+            try {
+                o = mapper.apply(item);
+                if (o == null) {
+                    throw new NullPointerException("The mapper returned a null Observable");
+                }
+            } catch (Throwable e) {
+                subscription.cancel();
+                onError(e);
+                return;
+            }
+            EagerInner<R> inner = new EagerInner<>(this, prefetch);
+            inners.offer(inner);
+            o.unsafeSubscribe(inner);
+            drain();
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            innerError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            drain();
+        }
+        
+        @Override
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            drain();
+        }
+        
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                subscription.cancel();
+                drain();
+            }
+        }
+        
+        void innerError(Throwable e) {
+            if (UNSAFE.compareAndSwapObject(this, ERROR, null, e)) {
+                drain();
+            }
+        }
+        
+        /** Cancels the current and the queued inners, called from the drain loop only. */
+        void cancelAll() {
+            EagerInner<R> inner = current;
+            current = null;
+            if (inner != null) {
+                inner.cancel();
+            }
+            while ((inner = inners.poll()) != null) {
+                inner.cancel();
+            }
+        }
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) != 0) {
+                return;
+            }
+            int missed = 1;
+            final Subscriber<? super R> a = child;
+            for (;;) {
+                if (!cancelled) {
+                    long r = requested;
+                    long e = 0L;
+                    for (;;) {
+                        if (cancelled) {
+                            break;
+                        }
+                        Throwable ex = error;
+                        if (ex != null) {
+                            cancelAll();
+                            subscription.cancel();
+                            a.onError(ex);
+                            return;
+                        }
+                        EagerInner<R> inner = current;
+                        if (inner == null) {
+                            boolean d = done;
+                            inner = inners.poll();
+                            if (inner == null) {
+                                if (d) {
+                                    a.onComplete();
+                                    return;
+                                }
+                                break;
+                            }
+                            current = inner;
+                        }
+                        boolean d = inner.done;
+                        Queue<R> q = inner.queue;
+                        if (e == r) {
+                            if (d && q.isEmpty()) {
+                                next();
+                                continue;
+                            }
+                            break;
+                        }
+                        R v = q.poll();
+                        if (v == null) {
+                            if (d) {
+                                next();
+                                continue;
+                            }
+                            break;
+                        }
+                        a.onNext(v);
+                        inner.replenish();
+                        e++;
+                    }
+                    if (e != 0L && r != Long.MAX_VALUE) {
+                        UNSAFE.getAndAddLong(this, REQUESTED, -e);
+                    }
+                }
+                if (cancelled) {
+                    cancelAll();
+                }
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+        
+        /** Moves past the completed current inner and lets the source emit a new item in its place. */
+        void next() {
+            current = null;
+            if (maxConcurrency != Integer.MAX_VALUE) {
+                subscription.request(1);
+            }
+        }
+    }
+    
+    static final class EagerInner<R> implements Subscriber<R> {
+        final EagerSubscriber<?, R> parent;
+        final Queue<R> queue;
+        final int prefetch;
+        final int limit;
+        /** The number of items emitted since the last replenishment, accessed from the drain loop only. */
+        int produced;
+        
+        volatile boolean done;
+        
+        volatile Subscription subscription;
+        static final long SUBSCRIPTION = addressOf(EagerInner.class, "subscription");
+        
+        static final Subscription CANCELLED = new Subscription() {
+            @Override
+            public void request(long n) {
+                
+            }
+            @Override
+            public void cancel() {
+                
+            }
+        };
+        
+        public EagerInner(EagerSubscriber<?, R> parent, int prefetch) {
+            this.parent = parent;
+            this.queue = new SpscArrayQueue<>(prefetch);
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+        }
+        
+        @Override
+        public void onSubscribe(Subscription s) {
+            Conformance.subscriptionNonNull(s);
+            if (!UNSAFE.compareAndSwapObject(this, SUBSCRIPTION, null, s)) {
+                Subscription curr = subscription;
+                if (curr != CANCELLED) {
+                    Conformance.onSubscribeOnce(curr, this);
+                }
+                s.cancel();
+                return;
+            }
+            s.request(prefetch);
+        }
+        
+        @Override
+        public void onNext(R item) {
+            if (!queue.offer(item)) {
+                cancel();
+                parent.innerError(new MissingBackpressureException());
+                return;
+            }
+            parent.drain();
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            parent.innerError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            done = true;
+            parent.drain();
+        }
+        
+        void replenish() {
+            int p = produced + 1;
+            if (p == limit) {
+                produced = 0;
+                subscription.request(p);
+            } else {
+                produced = p;
+            }
+        }
+        
+        void cancel() {
+            Subscription s = subscription;
+            if (s != CANCELLED) {
+                s = (Subscription)UNSAFE.getAndSetObject(this, SUBSCRIPTION, CANCELLED);
+                if (s != null && s != CANCELLED) {
+                    s.cancel();
+                }
+            }
+        }
+    }
+}
@@ -19,7 +19,6 @@ import rx.Observable;
 import rx.Observable.Operator;
 import rx.Subscriber;
 import rx.functions.Function;
-import rx.internal.operators.OperatorDebounceWithTime.DebounceState;
 import rx.observers.SerializedSubscriber;
 import rx.subscriptions.SerialSubscription;
 
@@ -103,5 +102,93 @@ public final class OperatorDebounceWithSelector<T, U> implements Operator<T, T>
             }
         };
     }
-    
-}
\ No newline at end of file
+    /**
+     * Tracks the last value to be emitted and manages completion.
+     * @param <T> the value type
+     */
+    static final class DebounceState<T> {
+        /** Guarded by this. */
+        int index;
+        /** Guarded by this. */
+        T value;
+        /** Guarded by this. */
+        boolean hasValue;
+        /** Guarded by this. */
+        boolean terminate;
+        /** Guarded by this. */
+        boolean emitting;
+        
+        public synchronized int next(T value) {
+            this.value = value;
+            this.hasValue = true;
+            return ++index;
+        }
+        public void emit(int index, Subscriber<T> onNextAndComplete, Subscriber<?> onError) {
+            T localValue;
+            boolean localHasValue;
+            synchronized (this) {
+                if (emitting || !hasValue || index != this.index) {
+                    return;
+                }
+                localValue = value;
+                localHasValue = hasValue;
+                
+                value = null;
+                hasValue = false;
+                emitting = true;
+            }
+
+            if  (localHasValue) {
+                try {
+                    onNextAndComplete.onNext(localValue);
+                } catch (Throwable e) {
+                    onError.onError(e);
+                    return;
+                }
+            }
+
+            // Check if a termination was requested in the meantime.
+            synchronized (this) {
+                if (!terminate) {
+                    emitting = false;
+                    return;
+                }
+            }
+            
+            onNextAndComplete.onComplete();
+        }
+        public void emitAndComplete(Subscriber<T> onNextAndComplete, Subscriber<?> onError) {
+            T localValue;
+            boolean localHasValue;
+            
+            synchronized (this) {
+                if (emitting) {
+                    terminate = true;
+                    return;
+                }
+                localValue = value;
+                localHasValue = hasValue;
+                
+                value = null;
+                hasValue = false;
+
+                emitting = true;
+            }
+
+            if  (localHasValue) {
+                try {
+                    onNextAndComplete.onNext(localValue);
+                } catch (Throwable e) {
+                    onError.onError(e);
+                    return;
+                }
+            }
+            onNextAndComplete.onComplete();
+        }
+        public synchronized void clear() {
+            ++index;
+            value = null;
+            hasValue = false;
+        }
+    }
+}
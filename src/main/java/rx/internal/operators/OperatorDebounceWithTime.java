@@ -15,19 +15,28 @@
  */
 package rx.internal.operators;
 
+import static rx.internal.UnsafeAccess.*;
+
 import java.util.concurrent.TimeUnit;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
 import rx.Observable.Operator;
-import rx.Scheduler;
-import rx.Scheduler.Worker;
-import rx.Subscriber;
-import rx.functions.Action0;
-import rx.observers.SerializedSubscriber;
-import rx.subscriptions.SerialSubscription;
+import rx.internal.*;
+import rx.schedulers.Scheduler;
+import rx.subscribers.AbstractSubscriber;
 
 /**
  * This operation filters out events which are published too quickly in succession. This is done by dropping events which are
  * followed up by other events before a specified timer has expired. If the timer expires and no follow up event was published (yet)
  * the last received event is published.
+ * <p>
+ * Each subscriber keeps a single re-armable deadline instead of scheduling a timer per item: an item only
+ * writes its deadline and swaps itself into the latest slot, and the one timer task checks the deadline when
+ * it fires, re-arming itself for the remaining time if newer items pushed the deadline further. A burst thus
+ * costs a timestamp write per item and a timer per timeout period.
+ * <p>
+ * A due item the downstream hasn't requested yet is kept and emitted upon request, unless a newer item replaces it.
  *
  * @param <T> the value type
  */
@@ -41,7 +50,7 @@ public final class OperatorDebounceWithTime<T> implements Operator<T, T> {
      * @param unit
      *            The unit of time for the specified timeout.
      * @param scheduler
-     *            The {@link Scheduler} to use internally to manage the timers which handle timeout for each event.
+     *            The {@link Scheduler} to use internally to manage the timer which handles the timeout of the events.
      *
      */
     public OperatorDebounceWithTime(long timeout, TimeUnit unit, Scheduler scheduler) {
@@ -51,129 +60,197 @@ public final class OperatorDebounceWithTime<T> implements Operator<T, T> {
     }
     
     @Override
-    public Subscriber<? super T> call(final Subscriber<? super T> child) {
-        final Worker worker = scheduler.createWorker();
-        final SerializedSubscriber<T> s = new SerializedSubscriber<T>(child);
-        final SerialSubscription ssub = new SerialSubscription();
-        
-        s.add(worker);
-        s.add(ssub);
-        
-        return new Subscriber<T>(child) {
-            final DebounceState<T> state = new DebounceState<T>();
-            final Subscriber<?> self = this;
-            @Override
-            public void onNext(final T t) {
-                
-                final int index = state.next(t);
-                ssub.set(worker.schedule(new Action0() {
-                    @Override
-                    public void call() {
-                        state.emit(index, s, self);
-                    }
-                }, timeout, unit));
+    public Subscriber<? super T> apply(final Subscriber<? super T> child) {
+        return new DebounceSubscriber<>(child, timeout, unit, scheduler.createWorker());
+    }
+    
+    static final class DebounceSubscriber<T> extends AbstractSubscriber<T> implements Subscription, Runnable {
+        final Subscriber<? super T> child;
+        final long timeout;
+        final TimeUnit unit;
+        final long timeoutNanos;
+        final Scheduler.Worker worker;
+        
+        /** The latest item not yet emitted, swapped in by the source and taken by the drain loop. */
+        volatile Object latest;
+        static final long LATEST = addressOf(DebounceSubscriber.class, "latest");
+        
+        /** The time, in nanoseconds of the worker's clock, the latest item becomes due; written by the source only. */
+        volatile long deadline;
+        static final long DEADLINE = addressOf(DebounceSubscriber.class, "deadline");
+        
+        /** The number of items received; written by the source only, before it swaps the item into the slot. */
+        volatile long index;
+        static final long INDEX = addressOf(DebounceSubscriber.class, "index");
+        
+        /** The index of the item whose deadline passed, written by the timer. */
+        volatile long due;
+        
+        /** 1 while the timer task is scheduled or running. */
+        volatile int armed;
+        static final long ARMED = addressOf(DebounceSubscriber.class, "armed");
+        
+        /** Written before done is set. */
+        Throwable error;
+        volatile boolean done;
+        
+        volatile boolean cancelled;
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(DebounceSubscriber.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(DebounceSubscriber.class, "wip");
+        
+        public DebounceSubscriber(Subscriber<? super T> child, long timeout, TimeUnit unit, Scheduler.Worker worker) {
+            this.child = child;
+            this.timeout = timeout;
+            this.unit = unit;
+            this.timeoutNanos = unit.toNanos(timeout);
+            this.worker = worker;
+        }
+        
+        @Override
+        protected void onSubscribe() {
+            child.onSubscribe(this);
+            subscription.request(Long.MAX_VALUE);
+        }
+        
+        long now() {
+            return TimeUnit.MILLISECONDS.toNanos(worker.now());
+        }
+        
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                return;
             }
+            // the order matters: the deadline and index have to be visible once the item is
+            UNSAFE.putOrderedLong(this, DEADLINE, now() + timeoutNanos);
+            UNSAFE.putOrderedLong(this, INDEX, index + 1);
+            UNSAFE.getAndSetObject(this, LATEST, item);
             
-            @Override
-            public void onError(Throwable e) {
-                s.onError(e);
-                unsubscribe();
-                state.clear();
+            if (armed == 0 && UNSAFE.compareAndSwapInt(this, ARMED, 0, 1)) {
+                worker.schedule(this, timeout, unit);
             }
-            
-            @Override
-            public void onComplete() {
-                state.emitAndComplete(s, this);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
             }
-        };
-    }
-    /**
-     * Tracks the last value to be emitted and manages completion.
-     * @param <T> the value type
-     */
-    static final class DebounceState<T> {
-        /** Guarded by this. */
-        int index;
-        /** Guarded by this. */
-        T value;
-        /** Guarded by this. */
-        boolean hasValue;
-        /** Guarded by this. */
-        boolean terminate;
-        /** Guarded by this. */
-        boolean emitting;
-        
-        public synchronized int next(T value) {
-            this.value = value;
-            this.hasValue = true;
-            return ++index;
+            error = throwable;
+            done = true;
+            worker.dispose();
+            drain();
+        }
+        
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            worker.dispose();
+            drain();
         }
-        public void emit(int index, Subscriber<T> onNextAndComplete, Subscriber<?> onError) {
-            T localValue;
-            boolean localHasValue;
-            synchronized (this) {
-                if (emitting || !hasValue || index != this.index) {
+        
+        /** The timer task. */
+        @Override
+        public void run() {
+            for (;;) {
+                if (cancelled || done) {
                     return;
                 }
-                localValue = value;
-                localHasValue = hasValue;
-                
-                value = null;
-                hasValue = false;
-                emitting = true;
-            }
-
-            if  (localHasValue) {
-                try {
-                    onNextAndComplete.onNext(localValue);
-                } catch (Throwable e) {
-                    onError.onError(e);
+                long i = index;
+                long d = deadline;
+                long now = now();
+                if (now < d) {
+                    // newer items arrived since the timer was armed
+                    worker.schedule(this, d - now, TimeUnit.NANOSECONDS);
                     return;
                 }
-            }
-
-            // Check if a termination was requested in the meantime.
-            synchronized (this) {
-                if (!terminate) {
-                    emitting = false;
+                due = i;
+                drain();
+                
+                armed = 0;
+                // an item which arrived after the index was read saw the timer armed and didn't schedule
+                if (index == i || !UNSAFE.compareAndSwapInt(this, ARMED, 0, 1)) {
                     return;
                 }
             }
-            
-            onNextAndComplete.onComplete();
         }
-        public void emitAndComplete(Subscriber<T> onNextAndComplete, Subscriber<?> onError) {
-            T localValue;
-            boolean localHasValue;
-            
-            synchronized (this) {
-                if (emitting) {
-                    terminate = true;
+        
+        @Override
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            drain();
+        }
+        
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                subscription.cancel();
+                worker.dispose();
+            }
+        }
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) != 0) {
+                return;
+            }
+            int missed = 1;
+            final Subscriber<? super T> c = child;
+            for (;;) {
+                if (cancelled) {
+                    latest = null;
                     return;
                 }
-                localValue = value;
-                localHasValue = hasValue;
-                
-                value = null;
-                hasValue = false;
-
-                emitting = true;
-            }
-
-            if  (localHasValue) {
-                try {
-                    onNextAndComplete.onNext(localValue);
-                } catch (Throwable e) {
-                    onError.onError(e);
+                boolean d = done;
+                if (d && error != null) {
+                    latest = null;
+                    c.onError(error);
                     return;
                 }
+                long i = index;
+                if (d || due == i) {
+                    Object v = UNSAFE.getAndSetObject(this, LATEST, null);
+                    if (v != null) {
+                        if (!d && index != i) {
+                            // a newer item arrived, keep it for its own deadline unless it got replaced already
+                            UNSAFE.compareAndSwapObject(this, LATEST, null, v);
+                        } else {
+                            long r = requested;
+                            if (r != 0L) {
+                                @SuppressWarnings("unchecked")
+                                T t = (T)v;
+                                c.onNext(t);
+                                if (r != Long.MAX_VALUE) {
+                                    UNSAFE.getAndAddLong(this, REQUESTED, -1);
+                                }
+                            } else {
+                                // wait for a request, a newer item may replace it in the meantime
+                                UNSAFE.compareAndSwapObject(this, LATEST, null, v);
+                                d = false;
+                            }
+                        }
+                    }
+                }
+                if (d) {
+                    c.onComplete();
+                    return;
+                }
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
             }
-            onNextAndComplete.onComplete();
-        }
-        public synchronized void clear() {
-            ++index;
-            value = null;
-            hasValue = false;
         }
     }
-}
\ No newline at end of file
+}
@@ -15,17 +15,30 @@
  */
 package rx.internal.operators;
 
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.Queue;
 import java.util.concurrent.TimeUnit;
 
+import rx.Flow;
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
 import rx.Observable;
 import rx.Observable.Operator;
-import rx.Scheduler;
-import rx.Scheduler.Worker;
-import rx.Subscriber;
-import rx.functions.Action0;
+import rx.exceptions.MissingBackpressureException;
+import rx.internal.*;
+import rx.internal.queues.SpscArrayQueue;
+import rx.schedulers.Scheduler;
+import rx.subscribers.AbstractSubscriber;
 
 /**
  * Delays the emission of onNext events by a given amount of time.
+ * <p>
+ * Instead of scheduling a task per item, each subscriber enqueues the items with their deadline into
+ * a bounded SPSC queue and keeps a single timer armed for the deadline of the head item. When the timer
+ * fires, all items whose deadline has passed are emitted in one go, as far as the downstream requested
+ * them. The upstream is requested in batches of the queue capacity, therefore a slow downstream
+ * slows down the upstream instead of piling up scheduled tasks.
  * 
  * @param <T>
  *            the value type
@@ -45,41 +58,220 @@ public final class OperatorDelay<T> implements Operator<T, T> {
     }
 
     @Override
-    public Subscriber<? super T> call(final Subscriber<? super T> child) {
-        final Worker worker = scheduler.createWorker();
-        child.add(worker);
-        return new Subscriber<T>(child) {
-
-            @Override
-            public void onComplete() {
-                worker.schedule(new Action0() {
-
-                    @Override
-                    public void call() {
-                        child.onComplete();
-                    }
-
-                }, delay, unit);
+    public Subscriber<? super T> apply(Subscriber<? super T> child) {
+        return new DelaySubscriber<>(child, Math.max(0L, unit.toNanos(delay)), scheduler.createWorker(), 
+                Flow.defaultBufferSize());
+    }
+    
+    /**
+     * Queues the items with their deadline and emits them from the drain loop.
+     * @param <T> the value type
+     */
+    static final class DelaySubscriber<T> extends AbstractSubscriber<T> implements Subscription, Runnable {
+        final Subscriber<? super T> child;
+        final long delayNanos;
+        final Scheduler.Worker worker;
+        final int prefetch;
+        final int limit;
+        final Queue<T> queue;
+        /** The deadlines of the queued items, in nanoseconds of the worker's clock. */
+        final long[] deadlines;
+        final int mask;
+        
+        /** The number of items offered so far, accessed by the upstream thread only. */
+        long producerIndex;
+        /** The number of items taken so far, accessed from the drain loop only. */
+        long consumerIndex;
+        /** The number of items taken since the last replenishment, accessed from the drain loop only. */
+        int consumed;
+        
+        /** The deadline of the completion; written before done is set. */
+        long completeAt;
+        /** Written before done is set. */
+        Throwable error;
+        volatile boolean done;
+        
+        volatile boolean cancelled;
+        
+        /** True while the timer is scheduled; set from the drain loop only. */
+        volatile boolean armed;
+        
+        volatile int wip;
+        static final long WIP = addressOf(DelaySubscriber.class, "wip");
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(DelaySubscriber.class, "requested");
+        
+        public DelaySubscriber(Subscriber<? super T> child, long delayNanos, Scheduler.Worker worker, int prefetch) {
+            this.child = child;
+            this.delayNanos = delayNanos;
+            this.worker = worker;
+            int c = Pow2.roundToPowerOfTwo(prefetch);
+            this.prefetch = c;
+            this.limit = c - (c >> 2);
+            this.queue = new SpscArrayQueue<>(c);
+            this.deadlines = new long[c];
+            this.mask = c - 1;
+        }
+        
+        long now() {
+            return TimeUnit.MILLISECONDS.toNanos(worker.now());
+        }
+        
+        @Override
+        protected void onSubscribe() {
+            child.onSubscribe(this);
+            subscription.request(prefetch);
+        }
+        
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                return;
             }
-
-            @Override
-            public void onError(Throwable e) {
-                child.onError(e);
+            long p = producerIndex;
+            // the offer below publishes the deadline
+            deadlines[(int)p & mask] = now() + delayNanos;
+            if (!queue.offer(item)) {
+                subscription.cancel();
+                onError(new MissingBackpressureException("Queue full?!"));
+                return;
             }
-
-            @Override
-            public void onNext(final T t) {
-                worker.schedule(new Action0() {
-
-                    @Override
-                    public void call() {
-                        child.onNext(t);
+            producerIndex = p + 1;
+            drain();
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            error = throwable;
+            done = true;
+            drain();
+        }
+        
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            completeAt = now() + delayNanos;
+            done = true;
+            drain();
+        }
+        
+        @Override
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            drain();
+        }
+        
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                subscription.cancel();
+                worker.dispose();
+                drain();
+            }
+        }
+        
+        /** The timer. */
+        @Override
+        public void run() {
+            armed = false;
+            drain();
+        }
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) == 0) {
+                drainLoop();
+            }
+        }
+        
+        void drainLoop() {
+            int missed = 1;
+            final Queue<T> q = queue;
+            final long[] d = deadlines;
+            final int m = mask;
+            for (;;) {
+                if (cancelled) {
+                    q.clear();
+                    return;
+                }
+                boolean isDone = done;
+                if (isDone && error != null) {
+                    q.clear();
+                    worker.dispose();
+                    child.onError(error);
+                    return;
+                }
+                
+                long now = now();
+                long r = requested;
+                long e = 0L;
+                long c = consumerIndex;
+                long wait = -1L;
+                
+                while (e != r) {
+                    T v = q.peek();
+                    if (v == null) {
+                        break;
                     }
-
-                }, delay, unit);
+                    long due = d[(int)c & m];
+                    if (due > now) {
+                        wait = due - now;
+                        break;
+                    }
+                    q.poll();
+                    c++;
+                    child.onNext(v);
+                    if (cancelled) {
+                        q.clear();
+                        return;
+                    }
+                    e++;
+                }
+                
+                if (e != 0L) {
+                    consumerIndex = c;
+                    if (r != Long.MAX_VALUE) {
+                        UNSAFE.getAndAddLong(this, REQUESTED, -e);
+                    }
+                    int k = consumed + (int)e;
+                    if (k >= limit) {
+                        consumed = 0;
+                        subscription.request(k);
+                    } else {
+                        consumed = k;
+                    }
+                }
+                
+                if (isDone && q.isEmpty()) {
+                    long due = completeAt;
+                    if (due <= now) {
+                        worker.dispose();
+                        child.onComplete();
+                        return;
+                    }
+                    wait = due - now;
+                }
+                
+                if (wait >= 0L && !armed) {
+                    armed = true;
+                    worker.schedule(this, wait, TimeUnit.NANOSECONDS);
+                }
+                
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
             }
-
-        };
+        }
     }
-
 }
@@ -15,52 +15,101 @@
  */
 package rx.internal.operators;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.function.*;
+
+import rx.Flow.Subscriber;
 import rx.Observable.Operator;
-import rx.Subscriber;
-import rx.functions.Function;
+import rx.exceptions.OnErrorThrowable;
+import rx.internal.subscriptions.*;
+import rx.subscribers.AbstractSubscriber;
 
 /**
  * Returns an Observable that emits all distinct items emitted by the source.
+ * <p>
+ * The keys seen are remembered in a {@link Set} created per subscriber by the given supplier; an item
+ * is emitted if adding its key changes the set. Bounded or probabilistic sets make the operator forget
+ * or misjudge some keys in exchange for bounded memory.
  * 
  * @param <T> the value type
  * @param <U> the key type
  */
 public final class OperatorDistinct<T, U> implements Operator<T, T> {
     final Function<? super T, ? extends U> keySelector;
+    final Supplier<? extends Set<? super U>> setSupplier;
 
     public OperatorDistinct(Function<? super T, ? extends U> keySelector) {
-        this.keySelector = keySelector;
+        this(keySelector, HashSet::new);
     }
 
-    @Override
-    public Subscriber<? super T> call(final Subscriber<? super T> child) {
-        return new Subscriber<T>(child) {
-            Set<U> keyMemory = new HashSet<U>();
+    public OperatorDistinct(Function<? super T, ? extends U> keySelector, Supplier<? extends Set<? super U>> setSupplier) {
+        this.keySelector = Objects.requireNonNull(keySelector);
+        this.setSupplier = Objects.requireNonNull(setSupplier);
+    }
 
-            @Override
-            public void onNext(T t) {
-                U key = keySelector.call(t);
-                if (keyMemory.add(key)) {
+    @Override
+    public Subscriber<? super T> apply(Subscriber<? super T> child) {
+        Set<? super U> set;
+        try {
+            set = Objects.requireNonNull(setSupplier.get(), "The setSupplier returned null");
+        } catch (Throwable e) {
+            AbstractSubscription.setEmptyOn(child);
+            child.onError(e);
+            return AbstractSubscriber.cancelled();
+        }
+        return new DistinctSubscriber<>(child, keySelector, set);
+    }
+    
+    /** Tests the keys in onNext or, if fused, inside poll(). */
+    static final class DistinctSubscriber<T, U> extends AbstractFuseableSubscriber<T, T> {
+        final Function<? super T, ? extends U> keySelector;
+        final Set<? super U> keys;
+        
+        public DistinctSubscriber(Subscriber<? super T> child, Function<? super T, ? extends U> keySelector,
+                Set<? super U> keys) {
+            super(child);
+            this.keySelector = keySelector;
+            this.keys = keys;
+        }
+        
+        @Override
+        public void onNext(T t) {
+            try {
+                if (keys.add(keySelector.apply(t))) {
                     child.onNext(t);
                 } else {
-                    request(1);
+                    subscription.request(1);
                 }
+            } catch (Throwable e) {
+                child.onError(OnErrorThrowable.addValueAsLastCause(e, t));
             }
-
-            @Override
-            public void onError(Throwable e) {
-                keyMemory = null;
-                child.onError(e);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            if (qs == null) {
+                keys.clear();
             }
-
-            @Override
-            public void onComplete() {
-                keyMemory = null;
-                child.onComplete();
+            child.onError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            if (qs == null) {
+                keys.clear();
+            }
+            child.onComplete();
+        }
+        
+        @Override
+        public T poll() {
+            QueueSubscription<T> q = qs;
+            for (;;) {
+                T t = q.poll();
+                if (t == null || keys.add(keySelector.apply(t))) {
+                    return t;
+                }
             }
-            
-        };
+        }
     }
 }
@@ -55,18 +55,15 @@ public class OperatorDoOnRequest<T> implements Operator<T, T> {
             }
             @Override
             public void onNext(T item) {
-                // TODO Auto-generated method stub
-                
+                child.onNext(item);
             }
             @Override
             public void onError(Throwable throwable) {
-                // TODO Auto-generated method stub
-                
+                child.onError(throwable);
             }
             @Override
             public void onComplete() {
-                // TODO Auto-generated method stub
-                
+                child.onComplete();
             }
         };
     }
@@ -20,7 +20,7 @@ import java.util.function.Predicate;
 import rx.Flow.Subscriber;
 import rx.Observable.Operator;
 import rx.exceptions.OnErrorThrowable;
-import rx.subscribers.AbstractSubscriber;
+import rx.internal.subscriptions.QueueSubscription;
 
 /**
  * Filters an Observable by discarding any items it emits that do not meet some test.
@@ -29,7 +29,7 @@ import rx.subscribers.AbstractSubscriber;
  */
 public final class OperatorFilter<T> implements Operator<T, T> {
 
-    private final Predicate<? super T> predicate;
+    final Predicate<? super T> predicate;
 
     public OperatorFilter(Predicate<? super T> predicate) {
         this.predicate = predicate;
@@ -37,36 +37,42 @@ public final class OperatorFilter<T> implements Operator<T, T> {
 
     @Override
     public Subscriber<? super T> apply(final Subscriber<? super T> child) {
-        return new AbstractSubscriber<T>() {
-            @Override
-            protected void onSubscribe() {
-                child.onSubscribe(subscription);
-            }
-            @Override
-            public void onComplete() {
-                child.onComplete();
-            }
+        return new FilterSubscriber<>(child, predicate);
+    }
+    
+    /** Tests the items in onNext or, if fused, inside poll(). */
+    static final class FilterSubscriber<T> extends AbstractFuseableSubscriber<T, T> {
+        final Predicate<? super T> predicate;
+        
+        public FilterSubscriber(Subscriber<? super T> child, Predicate<? super T> predicate) {
+            super(child);
+            this.predicate = predicate;
+        }
 
-            @Override
-            public void onError(Throwable e) {
-                child.onError(e);
+        @Override
+        public void onNext(T t) {
+            try {
+                if (predicate.test(t)) {
+                    child.onNext(t);
+                } else {
+                    // TODO consider a more complicated version that batches these
+                    subscription.request(1);
+                }
+            } catch (Throwable e) {
+                child.onError(OnErrorThrowable.addValueAsLastCause(e, t));
             }
-
-            @Override
-            public void onNext(T t) {
-                try {
-                    if (predicate.test(t)) {
-                        child.onNext(t);
-                    } else {
-                        // TODO consider a more complicated version that batches these
-                        subscription.request(1);
-                    }
-                } catch (Throwable e) {
-                    child.onError(OnErrorThrowable.addValueAsLastCause(e, t));
+        }
+        
+        @Override
+        public T poll() {
+            QueueSubscription<T> q = qs;
+            for (;;) {
+                T t = q.poll();
+                if (t == null || predicate.test(t)) {
+                    return t;
                 }
             }
-
-        };
+        }
     }
 
 }
@@ -0,0 +1,276 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.*;
+import java.util.function.*;
+
+import rx.Flow.Subscriber;
+import rx.Observable.Operator;
+import rx.exceptions.*;
+import rx.internal.subscriptions.QueueSubscription;
+
+/**
+ * Runs a sequence of adjacent map, filter and doOnEach stages in a single subscriber,
+ * avoiding a subscriber and a virtual call per stage.
+ * <p>
+ * The stages are fused at assembly time by {@link #fuse(Operator, Operator)}; each
+ * stage keeps the signal semantics of its standalone operator. {@code Observable.lift}
+ * doesn't fuse while a custom {@code RxJavaObservableExecutionHook} is installed so
+ * its {@code onLift} sees each operator.
+ *
+ * @param <T> the upstream value type
+ * @param <R> the downstream value type
+ */
+public final class OperatorFusedStages<T, R> implements Operator<R, T> {
+    static final int MAP = 0;
+    static final int FILTER = 1;
+    static final int PEEK = 2;
+    
+    /** The kind of each stage. */
+    final int[] kinds;
+    /** The Function, Predicate or OperatorDoOnEach of each stage. */
+    final Object[] stages;
+    /** True if there are doOnEach stages, which prevent queue fusion as poll() can't run their terminal callbacks. */
+    final boolean hasPeek;
+    
+    OperatorFusedStages(int[] kinds, Object[] stages) {
+        this.kinds = kinds;
+        this.stages = stages;
+        boolean p = false;
+        for (int k : kinds) {
+            p |= k == PEEK;
+        }
+        this.hasPeek = p;
+    }
+    
+    /**
+     * Composes two operators applied after each other into a single operator if both
+     * are map, filter, doOnEach or already fused stages.
+     * @param first the operator applied first
+     * @param second the operator applied to the output of the first
+     * @return the fused operator or null if the operators can't be fused
+     */
+    public static Operator<?, ?> fuse(Operator<?, ?> first, Operator<?, ?> second) {
+        int[] k1 = kindsOf(first);
+        if (k1 == null) {
+            return null;
+        }
+        int[] k2 = kindsOf(second);
+        if (k2 == null) {
+            return null;
+        }
+        Object[] s1 = stagesOf(first);
+        Object[] s2 = stagesOf(second);
+        
+        int[] kinds = Arrays.copyOf(k1, k1.length + k2.length);
+        System.arraycopy(k2, 0, kinds, k1.length, k2.length);
+        Object[] stages = Arrays.copyOf(s1, s1.length + s2.length);
+        System.arraycopy(s2, 0, stages, s1.length, s2.length);
+        return new OperatorFusedStages<>(kinds, stages);
+    }
+    
+    static int[] kindsOf(Operator<?, ?> op) {
+        if (op instanceof OperatorFusedStages) {
+            return ((OperatorFusedStages<?, ?>)op).kinds;
+        }
+        if (op instanceof OperatorMap) {
+            return new int[] { MAP };
+        }
+        if (op instanceof OperatorFilter) {
+            return new int[] { FILTER };
+        }
+        if (op instanceof OperatorDoOnEach) {
+            return new int[] { PEEK };
+        }
+        return null;
+    }
+    
+    static Object[] stagesOf(Operator<?, ?> op) {
+        if (op instanceof OperatorFusedStages) {
+            return ((OperatorFusedStages<?, ?>)op).stages;
+        }
+        if (op instanceof OperatorMap) {
+            return new Object[] { ((OperatorMap<?, ?>)op).function };
+        }
+        if (op instanceof OperatorFilter) {
+            return new Object[] { ((OperatorFilter<?>)op).predicate };
+        }
+        return new Object[] { op };
+    }
+    
+    @Override
+    public Subscriber<? super T> apply(Subscriber<? super R> child) {
+        return new FusedStagesSubscriber<>(child, kinds, stages, hasPeek);
+    }
+    
+    /**
+     * Runs the stages in a loop; the signals leaving a stage continue at the next one.
+     */
+    static final class FusedStagesSubscriber<T, R> extends AbstractFuseableSubscriber<T, R> {
+        final int[] kinds;
+        final Object[] stages;
+        final boolean hasPeek;
+        /** The terminated state of each doOnEach stage. */
+        final boolean[] done;
+        
+        public FusedStagesSubscriber(Subscriber<? super R> child, int[] kinds, Object[] stages, boolean hasPeek) {
+            super(child);
+            this.kinds = kinds;
+            this.stages = stages;
+            this.hasPeek = hasPeek;
+            this.done = hasPeek ? new boolean[kinds.length] : null;
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public void onNext(T item) {
+            final int[] kinds = this.kinds;
+            final Object[] stages = this.stages;
+            Object v = item;
+            for (int i = 0; i < kinds.length; i++) {
+                switch (kinds[i]) {
+                case MAP:
+                    try {
+                        v = ((Function<Object, Object>)stages[i]).apply(v);
+                    } catch (Throwable e) {
+                        error(i + 1, e);
+                        return;
+                    }
+                    break;
+                case FILTER:
+                    boolean pass;
+                    try {
+                        pass = ((Predicate<Object>)stages[i]).test(v);
+                    } catch (Throwable e) {
+                        error(i + 1, OnErrorThrowable.addValueAsLastCause(e, v));
+                        return;
+                    }
+                    if (!pass) {
+                        subscription.request(1);
+                        return;
+                    }
+                    break;
+                default:
+                    if (done[i]) {
+                        return;
+                    }
+                    try {
+                        ((OperatorDoOnEach<Object>)stages[i]).onNext.accept(v);
+                    } catch (Throwable e) {
+                        error(i, OnErrorThrowable.addValueAsLastCause(e, v));
+                        return;
+                    }
+                }
+            }
+            child.onNext((R)v);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            error(0, throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            complete(0);
+        }
+        
+        /**
+         * Delivers an error to the stages starting at the given index.
+         * @param index the index of the first stage to receive the error
+         * @param e the error
+         */
+        void error(int index, Throwable e) {
+            if (hasPeek) {
+                final int[] kinds = this.kinds;
+                for (int i = index; i < kinds.length; i++) {
+                    if (kinds[i] == PEEK) {
+                        // need to throwIfFatal since we swallow errors after terminated
+                        Exceptions.throwIfFatal(e);
+                        if (done[i]) {
+                            return;
+                        }
+                        done[i] = true;
+                        try {
+                            ((OperatorDoOnEach<?>)stages[i]).onError.accept(e);
+                        } catch (Throwable e2) {
+                            e = e2;
+                        }
+                    }
+                }
+            }
+            child.onError(e);
+        }
+        
+        /**
+         * Delivers the completion to the stages starting at the given index.
+         * @param index the index of the first stage to receive the completion
+         */
+        void complete(int index) {
+            if (hasPeek) {
+                final int[] kinds = this.kinds;
+                for (int i = index; i < kinds.length; i++) {
+                    if (kinds[i] == PEEK) {
+                        if (done[i]) {
+                            return;
+                        }
+                        try {
+                            ((OperatorDoOnEach<?>)stages[i]).onComplete.run();
+                        } catch (Throwable e) {
+                            error(i, e);
+                            return;
+                        }
+                        done[i] = true;
+                    }
+                }
+            }
+            child.onComplete();
+        }
+        
+        @Override
+        public int requestFusion(int mode) {
+            if (hasPeek) {
+                return QueueSubscription.NONE;
+            }
+            return super.requestFusion(mode);
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public R poll() {
+            final int[] kinds = this.kinds;
+            final Object[] stages = this.stages;
+            outer:
+            for (;;) {
+                Object v = qs.poll();
+                if (v == null) {
+                    return null;
+                }
+                for (int i = 0; i < kinds.length; i++) {
+                    if (kinds[i] == MAP) {
+                        v = Objects.requireNonNull(((Function<Object, Object>)stages[i]).apply(v));
+                    } else
+                    if (!((Predicate<Object>)stages[i]).test(v)) {
+                        continue outer;
+                    }
+                }
+                return (R)v;
+            }
+        }
+    }
+}
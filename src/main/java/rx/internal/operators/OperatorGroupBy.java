@@ -15,32 +15,36 @@
  */
 package rx.internal.operators;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import static rx.internal.UnsafeAccess.*;
 
-import rx.Observable;
+import java.util.*;
+import java.util.function.Function;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.*;
 import rx.Observable.OnSubscribe;
 import rx.Observable.Operator;
-import rx.Observer;
-import rx.Producer;
-import rx.Subscriber;
-import rx.exceptions.OnErrorThrowable;
-import rx.functions.Action0;
-import rx.functions.Function;
-import rx.observables.GroupedObservable;
-import rx.subjects.Subject;
-import rx.subscriptions.Subscriptions;
+import rx.internal.*;
+import rx.internal.queues.*;
+import rx.internal.subscriptions.AbstractSubscription;
+import rx.observables.*;
+import rx.subscribers.AbstractSubscriber;
 
 /**
  * Groups the items emitted by an Observable according to a specified criterion, and emits these
  * grouped items as Observables, one Observable per group.
  * <p>
  * <img width="640" height="360" src="https://raw.githubusercontent.com/wiki/ReactiveX/RxJava/images/rx-operators/groupBy.png" alt="">
+ * <p>
+ * The groups share a budget of {@link Flow#defaultBufferSize()} items requested from the source
+ * and not yet consumed by a group subscriber; the budget is replenished as the group subscribers
+ * consume. A group buffers only if its subscriber can't take the item right away, in which case
+ * it lazily creates a single-producer single-consumer queue.
+ * <p>
+ * If {@code maxGroups} is bounded, a new key arriving while {@code maxGroups} groups are open
+ * completes one of the open groups according to the {@link GroupEvictionPolicy}. A later item
+ * with the evicted key opens a new group.
  *
  * @param <K>
  *            the key type
@@ -49,9 +53,11 @@ import rx.subscriptions.Subscriptions;
  * @param <R>
  *            the value type of the groups
  */
-public class OperatorGroupBy<T, K, R> implements Operator<GroupedObservable<K, R>, T> {
+public final class OperatorGroupBy<T, K, R> implements Operator<GroupedObservable<K, R>, T> {
     final Function<? super T, ? extends K> keySelector;
     final Function<? super T, ? extends R> valueSelector;
+    final int maxGroups;
+    final GroupEvictionPolicy evictionPolicy;
 
     @SuppressWarnings("unchecked")
     public OperatorGroupBy(final Function<? super T, ? extends K> keySelector) {
@@ -61,360 +67,489 @@ public class OperatorGroupBy<T, K, R> implements Operator<GroupedObservable<K, R
     public OperatorGroupBy(
             Function<? super T, ? extends K> keySelector,
             Function<? super T, ? extends R> valueSelector) {
-        this.keySelector = keySelector;
-        this.valueSelector = valueSelector;
+        this(keySelector, valueSelector, Integer.MAX_VALUE, GroupEvictionPolicy.LEAST_RECENTLY_USED);
+    }
+
+    public OperatorGroupBy(
+            Function<? super T, ? extends K> keySelector,
+            Function<? super T, ? extends R> valueSelector,
+            int maxGroups, GroupEvictionPolicy evictionPolicy) {
+        this.keySelector = Objects.requireNonNull(keySelector);
+        this.valueSelector = Objects.requireNonNull(valueSelector);
+        this.maxGroups = maxGroups;
+        this.evictionPolicy = Objects.requireNonNull(evictionPolicy);
     }
 
     @Override
-    public Subscriber<? super T> call(final Subscriber<? super GroupedObservable<K, R>> child) {
-        return new GroupBySubscriber<K, T, R>(keySelector, valueSelector, child);
+    public Subscriber<? super T> apply(final Subscriber<? super GroupedObservable<K, R>> child) {
+        return new GroupBySubscriber<>(keySelector, valueSelector, maxGroups, evictionPolicy, child);
     }
 
-    static final class GroupBySubscriber<K, T, R> extends Subscriber<T> {
-        private static final int MAX_QUEUE_SIZE = 1024;
-        final GroupBySubscriber<K, T, R> self = this;
+    static final class GroupBySubscriber<K, T, R> extends AbstractSubscriber<T> implements Subscription {
         final Function<? super T, ? extends K> keySelector;
-        final Function<? super T, ? extends R> elementSelector;
+        final Function<? super T, ? extends R> valueSelector;
         final Subscriber<? super GroupedObservable<K, R>> child;
-
-        // We should not call `unsubscribe()` until `groups.isEmpty() && child.isUnsubscribed()` is true.
-        // Use `WIP_FOR_UNSUBSCRIBE_UPDATER` to monitor these statuses and call `unsubscribe()` properly.
-        // Should check both when `child.unsubscribe` is called and any group is removed.
-        @SuppressWarnings("rawtypes")
-        static final AtomicIntegerFieldUpdater<GroupBySubscriber> WIP_FOR_UNSUBSCRIBE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(GroupBySubscriber.class, "wipForUnsubscribe");
-        volatile int wipForUnsubscribe = 1;
+        final int maxGroups;
+        /** The number of items requested from the source at once. */
+        final int bufferSize;
+        /** The number of consumed items after which the budget is replenished. */
+        final int limit;
+        
+        /** The open groups, accessed from the onNext thread only. */
+        final Map<Object, GroupState<K, R>> groups;
+        /** The groups whose subscriber cancelled, removed from the map by the onNext thread. */
+        final Queue<GroupState<K, R>> cancelledGroups;
+        /** The new groups waiting to be emitted. */
+        final Queue<GroupedObservable<K, R>> groupQueue;
+        
+        /** The number of items consumed by the groups but not yet requested from the source. */
+        volatile long consumed;
+        static final long CONSUMED = addressOf(GroupBySubscriber.class, "consumed");
+        
+        /** Counts the main subscriber and the groups not yet cancelled or evicted; cancels the source when it reaches zero. */
+        volatile int groupCount;
+        static final long GROUP_COUNT = addressOf(GroupBySubscriber.class, "groupCount");
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(GroupBySubscriber.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(GroupBySubscriber.class, "wip");
+        
+        volatile int cancelled;
+        static final long CANCELLED = addressOf(GroupBySubscriber.class, "cancelled");
+        
+        volatile boolean done;
+        Throwable error;
 
         public GroupBySubscriber(
                 Function<? super T, ? extends K> keySelector,
-                Function<? super T, ? extends R> elementSelector,
+                Function<? super T, ? extends R> valueSelector,
+                int maxGroups, GroupEvictionPolicy evictionPolicy,
                 Subscriber<? super GroupedObservable<K, R>> child) {
-            super();
             this.keySelector = keySelector;
-            this.elementSelector = elementSelector;
+            this.valueSelector = valueSelector;
             this.child = child;
-            child.add(Subscriptions.create(new Action0() {
-
-                @Override
-                public void call() {
-                    if (WIP_FOR_UNSUBSCRIBE_UPDATER.decrementAndGet(self) == 0) {
-                        self.unsubscribe();
-                    }
-                }
-
-            }));
-        }
-
-        private static class GroupState<K, T> {
-            private final Subject<T, T> s = BufferUntilSubscriber.create();
-            private final AtomicLong requested = new AtomicLong();
-            private final AtomicLong count = new AtomicLong();
-            private final Queue<Object> buffer = new ConcurrentLinkedQueue<Object>(); // TODO should this be lazily created?
-
-            public Observable<T> getObservable() {
-                return s;
-            }
-
-            public Observer<T> getObserver() {
-                return s;
+            this.maxGroups = maxGroups;
+            this.bufferSize = Flow.defaultBufferSize();
+            this.limit = bufferSize - (bufferSize >> 2);
+            if (maxGroups == Integer.MAX_VALUE) {
+                this.groups = new HashMap<>();
+            } else {
+                this.groups = new LinkedHashMap<>(16, 0.75f, evictionPolicy == GroupEvictionPolicy.LEAST_RECENTLY_USED);
             }
-
+            this.cancelledGroups = new MpscLinkedQueue<>();
+            this.groupQueue = new SpscLinkedQueue<>();
+            UNSAFE.putOrderedInt(this, GROUP_COUNT, 1);
         }
-
-        private final ConcurrentHashMap<Object, GroupState<K, T>> groups = new ConcurrentHashMap<Object, GroupState<K, T>>();
-
-        private static final NotificationLite<Object> nl = NotificationLite.instance();
-
-        volatile int completionEmitted;
-
-        private static final int UNTERMINATED = 0;
-        private static final int TERMINATED_WITH_COMPLETED = 1;
-        private static final int TERMINATED_WITH_ERROR = 2;
-
-        // Must be one of `UNTERMINATED`, `TERMINATED_WITH_COMPLETED`, `TERMINATED_WITH_ERROR`
-        volatile int terminated = UNTERMINATED;
-
-        @SuppressWarnings("rawtypes")
-        static final AtomicIntegerFieldUpdater<GroupBySubscriber> COMPLETION_EMITTED_UPDATER = AtomicIntegerFieldUpdater.newUpdater(GroupBySubscriber.class, "completionEmitted");
-        @SuppressWarnings("rawtypes")
-        static final AtomicIntegerFieldUpdater<GroupBySubscriber> TERMINATED_UPDATER = AtomicIntegerFieldUpdater.newUpdater(GroupBySubscriber.class, "terminated");
-
-        volatile long requested;
-        @SuppressWarnings("rawtypes")
-        static final AtomicLongFieldUpdater<GroupBySubscriber> REQUESTED = AtomicLongFieldUpdater.newUpdater(GroupBySubscriber.class, "requested");
-
-        volatile long bufferedCount;
-        @SuppressWarnings("rawtypes")
-        static final AtomicLongFieldUpdater<GroupBySubscriber> BUFFERED_COUNT = AtomicLongFieldUpdater.newUpdater(GroupBySubscriber.class, "bufferedCount");
-
+        
         @Override
-        public void onStart() {
-            REQUESTED.set(this, MAX_QUEUE_SIZE);
-            request(MAX_QUEUE_SIZE);
+        protected void onSubscribe() {
+            child.onSubscribe(this);
+            subscription.request(bufferSize);
         }
 
         @Override
-        public void onComplete() {
-            if (TERMINATED_UPDATER.compareAndSet(this, UNTERMINATED, TERMINATED_WITH_COMPLETED)) {
-                // if we receive onComplete() from our parent we onComplete children
-                // for each group check if it is ready to accept more events if so pass the oncomplete through else buffer it.
-                for (GroupState<K, T> group : groups.values()) {
-                    emitItem(group, nl.completed());
+        public void onNext(T t) {
+            if (done) {
+                return;
+            }
+            purgeCancelled();
+            
+            K key;
+            R value;
+            try {
+                key = keySelector.apply(t);
+                value = valueSelector.apply(t);
+            } catch (Throwable e) {
+                subscription.cancel();
+                onError(e);
+                return;
+            }
+            
+            Object mapKey = key != null ? key : NULL_KEY;
+            GroupState<K, R> g = groups.get(mapKey);
+            boolean newGroup = false;
+            if (g == null) {
+                if (cancelled != 0) {
+                    // no new groups after the main subscriber cancelled
+                    replenish(1);
+                    return;
                 }
-
-                // special case (no groups emitted ... or all unsubscribed)
-                if (groups.isEmpty()) {
-                    // we must track 'completionEmitted' seperately from 'completed' since `completeInner` can result in childObserver.onComplete() being emitted
-                    if (COMPLETION_EMITTED_UPDATER.compareAndSet(this, 0, 1)) {
-                        child.onComplete();
-                    }
+                if (groups.size() >= maxGroups) {
+                    evict();
                 }
+                UNSAFE.getAndAddInt(this, GROUP_COUNT, 1);
+                g = new GroupState<>(key, this);
+                groups.put(mapKey, g);
+                groupQueue.offer(GroupedObservable.create(key, g));
+                newGroup = true;
+            }
+            g.onNext(value);
+            if (newGroup) {
+                drain();
             }
         }
-
-        @Override
-        public void onError(Throwable e) {
-            if (TERMINATED_UPDATER.compareAndSet(this, UNTERMINATED, TERMINATED_WITH_ERROR)) {
-                // It's safe to access all groups and emit the error.
-                // onNext and onError are in sequence so no group will be created in the loop.
-                for (GroupState<K, T> group : groups.values()) {
-                    emitItem(group, nl.error(e));
-                }
-                try {
-                    // we immediately tear everything down if we receive an error
-                    child.onError(e);
-                } finally {
-                    // We have not chained the subscribers, so need to call it explicitly.
-                    unsubscribe();
+        
+        /** Removes the groups cancelled by their subscribers from the map. */
+        void purgeCancelled() {
+            for (;;) {
+                GroupState<K, R> g = cancelledGroups.poll();
+                if (g == null) {
+                    break;
                 }
+                Object mapKey = g.key != null ? g.key : NULL_KEY;
+                groups.remove(mapKey, g);
             }
         }
-
-        // The grouped observable propagates the 'producer.request' call from it's subscriber to this method
-        // Here we keep track of the requested count for each group
-        // If we already have items queued when a request comes in we vend those and decrement the outstanding request count
-
-        void requestFromGroupedObservable(long n, GroupState<K, T> group) {
-            group.requested.getAndAdd(n);
-            if (group.count.getAndIncrement() == 0) {
-                pollQueue(group);
+        
+        /** Completes the eldest entry of the map according to the eviction policy. */
+        void evict() {
+            Iterator<GroupState<K, R>> it = groups.values().iterator();
+            if (it.hasNext()) {
+                GroupState<K, R> g = it.next();
+                it.remove();
+                g.onComplete();
+                release(g);
             }
         }
-
-        private Object groupedKey(K key) {
-            return key == null ? NULL_KEY : key;
+        
+        @Override
+        public void onError(Throwable e) {
+            if (done) {
+                return;
+            }
+            for (GroupState<K, R> g : groups.values()) {
+                g.onError(e);
+            }
+            groups.clear();
+            error = e;
+            done = true;
+            drain();
         }
 
-        @SuppressWarnings("unchecked")
-        private K getKey(Object groupedKey) {
-            return groupedKey == NULL_KEY ? null : (K) groupedKey;
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            for (GroupState<K, R> g : groups.values()) {
+                g.onComplete();
+            }
+            groups.clear();
+            done = true;
+            drain();
         }
-
+        
         @Override
-        public void onNext(T t) {
-            try {
-                final Object key = groupedKey(keySelector.call(t));
-                GroupState<K, T> group = groups.get(key);
-                if (group == null) {
-                    // this group doesn't exist
-                    if (child.isUnsubscribed()) {
-                        // we have been unsubscribed on the outer so won't send any  more groups
-                        return;
-                    }
-                    group = createNewGroup(key);
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            drain();
+        }
+        
+        @Override
+        public void cancel() {
+            if (UNSAFE.compareAndSwapInt(this, CANCELLED, 0, 1)) {
+                if (UNSAFE.getAndAddInt(this, GROUP_COUNT, -1) == 1) {
+                    subscription.cancel();
                 }
-                if (group != null) {
-                    emitItem(group, nl.next(t));
+                drain();
+            }
+        }
+        
+        /**
+         * Called once when a group is cancelled or evicted; cancels the source if
+         * the main subscriber and all groups are gone.
+         */
+        void release(GroupState<K, R> g) {
+            if (g.once()) {
+                if (UNSAFE.getAndAddInt(this, GROUP_COUNT, -1) == 1) {
+                    subscription.cancel();
                 }
-            } catch (Throwable e) {
-                onError(OnErrorThrowable.addValueAsLastCause(e, t));
             }
         }
-
-        private GroupState<K, T> createNewGroup(final Object key) {
-            final GroupState<K, T> groupState = new GroupState<K, T>();
-
-            GroupedObservable<K, R> go = GroupedObservable.create(getKey(key), new OnSubscribe<R>() {
-
-                @Override
-                public void call(final Subscriber<? super R> o) {
-                    o.setProducer(new Producer() {
-
-                        @Override
-                        public void request(long n) {
-                            requestFromGroupedObservable(n, groupState);
-                        }
-
-                    });
-
-                    final AtomicBoolean once = new AtomicBoolean();
-
-                    groupState.getObservable().doOnUnsubscribe(new Action0() {
-
-                        @Override
-                        public void call() {
-                            if (once.compareAndSet(false, true)) {
-                                // done once per instance, either onComplete or onUnSubscribe
-                                cleanupGroup(key);
-                            }
-                        }
-
-                    }).unsafeSubscribe(new Subscriber<T>(o) {
-
-                        @Override
-                        public void onComplete() {
-                            o.onComplete();
-                            // eagerly cleanup instead of waiting for unsubscribe
-                            if (once.compareAndSet(false, true)) {
-                                // done once per instance, either onComplete or onUnSubscribe
-                                cleanupGroup(key);
-                            }
+        
+        void groupCancelled(GroupState<K, R> g) {
+            cancelledGroups.offer(g);
+            release(g);
+        }
+        
+        /**
+         * Requests more from the source once enough items have been consumed by the groups.
+         * @param n the number of items consumed
+         */
+        void replenish(long n) {
+            long c = UNSAFE.getAndAddLong(this, CONSUMED, n) + n;
+            if (c >= limit) {
+                long d = UNSAFE.getAndSetLong(this, CONSUMED, 0L);
+                if (d != 0L) {
+                    subscription.request(d);
+                }
+            }
+        }
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) != 0) {
+                return;
+            }
+            int missed = 1;
+            final Queue<GroupedObservable<K, R>> q = groupQueue;
+            final Subscriber<? super GroupedObservable<K, R>> a = child;
+            for (;;) {
+                if (cancelled != 0) {
+                    // the groups never emitted won't be subscribed to
+                    for (;;) {
+                        GroupedObservable<K, R> g = q.poll();
+                        if (g == null) {
+                            break;
                         }
-
-                        @Override
-                        public void onError(Throwable e) {
-                            o.onError(e);
-                            // eagerly cleanup instead of waiting for unsubscribe
-                            if (once.compareAndSet(false, true)) {
-                                // done once per instance, either onComplete or onUnSubscribe
-                                cleanupGroup(key);
-                            }
+                        g.unsafeSubscribe(AbstractSubscriber.cancelled());
+                    }
+                } else {
+                    long r = requested;
+                    long e = 0L;
+                    while (e != r) {
+                        boolean d = done;
+                        GroupedObservable<K, R> g = q.poll();
+                        boolean empty = g == null;
+                        if (checkTerminated(d, empty, a)) {
+                            return;
                         }
-
-                        @Override
-                        public void onNext(T t) {
-                            try {
-                                o.onNext(elementSelector.call(t));
-                            } catch (Throwable e) {
-                                onError(OnErrorThrowable.addValueAsLastCause(e, t));
-                            }
+                        if (empty) {
+                            break;
                         }
-                    });
-                }
-            });
-
-            GroupState<K, T> putIfAbsent;
-            for (;;) {
-                int wip = wipForUnsubscribe;
-                if (wip <= 0) {
-                    return null;
+                        a.onNext(g);
+                        e++;
+                    }
+                    if (e == r && checkTerminated(done, q.isEmpty(), a)) {
+                        return;
+                    }
+                    if (e != 0L && r != Long.MAX_VALUE) {
+                        UNSAFE.getAndAddLong(this, REQUESTED, -e);
+                    }
                 }
-                if (WIP_FOR_UNSUBSCRIBE_UPDATER.compareAndSet(this, wip, wip + 1)) {
-                    putIfAbsent = groups.putIfAbsent(key, groupState);
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
                     break;
                 }
             }
-            if (putIfAbsent != null) {
-                // this shouldn't happen (because we receive onNext sequentially) and would mean we have a bug
-                throw new IllegalStateException("Group already existed while creating a new one");
-            }
-            child.onNext(go);
-
-            return groupState;
         }
-
-        private void cleanupGroup(Object key) {
-            GroupState<K, T> removed;
-            removed = groups.remove(key);
-            if (removed != null) {
-                if (!removed.buffer.isEmpty()) {
-                    BUFFERED_COUNT.addAndGet(self, -removed.buffer.size());
+        
+        boolean checkTerminated(boolean d, boolean empty, Subscriber<?> a) {
+            if (d) {
+                Throwable e = error;
+                if (e != null) {
+                    groupQueue.clear();
+                    a.onError(e);
+                    return true;
+                } else
+                if (empty) {
+                    a.onComplete();
+                    return true;
                 }
-                completeInner();
-                // since we may have unsubscribed early with items in the buffer 
-                // we remove those above and have freed up room to request more
-                // so give it a chance to request more now
-                requestMoreIfNecessary();
             }
+            return false;
         }
-
-        private void emitItem(GroupState<K, T> groupState, Object item) {
-            Queue<Object> q = groupState.buffer;
-            AtomicLong keyRequested = groupState.requested;
-            REQUESTED.decrementAndGet(this);
-            // short circuit buffering
-            if (keyRequested != null && keyRequested.get() > 0 && (q == null || q.isEmpty())) {
-                @SuppressWarnings("unchecked")
-                Observer<Object> obs = (Observer<Object>)groupState.getObserver();
-                nl.accept(obs, item);
-                keyRequested.decrementAndGet();
+    }
+    
+    /**
+     * The state of a group: a single subscriber, lazily created buffer and the
+     * requested amount of its subscriber.
+     */
+    static final class GroupState<K, R> implements OnSubscribe<R>, Subscription {
+        final K key;
+        final GroupBySubscriber<K, ?, R> parent;
+        
+        /** The buffer, created by the producer when the subscriber can't take an item right away. */
+        volatile Queue<R> queue;
+        static final long QUEUE = addressOf(GroupState.class, "queue");
+        
+        volatile Subscriber<? super R> actual;
+        static final long ACTUAL = addressOf(GroupState.class, "actual");
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(GroupState.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(GroupState.class, "wip");
+        
+        volatile int released;
+        static final long RELEASED = addressOf(GroupState.class, "released");
+        
+        volatile boolean cancelled;
+        volatile boolean done;
+        Throwable error;
+        
+        public GroupState(K key, GroupBySubscriber<K, ?, R> parent) {
+            this.key = key;
+            this.parent = parent;
+        }
+        
+        @Override
+        public void accept(Subscriber<? super R> s) {
+            if (UNSAFE.compareAndSwapObject(this, ACTUAL, null, s)) {
+                s.onSubscribe(this);
+                drain();
             } else {
-                q.add(item);
-                BUFFERED_COUNT.incrementAndGet(this);
-
-                if (groupState.count.getAndIncrement() == 0) {
-                    pollQueue(groupState);
-                }
+                AbstractSubscription.setEmptyOn(s);
+                s.onError(new IllegalStateException("Only one Subscriber allowed!"));
             }
-            requestMoreIfNecessary();
         }
-
-        private void pollQueue(GroupState<K, T> groupState) {
-            do {
-                drainIfPossible(groupState);
-                long c = groupState.count.decrementAndGet();
-                if (c > 1) {
-
-                    /*
-                     * Set down to 1 and then iterate again.
-                     * we lower it to 1 otherwise it could have grown very large while in the last poll loop
-                     * and then we can end up looping all those times again here before existing even once we've drained
-                     */
-                    groupState.count.set(1);
-                    // we now loop again, and if anything tries scheduling again after this it will increment and cause us to loop again after
-                }
-            } while (groupState.count.get() > 0);
+        
+        boolean once() {
+            return released == 0 && UNSAFE.compareAndSwapInt(this, RELEASED, 0, 1);
         }
-
-        private void requestMoreIfNecessary() {
-            if (REQUESTED.get(this) == 0 && terminated == 0) {
-                long toRequest = MAX_QUEUE_SIZE - BUFFERED_COUNT.get(this);
-                if (toRequest > 0 && REQUESTED.compareAndSet(this, 0, toRequest)) {
-                    request(toRequest);
-                }
+        
+        Queue<R> getOrCreateQueue() {
+            Queue<R> q = queue;
+            if (q == null) {
+                q = new SpscLinkedQueue<>();
+                UNSAFE.putOrderedObject(this, QUEUE, q);
             }
+            return q;
         }
-
-        private void drainIfPossible(GroupState<K, T> groupState) {
-            while (groupState.requested.get() > 0) {
-                Object t = groupState.buffer.poll();
-                if (t != null) {
-                    @SuppressWarnings("unchecked")
-                    Observer<Object> obs = (Observer<Object>)groupState.getObserver();
-                    nl.accept(obs, t);
-                    groupState.requested.decrementAndGet();
-                    BUFFERED_COUNT.decrementAndGet(this);
-
-                    // if we have used up all the events we requested from upstream then figure out what to ask for this time based on the empty space in the buffer
-                    requestMoreIfNecessary();
+        
+        void onNext(R value) {
+            if (wip == 0 && UNSAFE.compareAndSwapInt(this, WIP, 0, 1)) {
+                Subscriber<? super R> a = actual;
+                Queue<R> q = queue;
+                long r = requested;
+                if (a != null && r != 0L && !cancelled && (q == null || q.isEmpty())) {
+                    // fast path: no need to buffer
+                    a.onNext(value);
+                    if (r != Long.MAX_VALUE) {
+                        UNSAFE.getAndAddLong(this, REQUESTED, -1);
+                    }
+                    parent.replenish(1);
+                    if (UNSAFE.getAndAddInt(this, WIP, -1) == 1) {
+                        return;
+                    }
                 } else {
-                    // queue is empty break
+                    getOrCreateQueue().offer(value);
+                }
+                drainLoop();
+            } else {
+                getOrCreateQueue().offer(value);
+                drain();
+            }
+        }
+        
+        void onError(Throwable e) {
+            error = e;
+            done = true;
+            drain();
+        }
+        
+        void onComplete() {
+            done = true;
+            drain();
+        }
+        
+        @Override
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, actual)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            drain();
+        }
+        
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                parent.groupCancelled(this);
+                drain();
+            }
+        }
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) == 0) {
+                drainLoop();
+            }
+        }
+        
+        void drainLoop() {
+            int missed = 1;
+            for (;;) {
+                Subscriber<? super R> a = actual;
+                Queue<R> q = queue;
+                if (cancelled) {
+                    clear(q);
+                } else
+                if (a != null) {
+                    long r = requested;
+                    long e = 0L;
+                    while (e != r) {
+                        boolean d = done;
+                        R v = q != null ? q.poll() : null;
+                        boolean empty = v == null;
+                        if (checkTerminated(d, empty, a)) {
+                            return;
+                        }
+                        if (empty) {
+                            break;
+                        }
+                        a.onNext(v);
+                        e++;
+                    }
+                    if (e == r && checkTerminated(done, q == null || q.isEmpty(), a)) {
+                        return;
+                    }
+                    if (e != 0L) {
+                        if (r != Long.MAX_VALUE) {
+                            UNSAFE.getAndAddLong(this, REQUESTED, -e);
+                        }
+                        parent.replenish(e);
+                    }
+                }
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
                     break;
                 }
             }
         }
-
-        private void completeInner() {
-            // A group is removed, so check if we need to call `unsubscribe`
-            if (WIP_FOR_UNSUBSCRIBE_UPDATER.decrementAndGet(this) == 0) {
-                // It means `groups.isEmpty() && child.isUnsubscribed()` is true
-                unsubscribe();
-            } else if (groups.isEmpty() && terminated == TERMINATED_WITH_COMPLETED) {
-                // if we have no outstanding groups (all completed or unsubscribe) and terminated on outer
-                // completionEmitted ensures we only emit onComplete() once
-                if (COMPLETION_EMITTED_UPDATER.compareAndSet(this, 0, 1)) {
-                    child.onComplete();
+        
+        boolean checkTerminated(boolean d, boolean empty, Subscriber<? super R> a) {
+            if (cancelled) {
+                clear(queue);
+                return true;
+            }
+            if (d) {
+                Throwable e = error;
+                if (e != null) {
+                    clear(queue);
+                    a.onError(e);
+                    return true;
+                } else
+                if (empty) {
+                    a.onComplete();
+                    return true;
                 }
             }
+            return false;
         }
-
-    }
-
-    private final static Function<Object, Object> IDENTITY = new Function<Object, Object>() {
-        @Override
-        public Object call(Object t) {
-            return t;
+        
+        /** Drops the buffered items and gives them back to the shared budget. */
+        void clear(Queue<R> q) {
+            if (q != null) {
+                long c = 0L;
+                while (q.poll() != null) {
+                    c++;
+                }
+                if (c != 0L) {
+                    parent.replenish(c);
+                }
+            }
         }
-    };
+    }
+    
+    private final static Function<Object, Object> IDENTITY = t -> t;
 
     private static final Object NULL_KEY = new Object();
 }
@@ -16,10 +16,10 @@
 
 package rx.internal.operators;
 
+import java.util.Objects;
 import java.util.function.Function;
 
 import rx.Flow.Subscriber;
-import rx.Flow.Subscription;
 import rx.Observable.Operator;
 
 /**
@@ -32,30 +32,30 @@ public final class OperatorMap<T, R> implements Operator<R, T> {
     }
     @Override
     public Subscriber<? super T> apply(Subscriber<? super R> t) {
-        return new Subscriber<T>() {
-            @Override
-            public void onSubscribe(Subscription subscription) {
-                t.onSubscribe(subscription);
-            }
-            @Override
-            public void onNext(T item) {
-                R r;
-                try {
-                    r = function.apply(item);
-                } catch (Throwable e) {
-                    onError(e);
-                    return;
-                }
-                t.onNext(r);
-            }
-            @Override
-            public void onError(Throwable throwable) {
-                t.onError(throwable);
-            }
-            @Override
-            public void onComplete() {
-                t.onComplete();
+        return new MapSubscriber<>(t, function);
+    }
+    /** Applies the function in onNext or, if fused, inside poll(). */
+    static final class MapSubscriber<T, R> extends AbstractFuseableSubscriber<T, R> {
+        final Function<? super T, ? extends R> function;
+        public MapSubscriber(Subscriber<? super R> child, Function<? super T, ? extends R> function) {
+            super(child);
+            this.function = function;
+        }
+        @Override
+        public void onNext(T item) {
+            R r;
+            try {
+                r = function.apply(item);
+            } catch (Throwable e) {
+                onError(e);
+                return;
             }
-        };
+            child.onNext(r);
+        }
+        @Override
+        public R poll() {
+            T t = qs.poll();
+            return t != null ? Objects.requireNonNull(function.apply(t)) : null;
+        }
     }
 }
@@ -25,10 +25,10 @@ import rx.Flow.Subscriber;
 import rx.Flow.Subscription;
 import rx.Observable.Operator;
 import rx.Observable;
-import rx.disposables.*;
 import rx.exceptions.CompositeException;
 import rx.internal.*;
 import rx.internal.queues.*;
+import rx.internal.subscriptions.QueueSubscription;
 import rx.subscribers.AbstractSubscriber;
 
 /**
@@ -37,15 +37,16 @@ import rx.subscribers.AbstractSubscriber;
 public final class OperatorMerge<T> implements Operator<T, Observable<? extends T>> {
     final boolean delayErrors;
     final int maxConcurrent;
+    final int prefetch;
     /** Lazy initialization via inner-class holder. */
     private static final class HolderNoDelay {
         /** A singleton instance. */
-        static final OperatorMerge<Object> INSTANCE = new OperatorMerge<>(false, Integer.MAX_VALUE);
+        static final OperatorMerge<Object> INSTANCE = new OperatorMerge<>(false, Integer.MAX_VALUE, Flow.defaultBufferSize());
     }
     /** Lazy initialization via inner-class holder. */
     private static final class HolderDelayErrors {
         /** A singleton instance. */
-        static final OperatorMerge<Object> INSTANCE = new OperatorMerge<>(true, Integer.MAX_VALUE);
+        static final OperatorMerge<Object> INSTANCE = new OperatorMerge<>(true, Integer.MAX_VALUE, Flow.defaultBufferSize());
     }
 
     /**
@@ -61,47 +62,78 @@ public final class OperatorMerge<T> implements Operator<T, Observable<? extends
     }
     
     public static <T> OperatorMerge<T> instance(boolean delayErrors, int maxConcurrent) {
-        return new OperatorMerge<>(delayErrors, maxConcurrent);
+        return new OperatorMerge<>(delayErrors, maxConcurrent, Flow.defaultBufferSize());
     }
     
-    private OperatorMerge(boolean delayErrors, int maxConcurrent) {
+    /**
+     * @param delayErrors should the merge delay errors?
+     * @param maxConcurrent the maximum number of concurrently subscribed sources
+     * @param prefetch the number of items to prefetch and buffer from each source
+     * @return an instance of this operator with the given parameters
+     */
+    public static <T> OperatorMerge<T> instance(boolean delayErrors, int maxConcurrent, int prefetch) {
+        return new OperatorMerge<>(delayErrors, maxConcurrent, prefetch);
+    }
+    
+    private OperatorMerge(boolean delayErrors, int maxConcurrent, int prefetch) {
         this.delayErrors = delayErrors;
         this.maxConcurrent = maxConcurrent;
+        this.prefetch = prefetch;
     }
     @Override
     public Subscriber<? super Observable<? extends T>> apply(Subscriber<? super T> child) {
-        return new MergeSubscriber<>(child, delayErrors, maxConcurrent);
+        return new MergeSubscriber<>(child, delayErrors, maxConcurrent, prefetch);
     }
     /**
      * Subscriber receiving Observable sources and manages the backpressure-aware
      * emission of buffered values.
+     * <p>
+     * The inner subscribers are kept in a slot array: only the onNext thread adds
+     * (reusing the slots freed by the drain loop or growing the array) and only the
+     * drain loop removes, therefore neither needs locking. The drain loop resumes
+     * the round-robin from the slot it stopped at and emits as many items from an
+     * inner as possible before moving on to the next one. The requested amount is
+     * decremented once per drain pass, and that decrement is skipped when the
+     * downstream is unbounded. The inners are always replenished after their batch,
+     * in prefetch-sized batches, because their queues are bounded to the prefetch
+     * amount regardless of the downstream request.
      * 
      * @param <T> the value type to emit
      */
     static final class MergeSubscriber<T> extends AbstractSubscriber<Observable<? extends T>> implements Subscription {
-        /** Avoid allocating the empty array on drain. */
-        static final Object[] EMPTY = new Object[0];
+        /** The initial capacity of the slot array. */
+        static final int INITIAL_CAPACITY = 4;
         /** Indicates if errors should be delayed until all sources have produced. */
         final boolean delayErrors;
         /** The maximum number of simultaneous subscriptions to sources. */
         final int maxConcurrent;
+        /** The number of items prefetched by each inner subscriber. */
+        final int prefetch;
         /** The actual subscriber receiving the events. */
         final Subscriber<? super T> actual;
         /** Queue for errors. */
         final Queue<Throwable> errors;
-        /** The composite tracking all inner subscriptions. */
-        final CompositeDisposable composite;
-        /** Guarded by itself. */
-        final List<InnerSubscriber> subscribers;
+        /** The slots freed by the drain loop, reused by onNext. */
+        final Queue<Integer> freeSlots;
+        /** The inner subscribers which terminated, to be removed by the drain loop. */
+        final Queue<InnerSubscriber<T>> terminatedInners;
+        
+        /** The inner subscribers, indexed by their slot. Replaced only by onNext when growing. */
+        volatile InnerSubscriber<T>[] inners;
+        static final long INNERS = addressOf(MergeSubscriber.class, "inners");
+        
+        /** The number of slots ever used, updated after the slot has been written. */
+        volatile int slotCount;
+        static final long SLOT_COUNT = addressOf(MergeSubscriber.class, "slotCount");
+        
+        /** The number of inner subscribers not yet removed. */
+        volatile int active;
+        static final long ACTIVE = addressOf(MergeSubscriber.class, "active");
         
         /** Indicates the main source has completed. */
         volatile boolean done;
         
-        /** Guarded by this. */
-        boolean emitting;
-        /** Guarded by this. */
-        boolean missed;
-        /** The last buffer index in the round-robin drain scheme. Accessed while emitting == true. */
+        /** The slot index where the round-robin drain resumes. Accessed from the drain loop only. */
         int lastIndex;
         
         /** The queue holding the scalar values. */
@@ -112,21 +144,23 @@ public final class OperatorMerge<T> implements Operator<T, Observable<? extends
         volatile long requested;
         static final long REQUESTED = addressOf(MergeSubscriber.class, "requested");
         
-        /** Holds an unique index generated for new InnerSubscriptions. */
-        volatile long index;
-        static final long INDEX = addressOf(MergeSubscriber.class, "index");
+        /** The work-in-progress counter of the drain loop. */
+        volatile int wip;
+        static final long WIP = addressOf(MergeSubscriber.class, "wip");
         
-        public MergeSubscriber(Subscriber<? super T> actual, boolean delayErrors, int maxConcurrent) {
+        @SuppressWarnings("unchecked")
+        public MergeSubscriber(Subscriber<? super T> actual, boolean delayErrors, int maxConcurrent, int prefetch) {
             this.actual = actual;
             this.delayErrors = delayErrors;
             this.maxConcurrent = maxConcurrent;
+            this.prefetch = prefetch;
             this.errors = new MpscLinkedQueue<>();
-            this.composite = new CompositeDisposable();
-            this.subscribers = new ArrayList<>();
+            this.freeSlots = new SpscLinkedQueue<>();
+            this.terminatedInners = new MpscLinkedQueue<>();
+            UNSAFE.putOrderedObject(this, INNERS, new InnerSubscriber[INITIAL_CAPACITY]);
         }
         @Override
         public void onSubscribe() {
-            composite.add(Disposable.from(subscription));
             actual.onSubscribe(this);
             if (maxConcurrent == Integer.MAX_VALUE) {
                 subscription.request(Long.MAX_VALUE);
@@ -142,22 +176,69 @@ public final class OperatorMerge<T> implements Operator<T, Observable<? extends
                 return;
             }
             
-            if (item instanceof ScalarSynchronousObservable) {
-                T scalar = ((ScalarSynchronousObservable<? extends T>)item).get();
-                getScalarQueue().offer(scalar);
+            Object scalar = ScalarSource.scalarValueOf(item);
+            if (scalar != ScalarSource.NOT_SCALAR) {
+                if (scalar != null) {
+                    @SuppressWarnings("unchecked")
+                    T v = (T)scalar;
+                    getScalarQueue().offer(v);
+                }
                 if (maxConcurrent != Integer.MAX_VALUE) {
                     subscription.request(1);
                 }
+                drain();
             } else {
-                int index = UNSAFE.getAndAddInt(this, INDEX, 1);
-                InnerSubscriber inner = new InnerSubscriber(index);
-                synchronized (subscribers) {
-                    subscribers.add(inner);
+                InnerSubscriber<T> inner = new InnerSubscriber<>(this, prefetch);
+                if (addInner(inner)) {
+                    item.unsafeSubscribe(inner);
                 }
-                item.unsafeSubscribe(inner);
             }
-            
-            drain();
+        }
+        
+        /**
+         * Puts the inner subscriber into a free slot, growing the slot array if necessary.
+         * Called from onNext only.
+         * @param inner the inner subscriber to add
+         * @return false if the merge has been cancelled in the meantime
+         */
+        boolean addInner(InnerSubscriber<T> inner) {
+            UNSAFE.getAndAddInt(this, ACTIVE, 1);
+            InnerSubscriber<T>[] a = inners;
+            Integer free = freeSlots.poll();
+            if (free != null) {
+                int slot = free;
+                inner.slot = slot;
+                UNSAFE.putObjectVolatile(a, slotAddress(slot), inner);
+            } else {
+                int slot = slotCount;
+                if (slot == a.length) {
+                    a = grow(a);
+                }
+                inner.slot = slot;
+                UNSAFE.putObjectVolatile(a, slotAddress(slot), inner);
+                slotCount = slot + 1;
+            }
+            if (requested < 0) {
+                inner.cancel();
+                return false;
+            }
+            return true;
+        }
+        
+        /**
+         * Doubles the slot array and publishes it.
+         * <p>
+         * The drain loop may clear a slot of the old array concurrently, in which case the
+         * removed inner subscriber ends up in the new array as well; the drain loop
+         * recognizes and clears such stale entries.
+         * @param a the current slot array
+         * @return the new slot array
+         */
+        InnerSubscriber<T>[] grow(InnerSubscriber<T>[] a) {
+            int n = a.length;
+            InnerSubscriber<T>[] b = Arrays.copyOf(a, n << 1);
+            UNSAFE.putObjectVolatile(this, INNERS, b);
+            return b;
         }
         
         /** Returns or creates the queue to hold scalar values. */
@@ -202,43 +283,39 @@ public final class OperatorMerge<T> implements Operator<T, Observable<? extends
             if (r >= 0) {
                 r = UNSAFE.getAndSetLong(this, REQUESTED, Long.MIN_VALUE);
                 if (r >= 0) {
-                    synchronized (subscribers) {
-                        subscribers.clear();
+                    subscription.cancel();
+                    for (InnerSubscriber<T> inner : inners) {
+                        if (inner != null) {
+                            inner.cancel();
+                        }
                     }
-                    composite.dispose();
                     // release the scalar queue
                     UNSAFE.putOrderedObject(this, SCALAR_QUEUE, null);
                 }
             }
         }
 
-        void completeInner(InnerSubscriber inner) {
-            if (inner.queue.isEmpty()) {
-                removeInner(inner);
-            }
-            
-            if (maxConcurrent != Integer.MAX_VALUE) {
-                subscription.request(1);
-            }
+        void terminateInner(InnerSubscriber<T> inner) {
+            terminatedInners.offer(inner);
             drain();
         }
         
-        void removeInner(InnerSubscriber inner) {
-            synchronized (subscribers) {
-                subscribers.remove(inner);
-            }
-            composite.remove(inner.disposable);
+        void errorInner(InnerSubscriber<T> inner, Throwable error) {
+            errors.offer(error);
+            terminateInner(inner);
         }
         
-        void errorInner(InnerSubscriber inner, Throwable error) {
-            if (!delayErrors || inner.queue.isEmpty()) {
-                removeInner(inner);
-            }
-            errors.offer(error);
-            if (maxConcurrent != Integer.MAX_VALUE && delayErrors) {
-                subscription.request(1);
-            }
-            drain();
+        /**
+         * Clears the slot of the inner subscriber and frees it for reuse.
+         * Called from the drain loop only.
+         * @param inner the inner subscriber to remove
+         */
+        void removeInner(InnerSubscriber<T> inner) {
+            inner.removed = true;
+            long address = slotAddress(inner.slot);
+            UNSAFE.compareAndSwapObject(inners, address, inner, null);
+            freeSlots.offer(inner.slot);
+            UNSAFE.getAndAddInt(this, ACTIVE, -1);
         }
         
         long produced(long n) {
@@ -251,161 +328,199 @@ public final class OperatorMerge<T> implements Operator<T, Observable<? extends
         }
         
         void drain() {
-            synchronized (this) {
-                if (emitting) {
-                    missed = true;
-                    return;
-                }
-                emitting = true;
-                missed = false;
+            if (UNSAFE.getAndAddInt(this, WIP, 1) == 0) {
+                drainLoop();
             }
-            
-            final List<InnerSubscriber> list = this.subscribers;
+        }
+        
+        void drainLoop() {
             final Subscriber<? super T> child = this.actual;
-            Object[] active = EMPTY;
+            int missed = 1;
             
-            boolean skipFinal = false;
-            
-            try {
-                outer:
+            for (;;) {
+                if (checkTerminated(child)) {
+                    return;
+                }
+                int removed = 0;
+                
+                // remove the terminated inners without leftover items
                 for (;;) {
-                    long r = requested;
-                    if (r < 0) {
-                        skipFinal = true;
-                        return;
+                    InnerSubscriber<T> inner = terminatedInners.poll();
+                    if (inner == null) {
+                        break;
                     }
-                    if (!delayErrors && !errors.isEmpty()) {
-                        skipFinal = true;
-                        reportErrors(child);
-                        cancel();
-                        return;
+                    Queue<T> q = inner.queue;
+                    if (!inner.removed && (q == null || q.isEmpty())) {
+                        removeInner(inner);
+                        removed++;
                     }
-
-                    Queue<T> sq = scalarQueue;
-                    if (r > 0) {
-                        if (sq != null) {
-                            for (;;) {
-                                T v = sq.poll();
-                                if (v == null) {
-                                    break;
-                                }
-                                
-                                child.onNext(v);
-                                
-                                r = produced(1);
-                                if (r < 0) {
-                                    skipFinal = true;
-                                    return;
-                                } else
-                                if (r == 0) {
-                                    break;
-                                }
-                            }
+                }
+                
+                long r = requested;
+                boolean unbounded = r == Long.MAX_VALUE;
+                // the number of items emitted in this pass, subtracted from requested at the end
+                long emitted = 0L;
+                
+                Queue<T> sq = scalarQueue;
+                if (sq != null) {
+                    while (emitted != r) {
+                        T v = sq.poll();
+                        if (v == null) {
+                            break;
                         }
+                        child.onNext(v);
+                        emitted++;
                     }
-                    
-                    // get the list of active InnerSubscribers
-                    int size;
-                    synchronized (list) {
-                        size = list.size();
-                        if (active.length == size) {
-                            if (size > 0) {
-                                list.toArray(active);
-                            }
-                        } else {
-                            active = list.toArray();
-                        }
+                }
+                
+                // see if main is done and no more active InnerSubscribers
+                boolean d = done;
+                sq = scalarQueue;
+                if (d && active == 0 && (sq == null || sq.isEmpty())) {
+                    if (!errors.isEmpty()) {
+                        reportErrors(child);
+                    } else {
+                        child.onComplete();
                     }
-                    // see if main is done and no more active InnerSubscribers
-                    if  ((size == 0 && done && (sq == null || sq.isEmpty())) 
-                            || (!delayErrors && !errors.isEmpty())) {
-                        skipFinal = true;
-                        if (!errors.isEmpty()) {
-                            reportErrors(child);
-                        } else {
-                            child.onComplete();
-                        }
-                        cancel();
-                        return;
+                    cancel();
+                    return;
+                }
+                
+                int n = slotCount;
+                if (n != 0 && emitted != r) {
+                    InnerSubscriber<T>[] a = inners;
+                    int j = lastIndex;
+                    if (j >= n) {
+                        j = 0;
                     }
-                    
-                    if (r > 0 && size > 0) {
-                        int idx = lastIndex;
-
-                        // locate the inner subscriber to resume the round-robin
-                        int resumeIndex = 0;
-                        int j = 0;
-                        for (Object o : active) {
-                            @SuppressWarnings("unchecked")
-                            InnerSubscriber e = (InnerSubscriber)o;
-                            if (e.index == idx) {
-                                resumeIndex = j;
-                                break;
-                            }
-                            j++;
+                    for (int i = 0; i < n; i++) {
+                        if (checkTerminated(child)) {
+                            return;
                         }
-                        for (int i = 0; i < active.length; i++) {
-                            j = (i + resumeIndex) % active.length;
-                            
-                            @SuppressWarnings("unchecked")
-                            InnerSubscriber e = (InnerSubscriber)active[j];
-                            Queue<T> q = e.queue;
-                            lastIndex = e.index;
-
-                            // if drain to completion, ask for the next subscriber
-                            if (e.done && q.isEmpty()) {
-                                removeInner(e);
-                                if (maxConcurrent != Integer.MAX_VALUE) {
-                                    subscription.request(1);
+                        @SuppressWarnings("unchecked")
+                        InnerSubscriber<T> inner = (InnerSubscriber<T>)UNSAFE.getObjectVolatile(a, slotAddress(j));
+                        if (inner != null) {
+                            if (inner.removed) {
+                                // a stale copy left behind by a concurrent grow
+                                UNSAFE.compareAndSwapObject(a, slotAddress(j), inner, null);
+                            } else if (inner.fused != null) {
+                                emitted += drainFused(inner, child, r - emitted);
+                                if (inner.removed) {
+                                    removed++;
                                 }
-                                continue outer;
-                            }
-
-                            int consumed = 0;
-                            T v;
-                            while (r > 0 && (v = q.poll()) != null) {
-                                child.onNext(v);
-                                consumed++;
-                                r = produced(1);
-                            }
-                            if (r < 0) {
-                                skipFinal = true;
-                                return;
-                            }
-                            if (consumed > 0) {
-                                e.requestMore(consumed);
-                            }
-                            // if drain to completion, ask for the next subscriber
-                            if (e.done && q.isEmpty()) {
-                                removeInner(e);
-                                if (maxConcurrent != Integer.MAX_VALUE) {
-                                    subscription.request(1);
+                                if (emitted == r) {
+                                    break;
+                                }
+                            } else if (inner.queue != null) {
+                                Queue<T> q = inner.queue;
+                                int e = 0;
+                                boolean innerDone;
+                                for (;;) {
+                                    innerDone = inner.done;
+                                    if (emitted == r) {
+                                        break;
+                                    }
+                                    T v = q.poll();
+                                    if (v == null) {
+                                        break;
+                                    }
+                                    child.onNext(v);
+                                    emitted++;
+                                    e++;
+                                }
+                                // always replenish: the inner queue is bounded to prefetch even when unbounded
+                                if (e != 0) {
+                                    inner.replenish(e);
+                                }
+                                if (innerDone && q.isEmpty()) {
+                                    removeInner(inner);
+                                    removed++;
+                                }
+                                if (emitted == r) {
+                                    break;
                                 }
-                                continue outer;
-                            }
-                            
-                            if (r == 0) {
-                                break;
                             }
                         }
-                    }
-
-                    synchronized (this) {
-                        if (!missed) {
-                            skipFinal = true;
-                            emitting = false;
-                            break;
+                        if (++j == n) {
+                            j = 0;
                         }
-                        missed = false;
                     }
+                    lastIndex = j;
                 }
-            } finally {
-                if (!skipFinal) {
-                    synchronized (this) {
-                        emitting = false;
+                
+                // only the requested decrement is skipped for an unbounded downstream
+                if (emitted != 0L && !unbounded) {
+                    if (produced(emitted) < 0L) {
+                        return;
                     }
                 }
+                
+                if (removed != 0) {
+                    if (maxConcurrent != Integer.MAX_VALUE) {
+                        subscription.request(removed);
+                    }
+                    // the termination condition may have changed
+                    continue;
+                }
+                
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+        
+        /**
+         * Pulls values from an inner subscriber's fused source, at most the given amount,
+         * and removes the inner if the source has completed or failed.
+         * Called from the drain loop only.
+         * @param inner the fused inner subscriber
+         * @param child the child subscriber
+         * @param limit the maximum number of values to emit
+         * @return the number of values emitted
+         */
+        long drainFused(InnerSubscriber<T> inner, Subscriber<? super T> child, long limit) {
+            QueueSubscription<T> q = inner.fused;
+            long e = 0L;
+            boolean innerDone = false;
+            while (e != limit) {
+                T v;
+                try {
+                    v = q.poll();
+                } catch (Throwable ex) {
+                    inner.cancel();
+                    errors.offer(ex);
+                    innerDone = true;
+                    break;
+                }
+                if (v == null) {
+                    innerDone = true;
+                    break;
+                }
+                child.onNext(v);
+                e++;
+            }
+            if (innerDone || q.isEmpty()) {
+                removeInner(inner);
+            }
+            return e;
+        }
+        
+        /**
+         * Checks if the merge has been cancelled or should terminate eagerly with an error.
+         * @param child the child subscriber to report the errors to
+         * @return true if the drain loop should quit
+         */
+        boolean checkTerminated(Subscriber<? super T> child) {
+            if (requested < 0) {
+                return true;
+            }
+            if (!delayErrors && !errors.isEmpty()) {
+                reportErrors(child);
+                cancel();
+                return true;
             }
+            return false;
         }
         
         void reportErrors(final Subscriber<? super T> child) {
@@ -424,62 +539,137 @@ public final class OperatorMerge<T> implements Operator<T, Observable<? extends
             }
         }
         
-        /**
-         * Subscriber that is subscribed to each Observable received through oNext.
-         */
-        final class InnerSubscriber extends AbstractSubscriber<T> {
-            final SpscArrayQueue<T> queue;
-            final int index;
-            Disposable disposable;
-            volatile boolean done;
-            public InnerSubscriber(int index) {
-                this.index = index;
-                this.queue = new SpscArrayQueue<>(Flow.defaultBufferSize());
-            }
+        static final long ARRAY_BASE = UNSAFE.arrayBaseOffset(Object[].class);
+        static final int ARRAY_SHIFT = 31 - Integer.numberOfLeadingZeros(UNSAFE.arrayIndexScale(Object[].class));
+        
+        static long slotAddress(int slot) {
+            return ARRAY_BASE + ((long)slot << ARRAY_SHIFT);
+        }
+    }
+    
+    /**
+     * Subscriber that is subscribed to each Observable received through onNext.
+     *
+     * @param <T> the value type
+     */
+    static final class InnerSubscriber<T> implements Subscriber<T> {
+        final MergeSubscriber<T> parent;
+        /** The prefetch buffer, created in onSubscribe unless the source is fused. */
+        volatile SpscArrayQueue<T> queue;
+        /** The number of items to prefetch. */
+        final int prefetch;
+        /** The number of consumed items after which the inner replenishes. */
+        final int limit;
+        /** The number of consumed items not yet requested again. Accessed from the drain loop only. */
+        int consumed;
+        /** The source's queue view if synchronous fusion was established. */
+        volatile QueueSubscription<T> fused;
+        /** The slot index in the parent's array, set before the inner is published. */
+        int slot;
+        /** Indicates the inner has been removed. Accessed from the drain loop only. */
+        boolean removed;
+        volatile boolean done;
+        
+        volatile Subscription subscription;
+        static final long SUBSCRIPTION = addressOf(InnerSubscriber.class, "subscription");
+        
+        /** Indicates a cancelled inner subscriber. */
+        static final Subscription CANCELLED = new Subscription() {
             @Override
-            protected void onSubscribe() {
-                disposable = Disposable.from(subscription);
-                MergeSubscriber.this.composite.add(disposable);
-                subscription.request(Flow.defaultBufferSize());
+            public void request(long n) {
+                
             }
-            
-            void requestMore(long n) {
-                subscription.request(n);
-            }
-            
             @Override
-            public void onNext(T item) {
-                Conformance.itemNonNull(item);
-                Conformance.subscriptionNonNull(subscription);
-                if (done) {
-                    return;
-                }
-                if (!queue.offer(item)) {
-                    Conformance.mustRequestFirst(this);
-                }
-                drain();
+            public void cancel() {
+                
             }
-            @Override
-            public void onError(Throwable throwable) {
-                Conformance.throwableNonNull(throwable);
-                Conformance.subscriptionNonNull(subscription);
-                if (done) {
-                    return;
+        };
+        
+        public InnerSubscriber(MergeSubscriber<T> parent, int prefetch) {
+            this.parent = parent;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+        }
+        @SuppressWarnings("unchecked")
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            Conformance.subscriptionNonNull(subscription);
+            if (!UNSAFE.compareAndSwapObject(this, SUBSCRIPTION, null, subscription)) {
+                Subscription curr = this.subscription;
+                if (curr != CANCELLED) {
+                    Conformance.onSubscribeOnce(curr, this);
                 }
-                done = true;
                 subscription.cancel();
-                errorInner(this, throwable);
+                return;
             }
-            @Override
-            public void onComplete() {
-                Conformance.subscriptionNonNull(subscription);
-                if (done) {
+            if (subscription instanceof QueueSubscription) {
+                QueueSubscription<T> qs = (QueueSubscription<T>)subscription;
+                if (qs.requestFusion(QueueSubscription.SYNC) == QueueSubscription.SYNC) {
+                    fused = qs;
+                    parent.drain();
                     return;
                 }
-                done = true;
-                subscription.cancel();
-                completeInner(this);
             }
+            queue = new SpscArrayQueue<>(prefetch);
+            subscription.request(prefetch);
+        }
+        
+        /**
+         * Requests more once the number of consumed items reaches the limit.
+         * Called from the drain loop only.
+         * @param n the number of items just consumed
+         */
+        void replenish(int n) {
+            int c = consumed + n;
+            if (c >= limit) {
+                consumed = 0;
+                subscription.request(c);
+            } else {
+                consumed = c;
+            }
+        }
+        
+        void cancel() {
+            Subscription s = subscription;
+            if (s != CANCELLED) {
+                s = (Subscription)UNSAFE.getAndSetObject(this, SUBSCRIPTION, CANCELLED);
+                if (s != CANCELLED && s != null) {
+                    s.cancel();
+                }
+            }
+        }
+        
+        @Override
+        public void onNext(T item) {
+            Conformance.itemNonNull(item);
+            Conformance.subscriptionNonNull(subscription);
+            if (done) {
+                return;
+            }
+            if (!queue.offer(item)) {
+                Conformance.mustRequestFirst(this);
+                return;
+            }
+            parent.drain();
+        }
+        @Override
+        public void onError(Throwable throwable) {
+            Conformance.throwableNonNull(throwable);
+            Conformance.subscriptionNonNull(subscription);
+            if (done) {
+                return;
+            }
+            done = true;
+            parent.errorInner(this, throwable);
+        }
+        @Override
+        public void onComplete() {
+            Conformance.subscriptionNonNull(subscription);
+            if (done) {
+                return;
+            }
+            done = true;
+            parent.terminateInner(this);
         }
     }
 }
@@ -30,6 +30,7 @@ import rx.exceptions.MissingBackpressureException;
 import rx.internal.*;
 import rx.internal.queues.SpscArrayQueue;
 import rx.internal.schedulers.*;
+import rx.internal.subscriptions.QueueSubscription;
 import rx.schedulers.Scheduler;
 import rx.subscribers.AbstractSubscriber;
 
@@ -60,6 +61,8 @@ public final class OperatorObserveOn<T> implements Operator<T, T> {
         final NotificationLite<T> on = NotificationLite.instance();
 
         final Queue<Object> queue;
+        /** The upstream queue view if synchronous fusion was established, polled instead of the queue. */
+        QueueSubscription<T> fused;
         volatile boolean completed;
         volatile boolean failure;
 
@@ -84,8 +87,15 @@ public final class OperatorObserveOn<T> implements Operator<T, T> {
             this.scheduledUnsubscribe = new ScheduledUnsubscribe(recursiveScheduler);
         }
 
+        @SuppressWarnings("unchecked")
         @Override
         public void onSubscribe() {
+            if (subscription instanceof QueueSubscription) {
+                QueueSubscription<T> qs = (QueueSubscription<T>)subscription;
+                if (qs.requestFusion(QueueSubscription.SYNC | QueueSubscription.BOUNDARY) == QueueSubscription.SYNC) {
+                    fused = qs;
+                }
+            }
             child.onSubscribe(new Subscription() {
                 @Override
                 public void request(long n) {
@@ -98,8 +108,10 @@ public final class OperatorObserveOn<T> implements Operator<T, T> {
                     dispose();
                 }
             });
-            // signal that this is an async operator capable of receiving this many
-            subscription.request(Flow.defaultBufferSize());
+            if (fused == null) {
+                // signal that this is an async operator capable of receiving this many
+                subscription.request(Flow.defaultBufferSize());
+            }
         }
 
         void dispose() {
@@ -113,7 +125,6 @@ public final class OperatorObserveOn<T> implements Operator<T, T> {
             if (completed) {
                 return;
             }
-            System.out.println(t);
             if (!queue.offer(on.next(t))) {
                 onError(new MissingBackpressureException());
                 return;
@@ -142,8 +153,9 @@ public final class OperatorObserveOn<T> implements Operator<T, T> {
                 return;
             }
             error = e;
-            // unsubscribe eagerly since time will pass before the scheduled onError results in an unsubscribe event
-            dispose();
+            // cancel the upstream eagerly since time will pass before the scheduled onError is delivered;
+            // the worker has to stay alive for that delivery
+            subscription.cancel();
             // mark failure so the polling thread will skip onNext still in the queue
             completed = true;
             failure = true;
@@ -160,6 +172,10 @@ public final class OperatorObserveOn<T> implements Operator<T, T> {
 
         // only execute this from schedule()
         void pollQueue() {
+            if (fused != null) {
+                pollFused();
+                return;
+            }
             int emitted = 0;
             do {
                 /*
@@ -212,6 +228,51 @@ public final class OperatorObserveOn<T> implements Operator<T, T> {
                 subscription.request(emitted);
             }
         }
+        
+        /**
+         * Pulls the values from the fused upstream directly. Fusion is requested
+         * with the boundary flag, so only plain sources (no user code) end up polled
+         * on this worker. Only execute this from schedule().
+         */
+        void pollFused() {
+            final QueueSubscription<T> q = fused;
+            final Subscriber<? super T> child = this.child;
+            do {
+                counter = 1;
+                
+                long r = requested;
+                long e = 0L;
+                while (e != r) {
+                    if (scheduledUnsubscribe.isDisposed()) {
+                        return;
+                    }
+                    T v;
+                    try {
+                        v = q.poll();
+                    } catch (Throwable ex) {
+                        dispose();
+                        child.onError(ex);
+                        return;
+                    }
+                    if (v == null) {
+                        child.onComplete();
+                        return;
+                    }
+                    child.onNext(v);
+                    e++;
+                }
+                if (scheduledUnsubscribe.isDisposed()) {
+                    return;
+                }
+                if (q.isEmpty()) {
+                    child.onComplete();
+                    return;
+                }
+                if (e != 0L) {
+                    REQUESTED.addAndGet(this, -e);
+                }
+            } while (COUNTER_UPDATER.decrementAndGet(this) > 0);
+        }
     }
 
     static final class ScheduledUnsubscribe implements Disposable {
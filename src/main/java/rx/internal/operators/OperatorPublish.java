@@ -26,7 +26,7 @@ import rx.disposables.Disposable;
 import rx.exceptions.Exceptions;
 import rx.internal.*;
 import rx.internal.queues.SpscArrayQueue;
-import rx.internal.subscriptions.DelayedSubscription;
+import rx.internal.subscriptions.*;
 import rx.observables.ConnectableObservable;
 import rx.subscribers.*;
 
@@ -186,6 +186,8 @@ public final class OperatorPublish<T> extends ConnectableObservable<T> {
         final NotificationLite<T> nl;
         final SpscArrayQueue<T> queue;
         final PublishSubscriptionManager<T> psm;
+        /** The upstream queue view if synchronous fusion was established, used instead of the queue. */
+        volatile QueueSubscription<T> fused;
 
         /** Guarded by the parent OperatorPublish, set to true on the first attempt to connect an unconnected subscriber. */
         volatile boolean connecting;
@@ -230,9 +232,76 @@ public final class OperatorPublish<T> extends ConnectableObservable<T> {
                 return;
             }
             
+            if (s instanceof QueueSubscription) {
+                @SuppressWarnings("unchecked")
+                QueueSubscription<T> qs = (QueueSubscription<T>)s;
+                if (qs.requestFusion(QueueSubscription.SYNC | QueueSubscription.BOUNDARY) == QueueSubscription.SYNC) {
+                    fused = qs;
+                    connected = true;
+                    dispatch();
+                    return;
+                }
+            }
+            
             connected = true;
             s.request(Flow.defaultBufferSize());
         }
+        
+        /**
+         * Checks if the queue or the fused upstream is empty; an empty fused
+         * upstream means it has completed.
+         * @return true if there are no values to dispatch
+         */
+        boolean isQueueEmpty() {
+            QueueSubscription<T> qs = fused;
+            if (qs != null) {
+                if (qs.isEmpty()) {
+                    if (!done) {
+                        psm.soTerminal(nl.complete());
+                        done = true;
+                    }
+                    return true;
+                }
+                return false;
+            }
+            return queue.isEmpty();
+        }
+        
+        /**
+         * Polls the queue or the fused upstream; a null or an exception from
+         * the fused upstream is turned into the terminal event.
+         * @return the next value or null if none
+         */
+        T pollQueue() {
+            QueueSubscription<T> qs = fused;
+            if (qs != null) {
+                if (done) {
+                    return null;
+                }
+                T v;
+                try {
+                    v = qs.poll();
+                } catch (Throwable ex) {
+                    psm.soTerminal(nl.error(ex));
+                    done = true;
+                    dispose();
+                    return null;
+                }
+                if (v == null) {
+                    psm.soTerminal(nl.complete());
+                    done = true;
+                }
+                return v;
+            }
+            return queue.poll();
+        }
+        
+        /** Requests more from the upstream unless the values are polled from it. */
+        void replenish(long n) {
+            if (fused == null) {
+                subscription.request(n);
+            }
+        }
         @Override
         public void onNext(T item) {
             Conformance.itemNonNull(item);
@@ -285,7 +354,7 @@ public final class OperatorPublish<T> extends ConnectableObservable<T> {
 
                     for (;;) {
                         
-                        boolean empty = queue.isEmpty();
+                        boolean empty = isQueueEmpty();
                         if (canTerminate(psm.terminal, empty)) {
                             skipFinal = true;
                             return;
@@ -314,19 +383,19 @@ public final class OperatorPublish<T> extends ConnectableObservable<T> {
                             
                             if (ignore == len) {
                                 // no one is interested yet/anymore, drop the value
-                                queue.poll();
+                                empty = pollQueue() == null;
                                 // eagerly check terminal state
                                 if (canTerminate(psm.terminal, empty)) {
                                     skipFinal = true;
                                     return;
                                 }
                                 // request a replacement
-                                subscription.request(1);
+                                replenish(1);
                             } else {
                                 // there are interested parties,
                                 long d = 0;
                                 while (d < maxRequested) {
-                                    T v = queue.poll();
+                                    T v = pollQueue();
                                     empty = v == null;
                                     if (canTerminate(psm.terminal, empty)) {
                                         skipFinal = true;
@@ -351,7 +420,7 @@ public final class OperatorPublish<T> extends ConnectableObservable<T> {
                                 }
                                 // replenish from the source
                                 if (d > 0) {
-                                    subscription.request(d);
+                                    replenish(d);
                                 }
                                 if (maxRequested == 0 || empty) {
                                     break;
@@ -397,7 +466,11 @@ public final class OperatorPublish<T> extends ConnectableObservable<T> {
                         return true;
                     }
                 } else {
-                    queue.clear();
+                    if (fused != null) {
+                        fused.clear();
+                    } else {
+                        queue.clear();
+                    }
                     Throwable t = nl.getError(term);
                     for (InnerSubscription<T> s : psm.getAndTerminate()) {
                         s.errorFinal(t);
@@ -15,20 +15,27 @@
  */
 package rx.internal.operators;
 
+import static rx.internal.UnsafeAccess.*;
+
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
 import rx.Observable.Operator;
-import rx.Scheduler;
-import rx.Scheduler.Worker;
-import rx.Subscriber;
-import rx.functions.Action0;
-import rx.observers.SerializedSubscriber;
+import rx.internal.*;
+import rx.schedulers.Scheduler;
+import rx.subscribers.AbstractSubscriber;
 
 /**
  * Returns an Observable that emits the results of sampling the items emitted by the source
  * Observable at a specified time interval.
  * <p>
  * <img width="640" src="https://github.com/ReactiveX/RxJava/wiki/images/rx-operators/sample.png" alt="">
+ * <p>
+ * Instead of a periodic task, each subscriber has a single timer task which is armed for the next
+ * sampling instant by the first item after an emission, so an idle source costs no timer activity.
+ * The sampling instants stay aligned to the period measured from the subscription. A sample the
+ * downstream hasn't requested yet is kept and emitted upon request, unless a newer item replaces it.
  * 
  * @param <T> the value type
  */
@@ -44,66 +51,172 @@ public final class OperatorSampleWithTime<T> implements Operator<T, T> {
     }
 
     @Override
-    public Subscriber<? super T> call(Subscriber<? super T> child) {
-        final SerializedSubscriber<T> s = new SerializedSubscriber<T>(child);
-        final Worker worker = scheduler.createWorker();
-        child.add(worker);
-        
-        SamplerSubscriber<T> sampler = new SamplerSubscriber<T>(s);
-        child.add(sampler);
-        worker.schedulePeriodically(sampler, time, time, unit);
-
-        return sampler;
+    public Subscriber<? super T> apply(Subscriber<? super T> child) {
+        return new SamplerSubscriber<>(child, unit.toNanos(time), scheduler.createWorker());
     }
     /**
      * The source subscriber and sampler.
      */
-    static final class SamplerSubscriber<T> extends Subscriber<T> implements Action0 {
-        private final Subscriber<? super T> subscriber;
-        /** Indicates that no value is available. */
-        private static final Object EMPTY_TOKEN = new Object();
-        /** The shared value between the observer and the timed action. */
-        volatile Object value = EMPTY_TOKEN;
-        /** Updater for the value field. */
-        @SuppressWarnings("rawtypes")
-        static final AtomicReferenceFieldUpdater<SamplerSubscriber, Object> VALUE_UPDATER
-                = AtomicReferenceFieldUpdater.newUpdater(SamplerSubscriber.class, Object.class, "value");
-        public SamplerSubscriber(Subscriber<? super T> subscriber) {
-            this.subscriber = subscriber;
+    static final class SamplerSubscriber<T> extends AbstractSubscriber<T> implements Subscription, Runnable {
+        final Subscriber<? super T> child;
+        final long periodNanos;
+        final Scheduler.Worker worker;
+        /** The start of the sampling period, in nanoseconds of the worker's clock. */
+        final long start;
+        
+        /** The latest item not yet sampled, swapped in by the source and taken by the drain loop. */
+        volatile Object latest;
+        static final long LATEST = addressOf(SamplerSubscriber.class, "latest");
+        
+        /** Set by the timer when a sampling instant passed. */
+        volatile boolean due;
+        
+        /** 1 while the timer task is scheduled or running. */
+        volatile int armed;
+        static final long ARMED = addressOf(SamplerSubscriber.class, "armed");
+        
+        /** Written before done is set. */
+        Throwable error;
+        volatile boolean done;
+        
+        volatile boolean cancelled;
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(SamplerSubscriber.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(SamplerSubscriber.class, "wip");
+        
+        public SamplerSubscriber(Subscriber<? super T> child, long periodNanos, Scheduler.Worker worker) {
+            this.child = child;
+            this.periodNanos = periodNanos;
+            this.worker = worker;
+            this.start = now();
         }
         
         @Override
-        public void onStart() {
-            request(Long.MAX_VALUE);
+        protected void onSubscribe() {
+            child.onSubscribe(this);
+            subscription.request(Long.MAX_VALUE);
+        }
+        
+        long now() {
+            return TimeUnit.MILLISECONDS.toNanos(worker.now());
+        }
+        
+        /** Schedules the timer task for the next sampling instant. */
+        void arm() {
+            long elapsed = Math.max(0L, now() - start);
+            long delay = periodNanos - (periodNanos == 0L ? 0L : elapsed % periodNanos);
+            worker.schedule(this, delay, TimeUnit.NANOSECONDS);
         }
         
         @Override
         public void onNext(T t) {
-            value = t;
+            if (done) {
+                return;
+            }
+            UNSAFE.getAndSetObject(this, LATEST, t);
+            if (armed == 0 && UNSAFE.compareAndSwapInt(this, ARMED, 0, 1)) {
+                arm();
+            }
         }
 
         @Override
         public void onError(Throwable e) {
-            subscriber.onError(e);
-            unsubscribe();
+            if (done) {
+                return;
+            }
+            error = e;
+            done = true;
+            worker.dispose();
+            drain();
         }
 
         @Override
         public void onComplete() {
-            subscriber.onComplete();
-            unsubscribe();
+            if (done) {
+                return;
+            }
+            done = true;
+            worker.dispose();
+            drain();
         }
 
+        /** The timer task. */
+        @Override
+        public void run() {
+            if (cancelled || done) {
+                return;
+            }
+            due = true;
+            drain();
+            
+            armed = 0;
+            // an item which arrived since the sample was taken saw the timer armed and didn't schedule
+            if (latest != null && UNSAFE.compareAndSwapInt(this, ARMED, 0, 1)) {
+                arm();
+            }
+        }
+        
+        @Override
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            drain();
+        }
+        
         @Override
-        public void call() {
-            Object localValue = VALUE_UPDATER.getAndSet(this, EMPTY_TOKEN);
-            if (localValue != EMPTY_TOKEN) {
-                try {
-                    @SuppressWarnings("unchecked")
-                    T v = (T)localValue;
-                    subscriber.onNext(v);
-                } catch (Throwable e) {
-                    onError(e);
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                subscription.cancel();
+                worker.dispose();
+            }
+        }
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) != 0) {
+                return;
+            }
+            int missed = 1;
+            final Subscriber<? super T> c = child;
+            for (;;) {
+                if (cancelled) {
+                    latest = null;
+                    return;
+                }
+                if (done) {
+                    latest = null;
+                    Throwable ex = error;
+                    if (ex != null) {
+                        c.onError(ex);
+                    } else {
+                        c.onComplete();
+                    }
+                    return;
+                }
+                if (due) {
+                    long r = requested;
+                    if (r != 0L) {
+                        due = false;
+                        Object v = UNSAFE.getAndSetObject(this, LATEST, null);
+                        if (v != null) {
+                            @SuppressWarnings("unchecked")
+                            T t = (T)v;
+                            c.onNext(t);
+                            if (r != Long.MAX_VALUE) {
+                                UNSAFE.getAndAddLong(this, REQUESTED, -1);
+                            }
+                        }
+                    }
+                }
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
                 }
             }
         }
@@ -15,19 +15,21 @@
  */
 package rx.internal.operators;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
 import java.util.concurrent.TimeUnit;
 
+import rx.Flow.Subscriber;
 import rx.Observable.Operator;
-import rx.Scheduler;
-import rx.Subscriber;
-import rx.schedulers.Timestamped;
+import rx.internal.queues.TimedRingBuffer;
+import rx.schedulers.Scheduler;
+import rx.subscribers.AbstractSubscriber;
 
 /**
  * Skip delivering values in the time window before the values.
+ * <p>
+ * The items are kept in a {@link TimedRingBuffer} and the ones leaving the window are located
+ * by a binary search on their timestamps.
  */
-public class OperatorSkipLastTimed<T> implements Operator<T, T> {
+public final class OperatorSkipLastTimed<T> implements Operator<T, T> {
 
     private final long timeInMillis;
     private final Scheduler scheduler;
@@ -38,21 +40,20 @@ public class OperatorSkipLastTimed<T> implements Operator<T, T> {
     }
 
     @Override
-    public Subscriber<? super T> call(final Subscriber<? super T> subscriber) {
-        return new Subscriber<T>(subscriber) {
+    public Subscriber<? super T> apply(final Subscriber<? super T> subscriber) {
+        return new AbstractSubscriber<T>() {
 
-            private Deque<Timestamped<T>> buffer = new ArrayDeque<Timestamped<T>>();
+            final TimedRingBuffer<T> buffer = new TimedRingBuffer<>(16);
+            
+            @Override
+            protected void onSubscribe() {
+                subscriber.onSubscribe(subscription);
+            }
 
             private void emitItemsOutOfWindow(long now) {
-                long limit = now - timeInMillis;
-                while (!buffer.isEmpty()) {
-                    Timestamped<T> v = buffer.getFirst();
-                    if (v.getTimestampMillis() < limit) {
-                        buffer.removeFirst();
-                        subscriber.onNext(v.getValue());
-                    } else {
-                        break;
-                    }
+                TimedRingBuffer<T> b = buffer;
+                for (int n = b.search(now - timeInMillis); n > 0; n--) {
+                    subscriber.onNext(b.poll());
                 }
             }
 
@@ -60,17 +61,19 @@ public class OperatorSkipLastTimed<T> implements Operator<T, T> {
             public void onNext(T value) {
                 long now = scheduler.now();
                 emitItemsOutOfWindow(now);
-                buffer.offerLast(new Timestamped<T>(now, value));
+                buffer.offer(now, value);
             }
 
             @Override
             public void onError(Throwable e) {
+                buffer.clear();
                 subscriber.onError(e);
             }
 
             @Override
             public void onComplete() {
                 emitItemsOutOfWindow(scheduler.now());
+                buffer.clear();
                 subscriber.onComplete();
             }
 
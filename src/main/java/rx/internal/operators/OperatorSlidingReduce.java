@@ -0,0 +1,270 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.Observable.Operator;
+import rx.exceptions.*;
+import rx.internal.*;
+import rx.internal.subscriptions.AbstractSubscription;
+import rx.subscribers.AbstractSubscriber;
+
+/**
+ * Emits the aggregate of each window of {@code size} items, opening a new window every {@code skip}
+ * items, without materializing the windows.
+ * <p>
+ * The items of the overlapping windows live in a single {@link SlidingAggregator}: an item is pushed once
+ * and evicted once, so the cost per item doesn't depend on how much the windows overlap. When the source
+ * completes, the aggregates of the still open, partial windows are emitted in their opening order.
+ * <p>
+ * Each downstream request of {@code n} aggregates is translated into a request of the items needed to
+ * fill that many windows.
+ * 
+ * @param <T> the source value type
+ * @param <R> the aggregate type
+ */
+public final class OperatorSlidingReduce<T, R> implements Operator<R, T> {
+    final int size;
+    final int skip;
+    final Supplier<? extends SlidingAggregator<? super T, ? extends R>> aggregatorSupplier;
+
+    public OperatorSlidingReduce(int size, int skip, 
+            Supplier<? extends SlidingAggregator<? super T, ? extends R>> aggregatorSupplier) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be greater than 0");
+        }
+        if (skip <= 0) {
+            throw new IllegalArgumentException("skip must be greater than 0");
+        }
+        this.size = size;
+        this.skip = skip;
+        this.aggregatorSupplier = Objects.requireNonNull(aggregatorSupplier);
+    }
+
+    @Override
+    public Subscriber<? super T> apply(Subscriber<? super R> child) {
+        SlidingAggregator<? super T, ? extends R> aggregator;
+        try {
+            aggregator = Objects.requireNonNull(aggregatorSupplier.get(), "The aggregatorSupplier returned null");
+        } catch (Throwable e) {
+            AbstractSubscription.setEmptyOn(child);
+            child.onError(e);
+            return AbstractSubscriber.cancelled();
+        }
+        return new SlidingSubscriber<>(child, size, skip, aggregator);
+    }
+    
+    static final class SlidingSubscriber<T, R> extends AbstractSubscriber<T> implements Subscription {
+        final Subscriber<? super R> child;
+        final int size;
+        final int skip;
+        final SlidingAggregator<? super T, ? extends R> aggregator;
+        /** The aggregates of the partial windows, written before complete is set. */
+        final ArrayDeque<R> tail;
+        
+        /** The number of items still to drop before the next window opens if skip &gt; size. */
+        int gap;
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(SlidingSubscriber.class, "requested");
+        
+        volatile int once;
+        static final long ONCE = addressOf(SlidingSubscriber.class, "once");
+        
+        volatile int wip;
+        static final long WIP = addressOf(SlidingSubscriber.class, "wip");
+        
+        volatile boolean done;
+        /** Set when the source completed normally and the tail can be drained. */
+        volatile boolean complete;
+        
+        volatile boolean cancelled;
+        
+        public SlidingSubscriber(Subscriber<? super R> child, int size, int skip, 
+                SlidingAggregator<? super T, ? extends R> aggregator) {
+            this.child = child;
+            this.size = size;
+            this.skip = skip;
+            this.aggregator = aggregator;
+            this.tail = new ArrayDeque<>();
+        }
+        
+        @Override
+        protected void onSubscribe() {
+            child.onSubscribe(this);
+        }
+        
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                return;
+            }
+            if (gap != 0) {
+                gap--;
+                return;
+            }
+            final SlidingAggregator<? super T, ? extends R> a = aggregator;
+            R v;
+            try {
+                a.push(item);
+                if (a.size() != size) {
+                    return;
+                }
+                v = a.result();
+                // drop the items the next window doesn't share
+                for (int i = Math.min(skip, size); i != 0; i--) {
+                    a.evict();
+                }
+            } catch (Throwable e) {
+                fail(OnErrorThrowable.addValueAsLastCause(e, item));
+                return;
+            }
+            gap = Math.max(skip - size, 0);
+            
+            long r = requested;
+            if (r == 0L) {
+                fail(new MissingBackpressureException("Could not emit the aggregate due to lack of requests"));
+                return;
+            }
+            if (r != Long.MAX_VALUE) {
+                UNSAFE.getAndAddLong(this, REQUESTED, -1);
+            }
+            child.onNext(v);
+        }
+        
+        void fail(Throwable e) {
+            done = true;
+            subscription.cancel();
+            aggregator.clear();
+            child.onError(e);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            aggregator.clear();
+            child.onError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            final SlidingAggregator<? super T, ? extends R> a = aggregator;
+            final ArrayDeque<R> q = tail;
+            try {
+                while (a.size() != 0) {
+                    q.offer(a.result());
+                    for (int i = Math.min(skip, a.size()); i != 0; i--) {
+                        a.evict();
+                    }
+                }
+            } catch (Throwable e) {
+                q.clear();
+                fail(e);
+                return;
+            }
+            done = true;
+            complete = true;
+            drain();
+        }
+        
+        @Override
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            if (complete) {
+                drain();
+                return;
+            }
+            long u;
+            if (n == Long.MAX_VALUE) {
+                u = Long.MAX_VALUE;
+            } else
+            if (once == 0 && UNSAFE.compareAndSwapInt(this, ONCE, 0, 1)) {
+                // the first window needs size items, each further window needs skip more
+                u = BackpressureUtils.addCap(size, BackpressureUtils.multiplyCap(skip, n - 1));
+            } else {
+                u = BackpressureUtils.multiplyCap(skip, n);
+            }
+            subscription.request(u);
+        }
+        
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                subscription.cancel();
+                drain();
+            }
+        }
+        
+        void drain() {
+            if (!complete || UNSAFE.getAndAddInt(this, WIP, 1) != 0) {
+                return;
+            }
+            int missed = 1;
+            final Subscriber<? super R> c = child;
+            final ArrayDeque<R> q = tail;
+            for (;;) {
+                if (cancelled) {
+                    q.clear();
+                    return;
+                }
+                long r = requested;
+                long e = 0L;
+                while (e != r) {
+                    R v = q.poll();
+                    if (v == null) {
+                        break;
+                    }
+                    c.onNext(v);
+                    if (cancelled) {
+                        q.clear();
+                        return;
+                    }
+                    e++;
+                }
+                if (q.isEmpty()) {
+                    // leaves wip non-zero so nothing is drained afterwards
+                    c.onComplete();
+                    return;
+                }
+                if (e != 0L && r != Long.MAX_VALUE) {
+                    UNSAFE.getAndAddLong(this, REQUESTED, -e);
+                }
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import rx.Flow.Subscriber;
+import rx.Observable.Operator;
+import rx.internal.subscriptions.AbstractSubscription;
+import rx.schedulers.Scheduler;
+import rx.subscribers.AbstractSubscriber;
+
+/**
+ * Emits the aggregate of each time window of length {@code timespan}, opening a new window every
+ * {@code timeshift}, without materializing the windows.
+ * <p>
+ * Each subscriber is driven by a single re-armed timer task (see {@link TimedDrainSubscriber}). The items of the
+ * overlapping windows live in a single {@link SlidingAggregator}; alongside it, the number of items
+ * received between consecutive handled ticks is kept in a ring so closing a window evicts exactly the items
+ * received before the window opened. The aggregate of a window without items is the identity.
+ * 
+ * @param <T> the source value type
+ * @param <R> the aggregate type
+ */
+public final class OperatorSlidingReduceTimed<T, R> implements Operator<R, T> {
+    final long timespan;
+    final long timeshift;
+    final TimeUnit unit;
+    final Scheduler scheduler;
+    final Supplier<? extends SlidingAggregator<? super T, ? extends R>> aggregatorSupplier;
+
+    public OperatorSlidingReduceTimed(long timespan, long timeshift, TimeUnit unit, Scheduler scheduler,
+            Supplier<? extends SlidingAggregator<? super T, ? extends R>> aggregatorSupplier) {
+        if (timespan <= 0) {
+            throw new IllegalArgumentException("timespan must be greater than 0");
+        }
+        if (timeshift <= 0) {
+            throw new IllegalArgumentException("timeshift must be greater than 0");
+        }
+        this.timespan = timespan;
+        this.timeshift = timeshift;
+        this.unit = Objects.requireNonNull(unit);
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.aggregatorSupplier = Objects.requireNonNull(aggregatorSupplier);
+    }
+
+    @Override
+    public Subscriber<? super T> apply(Subscriber<? super R> child) {
+        SlidingAggregator<? super T, ? extends R> aggregator;
+        try {
+            aggregator = Objects.requireNonNull(aggregatorSupplier.get(), "The aggregatorSupplier returned null");
+        } catch (Throwable e) {
+            AbstractSubscription.setEmptyOn(child);
+            child.onError(e);
+            return AbstractSubscriber.cancelled();
+        }
+        return new TimedSlidingSubscriber<>(child, timespan, timeshift, unit, scheduler.createWorker(), aggregator);
+    }
+    
+    static final class TimedSlidingSubscriber<T, R> extends TimedDrainSubscriber<T, R> {
+        final SlidingAggregator<? super T, ? extends R> aggregator;
+        
+        /** The tick numbers which had items, oldest first, accessed from the drain loop only. */
+        long[] tagTicks;
+        /** The number of items received after the tick of the same slot. */
+        int[] tagCounts;
+        int tagHead;
+        int tagTail;
+        /** The number of items received since the last tick, accessed from the drain loop only. */
+        int pending;
+        
+        public TimedSlidingSubscriber(Subscriber<? super R> child, long timespan, long timeshift, TimeUnit unit,
+                Scheduler.Worker worker, SlidingAggregator<? super T, ? extends R> aggregator) {
+            super(child, timespan, timeshift, unit, worker);
+            this.aggregator = aggregator;
+            this.tagTicks = new long[SlidingAggregator.INITIAL_CAPACITY];
+            this.tagCounts = new int[SlidingAggregator.INITIAL_CAPACITY];
+        }
+        
+        @Override
+        void tick(long k) {
+            try {
+                flushPending(k - 1);
+                // the window opened at tick s closes now
+                long s = k - spanTicks;
+                if (s >= 0L && s % shiftTicks == 0L) {
+                    emitFrom(s);
+                }
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+        
+        @Override
+        void add(T item) {
+            // items received in the gap between windows belong to none of them
+            if (processed % shiftTicks < spanTicks) {
+                try {
+                    aggregator.push(item);
+                } catch (Throwable e) {
+                    fail(e);
+                    return;
+                }
+                pending++;
+            }
+        }
+        
+        @Override
+        void closeAll() {
+            long k = processed;
+            try {
+                flushPending(k);
+                // emit the open windows in their opening order
+                long w = k < spanTicks ? 0L : (k - spanTicks) / shiftTicks + 1;
+                long last = k / shiftTicks;
+                for (; w <= last; w++) {
+                    emitFrom(w * shiftTicks);
+                    if (stopped) {
+                        return;
+                    }
+                }
+            } catch (Throwable e) {
+                fail(e);
+            }
+        }
+        
+        @Override
+        void errorAll(Throwable e) {
+            clearAll();
+        }
+        
+        @Override
+        void clearAll() {
+            aggregator.clear();
+            tagHead = 0;
+            tagTail = 0;
+            pending = 0;
+        }
+        
+        /** Records the items received after tick k, if any. */
+        void flushPending(long k) {
+            int p = pending;
+            if (p != 0) {
+                pending = 0;
+                int t = tagTail;
+                if (t == tagTicks.length) {
+                    compactTags();
+                    t = tagTail;
+                }
+                tagTicks[t] = k;
+                tagCounts[t] = p;
+                tagTail = t + 1;
+            }
+        }
+        
+        void compactTags() {
+            int h = tagHead;
+            int n = tagTail - h;
+            long[] a = tagTicks;
+            int[] b = tagCounts;
+            if (n > (a.length >> 1)) {
+                a = Arrays.copyOf(a, SlidingAggregator.grow(a.length));
+                b = Arrays.copyOf(b, a.length);
+            }
+            System.arraycopy(tagTicks, h, a, 0, n);
+            System.arraycopy(tagCounts, h, b, 0, n);
+            tagTicks = a;
+            tagCounts = b;
+            tagHead = 0;
+            tagTail = n;
+        }
+        
+        /** Evicts the items received before tick s and emits the aggregate of the rest. */
+        void emitFrom(long s) {
+            final SlidingAggregator<? super T, ? extends R> a = aggregator;
+            int h = tagHead;
+            int t = tagTail;
+            while (h != t && tagTicks[h] < s) {
+                for (int i = tagCounts[h]; i != 0; i--) {
+                    a.evict();
+                }
+                h++;
+            }
+            tagHead = h;
+            R v = a.result();
+            if (produced()) {
+                child.onNext(v);
+            }
+        }
+    }
+}
@@ -15,21 +15,33 @@
  */
 package rx.internal.operators;
 
-import java.util.ArrayList;
-import java.util.List;
+import static rx.internal.UnsafeAccess.*;
 
+import java.util.Queue;
+
+import rx.Flow;
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
 import rx.Observable;
 import rx.Observable.Operator;
-import rx.Producer;
-import rx.Subscriber;
-import rx.observers.SerializedSubscriber;
-import rx.subscriptions.SerialSubscription;
+import rx.exceptions.MissingBackpressureException;
+import rx.internal.*;
+import rx.internal.queues.SpscArrayQueue;
+import rx.subscribers.AbstractSubscriber;
 
 /**
  * Transforms an Observable that emits Observables into a single Observable that
  * emits the items emitted by the most recently published of those Observables.
  * <p>
  * <img width="640" src="https://github.com/ReactiveX/RxJava/wiki/images/rx-operators/switchDo.png" alt="">
+ * <p>
+ * Each inner Observable gets a monotonically increasing index; signals of an inner whose index is no
+ * longer the latest are dropped. Switching swaps the active inner atomically and cancels the previous
+ * one without locking. An inner emits directly if the downstream can take the item right away and
+ * lazily creates a small single-producer single-consumer buffer otherwise.
+ * <p>
+ * Inner {@link ScalarSource}s are not subscribed to: switching to one cancels the previous inner and
+ * emits its value directly, or keeps it as the pending latest value until the downstream requests.
  * 
  * @param <T> the value type
  */
@@ -37,7 +49,7 @@ public final class OperatorSwitch<T> implements Operator<T, Observable<? extends
     /** Lazy initialization via inner-class holder. */
     private static final class Holder {
         /** A singleton instance. */
-        static final OperatorSwitch<Object> INSTANCE = new OperatorSwitch<Object>();
+        static final OperatorSwitch<Object> INSTANCE = new OperatorSwitch<>(Flow.defaultBufferSize());
     }
     /**
      * @return a singleton instance of this stateless operator.
@@ -46,276 +58,405 @@ public final class OperatorSwitch<T> implements Operator<T, Observable<? extends
     public static <T> OperatorSwitch<T> instance() {
         return (OperatorSwitch<T>)Holder.INSTANCE;
     }
-    private OperatorSwitch() { }
+    /**
+     * @param prefetch the number of items to prefetch and buffer from each inner Observable
+     * @return an instance with the given prefetch amount
+     */
+    public static <T> OperatorSwitch<T> instance(int prefetch) {
+        if (prefetch == Flow.defaultBufferSize()) {
+            return instance();
+        }
+        return new OperatorSwitch<>(prefetch);
+    }
+    
+    final int prefetch;
+    
+    private OperatorSwitch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+    
     @Override
-    public Subscriber<? super Observable<? extends T>> call(final Subscriber<? super T> child) {
-        SwitchSubscriber<T> sws = new SwitchSubscriber<T>(child);
-        child.add(sws);
-        return sws;
+    public Subscriber<? super Observable<? extends T>> apply(final Subscriber<? super T> child) {
+        return new SwitchSubscriber<>(child, prefetch);
     }
 
-    private static final class SwitchSubscriber<T> extends Subscriber<Observable<? extends T>> {
-        final SerializedSubscriber<T> s;
-        final SerialSubscription ssub;
-        final Object guard = new Object();
-        final NotificationLite<?> nl = NotificationLite.instance();
-        /** Guarded by guard. */
-        int index;
-        /** Guarded by guard. */
-        boolean active;
-        /** Guarded by guard. */
-        boolean mainDone;
-        /** Guarded by guard. */
-        List<Object> queue;
-        /** Guarded by guard. */
-        boolean emitting;
-        /** Guarded by guard. */
-        InnerSubscriber currentSubscriber;
-        /** Guarded by guard. */
-        long initialRequested;
-
-        volatile boolean infinite = false;
-
-        public SwitchSubscriber(Subscriber<? super T> child) {
-            s = new SerializedSubscriber<T>(child);
-            ssub = new SerialSubscription();
-            child.add(ssub);
-            child.setProducer(new Producer(){
-
-                @Override
-                public void request(long n) {
-                    if (infinite) {
-                        return;
-                    }
-                    if(n == Long.MAX_VALUE) {
-                        infinite = true;
-                    }
-                    InnerSubscriber localSubscriber;
-                    synchronized (guard) {
-                        localSubscriber = currentSubscriber;
-                        if (currentSubscriber == null) {
-                            initialRequested = n;
-                        } else {
-                            // If n == Long.MAX_VALUE, infinite will become true. Then currentSubscriber.requested won't be used.
-                            // Therefore we don't need to worry about overflow.
-                            currentSubscriber.requested += n;
-                        }
-                    }
-                    if (localSubscriber != null) {
-                        localSubscriber.requestMore(n);
+    static final class SwitchSubscriber<T> extends AbstractSubscriber<Observable<? extends T>> implements Subscription {
+        final Subscriber<? super T> child;
+        final int prefetch;
+        
+        /** The index of the latest inner, written by onNext only. */
+        volatile long index;
+        static final long INDEX = addressOf(SwitchSubscriber.class, "index");
+        
+        /** The latest inner, null if there is none or it has been fully consumed. */
+        volatile SwitchInner<T> active;
+        static final long ACTIVE = addressOf(SwitchSubscriber.class, "active");
+        
+        /** The value of the latest inner if it was a scalar source and it couldn't be emitted right away. */
+        volatile T latest;
+        static final long LATEST = addressOf(SwitchSubscriber.class, "latest");
+        
+        @SuppressWarnings("rawtypes")
+        static final SwitchInner CANCELLED = new SwitchInner<>(null, -1L, 1);
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(SwitchSubscriber.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(SwitchSubscriber.class, "wip");
+        
+        volatile Throwable error;
+        static final long ERROR = addressOf(SwitchSubscriber.class, "error");
+        
+        volatile boolean done;
+        volatile boolean cancelled;
+        
+        public SwitchSubscriber(Subscriber<? super T> child, int prefetch) {
+            this.child = child;
+            this.prefetch = prefetch;
+        }
+        
+        @Override
+        protected void onSubscribe() {
+            child.onSubscribe(this);
+            subscription.request(Long.MAX_VALUE);
+        }
+        
+        @Override
+        public void onNext(Observable<? extends T> item) {
+            if (done) {
+                return;
+            }
+            if (latest != null) {
+                // a pending scalar value is stale from now on
+                UNSAFE.putOrderedObject(this, LATEST, null);
+            }
+            long idx = index + 1;
+            UNSAFE.putOrderedLong(this, INDEX, idx);
+            
+            Object v = ScalarSource.scalarValueOf(item);
+            if (v != ScalarSource.NOT_SCALAR) {
+                if (swap(null)) {
+                    @SuppressWarnings("unchecked")
+                    T t = (T)v;
+                    emitScalar(t);
+                }
+                return;
+            }
+            
+            SwitchInner<T> inner = new SwitchInner<>(this, idx, prefetch);
+            if (swap(inner)) {
+                item.unsafeSubscribe(inner);
+            }
+        }
+        
+        /**
+         * Replaces the active inner and cancels the previous one.
+         * @param inner the new inner, null if the new source is a scalar
+         * @return false if the operator has been cancelled
+         */
+        boolean swap(SwitchInner<T> inner) {
+            for (;;) {
+                SwitchInner<T> a = active;
+                if (a == CANCELLED) {
+                    return false;
+                }
+                if (UNSAFE.compareAndSwapObject(this, ACTIVE, a, inner)) {
+                    if (a != null) {
+                        a.cancel();
                     }
+                    return true;
                 }
-            });
+            }
         }
-
-        @Override
-        public void onNext(Observable<? extends T> t) {
-            final int id;
-            long remainingRequest;
-            synchronized (guard) {
-                id = ++index;
-                active = true;
-                if (infinite) {
-                    remainingRequest = Long.MAX_VALUE;
+        
+        /**
+         * Emits the value of a scalar inner if the downstream can take it right away,
+         * otherwise keeps it as the latest value for the drain loop.
+         * @param v the value, null if the scalar source is empty
+         */
+        void emitScalar(T v) {
+            if (v == null) {
+                // nothing to emit, but the main source may have completed already
+                drain();
+                return;
+            }
+            if (wip == 0 && UNSAFE.compareAndSwapInt(this, WIP, 0, 1)) {
+                long r = requested;
+                if (r != 0L && !cancelled) {
+                    child.onNext(v);
+                    if (r != Long.MAX_VALUE) {
+                        UNSAFE.getAndAddLong(this, REQUESTED, -1);
+                    }
+                    if (UNSAFE.getAndAddInt(this, WIP, -1) == 1) {
+                        return;
+                    }
                 } else {
-                    remainingRequest = currentSubscriber == null ? initialRequested : currentSubscriber.requested;
+                    UNSAFE.putOrderedObject(this, LATEST, v);
                 }
-                currentSubscriber = new InnerSubscriber(id, remainingRequest);
-                currentSubscriber.requested = remainingRequest;
+                drainLoop();
+            } else {
+                UNSAFE.putOrderedObject(this, LATEST, v);
+                drain();
             }
-            ssub.set(currentSubscriber);
-
-            t.unsafeSubscribe(currentSubscriber);
         }
-
+        
         @Override
-        public void onError(Throwable e) {
-            s.onError(e);
-            unsubscribe();
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (UNSAFE.compareAndSwapObject(this, ERROR, null, throwable)) {
+                drain();
+            }
         }
-
+        
         @Override
         public void onComplete() {
-            List<Object> localQueue;
-            synchronized (guard) {
-                mainDone = true;
-                if (active) {
-                    return;
-                }
-                if (emitting) {
-                    if (queue == null) {
-                        queue = new ArrayList<Object>();
-                    }
-                    queue.add(nl.completed());
-                    return;
-                }
-                localQueue = queue;
-                queue = null;
-                emitting = true;
+            if (done) {
+                return;
             }
-            drain(localQueue);
-            s.onComplete();
-            unsubscribe();
+            done = true;
+            drain();
         }
-        void emit(T value, int id, InnerSubscriber innerSubscriber) {
-            List<Object> localQueue;
-            synchronized (guard) {
-                if (id != index) {
-                    return;
-                }
-                if (emitting) {
-                    if (queue == null) {
-                        queue = new ArrayList<Object>();
-                    }
-                    innerSubscriber.requested--;
-                    queue.add(value);
-                    return;
+        
+        @Override
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            drain();
+        }
+        
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                subscription.cancel();
+                cancelActive();
+            }
+        }
+        
+        @SuppressWarnings("unchecked")
+        void cancelActive() {
+            SwitchInner<T> a = active;
+            if (a != CANCELLED) {
+                a = (SwitchInner<T>)UNSAFE.getAndSetObject(this, ACTIVE, CANCELLED);
+                if (a != null && a != CANCELLED) {
+                    a.cancel();
                 }
-                localQueue = queue;
-                queue = null;
-                emitting = true;
             }
-            boolean once = true;
-            boolean skipFinal = false;
-            try {
-                do {
-                    drain(localQueue);
-                    if (once) {
-                        once = false;
-                        synchronized (guard) {
-                            innerSubscriber.requested--;
+        }
+        
+        void innerError(SwitchInner<T> inner, Throwable e) {
+            if (inner.index == index && UNSAFE.compareAndSwapObject(this, ERROR, null, e)) {
+                subscription.cancel();
+                drain();
+            }
+        }
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) == 0) {
+                drainLoop();
+            }
+        }
+        
+        void drainLoop() {
+            int missed = 1;
+            final Subscriber<? super T> a = child;
+            for (;;) {
+                for (;;) {
+                    if (cancelled) {
+                        return;
+                    }
+                    Throwable ex = error;
+                    if (ex != null) {
+                        cancelActive();
+                        a.onError(ex);
+                        return;
+                    }
+                    boolean d = done;
+                    SwitchInner<T> inner = active;
+                    if (inner == null) {
+                        T v = latest;
+                        if (v != null) {
+                            if (requested == 0L) {
+                                break;
+                            }
+                            // a newer inner may have cleared it in the meantime
+                            if (UNSAFE.compareAndSwapObject(this, LATEST, v, null)) {
+                                a.onNext(v);
+                                if (requested != Long.MAX_VALUE) {
+                                    UNSAFE.getAndAddLong(this, REQUESTED, -1);
+                                }
+                            }
+                            continue;
                         }
-                        s.onNext(value);
+                        if (d) {
+                            a.onComplete();
+                            return;
+                        }
+                        break;
+                    }
+                    if (inner.index != index) {
+                        // being replaced by onNext, the new inner will signal
+                        break;
                     }
-                    synchronized (guard) {
-                        localQueue = queue;
-                        queue = null;
-                        if (localQueue == null) {
-                            emitting = false;
-                            skipFinal = true;
+                    boolean innerDone = inner.done;
+                    Queue<T> q = inner.queue;
+                    long r = requested;
+                    long e = 0L;
+                    while (e != r && q != null) {
+                        T v = q.poll();
+                        if (v == null) {
+                            break;
+                        }
+                        if (cancelled || inner.index != index) {
                             break;
                         }
+                        a.onNext(v);
+                        inner.replenish();
+                        e++;
                     }
-                } while (!s.isUnsubscribed());
-            } finally {
-                if (!skipFinal) {
-                    synchronized (guard) {
-                        emitting = false;
+                    if (e != 0L && r != Long.MAX_VALUE) {
+                        UNSAFE.getAndAddLong(this, REQUESTED, -e);
                     }
+                    if (innerDone && (q == null || q.isEmpty())) {
+                        // fully consumed, let the main completion through
+                        UNSAFE.compareAndSwapObject(this, ACTIVE, inner, null);
+                        continue;
+                    }
+                    break;
+                }
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
                 }
             }
         }
-        void drain(List<Object> localQueue) {
-            if (localQueue == null) {
-                return;
+    }
+    
+    static final class SwitchInner<T> implements Subscriber<T> {
+        final SwitchSubscriber<T> parent;
+        final long index;
+        final int prefetch;
+        final int limit;
+        /** The number of items emitted since the last replenishment, accessed while holding the parent's wip only. */
+        int produced;
+        
+        /** Created by the producer when an item can't be emitted right away. */
+        volatile Queue<T> queue;
+        static final long QUEUE = addressOf(SwitchInner.class, "queue");
+        
+        volatile boolean done;
+        
+        volatile Subscription subscription;
+        static final long SUBSCRIPTION = addressOf(SwitchInner.class, "subscription");
+        
+        static final Subscription CANCELLED = new Subscription() {
+            @Override
+            public void request(long n) {
+                
             }
-            for (Object o : localQueue) {
-                if (nl.isCompleted(o)) {
-                    s.onComplete();
-                    break;
-                } else
-                if (nl.isError(o)) {
-                    s.onError(nl.getError(o));
-                    break;
-                } else {
-                    @SuppressWarnings("unchecked")
-                    T t = (T)o;
-                    s.onNext(t);
-                }
+            @Override
+            public void cancel() {
+                
             }
+        };
+        
+        public SwitchInner(SwitchSubscriber<T> parent, long index, int prefetch) {
+            this.parent = parent;
+            this.index = index;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
         }
-
-        void error(Throwable e, int id) {
-            List<Object> localQueue;
-            synchronized (guard) {
-                if (id != index) {
-                    return;
-                }
-                if (emitting) {
-                    if (queue == null) {
-                        queue = new ArrayList<Object>();
-                    }
-                    queue.add(nl.error(e));
-                    return;
+        
+        @Override
+        public void onSubscribe(Subscription s) {
+            Conformance.subscriptionNonNull(s);
+            if (!UNSAFE.compareAndSwapObject(this, SUBSCRIPTION, null, s)) {
+                Subscription curr = subscription;
+                if (curr != CANCELLED) {
+                    Conformance.onSubscribeOnce(curr, this);
                 }
-
-                localQueue = queue;
-                queue = null;
-                emitting = true;
+                s.cancel();
+                return;
             }
-
-            drain(localQueue);
-            s.onError(e);
-            unsubscribe();
+            s.request(prefetch);
         }
-        void complete(int id) {
-            List<Object> localQueue;
-            synchronized (guard) {
-                if (id != index) {
-                    return;
-                }
-                active = false;
-                if (!mainDone) {
-                    return;
-                }
-                if (emitting) {
-                    if (queue == null) {
-                        queue = new ArrayList<Object>();
+        
+        @Override
+        public void onNext(T item) {
+            SwitchSubscriber<T> p = parent;
+            if (index != p.index) {
+                return;
+            }
+            if (p.wip == 0 && UNSAFE.compareAndSwapInt(p, SwitchSubscriber.WIP, 0, 1)) {
+                Queue<T> q = queue;
+                long r = p.requested;
+                if (r != 0L && (q == null || q.isEmpty()) && !p.cancelled && index == p.index) {
+                    // fast path: no need to buffer
+                    p.child.onNext(item);
+                    if (r != Long.MAX_VALUE) {
+                        UNSAFE.getAndAddLong(p, SwitchSubscriber.REQUESTED, -1);
+                    }
+                    replenish();
+                    if (UNSAFE.getAndAddInt(p, SwitchSubscriber.WIP, -1) == 1) {
+                        return;
                     }
-                    queue.add(nl.completed());
-                    return;
+                } else {
+                    offer(item);
                 }
-
-                localQueue = queue;
-                queue = null;
-                emitting = true;
+                p.drainLoop();
+            } else {
+                offer(item);
+                p.drain();
             }
-
-            drain(localQueue);
-            s.onComplete();
-            unsubscribe();
         }
-
-        final class InnerSubscriber extends Subscriber<T> {
-
-            /**
-             * The number of request that is not acknowledged.
-             *
-             * Guarded by guard.
-             */
-            private long requested = 0;
-
-            private final int id;
-
-            private final long initialRequested;
-
-            public InnerSubscriber(int id, long initialRequested) {
-                this.id = id;
-                this.initialRequested = initialRequested;
+        
+        void offer(T item) {
+            Queue<T> q = queue;
+            if (q == null) {
+                q = new SpscArrayQueue<>(prefetch);
+                UNSAFE.putOrderedObject(this, QUEUE, q);
             }
-
-            @Override
-            public void onStart() {
-                requestMore(initialRequested);
-            }
-
-            public void requestMore(long n) {
-                request(n);
+            if (!q.offer(item)) {
+                cancel();
+                parent.innerError(this, new MissingBackpressureException());
             }
-
-            @Override
-            public void onNext(T t) {
-                emit(t, id, this);
-            }
-
-            @Override
-            public void onError(Throwable e) {
-                error(e, id);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            parent.innerError(this, throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            done = true;
+            parent.drain();
+        }
+        
+        void replenish() {
+            int p = produced + 1;
+            if (p == limit) {
+                produced = 0;
+                subscription.request(p);
+            } else {
+                produced = p;
             }
-
-            @Override
-            public void onComplete() {
-                complete(id);
+        }
+        
+        void cancel() {
+            Subscription s = subscription;
+            if (s != CANCELLED) {
+                s = (Subscription)UNSAFE.getAndSetObject(this, SUBSCRIPTION, CANCELLED);
+                if (s != null && s != CANCELLED) {
+                    s.cancel();
+                }
             }
         }
     }
@@ -15,18 +15,23 @@
  */
 package rx.internal.operators;
 
-import rx.Observable.Operator;
-import rx.Scheduler;
-import rx.Subscriber;
-
-import java.util.ArrayDeque;
-import java.util.Deque;
 import java.util.concurrent.TimeUnit;
 
+import rx.Flow.Subscriber;
+import rx.Observable.Operator;
+import rx.internal.queues.TimedRingBuffer;
+import rx.internal.subscriptions.*;
+import rx.schedulers.Scheduler;
+import rx.subscribers.AbstractSubscriber;
+
 /**
- * Returns an Observable that emits the last <code>count</code> items emitted by the source Observable.
+ * Returns an Observable that emits the items emitted by the source Observable within the last
+ * given time window before completion, optionally limited to the last <code>count</code> items.
  * <p>
  * <img width="640" src="https://github.com/ReactiveX/RxJava/wiki/images/rx-operators/last.png" alt="">
+ * <p>
+ * The items are kept in a {@link TimedRingBuffer} and the outdated ones are evicted in bulk by a binary
+ * search on their timestamps.
  */
 public final class OperatorTakeLastTimed<T> implements Operator<T, T> {
 
@@ -50,61 +55,82 @@ public final class OperatorTakeLastTimed<T> implements Operator<T, T> {
     }
 
     @Override
-    public Subscriber<? super T> call(final Subscriber<? super T> subscriber) {
-        final Deque<Object> buffer = new ArrayDeque<Object>();
-        final Deque<Long> timestampBuffer = new ArrayDeque<Long>();
-        final NotificationLite<T> notification = NotificationLite.instance();
-        final TakeLastQueueProducer<T> producer = new TakeLastQueueProducer<T>(notification, buffer, subscriber);
-        subscriber.setProducer(producer);
-        return new Subscriber<T>(subscriber) {
-
-            protected void runEvictionPolicy(long now) {
+    public Subscriber<? super T> apply(final Subscriber<? super T> subscriber) {
+        final TimedRingBuffer<T> buffer = new TimedRingBuffer<>(16);
+        final RingBackpressureSubscription<T> rs = new RingBackpressureSubscription<>(subscriber, buffer);
+        
+        return new AbstractSubscriber<T>() {
+            
+            void runEvictionPolicy(long now) {
                 // trim size
-                while (count >= 0 && buffer.size() > count) {
-                    timestampBuffer.pollFirst();
-                    buffer.pollFirst();
+                if (count >= 0) {
+                    buffer.trim(count);
                 }
                 // remove old entries
-                while (!buffer.isEmpty()) {
-                    long v = timestampBuffer.peekFirst();
-                    if (v < now - ageMillis) {
-                        timestampBuffer.pollFirst();
-                        buffer.pollFirst();
-                    } else {
-                        break;
-                    }
-                }
+                buffer.evictBefore(now - ageMillis);
             }
 
             // no backpressure up as it wants to receive and discard all but the last
             @Override
-            public void onStart() {
+            public void onSubscribe() {
                 // we do this to break the chain of the child subscriber being passed through
-                request(Long.MAX_VALUE);
+                subscription.request(Long.MAX_VALUE);
             }
             
             @Override
-            public void onNext(T args) {
+            public void onNext(T value) {
+                if (count == 0) {
+                    return;
+                }
                 long t = scheduler.now();
-                timestampBuffer.add(t);
-                buffer.add(notification.next(args));
+                buffer.offer(t, value);
                 runEvictionPolicy(t);
             }
 
             @Override
             public void onError(Throwable e) {
-                timestampBuffer.clear();
                 buffer.clear();
+                AbstractSubscription.setEmptyOn(subscriber);
                 subscriber.onError(e);
             }
 
             @Override
             public void onComplete() {
                 runEvictionPolicy(scheduler.now());
-                timestampBuffer.clear();
-                buffer.offer(notification.completed());
-                producer.startEmitting();
+                // we onSubscribe only now that all values have been received
+                // and let the subscription handle the requests
+                subscriber.onSubscribe(rs);
+                rs.onComplete();
             }
         };
     }
+    
+    /**
+     * Emits the content of a {@link TimedRingBuffer} filled before the first request.
+     * @param <T> the value type
+     */
+    static final class RingBackpressureSubscription<T> extends AbstractBackpressureSubscription<T> {
+        final TimedRingBuffer<T> buffer;
+        
+        public RingBackpressureSubscription(Subscriber<? super T> subscriber, TimedRingBuffer<T> buffer) {
+            super(subscriber);
+            this.buffer = buffer;
+        }
+        
+        @Override
+        protected boolean offer(T value) {
+            // the buffer is filled directly
+            return false;
+        }
+        
+        @Override
+        protected T peek() {
+            return buffer.peek();
+        }
+        
+        @Override
+        protected T poll() {
+            return buffer.poll();
+        }
+    }
 }
@@ -15,12 +15,13 @@
  */
 package rx.internal.operators;
 
+import static rx.internal.UnsafeAccess.*;
+
 import java.util.concurrent.*;
 
 import rx.Flow.Subscriber;
 import rx.*;
 import rx.Observable.Operator;
-import rx.disposables.SerialDisposable;
 import rx.internal.subscriptions.*;
 import rx.schedulers.Scheduler;
 import rx.subscribers.*;
@@ -31,6 +32,12 @@ import rx.subscribers.*;
  * received within the specified timeout duration starting from its predecessor,
  * the other observable sequence is used to produce future messages from that
  * point on.
+ * <p>
+ * Items don't touch the timer: each item only records its arrival time and bumps an index. A single
+ * timer task checks, when it fires, whether the deadline of the latest item actually passed and
+ * re-arms itself for the remaining time if not. The timeout wins only if it can swap the index it
+ * observed to the terminal value, therefore a racing item is either delivered or the timeout happens,
+ * never both.
  */
 public final class OperatorTimeout<T> implements Operator<T, T> {
 
@@ -54,62 +61,129 @@ public final class OperatorTimeout<T> implements Operator<T, T> {
         CompositeDisposableSubscription disposable = new CompositeDisposableSubscription(arbiter);
 
         Scheduler.Worker worker = scheduler.createWorker();
-        SerialDisposable timeouts = new SerialDisposable();
 
         disposable.add(worker);
-        disposable.add(timeouts);
         
+        return new TimeoutSubscriber<>(child, arbiter, disposable, worker, timeUnit.toNanos(timeout), other);
+    }
+    
+    /**
+     * Tracks the latest item by index and time and runs the single timeout timer.
+     * @param <T> the value type
+     */
+    static final class TimeoutSubscriber<T> extends AbstractSubscriber<T> implements Runnable {
+        final Subscriber<? super T> child;
+        final SubscriptionArbiter<T> arbiter;
+        final CompositeDisposableSubscription disposable;
+        final Scheduler.Worker worker;
+        final long timeoutNanos;
+        final Observable<? extends T> other;
+        
+        /** The number of items received; Long.MAX_VALUE once terminated or timed out. */
+        volatile long index;
+        static final long INDEX = addressOf(TimeoutSubscriber.class, "index");
+        
+        /** The arrival time of the latest item in nanoseconds of the worker's clock, written before the index. */
+        volatile long lastTime;
+        static final long LAST_TIME = addressOf(TimeoutSubscriber.class, "lastTime");
+        
+        public TimeoutSubscriber(Subscriber<? super T> child, SubscriptionArbiter<T> arbiter, 
+                CompositeDisposableSubscription disposable, Scheduler.Worker worker, 
+                long timeoutNanos, Observable<? extends T> other) {
+            this.child = child;
+            this.arbiter = arbiter;
+            this.disposable = disposable;
+            this.worker = worker;
+            this.timeoutNanos = timeoutNanos;
+            this.other = other;
+        }
+        
+        long now() {
+            return TimeUnit.MILLISECONDS.toNanos(worker.now());
+        }
         
-        return new AbstractSubscriber<T>() {
-            @Override
-            protected void onSubscribe() {
-                child.onSubscribe(disposable);
-                arbiter.set(subscription);
-                scheduleTimeout();
+        @Override
+        protected void onSubscribe() {
+            UNSAFE.putOrderedLong(this, LAST_TIME, now());
+            child.onSubscribe(disposable);
+            arbiter.set(subscription);
+            worker.schedule(this, timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        
+        @Override
+        public void onNext(T item) {
+            long idx = index;
+            if (idx == Long.MAX_VALUE) {
+                return;
             }
-            @Override
-            public void onNext(T item) {
+            UNSAFE.putOrderedLong(this, LAST_TIME, now());
+            if (UNSAFE.compareAndSwapLong(this, INDEX, idx, idx + 1)) {
                 arbiter.onNext(item);
-                scheduleTimeout();
             }
-            @Override
-            public void onError(Throwable throwable) {
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            if (UNSAFE.getAndSetLong(this, INDEX, Long.MAX_VALUE) != Long.MAX_VALUE) {
+                worker.dispose();
                 arbiter.onError(throwable);
             }
-            @Override
-            public void onComplete() {
+        }
+        
+        @Override
+        public void onComplete() {
+            if (UNSAFE.getAndSetLong(this, INDEX, Long.MAX_VALUE) != Long.MAX_VALUE) {
+                worker.dispose();
                 arbiter.onComplete();
             }
-            
-            void scheduleTimeout() {
-                timeouts.set(worker.schedule(() -> {
-                    if (other == null) {
-                        arbiter.onError(new TimeoutException());
-                    } else {
-                        subscribeOther();
-                    }
-                }, timeout, timeUnit));
+        }
+        
+        /** The timer. */
+        @Override
+        public void run() {
+            // read the index first: the time read afterwards is never older than the item of that index
+            long idx = index;
+            if (idx == Long.MAX_VALUE) {
+                return;
+            }
+            long remaining = lastTime + timeoutNanos - now();
+            if (remaining > 0L) {
+                worker.schedule(this, remaining, TimeUnit.NANOSECONDS);
+                return;
             }
-            void subscribeOther() {
-                other.unsafeSubscribe(new AbstractSubscriber<T>() {
-                    @Override
-                    protected void onSubscribe() {
-                        arbiter.set(subscription);
-                    }
-                    @Override
-                    public void onNext(T item) {
-                        arbiter.onNext(item);
-                    }
-                    @Override
-                    public void onError(Throwable throwable) {
-                        arbiter.onError(throwable);
-                    }
-                    @Override
-                    public void onComplete() {
-                        arbiter.onComplete();
-                    }
-                });
+            if (UNSAFE.compareAndSwapLong(this, INDEX, idx, Long.MAX_VALUE)) {
+                subscription.cancel();
+                worker.dispose();
+                if (other == null) {
+                    arbiter.onError(new TimeoutException());
+                } else {
+                    subscribeOther();
+                }
+            } else {
+                // an item arrived just now
+                run();
             }
-        };
+        }
+        
+        void subscribeOther() {
+            other.unsafeSubscribe(new AbstractSubscriber<T>() {
+                @Override
+                protected void onSubscribe() {
+                    arbiter.set(subscription);
+                }
+                @Override
+                public void onNext(T item) {
+                    arbiter.onNext(item);
+                }
+                @Override
+                public void onError(Throwable throwable) {
+                    arbiter.onError(throwable);
+                }
+                @Override
+                public void onComplete() {
+                    arbiter.onComplete();
+                }
+            });
+        }
     }
 }
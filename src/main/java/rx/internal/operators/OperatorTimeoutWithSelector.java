@@ -15,100 +15,293 @@
  */
 package rx.internal.operators;
 
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.concurrent.TimeoutException;
+import java.util.function.*;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
 import rx.Observable;
-import rx.Scheduler;
-import rx.Subscriber;
-import rx.Subscription;
-import rx.exceptions.Exceptions;
-import rx.functions.Supplier;
-import rx.functions.Function;
-import rx.schedulers.Schedulers;
-import rx.subscriptions.Subscriptions;
+import rx.Observable.Operator;
+import rx.disposables.Disposable;
+import rx.internal.Conformance;
+import rx.internal.subscriptions.*;
+import rx.subscribers.AbstractSubscriber;
 
 /**
  * Returns an Observable that mirrors the source Observable. If either the first
  * item emitted by the source Observable or any subsequent item don't arrive
  * within time windows defined by provided Observables, switch to the
  * <code>other</code> Observable if provided, or emit a TimeoutException .
+ * <p>
+ * Each timeout window carries the index of the item it belongs to; it only wins if it can swap that
+ * index to the terminal value, so windows of earlier items are stale without any extra bookkeeping.
  */
-public class OperatorTimeoutWithSelector<T, U, V> extends
-        OperatorTimeoutBase<T> {
+public final class OperatorTimeoutWithSelector<T, U, V> implements Operator<T, T> {
+    final Supplier<? extends Observable<U>> firstTimeoutSelector;
+    final Function<? super T, ? extends Observable<V>> timeoutSelector;
+    final Observable<? extends T> other;
 
     public OperatorTimeoutWithSelector(
             final Supplier<? extends Observable<U>> firstTimeoutSelector,
             final Function<? super T, ? extends Observable<V>> timeoutSelector,
             Observable<? extends T> other) {
-        super(new FirstTimeoutStub<T>() {
-
-            @Override
-            public Subscription call(
-                    final TimeoutSubscriber<T> timeoutSubscriber,
-                    final Long seqId, Scheduler.Worker inner) {
-                if (firstTimeoutSelector != null) {
-                    Observable<U> o = null;
-                    try {
-                        o = firstTimeoutSelector.call();
-                    } catch (Throwable t) {
-                        Exceptions.throwIfFatal(t);
-                        timeoutSubscriber.onError(t);
-                        return Subscriptions.unsubscribed();
+        this.firstTimeoutSelector = firstTimeoutSelector;
+        this.timeoutSelector = timeoutSelector;
+        this.other = other;
+    }
+    
+    @Override
+    public Subscriber<? super T> apply(Subscriber<? super T> child) {
+        SubscriptionArbiter<T> arbiter = new SubscriptionArbiter<>(child);
+        CompositeDisposableSubscription disposable = new CompositeDisposableSubscription(arbiter);
+        
+        TimeoutSelectorSubscriber<T, U, V> parent = new TimeoutSelectorSubscriber<>(child, arbiter, disposable, 
+                firstTimeoutSelector, timeoutSelector, other);
+        disposable.add(parent);
+        return parent;
+    }
+    
+    /**
+     * Tracks the latest item by index and the timeout window belonging to it.
+     */
+    static final class TimeoutSelectorSubscriber<T, U, V> extends AbstractSubscriber<T> implements Disposable {
+        final Subscriber<? super T> child;
+        final SubscriptionArbiter<T> arbiter;
+        final CompositeDisposableSubscription disposable;
+        final Supplier<? extends Observable<U>> firstTimeoutSelector;
+        final Function<? super T, ? extends Observable<V>> timeoutSelector;
+        final Observable<? extends T> other;
+        
+        /** The number of items received; Long.MAX_VALUE once terminated or timed out. */
+        volatile long index;
+        static final long INDEX = addressOf(TimeoutSelectorSubscriber.class, "index");
+        
+        /** The timeout window of the latest item. */
+        volatile TimeoutInner active;
+        static final long ACTIVE = addressOf(TimeoutSelectorSubscriber.class, "active");
+        
+        static final TimeoutInner CANCELLED = new TimeoutInner(null, -1L);
+        
+        public TimeoutSelectorSubscriber(Subscriber<? super T> child, SubscriptionArbiter<T> arbiter,
+                CompositeDisposableSubscription disposable, 
+                Supplier<? extends Observable<U>> firstTimeoutSelector,
+                Function<? super T, ? extends Observable<V>> timeoutSelector,
+                Observable<? extends T> other) {
+            this.child = child;
+            this.arbiter = arbiter;
+            this.disposable = disposable;
+            this.firstTimeoutSelector = firstTimeoutSelector;
+            this.timeoutSelector = timeoutSelector;
+            this.other = other;
+        }
+        
+        @Override
+        protected void onSubscribe() {
+            child.onSubscribe(disposable);
+            arbiter.set(subscription);
+            if (firstTimeoutSelector != null) {
+                Observable<U> o;
+                try {
+                    o = firstTimeoutSelector.get();
+                } catch (Throwable t) {
+                    fail(t);
+                    return;
+                }
+                if (o == null) {
+                    fail(new NullPointerException("The firstTimeoutSelector returned null"));
+                    return;
+                }
+                startWindow(o, 0L);
+            }
+        }
+        
+        @Override
+        public void onNext(T item) {
+            long idx = index;
+            if (idx == Long.MAX_VALUE || !UNSAFE.compareAndSwapLong(this, INDEX, idx, idx + 1)) {
+                return;
+            }
+            arbiter.onNext(item);
+            
+            Observable<V> o;
+            try {
+                o = timeoutSelector.apply(item);
+            } catch (Throwable t) {
+                fail(t);
+                return;
+            }
+            if (o == null) {
+                fail(new NullPointerException("The timeoutSelector returned null"));
+                return;
+            }
+            startWindow(o, idx + 1);
+        }
+        
+        void startWindow(Observable<?> o, long idx) {
+            TimeoutInner inner = new TimeoutInner(this, idx);
+            for (;;) {
+                TimeoutInner a = active;
+                if (a == CANCELLED) {
+                    return;
+                }
+                if (UNSAFE.compareAndSwapObject(this, ACTIVE, a, inner)) {
+                    if (a != null) {
+                        a.cancel();
                     }
-                    return o.unsafeSubscribe(new Subscriber<U>() {
-
-                        @Override
-                        public void onComplete() {
-                            timeoutSubscriber.onTimeout(seqId);
-                        }
-
-                        @Override
-                        public void onError(Throwable e) {
-                            timeoutSubscriber.onError(e);
-                        }
-
-                        @Override
-                        public void onNext(U t) {
-                            timeoutSubscriber.onTimeout(seqId);
-                        }
-
-                    });
+                    break;
+                }
+            }
+            o.unsafeSubscribe(inner);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            if (UNSAFE.getAndSetLong(this, INDEX, Long.MAX_VALUE) != Long.MAX_VALUE) {
+                dispose();
+                arbiter.onError(throwable);
+            }
+        }
+        
+        @Override
+        public void onComplete() {
+            if (UNSAFE.getAndSetLong(this, INDEX, Long.MAX_VALUE) != Long.MAX_VALUE) {
+                dispose();
+                arbiter.onComplete();
+            }
+        }
+        
+        /** Called by the selector failing: cancels the upstream and the timeout window. */
+        void fail(Throwable e) {
+            if (UNSAFE.getAndSetLong(this, INDEX, Long.MAX_VALUE) != Long.MAX_VALUE) {
+                subscription.cancel();
+                dispose();
+                arbiter.onError(e);
+            }
+        }
+        
+        void timeout(long idx) {
+            if (UNSAFE.compareAndSwapLong(this, INDEX, idx, Long.MAX_VALUE)) {
+                subscription.cancel();
+                dispose();
+                if (other == null) {
+                    arbiter.onError(new TimeoutException());
                 } else {
-                    return Subscriptions.unsubscribed();
+                    subscribeOther();
                 }
             }
-        }, new TimeoutStub<T>() {
-
+        }
+        
+        void timeoutError(long idx, Throwable e) {
+            if (UNSAFE.compareAndSwapLong(this, INDEX, idx, Long.MAX_VALUE)) {
+                subscription.cancel();
+                dispose();
+                arbiter.onError(e);
+            }
+        }
+        
+        void subscribeOther() {
+            other.unsafeSubscribe(new AbstractSubscriber<T>() {
+                @Override
+                protected void onSubscribe() {
+                    arbiter.set(subscription);
+                }
+                @Override
+                public void onNext(T item) {
+                    arbiter.onNext(item);
+                }
+                @Override
+                public void onError(Throwable throwable) {
+                    arbiter.onError(throwable);
+                }
+                @Override
+                public void onComplete() {
+                    arbiter.onComplete();
+                }
+            });
+        }
+        
+        /** Cancels the current timeout window. */
+        @Override
+        public void dispose() {
+            TimeoutInner a = active;
+            if (a != CANCELLED) {
+                a = (TimeoutInner)UNSAFE.getAndSetObject(this, ACTIVE, CANCELLED);
+                if (a != null && a != CANCELLED) {
+                    a.cancel();
+                }
+            }
+        }
+        
+        @Override
+        public boolean isDisposed() {
+            return active == CANCELLED;
+        }
+    }
+    
+    /** The timeout window of the item with the given index. */
+    static final class TimeoutInner implements Subscriber<Object> {
+        final TimeoutSelectorSubscriber<?, ?, ?> parent;
+        final long index;
+        
+        volatile Subscription subscription;
+        static final long SUBSCRIPTION = addressOf(TimeoutInner.class, "subscription");
+        
+        static final Subscription CANCELLED = new Subscription() {
             @Override
-            public Subscription call(
-                    final TimeoutSubscriber<T> timeoutSubscriber,
-                    final Long seqId, T value, Scheduler.Worker inner) {
-                Observable<V> o = null;
-                try {
-                    o = timeoutSelector.call(value);
-                } catch (Throwable t) {
-                    Exceptions.throwIfFatal(t);
-                    timeoutSubscriber.onError(t);
-                    return Subscriptions.unsubscribed();
+            public void request(long n) {
+                
+            }
+            @Override
+            public void cancel() {
+                
+            }
+        };
+        
+        public TimeoutInner(TimeoutSelectorSubscriber<?, ?, ?> parent, long index) {
+            this.parent = parent;
+            this.index = index;
+        }
+        
+        @Override
+        public void onSubscribe(Subscription s) {
+            Conformance.subscriptionNonNull(s);
+            if (!UNSAFE.compareAndSwapObject(this, SUBSCRIPTION, null, s)) {
+                Subscription curr = subscription;
+                if (curr != CANCELLED) {
+                    Conformance.onSubscribeOnce(curr, this);
                 }
-                return o.unsafeSubscribe(new Subscriber<V>() {
-
-                    @Override
-                    public void onComplete() {
-                        timeoutSubscriber.onTimeout(seqId);
-                    }
-
-                    @Override
-                    public void onError(Throwable e) {
-                        timeoutSubscriber.onError(e);
-                    }
-
-                    @Override
-                    public void onNext(V t) {
-                        timeoutSubscriber.onTimeout(seqId);
-                    }
-
-                });
+                s.cancel();
+                return;
             }
-        }, other, Schedulers.immediate());
+            s.request(Long.MAX_VALUE);
+        }
+        
+        @Override
+        public void onNext(Object item) {
+            cancel();
+            parent.timeout(index);
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            parent.timeoutError(index, throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            parent.timeout(index);
+        }
+        
+        void cancel() {
+            Subscription s = subscription;
+            if (s != CANCELLED) {
+                s = (Subscription)UNSAFE.getAndSetObject(this, SUBSCRIPTION, CANCELLED);
+                if (s != null && s != CANCELLED) {
+                    s.cancel();
+                }
+            }
+        }
     }
-
 }
@@ -15,14 +15,14 @@
  */
 package rx.internal.operators;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
+import java.util.*;
+import java.util.function.BiFunction;
 
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
 import rx.Observable.Operator;
-import rx.Subscriber;
-import rx.functions.BiFunction;
+import rx.internal.subscriptions.ScalarBackpressureSubscription;
+import rx.subscribers.AbstractSubscriber;
 
 /**
  * Return an {@code Observable} that emits the items emitted by the source {@code Observable}, in a sorted order
@@ -30,81 +30,122 @@ import rx.functions.BiFunction;
  * items in the sequence, or you must pass in a sort function).
  * <p>
  * <img width="640" height="310" src="https://raw.githubusercontent.com/wiki/ReactiveX/RxJava/images/rx-operators/toSortedList.png" alt="">
+ * <p>
+ * The items are collected into a plain array presized by the capacity hint and sorted with
+ * {@link Arrays#parallelSort(Object[], int, int, Comparator)}, a stable merge sort which splits large
+ * inputs among the threads of the common {@code ForkJoinPool} and sorts small ones sequentially.
  * 
  * @param <T>
  *          the type of the items emitted by the source and the resulting {@code Observable}s
  */
 public final class OperatorToObservableSortedList<T> implements Operator<List<T>, T> {
-    private final BiFunction<? super T, ? super T, Integer> sortFunction;
+    /** The default initial capacity of the collecting array. */
+    static final int DEFAULT_CAPACITY = 16;
+    
+    final Comparator<? super T> comparator;
+    final int capacityHint;
 
     @SuppressWarnings("unchecked")
     public OperatorToObservableSortedList() {
-        this.sortFunction = defaultSortFunction;
+        this((Comparator<? super T>)Comparator.naturalOrder(), DEFAULT_CAPACITY);
     }
 
     public OperatorToObservableSortedList(BiFunction<? super T, ? super T, Integer> sortFunction) {
-        this.sortFunction = sortFunction;
+        this((a, b) -> sortFunction.apply(a, b), DEFAULT_CAPACITY);
     }
 
-    @Override
-    public Subscriber<? super T> call(final Subscriber<? super List<T>> o) {
-        return new Subscriber<T>(o) {
-
-            final List<T> list = new ArrayList<T>();
-
-            @Override
-            public void onStart() {
-                request(Long.MAX_VALUE);
-            }
-
-            @Override
-            public void onComplete() {
-                try {
-
-                    // sort the list before delivery
-                    Collections.sort(list, new Comparator<T>() {
-
-                        @Override
-                        public int compare(T o1, T o2) {
-                            return sortFunction.call(o1, o2);
-                        }
-
-                    });
+    public OperatorToObservableSortedList(Comparator<? super T> comparator, int capacityHint) {
+        if (capacityHint <= 0) {
+            throw new IllegalArgumentException("capacityHint > 0 required but it was " + capacityHint);
+        }
+        this.comparator = Objects.requireNonNull(comparator);
+        this.capacityHint = capacityHint;
+    }
 
-                    o.onNext(Collections.unmodifiableList(list));
-                    o.onComplete();
-                } catch (Throwable e) {
-                    onError(e);
-                }
+    @Override
+    public Subscriber<? super T> apply(Subscriber<? super List<T>> child) {
+        return new SortedListSubscriber<>(child, comparator, capacityHint);
+    }
+    
+    /** Collects the items into an array and sorts it on completion. */
+    static final class SortedListSubscriber<T> extends AbstractSubscriber<T> implements Subscription {
+        final Subscriber<? super List<T>> child;
+        final Comparator<? super T> comparator;
+        final ScalarBackpressureSubscription<List<T>> result;
+        Object[] array;
+        int size;
+        boolean done;
+        
+        public SortedListSubscriber(Subscriber<? super List<T>> child, Comparator<? super T> comparator, int capacityHint) {
+            this.child = child;
+            this.comparator = comparator;
+            this.result = new ScalarBackpressureSubscription<>(child);
+            this.array = new Object[capacityHint];
+        }
+        
+        @Override
+        protected void onSubscribe() {
+            child.onSubscribe(this);
+            subscription.request(Long.MAX_VALUE);
+        }
+        
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                return;
             }
-
-            @Override
-            public void onError(Throwable e) {
-                o.onError(e);
+            Object[] a = array;
+            int n = size;
+            if (n == a.length) {
+                a = Arrays.copyOf(a, n + (n >> 1) + 1);
+                array = a;
             }
-
-            @Override
-            public void onNext(T value) {
-                list.add(value);
+            a[n] = item;
+            size = n + 1;
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
             }
-
-        };
-    }
-
-    // raw because we want to support Object for this default
-    @SuppressWarnings("rawtypes")
-    private static BiFunction defaultSortFunction = new DefaultComparableFunction();
-
-    private static class DefaultComparableFunction implements BiFunction<Object, Object, Integer> {
-
-        // unchecked because we want to support Object for this default
+            done = true;
+            array = null;
+            result.onError(throwable);
+        }
+        
         @SuppressWarnings("unchecked")
         @Override
-        public Integer call(Object t1, Object t2) {
-            Comparable<Object> c1 = (Comparable<Object>) t1;
-            Comparable<Object> c2 = (Comparable<Object>) t2;
-            return c1.compareTo(c2);
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            T[] a = (T[])array;
+            int n = size;
+            array = null;
+            try {
+                Arrays.parallelSort(a, 0, n, comparator);
+            } catch (Throwable e) {
+                result.onError(e);
+                return;
+            }
+            List<T> list = Arrays.asList(a);
+            if (n != a.length) {
+                list = list.subList(0, n);
+            }
+            result.onNext(Collections.unmodifiableList(list));
+        }
+        
+        @Override
+        public void request(long n) {
+            result.request(n);
+        }
+        
+        @Override
+        public void cancel() {
+            result.cancel();
+            subscription.cancel();
         }
-
     }
 }
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.*;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.Observable.Operator;
+import rx.internal.subscriptions.ScalarBackpressureSubscription;
+import rx.subscribers.AbstractSubscriber;
+
+/**
+ * Emits a single list of the {@code k} greatest items of the source according to a comparator,
+ * in descending order.
+ * <p>
+ * The items are kept in a bounded binary min-heap whose root is the smallest of the current top items,
+ * so an item not greater than the root is rejected with a single comparison and the operator does
+ * O(n log k) work with O(k) memory. Among equal items, the earlier ones are kept.
+ *
+ * @param <T> the value type
+ */
+public final class OperatorTopK<T> implements Operator<List<T>, T> {
+    final int k;
+    final Comparator<? super T> comparator;
+    
+    public OperatorTopK(int k, Comparator<? super T> comparator) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k > 0 required but it was " + k);
+        }
+        this.k = k;
+        this.comparator = Objects.requireNonNull(comparator);
+    }
+    
+    @Override
+    public Subscriber<? super T> apply(Subscriber<? super List<T>> child) {
+        return new TopKSubscriber<>(child, k, comparator);
+    }
+    
+    /** Maintains the heap of the greatest items. */
+    static final class TopKSubscriber<T> extends AbstractSubscriber<T> implements Subscription {
+        final Subscriber<? super List<T>> child;
+        final Comparator<? super T> comparator;
+        final ScalarBackpressureSubscription<List<T>> result;
+        final int k;
+        /** The min-heap, grows up to k elements. */
+        Object[] heap;
+        int size;
+        boolean done;
+        
+        public TopKSubscriber(Subscriber<? super List<T>> child, int k, Comparator<? super T> comparator) {
+            this.child = child;
+            this.comparator = comparator;
+            this.result = new ScalarBackpressureSubscription<>(child);
+            this.k = k;
+            this.heap = new Object[Math.min(k, 16)];
+        }
+        
+        @Override
+        protected void onSubscribe() {
+            child.onSubscribe(this);
+            subscription.request(Long.MAX_VALUE);
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                return;
+            }
+            try {
+                Object[] h = heap;
+                int n = size;
+                if (n < k) {
+                    if (n == h.length) {
+                        h = Arrays.copyOf(h, (int)Math.min(k, 2L * n));
+                        heap = h;
+                    }
+                    siftUp(h, n, item);
+                    size = n + 1;
+                } else
+                if (comparator.compare(item, (T)h[0]) > 0) {
+                    siftDown(h, n, item);
+                }
+            } catch (Throwable e) {
+                subscription.cancel();
+                onError(e);
+            }
+        }
+        
+        /** Inserts the item at the given free slot and moves it up towards the root. */
+        @SuppressWarnings("unchecked")
+        void siftUp(Object[] h, int i, T item) {
+            final Comparator<? super T> c = comparator;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                Object p = h[parent];
+                if (c.compare(item, (T)p) >= 0) {
+                    break;
+                }
+                h[i] = p;
+                i = parent;
+            }
+            h[i] = item;
+        }
+        
+        /** Replaces the root with the item and moves it down to restore the heap order. */
+        @SuppressWarnings("unchecked")
+        void siftDown(Object[] h, int n, T item) {
+            final Comparator<? super T> c = comparator;
+            int i = 0;
+            int half = n >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                Object least = h[child];
+                int right = child + 1;
+                if (right < n && c.compare((T)least, (T)h[right]) > 0) {
+                    child = right;
+                    least = h[child];
+                }
+                if (c.compare(item, (T)least) <= 0) {
+                    break;
+                }
+                h[i] = least;
+                i = child;
+            }
+            h[i] = item;
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            heap = null;
+            result.onError(throwable);
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            Object[] h = heap;
+            heap = null;
+            int n = size;
+            Object[] out = new Object[n];
+            try {
+                // pop the smallest into the last free slot of the output
+                for (int i = n - 1; i >= 0; i--) {
+                    out[i] = h[0];
+                    if (i > 0) {
+                        T last = (T)h[i];
+                        h[i] = null;
+                        siftDown(h, i, last);
+                    }
+                }
+            } catch (Throwable e) {
+                result.onError(e);
+                return;
+            }
+            result.onNext(Collections.unmodifiableList(Arrays.asList((T[])out)));
+        }
+        
+        @Override
+        public void request(long n) {
+            result.request(n);
+        }
+        
+        @Override
+        public void cancel() {
+            result.cancel();
+            subscription.cancel();
+        }
+    }
+}
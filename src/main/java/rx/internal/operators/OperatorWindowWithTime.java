@@ -15,21 +15,20 @@
  */
 package rx.internal.operators;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.Queue;
 import java.util.concurrent.TimeUnit;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
 import rx.Observable;
+import rx.Observable.OnSubscribe;
 import rx.Observable.Operator;
-import rx.Observer;
-import rx.Scheduler;
-import rx.Scheduler.Worker;
-import rx.Subscriber;
-import rx.functions.Action0;
-import rx.observers.SerializedObserver;
-import rx.observers.SerializedSubscriber;
+import rx.internal.*;
+import rx.internal.queues.SpscLinkedQueue;
+import rx.internal.subscriptions.AbstractSubscription;
+import rx.schedulers.Scheduler;
 
 /**
  * Creates windows of values into the source sequence with timed window creation, length and size bounds.
@@ -38,6 +37,9 @@ import rx.observers.SerializedSubscriber;
  *
  * <p>Note that this conforms the Rx.NET behavior, but does not match former RxJava
  * behavior, which operated as a regular buffer and mapped its lists to Observables.</p>
+ * <p>
+ * Each subscriber is driven by a single re-armed timer task (see {@link TimedChunkSubscriber}). A window is
+ * emitted when it opens and buffers its items until its single subscriber requests them.
  *
  * @param <T> the value type
  */
@@ -51,6 +53,15 @@ public final class OperatorWindowWithTime<T> implements Operator<Observable<T>,
     final int size;
     
     public OperatorWindowWithTime(long timespan, long timeshift, TimeUnit unit, int size, Scheduler scheduler) {
+        if (timespan <= 0) {
+            throw new IllegalArgumentException("timespan > 0 required but it was " + timespan);
+        }
+        if (timeshift <= 0) {
+            throw new IllegalArgumentException("timeshift > 0 required but it was " + timeshift);
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("size > 0 required but it was " + size);
+        }
         this.timespan = timespan;
         this.timeshift = timeshift;
         this.unit = unit;
@@ -58,424 +69,196 @@ public final class OperatorWindowWithTime<T> implements Operator<Observable<T>,
         this.scheduler = scheduler;
     }
     
-    
     @Override
-    public Subscriber<? super T> call(Subscriber<? super Observable<T>> child) {
-        Worker worker = scheduler.createWorker();
-        child.add(worker);
-        
-        if (timespan == timeshift) {
-            ExactSubscriber s = new ExactSubscriber(child, worker);
-            s.scheduleExact();
-            return s;
-        }
-        
-        InexactSubscriber s = new InexactSubscriber(child, worker);
-        s.startNewChunk();
-        s.scheduleChunk();
-        return s;
+    public Subscriber<? super T> apply(Subscriber<? super Observable<T>> child) {
+        return new WindowSubscriber<>(child, timespan, timeshift, unit, size, scheduler.createWorker());
     }
-    /** Indicate the current subject should complete and a new subject be emitted. */
-    static final Object NEXT_SUBJECT = new Object();
-    /** For error and completion indication. */
-    static final NotificationLite<Object> nl = NotificationLite.instance();
     
-    /** The immutable windowing state with one subject. */
-    static final class State<T> {
-        final Observer<T> consumer;
-        final Observable<T> producer;
-        final int count;
-        static final State<Object> EMPTY = new State<Object>(null, null, 0);
-        
-        public State(Observer<T> consumer, Observable<T> producer, int count) {
-            this.consumer = consumer;
-            this.producer = producer;
-            this.count = count;
+    /** Emits a new window when it opens and completes it when it closes. */
+    static final class WindowSubscriber<T> extends TimedChunkSubscriber<T, WindowState<T>, Observable<T>> {
+        WindowSubscriber(Subscriber<? super Observable<T>> child, long timespan, long timeshift, TimeUnit unit,
+                int maxCount, Scheduler.Worker worker) {
+            super(child, timespan, timeshift, unit, maxCount, worker);
         }
-        public State<T> next() {
-            return new State<T>(consumer, producer, count + 1);
+        
+        @Override
+        WindowState<T> createChunk() {
+            if (!produced()) {
+                return null;
+            }
+            WindowState<T> w = new WindowState<>();
+            child.onNext(Observable.create(w));
+            return w;
         }
-        public State<T> create(Observer<T> consumer, Observable<T> producer) {
-            return new State<T>(consumer, producer, 0);
+        
+        @Override
+        void append(WindowState<T> chunk, T item) {
+            chunk.onNext(item);
         }
-        public State<T> clear() {
-            return empty();
+        
+        @Override
+        void closeChunk(WindowState<T> chunk) {
+            chunk.onComplete();
         }
-        @SuppressWarnings("unchecked")
-        public static <T> State<T> empty() {
-            return (State<T>)EMPTY;
+        
+        @Override
+        void errorChunk(WindowState<T> chunk, Throwable e) {
+            chunk.onError(e);
         }
     }
-    /** Subscriber with exact, non-overlapping windows. */
-    final class ExactSubscriber extends Subscriber<T> {
-        final Subscriber<? super Observable<T>> child;
-        final Worker worker;
-        final Object guard;
-        /** Guarded by guard. */
-        List<Object> queue;
-        /** Guarded by guard. */
-        boolean emitting;
-        volatile State<T> state;
+    
+    /**
+     * A unicast window which buffers the items of the single producer until its single subscriber requests them.
+     * @param <T> the value type
+     */
+    static final class WindowState<T> implements OnSubscribe<T>, Subscription {
+        final Queue<T> queue;
         
-        public ExactSubscriber(Subscriber<? super Observable<T>> child, Worker worker) {
-            super(child);
-            this.child = new SerializedSubscriber<Observable<T>>(child);
-            this.worker = worker;
-            this.guard = new Object();
-            this.state = State.empty();
-        }
+        volatile Subscriber<? super T> actual;
+        static final long ACTUAL = addressOf(WindowState.class, "actual");
         
-        @Override
-        public void onStart() {
-            request(Long.MAX_VALUE);
+        volatile long requested;
+        static final long REQUESTED = addressOf(WindowState.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(WindowState.class, "wip");
+        
+        volatile boolean cancelled;
+        volatile boolean done;
+        Throwable error;
+        
+        public WindowState() {
+            this.queue = new SpscLinkedQueue<>();
         }
         
         @Override
-        public void onNext(T t) {
-            List<Object> localQueue;
-            synchronized (guard) {
-                if (emitting) {
-                    if (queue == null) {
-                        queue = new ArrayList<Object>();
-                    }
-                    queue.add(t);
-                    return;
-                }
-                localQueue = queue;
-                queue = null;
-                emitting = true;
-            }
-            boolean once = true;
-            boolean skipFinal = false;
-            try {
-                do {
-                    drain(localQueue);
-                    if (once) {
-                        once = false;
-                        emitValue(t);
-                    }
-                    synchronized (guard) {
-                        localQueue = queue;
-                        queue = null;
-                        if (localQueue == null) {
-                            emitting = false;
-                            skipFinal = true;
-                            return;
-                        }
-                    }
-                } while (!child.isUnsubscribed());
-            } finally {
-                if (!skipFinal) {
-                    synchronized (guard) {
-                        emitting = false;
-                    }
-                }
+        public void accept(Subscriber<? super T> s) {
+            if (UNSAFE.compareAndSwapObject(this, ACTUAL, null, s)) {
+                s.onSubscribe(this);
+                drain();
+            } else {
+                AbstractSubscription.setEmptyOn(s);
+                s.onError(new IllegalStateException("Only one Subscriber allowed!"));
             }
         }
-        void drain(List<Object> queue) {
-            if (queue == null) {
+        
+        void onNext(T value) {
+            if (cancelled) {
                 return;
             }
-            for (Object o : queue) {
-                if (o == NEXT_SUBJECT) {
-                    replaceSubject();
-                } else
-                if (nl.isError(o)) {
-                    error(nl.getError(o));
-                    break;
-                } else
-                if (nl.isCompleted(o)) {
-                    complete();
-                    break;
+            if (wip == 0 && UNSAFE.compareAndSwapInt(this, WIP, 0, 1)) {
+                Subscriber<? super T> a = actual;
+                long r = requested;
+                if (a != null && r != 0L && queue.isEmpty()) {
+                    // fast path: no need to buffer
+                    a.onNext(value);
+                    if (r != Long.MAX_VALUE) {
+                        UNSAFE.getAndAddLong(this, REQUESTED, -1);
+                    }
+                    if (UNSAFE.getAndAddInt(this, WIP, -1) == 1) {
+                        return;
+                    }
                 } else {
-                    @SuppressWarnings("unchecked")
-                    T t = (T)o;
-                    emitValue(t);
+                    queue.offer(value);
                 }
-            }
-        }
-        void replaceSubject() {
-            Observer<T> s = state.consumer;
-            if (s != null) {
-                s.onComplete();
-            }
-            BufferUntilSubscriber<T> bus = BufferUntilSubscriber.create();
-            state = state.create(bus, bus);
-            child.onNext(bus);
-        }
-        void emitValue(T t) {
-            State<T> s = state;
-            if (s.consumer == null) {
-                replaceSubject();
-                s = state;
-            }
-            s.consumer.onNext(t);
-            if (s.count == size - 1) {
-                s.consumer.onComplete();
-                s = s.clear();
+                drainLoop();
             } else {
-                s = s.next();
+                queue.offer(value);
+                drain();
             }
-            state = s;
         }
         
-        @Override
-        public void onError(Throwable e) {
-            synchronized (guard) {
-                if (emitting) {
-                    // drop any queued action and terminate asap
-                    queue = Collections.<Object>singletonList(nl.error(e));
-                    return;
-                }
-                queue = null;
-                emitting = true;
-            }
-            error(e);
-        }
-        void error(Throwable e) {
-            Observer<T> s = state.consumer;
-            state = state.clear();
-            if (s != null) {
-                s.onError(e);
-            }
-            child.onError(e);
-            unsubscribe();
+        void onError(Throwable e) {
+            error = e;
+            done = true;
+            drain();
         }
-        void complete() {
-            Observer<T> s = state.consumer;
-            state = state.clear();
-            if (s != null) {
-                s.onComplete();
-            }
-            child.onComplete();
-            unsubscribe();
+        
+        void onComplete() {
+            done = true;
+            drain();
         }
+        
         @Override
-        public void onComplete() {
-            List<Object> localQueue;
-            synchronized (guard) {
-                if (emitting) {
-                    if (queue == null) {
-                        queue = new ArrayList<Object>();
-                    }
-                    queue.add(nl.completed());
-                    return;
-                }
-                localQueue = queue;
-                queue = null;
-                emitting = true;
-            }
-            try {
-                drain(localQueue);
-            } catch (Throwable e) {
-                error(e);
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, actual)) {
+                cancel();
                 return;
             }
-            complete();
+            TerminalAtomics.request(this, REQUESTED, n);
+            drain();
         }
         
-        void scheduleExact() {
-            worker.schedulePeriodically(new Action0() {
-                
-                @Override
-                public void call() {
-                    nextWindow();
-                }
-                
-            }, 0, timespan, unit);
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                drain();
+            }
         }
-        void nextWindow() {
-            List<Object> localQueue;
-            synchronized (guard) {
-                if (emitting) {
-                    if (queue == null) {
-                        queue = new ArrayList<Object>();
-                    }
-                    queue.add(NEXT_SUBJECT);
-                    return;
-                }
-                localQueue = queue;
-                queue = null;
-                emitting = true;
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) == 0) {
+                drainLoop();
             }
-            boolean once = true;
-            boolean skipFinal = false;
-            try {
-                do {
-                    drain(localQueue);
-                    if (once) {
-                        once = false;
-                        replaceSubject();
-                    }
-                    synchronized (guard) {
-                        localQueue = queue;
-                        queue = null;
-                        if (localQueue == null) {
-                            emitting = false;
-                            skipFinal = true;
+        }
+        
+        void drainLoop() {
+            int missed = 1;
+            final Queue<T> q = queue;
+            for (;;) {
+                Subscriber<? super T> a = actual;
+                if (cancelled) {
+                    q.clear();
+                } else
+                if (a != null) {
+                    long r = requested;
+                    long e = 0L;
+                    while (e != r) {
+                        boolean d = done;
+                        T v = q.poll();
+                        boolean empty = v == null;
+                        if (checkTerminated(d, empty, a)) {
                             return;
                         }
+                        if (empty) {
+                            break;
+                        }
+                        a.onNext(v);
+                        e++;
                     }
-                } while (!child.isUnsubscribed());
-            } finally {
-                if (!skipFinal) {
-                    synchronized (guard) {
-                        emitting = false;
+                    if (e == r && checkTerminated(done, q.isEmpty(), a)) {
+                        return;
                     }
-                }
-            }
-        }
-    }
-    /** 
-     * Record to store the subject and the emission count. 
-     * @param <T> the subject's in-out type
-     */
-    static final class CountedSerializedSubject<T> {
-        final Observer<T> consumer;
-        final Observable<T> producer;
-        int count;
-
-        public CountedSerializedSubject(Observer<T> consumer, Observable<T> producer) {
-            this.consumer = new SerializedObserver<T>(consumer);
-            this.producer = producer;
-        }
-    }
-    /** Subscriber with inexact, potentially overlapping or discontinuous windows. */
-    final class InexactSubscriber extends Subscriber<T> {
-        final Subscriber<? super Observable<T>> child;
-        final Worker worker;
-        final Object guard;
-        /** Guarded by this. */
-        final List<CountedSerializedSubject<T>> chunks;
-        /** Guarded by this. */
-        boolean done;
-        public InexactSubscriber(Subscriber<? super Observable<T>> child, Worker worker) {
-            super(child);
-            this.child = child;
-            this.worker = worker;
-            this.guard = new Object();
-            this.chunks = new LinkedList<CountedSerializedSubject<T>>();
-        }
-
-        @Override
-        public void onStart() {
-            request(Long.MAX_VALUE);
-        }
-        
-        @Override
-        public void onNext(T t) {
-            List<CountedSerializedSubject<T>> list;
-            synchronized (guard) {
-                if (done) {
-                    return;
-                }
-                list = new ArrayList<CountedSerializedSubject<T>>(chunks);
-                Iterator<CountedSerializedSubject<T>> it = chunks.iterator();
-                while (it.hasNext()) {
-                    CountedSerializedSubject<T> cs = it.next();
-                    if (++cs.count == size) {
-                        it.remove();
+                    if (e != 0L && r != Long.MAX_VALUE) {
+                        UNSAFE.getAndAddLong(this, REQUESTED, -e);
                     }
                 }
-            }
-            for (CountedSerializedSubject<T> cs : list) {
-                cs.consumer.onNext(t);
-                if (cs.count == size) {
-                    cs.consumer.onComplete();
-                }
-            }
-        }
-
-        @Override
-        public void onError(Throwable e) {
-            List<CountedSerializedSubject<T>> list;
-            synchronized (guard) {
-                if (done) {
-                    return;
-                }
-                done = true;
-                list = new ArrayList<CountedSerializedSubject<T>>(chunks);
-                chunks.clear();
-            }
-            for (CountedSerializedSubject<T> cs : list) {
-                cs.consumer.onError(e);
-            }
-            child.onError(e);
-        }
-
-        @Override
-        public void onComplete() {
-            List<CountedSerializedSubject<T>> list;
-            synchronized (guard) {
-                if (done) {
-                    return;
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
                 }
-                done = true;
-                list = new ArrayList<CountedSerializedSubject<T>>(chunks);
-                chunks.clear();
-            }
-            for (CountedSerializedSubject<T> cs : list) {
-                cs.consumer.onComplete();
             }
-            child.onComplete();
-        }
-        void scheduleChunk() {
-            worker.schedulePeriodically(new Action0() {
-
-                @Override
-                public void call() {
-                    startNewChunk();
-                }
-                
-            }, timeshift, timeshift, unit);
         }
-        void startNewChunk() {
-            final CountedSerializedSubject<T> chunk = createCountedSerializedSubject();
-            synchronized (guard) {
-                if (done) {
-                    return;
-                }
-                chunks.add(chunk);
-            }
-            try {
-                child.onNext(chunk.producer);
-            } catch (Throwable e) {
-                onError(e);
-                return;
+        
+        boolean checkTerminated(boolean d, boolean empty, Subscriber<? super T> a) {
+            if (cancelled) {
+                queue.clear();
+                return true;
             }
-            
-            worker.schedule(new Action0() {
-
-                @Override
-                public void call() {
-                    terminateChunk(chunk);
-                }
-                
-            }, timespan, unit);
-        }
-        void terminateChunk(CountedSerializedSubject<T> chunk) {
-            boolean terminate = false;
-            synchronized (guard) {
-                if (done) {
-                    return;
-                }
-                Iterator<CountedSerializedSubject<T>> it = chunks.iterator();
-                while (it.hasNext()) {
-                    CountedSerializedSubject<T> cs = it.next();
-                    if (cs == chunk) {
-                        terminate = true;
-                        it.remove();
-                        break;
-                    }
+            if (d) {
+                Throwable e = error;
+                if (e != null) {
+                    queue.clear();
+                    a.onError(e);
+                    return true;
+                } else
+                if (empty) {
+                    a.onComplete();
+                    return true;
                 }
             }
-            if (terminate) {
-                chunk.consumer.onComplete();
-            }
-        }
-        CountedSerializedSubject<T> createCountedSerializedSubject() {
-            BufferUntilSubscriber<T> bus = BufferUntilSubscriber.create();
-            return new CountedSerializedSubject<T>(bus, bus);
+            return false;
         }
     }
 }
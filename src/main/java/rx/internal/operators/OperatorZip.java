@@ -15,28 +15,21 @@
  */
 package rx.internal.operators;
 
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import static rx.internal.UnsafeAccess.*;
 
+import java.util.*;
+import java.util.function.*;
+
+import rx.Flow;
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
 import rx.Observable;
 import rx.Observable.Operator;
-import rx.Observer;
-import rx.Producer;
-import rx.Subscriber;
 import rx.exceptions.MissingBackpressureException;
-import rx.exceptions.OnErrorThrowable;
-import rx.functions.BiFunction;
-import rx.functions.Func3;
-import rx.functions.Func4;
-import rx.functions.Func5;
-import rx.functions.Func6;
-import rx.functions.Func7;
-import rx.functions.Func8;
-import rx.functions.Func9;
-import rx.functions.FuncN;
-import rx.functions.Functions;
-import rx.internal.util.RxRingBuffer;
-import rx.subscriptions.CompositeSubscription;
+import rx.functions.*;
+import rx.internal.*;
+import rx.internal.queues.SpscArrayQueue;
+import rx.subscribers.AbstractSubscriber;
 
 /**
  * Returns an Observable that emits the results of a function applied to sets of items emitted, in
@@ -51,6 +44,11 @@ import rx.subscriptions.CompositeSubscription;
  * <p>
  * The resulting Observable returned from zip will invoke <code>onNext</code> as many times as the
  * number of <code>onNext</code> invocations of the source Observable that emits the fewest items.
+ * <p>
+ * Each source is prefetched into its own {@link SpscArrayQueue} and replenished in batches. The drain
+ * loop fills a reusable row with one item per source; the 2, 3 and 4 argument zip functions are called
+ * with the row's elements directly, the N-ary zip function receives a copy of the row which it may keep.
+ * Sources which are {@link ScalarSource}s are not subscribed to; their value is queued directly.
  * 
  * @param <R>
  *            the result type
@@ -61,279 +59,330 @@ public final class OperatorZip<R> implements Operator<R, Observable<?>[]> {
      * The types will be cast on the edges so usage will be the type-safe but the internals are not.
      */
 
-    final FuncN<? extends R> zipFunction;
+    final Function<? super Object[], ? extends R> zipFunction;
+    /** True if the zip function may keep the array it receives so each row has to be copied. */
+    final boolean copyRow;
+    final int prefetch;
 
-    public OperatorZip(FuncN<? extends R> f) {
+    public OperatorZip(Function<? super Object[], ? extends R> f) {
         this.zipFunction = f;
+        this.copyRow = true;
+        this.prefetch = Flow.defaultBufferSize();
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public OperatorZip(BiFunction f) {
-        this.zipFunction = Functions.fromFunc(f);
-    }
-
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    public OperatorZip(Func3 f) {
-        this.zipFunction = Functions.fromFunc(f);
-    }
-
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    public OperatorZip(Func4 f) {
-        this.zipFunction = Functions.fromFunc(f);
+        this.zipFunction = a -> (R)f.apply(a[0], a[1]);
+        this.copyRow = false;
+        this.prefetch = Flow.defaultBufferSize();
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    public OperatorZip(Func5 f) {
-        this.zipFunction = Functions.fromFunc(f);
+    public OperatorZip(TriFunction f) {
+        this.zipFunction = a -> (R)f.apply(a[0], a[1], a[2]);
+        this.copyRow = false;
+        this.prefetch = Flow.defaultBufferSize();
     }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
-    public OperatorZip(Func6 f) {
-        this.zipFunction = Functions.fromFunc(f);
+    public OperatorZip(QuadFunction f) {
+        this.zipFunction = a -> (R)f.apply(a[0], a[1], a[2], a[3]);
+        this.copyRow = false;
+        this.prefetch = Flow.defaultBufferSize();
     }
 
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    public OperatorZip(Func7 f) {
-        this.zipFunction = Functions.fromFunc(f);
-    }
-
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    public OperatorZip(Func8 f) {
-        this.zipFunction = Functions.fromFunc(f);
-    }
-
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    public OperatorZip(Func9 f) {
-        this.zipFunction = Functions.fromFunc(f);
-    }
-
-    @SuppressWarnings("rawtypes")
     @Override
-    public Subscriber<? super Observable[]> call(final Subscriber<? super R> child) {
-        final Zip<R> zipper = new Zip<R>(child, zipFunction);
-        final ZipProducer<R> producer = new ZipProducer<R>(zipper);
-        child.setProducer(producer);
-        final ZipSubscriber subscriber = new ZipSubscriber(child, zipper, producer);
-        return subscriber;
+    public Subscriber<? super Observable<?>[]> apply(final Subscriber<? super R> child) {
+        return new ZipSubscriber<>(child, zipFunction, copyRow, prefetch);
     }
 
-    @SuppressWarnings("rawtypes")
-    private final class ZipSubscriber extends Subscriber<Observable[]> {
-
+    static final class ZipSubscriber<R> extends AbstractSubscriber<Observable<?>[]> implements Subscription {
         final Subscriber<? super R> child;
-        final Zip<R> zipper;
-        final ZipProducer<R> producer;
-
-        public ZipSubscriber(Subscriber<? super R> child, Zip<R> zipper, ZipProducer<R> producer) {
-            super(child);
+        final Function<? super Object[], ? extends R> zipFunction;
+        final boolean copyRow;
+        final int prefetch;
+        
+        /** The inner subscribers, set once the sources arrived. */
+        volatile ZipInner[] inners;
+        /** The items of the current round, accessed from the drain loop only; null marks a missing item. */
+        Object[] row;
+        boolean started;
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(ZipSubscriber.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(ZipSubscriber.class, "wip");
+        
+        volatile Throwable error;
+        static final long ERROR = addressOf(ZipSubscriber.class, "error");
+        
+        volatile boolean cancelled;
+        
+        public ZipSubscriber(Subscriber<? super R> child, Function<? super Object[], ? extends R> zipFunction, 
+                boolean copyRow, int prefetch) {
             this.child = child;
-            this.zipper = zipper;
-            this.producer = producer;
+            this.zipFunction = zipFunction;
+            this.copyRow = copyRow;
+            this.prefetch = prefetch;
         }
-
-        boolean started = false;
-
+        
         @Override
-        public void onComplete() {
-            if (!started) {
-                // this means we have not received a valid onNext before termination so we emit the onComplete()
+        protected void onSubscribe() {
+            child.onSubscribe(this);
+            subscription.request(Long.MAX_VALUE);
+        }
+        
+        @Override
+        public void onNext(Observable<?>[] sources) {
+            if (started) {
+                return;
+            }
+            started = true;
+            int n = sources.length;
+            if (n == 0) {
                 child.onComplete();
+                return;
             }
+            ZipInner[] a = new ZipInner[n];
+            for (int i = 0; i < n; i++) {
+                a[i] = new ZipInner(this, prefetch);
+            }
+            row = new Object[n];
+            inners = a;
+            for (int i = 0; i < n && !cancelled; i++) {
+                Observable<?> o = sources[i];
+                Object v = ScalarSource.scalarValueOf(o);
+                if (v == ScalarSource.NOT_SCALAR) {
+                    o.unsafeSubscribe(a[i]);
+                } else {
+                    // no need to subscribe, the value or emptiness is known
+                    if (v != null) {
+                        a[i].queue.offer(v);
+                    }
+                    a[i].done = true;
+                }
+            }
+            if (cancelled) {
+                cancelAll();
+                return;
+            }
+            drain();
         }
-
+        
         @Override
-        public void onError(Throwable e) {
-            child.onError(e);
+        public void onError(Throwable throwable) {
+            innerError(throwable);
         }
-
+        
         @Override
-        public void onNext(Observable[] observables) {
-            if (observables == null || observables.length == 0) {
-                child.onComplete();
-            } else {
+        public void onComplete() {
+            if (!started) {
                 started = true;
-                zipper.start(observables, producer);
+                child.onComplete();
             }
         }
-
-    }
-
-    private static final class ZipProducer<R> extends AtomicLong implements Producer {
-        /** */
-        private static final long serialVersionUID = -1216676403723546796L;
-        private Zip<R> zipper;
-
-        public ZipProducer(Zip<R> zipper) {
-            this.zipper = zipper;
-        }
-
+        
         @Override
         public void request(long n) {
-            BackpressureUtils.getAndAddRequest(this, n);
-            // try and claim emission if no other threads are doing so
-            zipper.tick();
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            drain();
         }
-
-    }
-
-    private static final class Zip<R> {
-        private final Observer<? super R> child;
-        private final FuncN<? extends R> zipFunction;
-        private final CompositeSubscription childSubscription = new CompositeSubscription();
-
-        @SuppressWarnings("unused")
-        volatile long counter;
-        @SuppressWarnings("rawtypes")
-        static final AtomicLongFieldUpdater<Zip> COUNTER_UPDATER = AtomicLongFieldUpdater.newUpdater(Zip.class, "counter");
-
-        static final int THRESHOLD = (int) (Flow.defaultBufferSize() * 0.7);
-        int emitted = 0; // not volatile/synchronized as accessed inside COUNTER_UPDATER block
-
-        /* initialized when started in `start` */
-        private Object[] observers;
-        private AtomicLong requested;
-
-        public Zip(final Subscriber<? super R> child, FuncN<? extends R> zipFunction) {
-            this.child = child;
-            this.zipFunction = zipFunction;
-            child.add(childSubscription);
+        
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                subscription.cancel();
+                cancelAll();
+            }
         }
-
-        @SuppressWarnings("unchecked")
-        public void start(@SuppressWarnings("rawtypes") Observable[] os, AtomicLong requested) {
-            observers = new Object[os.length];
-            this.requested = requested;
-            for (int i = 0; i < os.length; i++) {
-                InnerSubscriber io = new InnerSubscriber();
-                observers[i] = io;
-                childSubscription.add(io);
+        
+        void cancelAll() {
+            ZipInner[] a = inners;
+            if (a != null) {
+                for (ZipInner inner : a) {
+                    inner.cancel();
+                }
             }
-
-            for (int i = 0; i < os.length; i++) {
-                os[i].unsafeSubscribe((InnerSubscriber) observers[i]);
+        }
+        
+        void innerError(Throwable e) {
+            if (UNSAFE.compareAndSwapObject(this, ERROR, null, e)) {
+                drain();
             }
         }
-
-        /**
-         * check if we have values for each and emit if we do
-         * 
-         * This will only allow one thread at a time to do the work, but ensures via `counter` increment/decrement
-         * that there is always once who acts on each `tick`. Same concept as used in OperationObserveOn.
-         * 
-         */
-        @SuppressWarnings("unchecked")
-        void tick() {
-            final Object[] observers = this.observers;
-            if (observers == null) {
-                // nothing yet to do (initial request from Producer)
+        
+        void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) != 0) {
                 return;
             }
-            if (COUNTER_UPDATER.getAndIncrement(this) == 0) {
-                final int length = observers.length;
-                final Observer<? super R> child = this.child;
-                final AtomicLong requested = this.requested;
-                do {
-                    while (true) {
-                        // peek for a potential onComplete() event
-                        final Object[] vs = new Object[length];
-                        boolean allHaveValues = true;
-                        for (int i = 0; i < length; i++) {
-                            RxRingBuffer buffer = ((InnerSubscriber) observers[i]).items;
-                            Object n = buffer.peek();
-
-                            if (n == null) {
-                                allHaveValues = false;
-                                continue;
-                            }
-
-                            if (buffer.isCompleted(n)) {
-                                child.onComplete();
-                                // we need to unsubscribe from all children since children are
-                                // independently subscribed
-                                childSubscription.unsubscribe();
-                                return;
-                            } else {
-                                vs[i] = buffer.getValue(n);
-                            }
+            int missed = 1;
+            final Subscriber<? super R> c = child;
+            for (;;) {
+                ZipInner[] a = inners;
+                if (a != null) {
+                    final Object[] values = row;
+                    final int n = a.length;
+                    long r = requested;
+                    long e = 0L;
+                    for (;;) {
+                        if (cancelled) {
+                            return;
                         }
-                        // we only emit if requested > 0 and have all values available
-                        if (requested.get() > 0 && allHaveValues) {
-                            try {
-                                // all have something so emit
-                                child.onNext(zipFunction.call(vs));
-                                // we emitted so decrement the requested counter
-                                requested.decrementAndGet();
-                                emitted++;
-                            } catch (Throwable e) {
-                                child.onError(OnErrorThrowable.addValueAsLastCause(e, vs));
-                                return;
-                            }
-                            // now remove them
-                            for (Object obj : observers) {
-                                RxRingBuffer buffer = ((InnerSubscriber) obj).items;
-                                buffer.poll();
-                                // eagerly check if the next item on this queue is an onComplete
-                                if (buffer.isCompleted(buffer.peek())) {
-                                    // it is an onComplete so shut down
-                                    child.onComplete();
-                                    // we need to unsubscribe from all children since children are independently subscribed
-                                    childSubscription.unsubscribe();
-                                    return;
-                                }
-                            }
-                            if (emitted > THRESHOLD) {
-                                for (Object obj : observers) {
-                                    ((InnerSubscriber) obj).requestMore(emitted);
+                        Throwable ex = error;
+                        if (ex != null) {
+                            cancelAll();
+                            c.onError(ex);
+                            return;
+                        }
+                        boolean full = true;
+                        for (int i = 0; i < n; i++) {
+                            if (values[i] == null) {
+                                ZipInner inner = a[i];
+                                boolean d = inner.done;
+                                Object v = inner.queue.poll();
+                                if (v == null) {
+                                    if (d) {
+                                        // this source won't produce the missing item
+                                        cancelAll();
+                                        Arrays.fill(values, null);
+                                        c.onComplete();
+                                        return;
+                                    }
+                                    full = false;
+                                } else {
+                                    values[i] = v;
                                 }
-                                emitted = 0;
                             }
-                        } else {
+                        }
+                        if (!full || e == r) {
                             break;
                         }
+                        R v;
+                        try {
+                            v = zipFunction.apply(copyRow ? values.clone() : values);
+                            if (v == null) {
+                                throw new NullPointerException("The zip function returned a null value");
+                            }
+                        } catch (Throwable t) {
+                            cancelAll();
+                            Arrays.fill(values, null);
+                            c.onError(t);
+                            return;
+                        }
+                        Arrays.fill(values, null);
+                        c.onNext(v);
+                        e++;
+                        for (ZipInner inner : a) {
+                            inner.replenish();
+                        }
+                    }
+                    if (e != 0L && r != Long.MAX_VALUE) {
+                        UNSAFE.getAndAddLong(this, REQUESTED, -e);
                     }
-                } while (COUNTER_UPDATER.decrementAndGet(this) > 0);
+                }
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    break;
+                }
             }
-
         }
-
-        // used to observe each Observable we are zipping together
-        // it collects all items in an internal queue
-        @SuppressWarnings("rawtypes")
-        final class InnerSubscriber extends Subscriber {
-            // Concurrent* since we need to read it from across threads
-            final RxRingBuffer items = RxRingBuffer.getSpmcInstance();
-
+    }
+    
+    static final class ZipInner implements Subscriber<Object> {
+        final ZipSubscriber<?> parent;
+        final Queue<Object> queue;
+        final int prefetch;
+        final int limit;
+        /** The number of items consumed since the last replenishment, accessed from the drain loop only. */
+        int produced;
+        
+        volatile boolean done;
+        
+        volatile Subscription subscription;
+        static final long SUBSCRIPTION = addressOf(ZipInner.class, "subscription");
+        
+        static final Subscription CANCELLED = new Subscription() {
             @Override
-            public void onStart() {
-                request(Flow.defaultBufferSize());
-            }
-            
-            public void requestMore(long n) {
-                request(n);
+            public void request(long n) {
+                
             }
-
             @Override
-            public void onComplete() {
-                items.onComplete();
-                tick();
+            public void cancel() {
+                
             }
-
-            @Override
-            public void onError(Throwable e) {
-                // emit error immediately and shut down
-                child.onError(e);
+        };
+        
+        public ZipInner(ZipSubscriber<?> parent, int prefetch) {
+            this.parent = parent;
+            this.queue = new SpscArrayQueue<>(prefetch);
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+        }
+        
+        @Override
+        public void onSubscribe(Subscription s) {
+            Conformance.subscriptionNonNull(s);
+            if (!UNSAFE.compareAndSwapObject(this, SUBSCRIPTION, null, s)) {
+                Subscription curr = subscription;
+                if (curr != CANCELLED) {
+                    Conformance.onSubscribeOnce(curr, this);
+                }
+                s.cancel();
+                return;
             }
-
-            @Override
-            public void onNext(Object t) {
-                try {
-                    items.onNext(t);
-                } catch (MissingBackpressureException e) {
-                    onError(e);
+            s.request(prefetch);
+        }
+        
+        @Override
+        public void onNext(Object item) {
+            if (!queue.offer(item)) {
+                cancel();
+                parent.innerError(new MissingBackpressureException());
+                return;
+            }
+            parent.drain();
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            parent.innerError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            done = true;
+            parent.drain();
+        }
+        
+        void replenish() {
+            Subscription s = subscription;
+            if (s == null) {
+                // a short-circuited scalar source
+                return;
+            }
+            int p = produced + 1;
+            if (p == limit) {
+                produced = 0;
+                s.request(p);
+            } else {
+                produced = p;
+            }
+        }
+        
+        void cancel() {
+            Subscription s = subscription;
+            if (s != CANCELLED) {
+                s = (Subscription)UNSAFE.getAndSetObject(this, SUBSCRIPTION, CANCELLED);
+                if (s != null && s != CANCELLED) {
+                    s.cancel();
                 }
-                tick();
             }
-        };
+        }
     }
-
 }
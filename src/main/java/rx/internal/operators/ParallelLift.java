@@ -0,0 +1,56 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import rx.Flow.Subscriber;
+import rx.Observable.Operator;
+import rx.observables.ParallelObservable;
+
+/**
+ * Applies an {@link Operator} to each rail of a {@link ParallelObservable} individually.
+ *
+ * @param <T> the input value type
+ * @param <R> the output value type
+ */
+public final class ParallelLift<T, R> extends ParallelObservable<R> {
+    final ParallelObservable<T> source;
+    final Operator<? extends R, ? super T> lifter;
+    
+    public ParallelLift(ParallelObservable<T> source, Operator<? extends R, ? super T> lifter) {
+        this.source = source;
+        this.lifter = lifter;
+    }
+    
+    @Override
+    public int rails() {
+        return source.rails();
+    }
+    
+    @Override
+    public void subscribe(Subscriber<? super R>[] subscribers) {
+        if (!validate(subscribers)) {
+            return;
+        }
+        int n = subscribers.length;
+        @SuppressWarnings("unchecked")
+        Subscriber<? super T>[] parents = new Subscriber[n];
+        for (int i = 0; i < n; i++) {
+            parents[i] = lifter.apply(subscribers[i]);
+        }
+        source.subscribe(parents);
+    }
+}
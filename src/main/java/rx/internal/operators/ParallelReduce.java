@@ -0,0 +1,154 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.function.*;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.internal.subscriptions.*;
+import rx.observables.ParallelObservable;
+import rx.subscribers.AbstractSubscriber;
+
+/**
+ * Reduces each rail of a {@link ParallelObservable} into a single value.
+ * <p>
+ * Without an initial value supplier, the first item of a rail is the initial value
+ * and an empty rail completes without emitting.
+ *
+ * @param <T> the input value type
+ * @param <R> the accumulated value type
+ */
+public final class ParallelReduce<T, R> extends ParallelObservable<R> {
+    final ParallelObservable<T> source;
+    final Supplier<R> initialSupplier;
+    final BiFunction<R, ? super T, R> reducer;
+    
+    public ParallelReduce(ParallelObservable<T> source, Supplier<R> initialSupplier, BiFunction<R, ? super T, R> reducer) {
+        this.source = source;
+        this.initialSupplier = initialSupplier;
+        this.reducer = reducer;
+    }
+    
+    @Override
+    public int rails() {
+        return source.rails();
+    }
+    
+    @Override
+    public void subscribe(Subscriber<? super R>[] subscribers) {
+        if (!validate(subscribers)) {
+            return;
+        }
+        int n = subscribers.length;
+        @SuppressWarnings("unchecked")
+        Subscriber<? super T>[] parents = new Subscriber[n];
+        for (int i = 0; i < n; i++) {
+            ReduceSubscriber<T, R> rs = new ReduceSubscriber<>(subscribers[i], reducer);
+            if (initialSupplier != null) {
+                try {
+                    rs.value = initialSupplier.get();
+                } catch (Throwable e) {
+                    for (Subscriber<? super R> s : subscribers) {
+                        AbstractSubscription.setEmptyOn(s);
+                        s.onError(e);
+                    }
+                    return;
+                }
+                rs.hasValue = true;
+            }
+            parents[i] = rs;
+        }
+        source.subscribe(parents);
+    }
+    
+    static final class ReduceSubscriber<T, R> extends AbstractSubscriber<T> implements Subscription {
+        final Subscriber<? super R> child;
+        final BiFunction<R, ? super T, R> reducer;
+        final ScalarBackpressureSubscription<R> result;
+        R value;
+        boolean hasValue;
+        boolean done;
+        
+        public ReduceSubscriber(Subscriber<? super R> child, BiFunction<R, ? super T, R> reducer) {
+            this.child = child;
+            this.reducer = reducer;
+            this.result = new ScalarBackpressureSubscription<>(child);
+        }
+        
+        @Override
+        protected void onSubscribe() {
+            child.onSubscribe(this);
+            subscription.request(Long.MAX_VALUE);
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                return;
+            }
+            if (!hasValue) {
+                value = (R)item;
+                hasValue = true;
+                return;
+            }
+            try {
+                value = reducer.apply(value, item);
+            } catch (Throwable e) {
+                subscription.cancel();
+                onError(e);
+            }
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            value = null;
+            result.onError(throwable);
+        }
+        
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            if (hasValue) {
+                R v = value;
+                value = null;
+                result.onNext(v);
+            } else {
+                result.onComplete();
+            }
+        }
+        
+        @Override
+        public void request(long n) {
+            result.request(n);
+        }
+        
+        @Override
+        public void cancel() {
+            result.cancel();
+            subscription.cancel();
+        }
+    }
+}
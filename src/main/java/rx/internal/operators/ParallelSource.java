@@ -0,0 +1,327 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.Queue;
+import java.util.function.Function;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.Observable;
+import rx.exceptions.MissingBackpressureException;
+import rx.internal.*;
+import rx.internal.queues.SpscArrayQueue;
+import rx.observables.ParallelObservable;
+import rx.schedulers.Scheduler;
+import rx.subscribers.AbstractSubscriber;
+
+/**
+ * Splits the items of an {@link Observable} round-robin or by key into a number of rails,
+ * each draining its own queue on its own {@link Scheduler.Worker}.
+ * <p>
+ * The rails share a budget of {@code prefetch} items requested from the source and not yet consumed
+ * by a rail subscriber. Each rail queue can hold the whole budget so an uneven distribution by key
+ * can't overflow it.
+ *
+ * @param <T> the value type
+ */
+public final class ParallelSource<T> extends ParallelObservable<T> {
+    final Observable<? extends T> source;
+    final int rails;
+    /** The key selector, null for round-robin distribution. */
+    final Function<? super T, ?> keySelector;
+    final Scheduler scheduler;
+    final int prefetch;
+    
+    public ParallelSource(Observable<? extends T> source, int rails, Function<? super T, ?> keySelector,
+            Scheduler scheduler, int prefetch) {
+        this.source = source;
+        this.rails = rails;
+        this.keySelector = keySelector;
+        this.scheduler = scheduler;
+        this.prefetch = prefetch;
+    }
+    
+    @Override
+    public int rails() {
+        return rails;
+    }
+    
+    @Override
+    public void subscribe(Subscriber<? super T>[] subscribers) {
+        if (!validate(subscribers)) {
+            return;
+        }
+        source.unsafeSubscribe(new SplitSubscriber<>(subscribers, keySelector, scheduler, prefetch));
+    }
+    
+    static final class SplitSubscriber<T> extends AbstractSubscriber<T> {
+        final Rail<T>[] rails;
+        final Function<? super T, ?> keySelector;
+        final int prefetch;
+        final int limit;
+        /** The next rail index in round-robin mode, accessed from the onNext thread only. */
+        int index;
+        boolean done;
+        
+        /** The number of items consumed by the rails but not yet requested from the source. */
+        volatile long consumed;
+        static final long CONSUMED = addressOf(SplitSubscriber.class, "consumed");
+        
+        /** The number of rails not cancelled; the source is cancelled when it reaches zero. */
+        volatile int active;
+        static final long ACTIVE = addressOf(SplitSubscriber.class, "active");
+        
+        @SuppressWarnings("unchecked")
+        public SplitSubscriber(Subscriber<? super T>[] subscribers, Function<? super T, ?> keySelector,
+                Scheduler scheduler, int prefetch) {
+            int n = subscribers.length;
+            this.rails = new Rail[n];
+            for (int i = 0; i < n; i++) {
+                rails[i] = new Rail<>(this, subscribers[i], scheduler.createWorker(), prefetch);
+            }
+            this.keySelector = keySelector;
+            this.prefetch = prefetch;
+            this.limit = prefetch - (prefetch >> 2);
+            UNSAFE.putOrderedInt(this, ACTIVE, n);
+        }
+        
+        @Override
+        protected void onSubscribe() {
+            for (Rail<T> r : rails) {
+                r.child.onSubscribe(r);
+            }
+            subscription.request(prefetch);
+        }
+        
+        @Override
+        public void onNext(T item) {
+            if (done) {
+                return;
+            }
+            Rail<T>[] a = rails;
+            int n = a.length;
+            int i;
+            if (keySelector == null) {
+                i = index;
+                index = i + 1 == n ? 0 : i + 1;
+            } else {
+                Object key;
+                try {
+                    key = keySelector.apply(item);
+                } catch (Throwable e) {
+                    subscription.cancel();
+                    onError(e);
+                    return;
+                }
+                int h = key != null ? key.hashCode() : 0;
+                i = ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % n;
+            }
+            Rail<T> r = a[i];
+            if (r.cancelled) {
+                replenish(1);
+                return;
+            }
+            if (!r.queue.offer(item)) {
+                subscription.cancel();
+                onError(new MissingBackpressureException());
+                return;
+            }
+            r.schedule();
+        }
+        
+        @Override
+        public void onError(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            for (Rail<T> r : rails) {
+                r.error = throwable;
+                r.done = true;
+                r.schedule();
+            }
+        }
+        
+        @Override
+        public void onComplete() {
+            if (done) {
+                return;
+            }
+            done = true;
+            for (Rail<T> r : rails) {
+                r.done = true;
+                r.schedule();
+            }
+        }
+        
+        /**
+         * Requests more from the source once enough items have been consumed by the rails.
+         * @param n the number of items consumed
+         */
+        void replenish(long n) {
+            long c = UNSAFE.getAndAddLong(this, CONSUMED, n) + n;
+            if (c >= limit) {
+                long d = UNSAFE.getAndSetLong(this, CONSUMED, 0L);
+                if (d != 0L) {
+                    subscription.request(d);
+                }
+            }
+        }
+        
+        void railCancelled() {
+            if (UNSAFE.getAndAddInt(this, ACTIVE, -1) == 1) {
+                subscription.cancel();
+            }
+        }
+    }
+    
+    /**
+     * A rail with its own queue, emitting to its subscriber on its own worker.
+     */
+    static final class Rail<T> implements Subscription, Runnable {
+        final SplitSubscriber<T> parent;
+        final Subscriber<? super T> child;
+        final Scheduler.Worker worker;
+        final Queue<T> queue;
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(Rail.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(Rail.class, "wip");
+        
+        volatile boolean cancelled;
+        volatile boolean done;
+        Throwable error;
+        
+        public Rail(SplitSubscriber<T> parent, Subscriber<? super T> child, Scheduler.Worker worker, int prefetch) {
+            this.parent = parent;
+            this.child = child;
+            this.worker = worker;
+            this.queue = new SpscArrayQueue<>(prefetch);
+        }
+        
+        @Override
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, child)) {
+                cancel();
+                return;
+            }
+            TerminalAtomics.request(this, REQUESTED, n);
+            schedule();
+        }
+        
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                parent.railCancelled();
+                // clear here if idle, otherwise the pending drain clears and disposes the worker;
+                // disposing it now could drop that drain and the queued items with it
+                schedule();
+            }
+        }
+        
+        void schedule() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) == 0) {
+                if (cancelled) {
+                    // no drain is pending, return the queued items to the budget on this thread
+                    run();
+                } else {
+                    worker.schedule(this);
+                }
+            }
+        }
+        
+        @Override
+        public void run() {
+            int missed = 1;
+            final Queue<T> q = queue;
+            final Subscriber<? super T> a = child;
+            for (;;) {
+                if (cancelled) {
+                    clear();
+                } else {
+                    long r = requested;
+                    long e = 0L;
+                    while (e != r) {
+                        boolean d = done;
+                        T v = q.poll();
+                        boolean empty = v == null;
+                        if (checkTerminated(d, empty, a)) {
+                            return;
+                        }
+                        if (empty) {
+                            break;
+                        }
+                        a.onNext(v);
+                        e++;
+                    }
+                    if (e == r && checkTerminated(done, q.isEmpty(), a)) {
+                        return;
+                    }
+                    if (e != 0L) {
+                        if (r != Long.MAX_VALUE) {
+                            UNSAFE.getAndAddLong(this, REQUESTED, -e);
+                        }
+                        parent.replenish(e);
+                    }
+                }
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    if (cancelled) {
+                        // the queue has been given back to the budget
+                        worker.dispose();
+                    }
+                    break;
+                }
+            }
+        }
+        
+        boolean checkTerminated(boolean d, boolean empty, Subscriber<? super T> a) {
+            if (d) {
+                Throwable e = error;
+                if (e != null) {
+                    queue.clear();
+                    worker.dispose();
+                    a.onError(e);
+                    return true;
+                } else
+                if (empty) {
+                    worker.dispose();
+                    a.onComplete();
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /** Drops the queued items and gives them back to the shared budget. */
+        void clear() {
+            long c = 0L;
+            while (queue.poll() != null) {
+                c++;
+            }
+            if (c != 0L) {
+                parent.replenish(c);
+            }
+        }
+    }
+}
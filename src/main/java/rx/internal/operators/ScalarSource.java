@@ -0,0 +1,118 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.function.Function;
+
+import rx.Flow.Subscriber;
+import rx.Observable;
+import rx.exceptions.Exceptions;
+import rx.internal.subscriptions.*;
+
+/**
+ * Marker interface for sources which, at least from some point on, can provide their 
+ * single value or their emptiness synchronously so operators such as {@code flatMap}
+ * and {@code merge} can short-circuit them without subscribing.
+ * <p>
+ * Once a source reported {@link #isScalar()} as true, it must keep doing so and
+ * must return the same value from {@link #scalarValue()}.
+ *
+ * @param <T> the value type
+ */
+public interface ScalarSource<T> {
+    /**
+     * Returns true if the source's value or emptiness is available synchronously right now.
+     * @return true if the source can be short-circuited
+     */
+    boolean isScalar();
+    /**
+     * Returns the single value of the source or null if the source is empty.
+     * <p>
+     * Should be called only if {@link #isScalar()} returned true.
+     * @return the single value or null if the source is empty
+     */
+    T scalarValue();
+    
+    /**
+     * Returns the scalar value of the given source if it can be short-circuited,
+     * {@code NOT_SCALAR} otherwise.
+     * @param source the source to check
+     * @return the scalar value, null if the source is empty or {@code NOT_SCALAR}
+     */
+    static Object scalarValueOf(Object source) {
+        if (source instanceof ScalarSource) {
+            ScalarSource<?> ss = (ScalarSource<?>)source;
+            if (ss.isScalar()) {
+                return ss.scalarValue();
+            }
+        }
+        return NOT_SCALAR;
+    }
+    
+    /** Indicates the source can't be short-circuited. */
+    Object NOT_SCALAR = new Object();
+    
+    /**
+     * Maps the scalar value into an Observable lazily and subscribes to it, 
+     * emitting its scalar value directly if the mapped Observable is a scalar source as well.
+     * @param <T> the scalar value type
+     * @param <R> the result value type
+     * @param value the scalar value
+     * @param mapper the function returning an Observable for the value
+     * @return the Observable which applies the mapper at subscription time
+     */
+    static <T, R> Observable<R> scalarFlatMap(T value, Function<? super T, ? extends Observable<? extends R>> mapper) {
+        return Observable.create(s -> {
+            Observable<? extends R> o;
+            try {
+                o = mapper.apply(value);
+            } catch (Throwable ex) {
+                Exceptions.throwIfFatal(ex);
+                AbstractSubscription.setEmptyOn(s);
+                s.onError(ex);
+                return;
+            }
+            if (o == null) {
+                AbstractSubscription.setEmptyOn(s);
+                s.onError(new NullPointerException("The mapper returned a null Observable"));
+                return;
+            }
+            subscribeScalar(o, s);
+        });
+    }
+    
+    /**
+     * Subscribes the Subscriber to the source or emits the scalar value directly if
+     * the source can be short-circuited.
+     * @param <T> the value type
+     * @param source the source Observable
+     * @param s the Subscriber
+     */
+    @SuppressWarnings("unchecked")
+    static <T> void subscribeScalar(Observable<? extends T> source, Subscriber<? super T> s) {
+        Object v = scalarValueOf(source);
+        if (v == NOT_SCALAR) {
+            source.unsafeSubscribe(s);
+        } else
+        if (v == null) {
+            AbstractSubscription.setEmptyOn(s);
+            s.onComplete();
+        } else {
+            s.onSubscribe(new ScalarSubscription<>(s, (T)v));
+        }
+    }
+}
@@ -30,7 +30,7 @@ import rx.schedulers.Scheduler;
 /**
  * 
  */
-public final class ScalarSynchronousObservable<T> extends Observable<T> {
+public final class ScalarSynchronousObservable<T> extends Observable<T> implements ScalarSource<T> {
     final T value;
     private ScalarSynchronousObservable(OnSubscribe<T> onSubscribe, T value) {
         super(onSubscribe);
@@ -44,6 +44,16 @@ public final class ScalarSynchronousObservable<T> extends Observable<T> {
     public T get() {
         return value;
     }
+    
+    @Override
+    public boolean isScalar() {
+        return true;
+    }
+    
+    @Override
+    public T scalarValue() {
+        return value;
+    }
     /**
      * Customized observeOn/subscribeOn implementation which emits the scalar
      * value directly or with less overhead on the specified scheduler.
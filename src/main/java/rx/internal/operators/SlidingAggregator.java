@@ -0,0 +1,370 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.Arrays;
+import java.util.function.*;
+
+/**
+ * Maintains the aggregate of a sliding sequence of values with an associative combiner, where values
+ * enter at the newest end and leave at the oldest end.
+ * <p>
+ * The implementations use the two-stack algorithm: new values are pushed onto the back stack while its
+ * running aggregate is updated; the front stack holds the suffix aggregates of older values so evicting
+ * is a single pop. When the front stack runs empty, the back stack is flipped into it in one pass. Each
+ * value is therefore combined a constant number of times, which makes push, evict and query O(1)
+ * amortized regardless of how much the windows overlap, and the combiner doesn't need an inverse.
+ * <p>
+ * The values are combined in their arrival order, so the combiner doesn't have to be commutative.
+ * Instances are not thread-safe.
+ *
+ * @param <T> the source value type
+ * @param <R> the aggregate type
+ */
+public abstract class SlidingAggregator<T, R> {
+    static final int INITIAL_CAPACITY = 16;
+    
+    /** The index of the oldest value in the front array, accessed by the owner only. */
+    int frontIndex;
+    /** The end of the front values in the front array, accessed by the owner only. */
+    int frontEnd;
+    /** The number of values in the back array, accessed by the owner only. */
+    int backCount;
+    
+    /**
+     * Adds a value at the newest end.
+     * @param item the source item
+     */
+    public abstract void push(T item);
+    
+    /**
+     * Removes the oldest value; the aggregator must not be empty.
+     */
+    public abstract void evict();
+    
+    /**
+     * Returns the aggregate of the current values, the identity if there are none.
+     * @return the aggregate
+     */
+    public abstract R result();
+    
+    /**
+     * Removes all values.
+     */
+    public abstract void clear();
+    
+    /**
+     * Returns the number of current values.
+     * @return the number of values
+     */
+    public final int size() {
+        return frontEnd - frontIndex + backCount;
+    }
+    
+    static int grow(int length) {
+        int n = length << 1;
+        if (n < 0) {
+            throw new IllegalStateException("Sliding window too large");
+        }
+        return n;
+    }
+    
+    /**
+     * Creates an aggregator over the source items with the given monoid.
+     * @param <T> the value type
+     * @param identity the identity of the combiner
+     * @param combiner the associative combiner
+     * @return the new aggregator
+     */
+    public static <T> SlidingAggregator<T, T> reduce(T identity, BinaryOperator<T> combiner) {
+        return new ObjectAggregator<>(identity, combiner);
+    }
+    
+    /**
+     * Creates an aggregator over primitive long values extracted from the source items.
+     * @param <T> the source value type
+     * @param valueSelector extracts the value from a source item
+     * @param identity the identity of the combiner
+     * @param combiner the associative combiner
+     * @return the new aggregator
+     */
+    public static <T> SlidingAggregator<T, Long> reduceLong(ToLongFunction<? super T> valueSelector, 
+            long identity, LongBinaryOperator combiner) {
+        return new LongAggregator<>(valueSelector, identity, combiner);
+    }
+    
+    /**
+     * Creates an aggregator over primitive double values extracted from the source items.
+     * @param <T> the source value type
+     * @param valueSelector extracts the value from a source item
+     * @param identity the identity of the combiner
+     * @param combiner the associative combiner
+     * @return the new aggregator
+     */
+    public static <T> SlidingAggregator<T, Double> reduceDouble(ToDoubleFunction<? super T> valueSelector, 
+            double identity, DoubleBinaryOperator combiner) {
+        return new DoubleAggregator<>(valueSelector, identity, combiner, false);
+    }
+    
+    /**
+     * Creates an aggregator which averages the double values extracted from the source items;
+     * the average of no values is NaN.
+     * @param <T> the source value type
+     * @param valueSelector extracts the value from a source item
+     * @return the new aggregator
+     */
+    public static <T> SlidingAggregator<T, Double> average(ToDoubleFunction<? super T> valueSelector) {
+        return new DoubleAggregator<>(valueSelector, 0d, Double::sum, true);
+    }
+    
+    static final class ObjectAggregator<T> extends SlidingAggregator<T, T> {
+        final T identity;
+        final BinaryOperator<T> combiner;
+        
+        /** Holds the suffix aggregates of the front values. */
+        Object[] front;
+        /** Holds the back values in arrival order. */
+        Object[] back;
+        T backAggregate;
+        
+        ObjectAggregator(T identity, BinaryOperator<T> combiner) {
+            this.identity = identity;
+            this.combiner = combiner;
+            this.front = new Object[INITIAL_CAPACITY];
+            this.back = new Object[INITIAL_CAPACITY];
+            this.backAggregate = identity;
+        }
+        
+        @Override
+        public void push(T item) {
+            Object[] b = back;
+            int n = backCount;
+            if (n == b.length) {
+                b = Arrays.copyOf(b, grow(n));
+                back = b;
+            }
+            b[n] = item;
+            backCount = n + 1;
+            backAggregate = combiner.apply(backAggregate, item);
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public void evict() {
+            int i = frontIndex;
+            Object[] a = front;
+            if (i == frontEnd) {
+                // the old front array is fully consumed and becomes the new back array
+                Object[] b = back;
+                int n = backCount;
+                for (int j = n - 2; j >= 0; j--) {
+                    b[j] = combiner.apply((T)b[j], (T)b[j + 1]);
+                }
+                back = a;
+                front = b;
+                a = b;
+                i = 0;
+                frontEnd = n;
+                backCount = 0;
+                backAggregate = identity;
+            }
+            a[i] = null;
+            frontIndex = i + 1;
+        }
+        
+        @SuppressWarnings("unchecked")
+        @Override
+        public T result() {
+            int i = frontIndex;
+            if (i == frontEnd) {
+                return backAggregate;
+            }
+            if (backCount == 0) {
+                return (T)front[i];
+            }
+            return combiner.apply((T)front[i], backAggregate);
+        }
+        
+        @Override
+        public void clear() {
+            Arrays.fill(front, frontIndex, frontEnd, null);
+            Arrays.fill(back, 0, backCount, null);
+            frontIndex = 0;
+            frontEnd = 0;
+            backCount = 0;
+            backAggregate = identity;
+        }
+    }
+    
+    static final class LongAggregator<T> extends SlidingAggregator<T, Long> {
+        final ToLongFunction<? super T> valueSelector;
+        final long identity;
+        final LongBinaryOperator combiner;
+        
+        /** Holds the suffix aggregates of the front values. */
+        long[] front;
+        /** Holds the back values in arrival order. */
+        long[] back;
+        long backAggregate;
+        
+        LongAggregator(ToLongFunction<? super T> valueSelector, long identity, LongBinaryOperator combiner) {
+            this.valueSelector = valueSelector;
+            this.identity = identity;
+            this.combiner = combiner;
+            this.front = new long[INITIAL_CAPACITY];
+            this.back = new long[INITIAL_CAPACITY];
+            this.backAggregate = identity;
+        }
+        
+        @Override
+        public void push(T item) {
+            long v = valueSelector.applyAsLong(item);
+            long[] b = back;
+            int n = backCount;
+            if (n == b.length) {
+                b = Arrays.copyOf(b, grow(n));
+                back = b;
+            }
+            b[n] = v;
+            backCount = n + 1;
+            backAggregate = combiner.applyAsLong(backAggregate, v);
+        }
+        
+        @Override
+        public void evict() {
+            int i = frontIndex;
+            if (i == frontEnd) {
+                long[] b = back;
+                int n = backCount;
+                for (int j = n - 2; j >= 0; j--) {
+                    b[j] = combiner.applyAsLong(b[j], b[j + 1]);
+                }
+                back = front;
+                front = b;
+                i = 0;
+                frontEnd = n;
+                backCount = 0;
+                backAggregate = identity;
+            }
+            frontIndex = i + 1;
+        }
+        
+        @Override
+        public Long result() {
+            int i = frontIndex;
+            if (i == frontEnd) {
+                return backAggregate;
+            }
+            if (backCount == 0) {
+                return front[i];
+            }
+            return combiner.applyAsLong(front[i], backAggregate);
+        }
+        
+        @Override
+        public void clear() {
+            frontIndex = 0;
+            frontEnd = 0;
+            backCount = 0;
+            backAggregate = identity;
+        }
+    }
+    
+    static final class DoubleAggregator<T> extends SlidingAggregator<T, Double> {
+        final ToDoubleFunction<? super T> valueSelector;
+        final double identity;
+        final DoubleBinaryOperator combiner;
+        final boolean average;
+        
+        /** Holds the suffix aggregates of the front values. */
+        double[] front;
+        /** Holds the back values in arrival order. */
+        double[] back;
+        double backAggregate;
+        
+        DoubleAggregator(ToDoubleFunction<? super T> valueSelector, double identity, 
+                DoubleBinaryOperator combiner, boolean average) {
+            this.valueSelector = valueSelector;
+            this.identity = identity;
+            this.combiner = combiner;
+            this.average = average;
+            this.front = new double[INITIAL_CAPACITY];
+            this.back = new double[INITIAL_CAPACITY];
+            this.backAggregate = identity;
+        }
+        
+        @Override
+        public void push(T item) {
+            double v = valueSelector.applyAsDouble(item);
+            double[] b = back;
+            int n = backCount;
+            if (n == b.length) {
+                b = Arrays.copyOf(b, grow(n));
+                back = b;
+            }
+            b[n] = v;
+            backCount = n + 1;
+            backAggregate = combiner.applyAsDouble(backAggregate, v);
+        }
+        
+        @Override
+        public void evict() {
+            int i = frontIndex;
+            if (i == frontEnd) {
+                double[] b = back;
+                int n = backCount;
+                for (int j = n - 2; j >= 0; j--) {
+                    b[j] = combiner.applyAsDouble(b[j], b[j + 1]);
+                }
+                back = front;
+                front = b;
+                i = 0;
+                frontEnd = n;
+                backCount = 0;
+                backAggregate = identity;
+            }
+            frontIndex = i + 1;
+        }
+        
+        @Override
+        public Double result() {
+            int i = frontIndex;
+            double r;
+            if (i == frontEnd) {
+                r = backAggregate;
+            } else
+            if (backCount == 0) {
+                r = front[i];
+            } else {
+                r = combiner.applyAsDouble(front[i], backAggregate);
+            }
+            if (average) {
+                // 0 / 0 is NaN for an empty window
+                return r / size();
+            }
+            return r;
+        }
+        
+        @Override
+        public void clear() {
+            frontIndex = 0;
+            frontEnd = 0;
+            backCount = 0;
+            backAggregate = identity;
+        }
+    }
+}
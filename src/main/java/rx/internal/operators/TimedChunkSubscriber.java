@@ -0,0 +1,213 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.concurrent.TimeUnit;
+
+import rx.Flow.Subscriber;
+import rx.internal.Pow2;
+import rx.schedulers.Scheduler;
+
+/**
+ * The common engine of the time-based buffer and window operators.
+ * <p>
+ * The ticks and items are serialized by {@link TimedDrainSubscriber}. The open chunks always form a
+ * contiguous range of chunk numbers tracked in an array ring; closing them happens in their opening order.
+ *
+ * @param <T> the source value type
+ * @param <C> the chunk type
+ * @param <R> the emitted value type
+ */
+abstract class TimedChunkSubscriber<T, C, R> extends TimedDrainSubscriber<T, R> {
+    final int maxCount;
+    
+    /** The open chunks, slot of chunk number w is w &amp; mask; null if the chunk was closed early. */
+    final Object[] chunks;
+    /** The number of items in the open chunks, same slots as chunks. */
+    final int[] counts;
+    final int mask;
+    /** The number of the oldest chunk not closed yet, accessed from the drain loop only. */
+    long oldest;
+    /** The number of the next chunk to open, accessed from the drain loop only. */
+    long next;
+    /** The number of items in the last closed chunk, accessed from the drain loop only. */
+    int lastCount;
+    
+    TimedChunkSubscriber(Subscriber<? super R> child, long timespan, long timeshift, TimeUnit unit, 
+            int maxCount, Scheduler.Worker worker) {
+        super(child, timespan, timeshift, unit, worker);
+        this.maxCount = maxCount;
+        // at most ceil(span / shift) chunks are open at any time
+        long open = (spanTicks + shiftTicks - 1) / shiftTicks;
+        if (open > (1 << 30)) {
+            throw new IllegalArgumentException("Too many overlapping chunks: " + open);
+        }
+        int c = Pow2.roundToPowerOfTwo((int)open);
+        this.chunks = new Object[c];
+        this.counts = new int[c];
+        this.mask = c - 1;
+    }
+    
+    /**
+     * Creates a new chunk; emits it if the chunks are emitted when they open.
+     * @return the new chunk or null if the drain loop stopped
+     */
+    abstract C createChunk();
+    
+    /**
+     * Appends the item to the chunk.
+     * @param chunk the target chunk
+     * @param item the item to append
+     */
+    abstract void append(C chunk, T item);
+    
+    /**
+     * Closes the chunk; emits it if the chunks are emitted when they close.
+     * @param chunk the chunk to close
+     */
+    abstract void closeChunk(C chunk);
+    
+    /**
+     * Signals the error to the chunk, if applicable.
+     * @param chunk the chunk
+     * @param e the error
+     */
+    abstract void errorChunk(C chunk, Throwable e);
+    
+    /**
+     * Returns the initial capacity to use for a new chunk, based on the size of the last closed chunk.
+     * @return the capacity hint
+     */
+    final int capacityHint() {
+        int c = lastCount;
+        if (c == 0) {
+            c = 16;
+        }
+        return Math.min(c, maxCount);
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    final void tick(long k) {
+        final Object[] a = chunks;
+        final int m = mask;
+        long w = oldest;
+        long n = next;
+        // close the due chunks in their opening order
+        while (w != n && w * shiftTicks + spanTicks <= k) {
+            int slot = (int)w & m;
+            C c = (C)a[slot];
+            w++;
+            oldest = w;
+            if (c != null) {
+                a[slot] = null;
+                lastCount = counts[slot];
+                closeChunk(c);
+                if (stopped) {
+                    return;
+                }
+            }
+        }
+        if (k % shiftTicks == 0L) {
+            C c = createChunk();
+            if (c == null) {
+                return;
+            }
+            int slot = (int)n & m;
+            a[slot] = c;
+            counts[slot] = 0;
+            next = n + 1;
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    final void add(T item) {
+        final Object[] a = chunks;
+        final int[] b = counts;
+        final int m = mask;
+        final long n = next;
+        for (long w = oldest; w != n; w++) {
+            int slot = (int)w & m;
+            C c = (C)a[slot];
+            if (c != null) {
+                append(c, item);
+                int k = b[slot] + 1;
+                if (k == maxCount) {
+                    a[slot] = null;
+                    lastCount = k;
+                    closeChunk(c);
+                    if (stopped) {
+                        return;
+                    }
+                    if (spanTicks == shiftTicks) {
+                        // exact chunks are continuous, the replacement lasts until the next tick
+                        c = createChunk();
+                        if (c == null) {
+                            return;
+                        }
+                        a[slot] = c;
+                    }
+                    b[slot] = 0;
+                } else {
+                    b[slot] = k;
+                }
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    final void closeAll() {
+        final Object[] a = chunks;
+        final int m = mask;
+        for (long w = oldest; w != next; w++) {
+            int slot = (int)w & m;
+            C c = (C)a[slot];
+            if (c != null) {
+                a[slot] = null;
+                closeChunk(c);
+                if (stopped) {
+                    return;
+                }
+            }
+        }
+        oldest = next;
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Override
+    final void errorAll(Throwable e) {
+        final Object[] a = chunks;
+        final int m = mask;
+        for (long w = oldest; w != next; w++) {
+            int slot = (int)w & m;
+            C c = (C)a[slot];
+            if (c != null) {
+                a[slot] = null;
+                errorChunk(c, e);
+            }
+        }
+        oldest = next;
+    }
+    
+    @Override
+    final void clearAll() {
+        java.util.Arrays.fill(chunks, null);
+        oldest = next;
+    }
+}
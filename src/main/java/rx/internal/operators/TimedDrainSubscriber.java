@@ -0,0 +1,336 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.exceptions.MissingBackpressureException;
+import rx.internal.*;
+import rx.internal.queues.SpscLinkedQueue;
+import rx.schedulers.Scheduler;
+import rx.subscribers.AbstractSubscriber;
+
+/**
+ * The common tick and drain engine of the time-based chunking and aggregating operators.
+ * <p>
+ * Time is measured in ticks of the greatest common divisor of the timespan and timeshift, so chunk number
+ * {@code w} opens at tick {@code w * shiftTicks} and closes at tick {@code w * shiftTicks + spanTicks}. Only
+ * these open and close instants are handled: a single one-shot task is re-armed for the next of them, so
+ * coprime timespans and timeshifts (e.g. 1000 and 999 ms) don't make the worker wake up every tick.
+ * <p>
+ * Ticks and items are handled in a serialized drain loop. When there is no contention, the upstream thread
+ * adds the item directly without any lock or queue; otherwise the item is queued in an SPSC queue and
+ * added by the thread currently draining.
+ *
+ * @param <T> the source value type
+ * @param <R> the emitted value type
+ */
+abstract class TimedDrainSubscriber<T, R> extends AbstractSubscriber<T> implements Subscription, Runnable {
+    final Subscriber<? super R> child;
+    final Scheduler.Worker worker;
+    final long period;
+    final TimeUnit unit;
+    final long spanTicks;
+    final long shiftTicks;
+    /** Items which couldn't be added directly by the upstream thread. */
+    final Queue<T> queue;
+    
+    /** The last open or close tick handled, accessed from the drain loop only. */
+    long processed;
+    /** Set when the drain loop stopped because of an error, accessed from the drain loop only. */
+    boolean stopped;
+    
+    /** The latest open or close tick reached; tick 0 is the subscription. */
+    volatile long ticks;
+    static final long TICKS = addressOf(TimedDrainSubscriber.class, "ticks");
+    
+    volatile int wip;
+    static final long WIP = addressOf(TimedDrainSubscriber.class, "wip");
+    
+    volatile long requested;
+    static final long REQUESTED = addressOf(TimedDrainSubscriber.class, "requested");
+    
+    /** Written before done is set. */
+    Throwable error;
+    volatile boolean done;
+    
+    volatile boolean cancelled;
+    
+    TimedDrainSubscriber(Subscriber<? super R> child, long timespan, long timeshift, TimeUnit unit, 
+            Scheduler.Worker worker) {
+        this.child = child;
+        this.worker = worker;
+        long g = gcd(timespan, timeshift);
+        this.period = g;
+        this.unit = unit;
+        this.spanTicks = timespan / g;
+        this.shiftTicks = timeshift / g;
+        this.queue = new SpscLinkedQueue<>();
+        this.processed = -1L;
+    }
+    
+    /** The start time in nanoseconds, the timer task is re-armed relative to it to avoid drift. */
+    long startNanos;
+    /** The tick the timer task is armed for, accessed from the timer task only. */
+    long armedTick;
+    
+    static long gcd(long a, long b) {
+        while (b != 0L) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+    
+    /**
+     * Returns the first tick after the given one where a chunk opens or closes.
+     * @param k the tick, non-negative
+     * @return the next open or close tick
+     */
+    final long nextTick(long k) {
+        long open = (k / shiftTicks + 1) * shiftTicks;
+        long close;
+        if (k < spanTicks) {
+            close = spanTicks;
+        } else {
+            close = spanTicks + ((k - spanTicks) / shiftTicks + 1) * shiftTicks;
+        }
+        return Math.min(open, close);
+    }
+    
+    /**
+     * Handles the tick; called once for each open or close tick in order, starting with tick 0.
+     * @param k the tick number
+     */
+    abstract void tick(long k);
+    
+    /**
+     * Adds the item received after the last handled tick.
+     * @param item the item to add
+     */
+    abstract void add(T item);
+    
+    /**
+     * Emits what is still open when the upstream completes.
+     */
+    abstract void closeAll();
+    
+    /**
+     * Releases what is still open when an error is signalled.
+     * @param e the error
+     */
+    abstract void errorAll(Throwable e);
+    
+    /**
+     * Releases what is still open after a cancellation.
+     */
+    abstract void clearAll();
+    
+    @Override
+    protected final void onSubscribe() {
+        child.onSubscribe(this);
+        startNanos = TimeUnit.MILLISECONDS.toNanos(worker.now());
+        // handles tick 0
+        drain();
+        long k = nextTick(0L);
+        armedTick = k;
+        worker.schedule(this, k * period, unit);
+        subscription.request(Long.MAX_VALUE);
+    }
+    
+    @Override
+    public final void onNext(T item) {
+        if (done) {
+            return;
+        }
+        if (wip == 0 && UNSAFE.compareAndSwapInt(this, WIP, 0, 1)) {
+            // no contention, append directly
+            if (!catchUp()) {
+                return;
+            }
+            add(item);
+            if (stopped || UNSAFE.getAndAddInt(this, WIP, -1) == 1) {
+                return;
+            }
+        } else {
+            queue.offer(item);
+            if (UNSAFE.getAndAddInt(this, WIP, 1) != 0) {
+                return;
+            }
+        }
+        drainLoop();
+    }
+    
+    @Override
+    public final void onError(Throwable throwable) {
+        if (done) {
+            return;
+        }
+        error = throwable;
+        done = true;
+        worker.dispose();
+        drain();
+    }
+    
+    @Override
+    public final void onComplete() {
+        if (done) {
+            return;
+        }
+        done = true;
+        worker.dispose();
+        drain();
+    }
+    
+    /** The timer task: signals the tick it was armed for and re-arms for the next one. */
+    @Override
+    public final void run() {
+        long k = armedTick;
+        UNSAFE.putOrderedLong(this, TICKS, k);
+        drain();
+        if (!done && !cancelled) {
+            k = nextTick(k);
+            armedTick = k;
+            long due = startNanos + unit.toNanos(k * period);
+            worker.schedule(this, due - TimeUnit.MILLISECONDS.toNanos(worker.now()), TimeUnit.NANOSECONDS);
+        }
+    }
+    
+    @Override
+    public final void request(long n) {
+        if (!Conformance.requestPositive(n, child)) {
+            cancel();
+            return;
+        }
+        TerminalAtomics.request(this, REQUESTED, n);
+    }
+    
+    @Override
+    public final void cancel() {
+        if (!cancelled) {
+            cancelled = true;
+            subscription.cancel();
+            worker.dispose();
+            drain();
+        }
+    }
+    
+    /**
+     * Consumes one request for emitting a chunk or signals a MissingBackpressureException.
+     * @return true if the chunk can be emitted
+     */
+    final boolean produced() {
+        long r = requested;
+        if (r != 0L) {
+            if (r != Long.MAX_VALUE) {
+                UNSAFE.getAndAddLong(this, REQUESTED, -1);
+            }
+            return true;
+        }
+        fail(new MissingBackpressureException("Could not emit the chunk due to lack of requests"));
+        return false;
+    }
+    
+    final void fail(Throwable e) {
+        stopped = true;
+        subscription.cancel();
+        worker.dispose();
+        errorAll(e);
+        queue.clear();
+        child.onError(e);
+    }
+    
+    final void drain() {
+        if (UNSAFE.getAndAddInt(this, WIP, 1) == 0) {
+            drainLoop();
+        }
+    }
+    
+    final void drainLoop() {
+        int missed = 1;
+        final Queue<T> q = queue;
+        for (;;) {
+            if (!catchUp()) {
+                return;
+            }
+            
+            boolean d = done;
+            T v;
+            while ((v = q.poll()) != null) {
+                add(v);
+                if (stopped) {
+                    return;
+                }
+            }
+            
+            if (d) {
+                Throwable ex = error;
+                if (ex != null) {
+                    errorAll(ex);
+                    queue.clear();
+                    child.onError(ex);
+                } else {
+                    closeAll();
+                    if (!stopped) {
+                        child.onComplete();
+                    }
+                }
+                stopped = true;
+                return;
+            }
+            
+            missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Handles the ticks since the last call.
+     * @return false if the drain loop should quit
+     */
+    final boolean catchUp() {
+        if (stopped) {
+            return false;
+        }
+        if (cancelled) {
+            stopped = true;
+            clearAll();
+            queue.clear();
+            return false;
+        }
+        long t = ticks;
+        long k = processed;
+        while (k != t) {
+            // skips the ticks where nothing opens or closes
+            k = k < 0L ? 0L : nextTick(k);
+            tick(k);
+            if (stopped) {
+                return false;
+            }
+        }
+        processed = k;
+        return true;
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.queues;
+
+import java.util.Arrays;
+
+import rx.internal.Pow2;
+
+/**
+ * A growable, power-of-two sized ring buffer of values tagged with timestamps, stored in
+ * a parallel {@code long[]} array so no per-item wrapper or boxed timestamp is allocated.
+ * <p>
+ * The timestamps are non-decreasing: a timestamp smaller than the newest one is clamped to
+ * it. This allows locating an age boundary by binary search and evicting all entries before it
+ * in one step.
+ * <p>
+ * Not thread-safe, the owner has to serialize the access.
+ *
+ * @param <T> the value type
+ */
+public final class TimedRingBuffer<T> {
+    Object[] values;
+    long[] times;
+    int mask;
+    /** The physical index of the oldest entry. */
+    int head;
+    int size;
+    
+    /**
+     * Constructs an empty buffer with the given initial capacity, rounded up to
+     * the next power of two.
+     * @param capacityHint the initial capacity
+     */
+    public TimedRingBuffer(int capacityHint) {
+        int c = Pow2.roundToPowerOfTwo(Math.max(2, capacityHint));
+        this.values = new Object[c];
+        this.times = new long[c];
+        this.mask = c - 1;
+    }
+    
+    /**
+     * Appends a value with the given timestamp, growing the buffer if necessary.
+     * @param time the timestamp, clamped to the newest timestamp if smaller
+     * @param value the value
+     */
+    public void offer(long time, T value) {
+        int s = size;
+        if (s == values.length) {
+            grow();
+        }
+        if (s != 0) {
+            long last = times[(head + s - 1) & mask];
+            if (time < last) {
+                time = last;
+            }
+        }
+        int i = (head + s) & mask;
+        values[i] = value;
+        times[i] = time;
+        size = s + 1;
+    }
+    
+    void grow() {
+        Object[] a = values;
+        long[] b = times;
+        int n = a.length;
+        int h = head;
+        Object[] na = new Object[n << 1];
+        long[] nb = new long[n << 1];
+        // unroll the two parts of the ring
+        System.arraycopy(a, h, na, 0, n - h);
+        System.arraycopy(a, 0, na, n - h, h);
+        System.arraycopy(b, h, nb, 0, n - h);
+        System.arraycopy(b, 0, nb, n - h, h);
+        values = na;
+        times = nb;
+        mask = (n << 1) - 1;
+        head = 0;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Returns the oldest value without removing it.
+     * @return the oldest value or null if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T peek() {
+        return size == 0 ? null : (T)values[head];
+    }
+    
+    /**
+     * Removes and returns the oldest value.
+     * @return the oldest value or null if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        if (size == 0) {
+            return null;
+        }
+        int h = head;
+        T v = (T)values[h];
+        values[h] = null;
+        head = (h + 1) & mask;
+        size--;
+        return v;
+    }
+    
+    /**
+     * Returns the value at the given offset from the oldest entry.
+     * @param offset the offset, between 0 and size() - 1
+     * @return the value
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int offset) {
+        return (T)values[(head + offset) & mask];
+    }
+    
+    /**
+     * Returns the timestamp at the given offset from the oldest entry.
+     * @param offset the offset, between 0 and size() - 1
+     * @return the timestamp
+     */
+    public long timeAt(int offset) {
+        return times[(head + offset) & mask];
+    }
+    
+    /**
+     * Returns the offset of the oldest entry whose timestamp is at least the given time,
+     * or size() if there is no such entry.
+     * @param time the time to look for
+     * @return the offset
+     */
+    public int search(long time) {
+        final long[] b = times;
+        final int m = mask;
+        final int h = head;
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (b[(h + mid) & m] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    /**
+     * Removes the entries whose timestamp is less than the given time.
+     * @param time the time limit
+     * @return the number of entries removed
+     */
+    public int evictBefore(long time) {
+        int n = search(time);
+        drop(n);
+        return n;
+    }
+    
+    /**
+     * Removes the oldest entries so at most the given number of entries remain.
+     * @param maxSize the maximum number of entries to keep
+     */
+    public void trim(int maxSize) {
+        int s = size;
+        if (s > maxSize) {
+            drop(s - maxSize);
+        }
+    }
+    
+    /**
+     * Removes the given number of oldest entries.
+     * @param n the number of entries to remove, between 0 and size()
+     */
+    public void drop(int n) {
+        if (n == 0) {
+            return;
+        }
+        Object[] a = values;
+        int h = head;
+        int end = h + n;
+        if (end <= a.length) {
+            Arrays.fill(a, h, end, null);
+        } else {
+            Arrays.fill(a, h, a.length, null);
+            Arrays.fill(a, 0, end - a.length, null);
+        }
+        head = end & mask;
+        size -= n;
+    }
+    
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        drop(size);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.subscriptions;
+
+import rx.Flow.Subscription;
+
+/**
+ * A Subscription which lets the consumer pull the values synchronously instead
+ * of having them pushed through onNext, avoiding a queue and a drain loop
+ * in the consumer.
+ * <p>
+ * The consumer calls {@link #requestFusion(int)} from within its onSubscribe and,
+ * if {@link #SYNC} is established, it must not call {@link #request(long)} but
+ * call {@link #poll()} until it returns null, which indicates the source has
+ * completed. Errors thrown by {@code poll()} should be treated as an onError.
+ * <p>
+ * Operators such as map and filter forward the fusion request to their upstream
+ * and apply their function inside {@code poll()}. Consumers which poll on a different
+ * thread than the one the upstream would emit on (such as observeOn and publish) add
+ * {@link #BOUNDARY} to the requested mode, and stages which run user code refuse
+ * fusion in that case so the user code keeps running on the producing thread.
+ * <p>
+ * Only the synchronous mode exists: operators which own a queue (observeOn, merge,
+ * publish) use their upstream's view but don't offer their own queue downstream.
+ *
+ * @param <T> the value type
+ */
+public interface QueueSubscription<T> extends Subscription {
+    /** No fusion, the values are delivered through onNext. */
+    int NONE = 0;
+    /** Synchronous fusion: the values are pulled through poll() until it returns null. */
+    int SYNC = 1;
+    /**
+     * Flag added to the requested mode if the consumer polls across a thread boundary;
+     * stages running user code should return {@link #NONE} when it is set.
+     */
+    int BOUNDARY = 2;
+    
+    /**
+     * Tries to establish the given fusion mode.
+     * @param mode the fusion mode the consumer supports
+     * @return the established mode, {@link #NONE} if fusion is not possible
+     */
+    int requestFusion(int mode);
+    
+    /**
+     * Returns the next value or null if the source has completed.
+     * @return the next value or null
+     */
+    T poll();
+    
+    /**
+     * Indicates no further values are available.
+     * <p>
+     * Intermediate operators which may skip values (such as filter) may return
+     * false even though the next {@link #poll()} returns null.
+     * @return true if no further values are available
+     */
+    boolean isEmpty();
+    
+    /**
+     * Drops the remaining values.
+     */
+    void clear();
+}
@@ -15,12 +15,15 @@
  */
 package rx.observables;
 
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import rx.*;
 import rx.Flow.Subscriber;
 import rx.disposables.Disposable;
 import rx.internal.operators.*;
+import rx.schedulers.Scheduler;
 
 /**
  * A {@code ConnectableObservable} resembles an ordinary {@link Observable}, except that it does not begin
@@ -76,4 +79,23 @@ public abstract class ConnectableObservable<T> extends Observable<T> {
     public Observable<T> refCount() {
         return create(new OnSubscribeRefCount<>(this));
     }
+    /**
+     * Returns an {@code Observable} that stays connected to this {@code ConnectableObservable} as long as there
+     * is at least one subscription to this {@code ConnectableObservable} or the last subscription has been
+     * cancelled not longer than the given grace period ago.
+     * <p>
+     * Subscribers arriving within the grace period reuse the existing connection instead of reconnecting.
+     * The returned {@link RefCountObservable} counts the reconnections and the avoided reconnections.
+     * 
+     * @param gracePeriod the time to stay connected after the last subscription has been cancelled
+     * @param unit the time unit of the grace period
+     * @param scheduler the scheduler to time the grace period on
+     * @return a {@link RefCountObservable}
+     * @see <a href="http://reactivex.io/documentation/operators/refcount.html">ReactiveX documentation: RefCount</a>
+     */
+    public RefCountObservable<T> refCount(long gracePeriod, TimeUnit unit, Scheduler scheduler) {
+        Objects.requireNonNull(unit);
+        Objects.requireNonNull(scheduler);
+        return new RefCountObservable<>(new OnSubscribeRefCountWithGrace<>(this, gracePeriod, unit, scheduler));
+    }
 }
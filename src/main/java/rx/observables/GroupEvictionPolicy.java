@@ -0,0 +1,28 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.observables;
+
+/**
+ * Determines which group {@link rx.Observable#groupBy(java.util.function.Function, java.util.function.Function, int, GroupEvictionPolicy)}
+ * completes when a new key arrives while the maximum number of groups is open.
+ */
+public enum GroupEvictionPolicy {
+    /** Completes the group which received an item the longest time ago. */
+    LEAST_RECENTLY_USED,
+    /** Completes the group which was created first. */
+    OLDEST
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.observables;
+
+import java.util.*;
+import java.util.function.*;
+
+import rx.Flow.Subscriber;
+import rx.Observable;
+import rx.Observable.Operator;
+import rx.internal.operators.*;
+import rx.internal.subscriptions.AbstractSubscription;
+
+/**
+ * A {@code ParallelObservable} splits the items of a source {@link Observable} into a fixed number of
+ * rails, each running on its own {@link rx.schedulers.Scheduler.Worker}, so CPU-heavy per-item work can
+ * use multiple cores within a single stream.
+ * <p>
+ * The rails are subscribed to together via {@link #subscribe(Subscriber[])}; per-rail operators such as
+ * {@link #map(Function)} and {@link #filter(Predicate)} run on the thread of the rail. The results are joined
+ * back into an {@code Observable} via {@link #sequential()}, {@link #sorted(Comparator)} or
+ * {@link #reduce(BinaryOperator)}.
+ * <p>
+ * Use {@link Observable#parallel(int)} and its overloads to create instances.
+ *
+ * @param <T> the value type of the rails
+ */
+public abstract class ParallelObservable<T> {
+    
+    /**
+     * Returns the number of rails, which is also the number of {@code Subscriber}s
+     * {@link #subscribe(Subscriber[])} expects.
+     * @return the number of rails
+     */
+    public abstract int rails();
+    
+    /**
+     * Subscribes the given array of {@code Subscriber}s to the rails, one {@code Subscriber} per rail.
+     * @param subscribers the subscribers, its length must be equal to {@link #rails()}
+     */
+    public abstract void subscribe(Subscriber<? super T>[] subscribers);
+    
+    /**
+     * Checks the number of subscribers against the number of rails and signals an
+     * {@code IllegalArgumentException} to all of them if they don't match.
+     * @param subscribers the subscribers to check
+     * @return true if the subscribers can be subscribed to the rails
+     */
+    protected final boolean validate(Subscriber<?>[] subscribers) {
+        int n = rails();
+        if (subscribers.length != n) {
+            IllegalArgumentException ex = new IllegalArgumentException("rails = " + n + ", subscribers = " + subscribers.length);
+            for (Subscriber<?> s : subscribers) {
+                AbstractSubscription.setEmptyOn(s);
+                s.onError(ex);
+            }
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Applies the given {@link Operator} to each rail individually.
+     * @param lifter the operator to apply to each rail
+     * @param <R> the output value type
+     * @return the new {@code ParallelObservable}
+     */
+    public final <R> ParallelObservable<R> lift(Operator<? extends R, ? super T> lifter) {
+        return new ParallelLift<>(this, Objects.requireNonNull(lifter));
+    }
+    
+    /**
+     * Maps the items of each rail, on the thread of the rail, via the given function.
+     * @param mapper the function to apply to each item
+     * @param <R> the output value type
+     * @return the new {@code ParallelObservable}
+     */
+    public final <R> ParallelObservable<R> map(Function<? super T, ? extends R> mapper) {
+        return lift(new OperatorMap<>(Objects.requireNonNull(mapper)));
+    }
+    
+    /**
+     * Filters the items of each rail, on the thread of the rail, via the given predicate.
+     * @param predicate the predicate an item must pass to be relayed
+     * @return the new {@code ParallelObservable}
+     */
+    public final ParallelObservable<T> filter(Predicate<? super T> predicate) {
+        return lift(new OperatorFilter<>(Objects.requireNonNull(predicate)));
+    }
+    
+    /**
+     * Reduces the items of each rail into a single value per rail, starting from a fresh
+     * initial value per rail.
+     * @param initialSupplier the supplier of the initial value of each rail
+     * @param reducer the function combining the accumulated value with the next item
+     * @param <R> the accumulated value type
+     * @return the new {@code ParallelObservable} emitting exactly one value per rail
+     */
+    public final <R> ParallelObservable<R> reduce(Supplier<R> initialSupplier, BiFunction<R, ? super T, R> reducer) {
+        return new ParallelReduce<>(this, Objects.requireNonNull(initialSupplier), Objects.requireNonNull(reducer));
+    }
+    
+    /**
+     * Reduces the items of all rails into a single value: each rail is reduced on its own thread
+     * and the per-rail results are combined with the same function.
+     * @param reducer the associative function combining two values
+     * @return the {@code Observable} emitting the single reduced value or signalling a
+     *         {@code NoSuchElementException} if there were no items at all, like {@link Observable#reduce(BinaryOperator)}
+     */
+    public final Observable<T> reduce(BinaryOperator<T> reducer) {
+        Objects.requireNonNull(reducer);
+        return new ParallelReduce<T, T>(this, null, reducer).sequential().reduce(reducer);
+    }
+    
+    /**
+     * Sorts each rail on its own thread and merges the sorted rails into a single, sorted sequence.
+     * @param comparator the comparator defining the order
+     * @return the {@code Observable} emitting all items in order
+     */
+    public final Observable<T> sorted(Comparator<? super T> comparator) {
+        Objects.requireNonNull(comparator);
+        ParallelObservable<List<T>> lists = this.<List<T>>reduce(ArrayList::new, (a, v) -> {
+            a.add(v);
+            return a;
+        }).map(a -> {
+            a.sort(comparator);
+            return a;
+        });
+        return Observable.create(new OnSubscribeParallelSortedJoin<>(lists, comparator));
+    }
+    
+    /**
+     * Merges the rails back into a single {@code Observable}, prefetching {@link rx.Flow#defaultBufferSize()}
+     * items from each rail.
+     * @return the {@code Observable} emitting the items of all rails in no particular order
+     */
+    public final Observable<T> sequential() {
+        return sequential(rx.Flow.defaultBufferSize());
+    }
+    
+    /**
+     * Merges the rails back into a single {@code Observable}, prefetching the given number of items from each rail.
+     * @param prefetch the number of items to prefetch from each rail
+     * @return the {@code Observable} emitting the items of all rails in no particular order
+     */
+    public final Observable<T> sequential(int prefetch) {
+        if (prefetch <= 0) {
+            throw new IllegalArgumentException("prefetch > 0 required");
+        }
+        return Observable.create(new OnSubscribeParallelJoin<>(this, prefetch));
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package rx.observables;
+
+import rx.Observable;
+import rx.internal.operators.OnSubscribeRefCountWithGrace;
+
+/**
+ * An {@code Observable} that stays connected to a {@link ConnectableObservable} as long as there
+ * is at least one subscription to it or the grace period after the last subscription's cancellation
+ * hasn't elapsed yet, and counts how many times the upstream had to be reconnected.
+ * 
+ * @param <T>
+ *          the type of items emitted by the {@code RefCountObservable}
+ * @see ConnectableObservable#refCount(long, java.util.concurrent.TimeUnit, rx.schedulers.Scheduler)
+ */
+public final class RefCountObservable<T> extends Observable<T> {
+    private final OnSubscribeRefCountWithGrace<T> state;
+    
+    RefCountObservable(OnSubscribeRefCountWithGrace<T> state) {
+        super(state);
+        this.state = state;
+    }
+    /**
+     * Returns the number of times the underlying {@code ConnectableObservable} had to be
+     * connected again after the first connection.
+     * @return the number of reconnections
+     */
+    public long reconnectCount() {
+        return state.reconnectCount();
+    }
+    /**
+     * Returns the number of times a subscriber arrived within the grace period and
+     * thus reused the existing connection instead of reconnecting.
+     * @return the number of avoided reconnections
+     */
+    public long avoidedReconnectCount() {
+        return state.avoidedReconnectCount();
+    }
+}
@@ -109,6 +109,10 @@ public abstract class RxJavaObservableExecutionHook {
      * <p>
      * This can be used to decorate or replace the {@link Operator} instance or just perform extra
      * logging, metrics and other such things and pass-thru the onSubscribe.
+     * <p>
+     * With the default hook, adjacent map, filter and doOnEach operators are fused into a single operator at
+     * assembly time. Fusion is disabled while a custom hook is installed so this method receives each lifted
+     * operator as applied.
      * 
      * @param lift
      *            original {@link Operator}{@code <R, T>}
@@ -125,6 +125,17 @@ public class RxJavaPlugins {
         return observableExecutionHook.get();
     }
 
+    /**
+     * Checks if the given hook is the default, no-op {@link RxJavaObservableExecutionHook}.
+     * 
+     * @param hook
+     *            the hook to check
+     * @return true if the hook is the default implementation
+     */
+    public static boolean isDefault(RxJavaObservableExecutionHook hook) {
+        return hook == RxJavaObservableExecutionHookDefault.getInstance();
+    }
+
     /**
      * Register an {@link RxJavaObservableExecutionHook} implementation as a global override of any injected or
      * default implementations.
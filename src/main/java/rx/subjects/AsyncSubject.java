@@ -25,12 +25,13 @@ import rx.Flow.Subscription;
 import rx.disposables.Disposable;
 import rx.exceptions.Exceptions;
 import rx.internal.*;
+import rx.internal.operators.ScalarSource;
 import rx.internal.subscriptions.*;
 
 /**
  * TODO javadoc with explanation about onSubscribe being optional
  */
-public final class AsyncSubject<T> extends Subject<T, T> {
+public final class AsyncSubject<T> extends Subject<T, T> implements ScalarSource<T> {
     /**
      * Creates and returns a new {@code AsyncSubject}.
      * @param <T> the result value type
@@ -194,6 +195,25 @@ public final class AsyncSubject<T> extends Subject<T, T> {
         return null;
     }
 
+    /**
+     * Returns true if the subject completed normally, with or without a value.
+     * @return true if the subject completed normally
+     */
+    @Override
+    public boolean isScalar() {
+        Object o = psm.get();
+        return o != null && !nl.isError(o);
+    }
+    
+    @Override
+    public T scalarValue() {
+        Object o = psm.get();
+        if (nl.isNext(o)) {
+            return nl.getValue(o);
+        }
+        return null;
+    }
+
     @Override
     public int size() {
         return hasValue() ? 1 : 0;
@@ -0,0 +1,397 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.subjects;
+
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.exceptions.Exceptions;
+import rx.internal.*;
+import rx.internal.queues.SpscLinkedQueue;
+
+/**
+ * A hot, multicasting Subject which keeps only the latest undelivered value, either overall or
+ * per key, for each of its Subscribers and delivers it whenever that Subscriber requests more.
+ * <p>
+ * Slow Subscribers therefore never overflow and never receive stale values: the memory retained
+ * for a Subscriber is a single slot, or one slot per distinct key, no matter how fast the producer is.
+ * Replacing a pending value is a single atomic swap (or a single {@code ConcurrentHashMap.put} in
+ * the keyed mode).
+ * <p>
+ * The subject requests an unbounded amount when subscribed to a Publisher. Errors are delivered
+ * eagerly while the completion is delivered after the pending values have been consumed.
+ * Subscribers arriving after the Subject terminated receive only the terminal event.
+ * 
+ * @param <T> the value type
+ */
+public final class CoalescingSubject<T> extends Subject<T, T> {
+    /**
+     * Creates a CoalescingSubject which keeps only the latest value for each Subscriber.
+     * @param <T> the value type
+     * @return the new CoalescingSubject
+     */
+    public static <T> CoalescingSubject<T> create() {
+        CoalescingState<T> state = new CoalescingState<>(null);
+        return new CoalescingSubject<>(s -> state.subscribe(new LatestSubscription<>(s, state)), state);
+    }
+    /**
+     * Creates a CoalescingSubject which keeps only the latest value per key for each Subscriber.
+     * <p>
+     * The values of different keys are delivered in the order their keys first became pending.
+     * @param <T> the value type
+     * @param <K> the key type
+     * @param keySelector the function extracting the key from a value
+     * @return the new CoalescingSubject
+     */
+    public static <T, K> CoalescingSubject<T> createKeyed(Function<? super T, ? extends K> keySelector) {
+        Objects.requireNonNull(keySelector);
+        CoalescingState<T> state = new CoalescingState<>(keySelector);
+        return new CoalescingSubject<>(s -> state.subscribe(new KeyedLatestSubscription<>(s, state)), state);
+    }
+    
+    final CoalescingState<T> state;
+    /** Keeps the subscription to be able to report setting it multiple times. */
+    Subscription subscription;
+    
+    private CoalescingSubject(OnSubscribe<T> onSubscribe, CoalescingState<T> state) {
+        super(onSubscribe);
+        this.state = state;
+    }
+    
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        Conformance.subscriptionNonNull(subscription);
+        if (!Conformance.onSubscribeOnce(this.subscription, this)) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+    }
+    @Override
+    public void onNext(T item) {
+        Conformance.itemNonNull(item);
+        if (state.terminal != null) {
+            return;
+        }
+        Object key = null;
+        Function<? super T, ?> keySelector = state.keySelector;
+        if (keySelector != null) {
+            try {
+                key = Objects.requireNonNull(keySelector.apply(item), "The keySelector returned a null key");
+            } catch (Throwable ex) {
+                Subscription s = subscription;
+                if (s != null) {
+                    s.cancel();
+                }
+                onError(ex);
+                return;
+            }
+        }
+        for (AbstractCoalescingSubscription<T> s : state.array()) {
+            s.offer(item, key);
+        }
+    }
+    @Override
+    public void onError(Throwable throwable) {
+        Conformance.throwableNonNull(throwable);
+        state.terminate(state.nl.error(throwable));
+    }
+    @Override
+    public void onComplete() {
+        state.terminate(state.nl.complete());
+    }
+    @Override
+    public boolean hasSubscribers() {
+        return state.array().length != 0;
+    }
+    @Override
+    public boolean hasThrowable() {
+        return state.nl.isError(state.terminal);
+    }
+    @Override
+    public boolean hasComplete() {
+        return state.nl.isCompleted(state.terminal);
+    }
+    @Override
+    public Throwable getThrowable() {
+        Object o = state.terminal;
+        if (state.nl.isError(o)) {
+            return state.nl.getError(o);
+        }
+        return null;
+    }
+    
+    /**
+     * Holds the Subscribers and the terminal event.
+     * @param <T> the value type
+     */
+    static final class CoalescingState<T> extends AbstractArrayManager<AbstractCoalescingSubscription<T>> {
+        final NotificationLite<T> nl = NotificationLite.instance();
+        /** The key selector in the keyed mode, null otherwise. */
+        final Function<? super T, ?> keySelector;
+        /** Holds the terminal NotificationLite event. */
+        volatile Object terminal;
+        
+        @SuppressWarnings("unchecked")
+        public CoalescingState(Function<? super T, ?> keySelector) {
+            super(i -> new AbstractCoalescingSubscription[i]);
+            this.keySelector = keySelector;
+        }
+        
+        void subscribe(AbstractCoalescingSubscription<T> s) {
+            s.actual.onSubscribe(s);
+            if (add(s)) {
+                if (s.isCancelled()) {
+                    remove(s);
+                }
+            } else {
+                s.drain();
+            }
+        }
+        
+        void terminate(Object event) {
+            if (terminal == null) {
+                terminal = event;
+                for (AbstractCoalescingSubscription<T> s : getAndTerminate()) {
+                    s.drain();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Base class for the per-Subscriber state holding the requested amount and 
+     * the serialized drain logic; subclasses manage the pending value(s).
+     * @param <T> the value type
+     */
+    static abstract class AbstractCoalescingSubscription<T> implements Subscription {
+        final Subscriber<? super T> actual;
+        final CoalescingState<T> state;
+        
+        volatile long requested;
+        static final long REQUESTED = addressOf(AbstractCoalescingSubscription.class, "requested");
+        
+        volatile int wip;
+        static final long WIP = addressOf(AbstractCoalescingSubscription.class, "wip");
+        
+        /** Set when the terminal event has been delivered, accessed from the drain loop only. */
+        boolean done;
+        
+        public AbstractCoalescingSubscription(Subscriber<? super T> actual, CoalescingState<T> state) {
+            this.actual = actual;
+            this.state = state;
+        }
+        /**
+         * Replaces the pending value, called by the producer only.
+         * @param value the new value
+         * @param key the key of the value in the keyed mode, null otherwise
+         */
+        abstract void offer(T value, Object key);
+        /**
+         * Takes the next pending value, called from the drain loop only.
+         * @return the next pending value or null if there is none
+         */
+        abstract T poll();
+        /**
+         * Checks if there is any pending value, called from the drain loop only.
+         * @return true if there is no pending value
+         */
+        abstract boolean isEmpty();
+        /** Clears the pending value(s). */
+        abstract void clear();
+        
+        @Override
+        public final void request(long n) {
+            if (!Conformance.requestPositive(n, actual)) {
+                cancel();
+                return;
+            }
+            if (TerminalAtomics.request(this, REQUESTED, n) != TerminalAtomics.CANCELLED) {
+                drain();
+            }
+        }
+        
+        @Override
+        public final void cancel() {
+            if (TerminalAtomics.cancel(this, REQUESTED)) {
+                state.remove(this);
+                if (UNSAFE.getAndAddInt(this, WIP, 1) == 0) {
+                    clear();
+                }
+            }
+        }
+        
+        final boolean isCancelled() {
+            return requested == TerminalAtomics.CANCELLED;
+        }
+        
+        final void drain() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) != 0) {
+                return;
+            }
+            final NotificationLite<T> nl = state.nl;
+            final Subscriber<? super T> actual = this.actual;
+            int missed = 1;
+            
+            for (;;) {
+                if (done) {
+                    return;
+                }
+                long r = requested;
+                if (r == TerminalAtomics.CANCELLED) {
+                    clear();
+                    return;
+                }
+                // the terminal event has to be read before polling
+                Object term = state.terminal;
+                if (term != null && nl.isError(term)) {
+                    terminate(term);
+                    return;
+                }
+                if (r != 0L) {
+                    T v = poll();
+                    if (v != null) {
+                        try {
+                            actual.onNext(v);
+                        } catch (Throwable ex) {
+                            done = true;
+                            cancel();
+                            actual.onError(Conformance.onNextThrew(ex));
+                            return;
+                        }
+                        if (r != Long.MAX_VALUE) {
+                            TerminalAtomics.produced(this, REQUESTED, 1);
+                        }
+                        continue;
+                    }
+                    if (term != null) {
+                        terminate(term);
+                        return;
+                    }
+                } else
+                if (term != null && isEmpty()) {
+                    // nothing was pending so complete without a request
+                    terminate(term);
+                    return;
+                }
+                
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+        
+        final void terminate(Object term) {
+            done = true;
+            clear();
+            if (TerminalAtomics.cancel(this, REQUESTED)) {
+                state.remove(this);
+                try {
+                    state.nl.accept(actual, term);
+                } catch (Throwable ex) {
+                    Exceptions.handleUncaught(ex);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Keeps the latest value in a single slot.
+     * @param <T> the value type
+     */
+    static final class LatestSubscription<T> extends AbstractCoalescingSubscription<T> {
+        volatile Object pending;
+        static final long PENDING = addressOf(LatestSubscription.class, "pending");
+        
+        public LatestSubscription(Subscriber<? super T> actual, CoalescingState<T> state) {
+            super(actual, state);
+        }
+        @Override
+        void offer(T value, Object key) {
+            UNSAFE.getAndSetObject(this, PENDING, value);
+            drain();
+        }
+        @SuppressWarnings("unchecked")
+        @Override
+        T poll() {
+            if (pending == null) {
+                return null;
+            }
+            return (T)UNSAFE.getAndSetObject(this, PENDING, null);
+        }
+        @Override
+        boolean isEmpty() {
+            return pending == null;
+        }
+        @Override
+        void clear() {
+            pending = null;
+        }
+    }
+    
+    /**
+     * Keeps the latest value per key in a map and the order the keys became
+     * pending in a queue.
+     * @param <T> the value type
+     */
+    static final class KeyedLatestSubscription<T> extends AbstractCoalescingSubscription<T> {
+        final ConcurrentHashMap<Object, T> values;
+        final SpscLinkedQueue<Object> keys;
+        
+        public KeyedLatestSubscription(Subscriber<? super T> actual, CoalescingState<T> state) {
+            super(actual, state);
+            this.values = new ConcurrentHashMap<>();
+            this.keys = new SpscLinkedQueue<>();
+        }
+        @Override
+        void offer(T value, Object key) {
+            if (values.put(key, value) == null) {
+                keys.offer(key);
+            }
+            drain();
+        }
+        @Override
+        T poll() {
+            for (;;) {
+                Object key = keys.poll();
+                if (key == null) {
+                    return null;
+                }
+                T v = values.remove(key);
+                if (v != null) {
+                    return v;
+                }
+            }
+        }
+        @Override
+        boolean isEmpty() {
+            return values.isEmpty();
+        }
+        @Override
+        void clear() {
+            keys.clear();
+            values.clear();
+        }
+    }
+}
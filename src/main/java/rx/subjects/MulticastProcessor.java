@@ -0,0 +1,463 @@
+/**
+ * Copyright 2015 David Karnok
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.subjects;
+
+import static rx.internal.UnsafeAccess.*;
+
+import java.util.Objects;
+
+import rx.Flow;
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.Observable;
+import rx.exceptions.Exceptions;
+import rx.internal.*;
+import rx.schedulers.Scheduler;
+
+/**
+ * A hot, backpressure-aware multicasting {@link Flow.Processor} which stores the items
+ * in a single preallocated, power-of-two sized ring buffer shared by all of its Subscribers.
+ * <p>
+ * Each Subscriber has its own sequence into the ring and the producer is gated by the
+ * slowest of them: an item can be published only if it wouldn't overwrite a slot some
+ * Subscriber hasn't consumed yet. Subscribers consume all the available items in a batch,
+ * either on the emitting thread or, when subscribed through {@link #observeOnRing(Scheduler)},
+ * on a Worker of the given Scheduler without any intermediate queue.
+ * <p>
+ * When subscribed to an upstream Publisher, the processor requests the ring's capacity
+ * and replenishes it as the slowest Subscriber makes progress. It can be used without
+ * an upstream as well; in this case {@link #offer(Object)} should be used to detect a full ring
+ * as {@link #onNext(Object)} signals a {@code MissingBackpressureException} to all Subscribers.
+ * <p>
+ * Subscribers arriving after the processor terminated receive only the terminal event.
+ * Errors are delivered eagerly, skipping any items not yet consumed.
+ *
+ * @param <T> the value type
+ */
+public final class MulticastProcessor<T> extends Subject<T, T> {
+    /**
+     * Creates a MulticastProcessor with the default buffer size.
+     * @param <T> the value type
+     * @return the new MulticastProcessor
+     */
+    public static <T> MulticastProcessor<T> create() {
+        return create(Flow.defaultBufferSize());
+    }
+    /**
+     * Creates a MulticastProcessor with the given buffer size, rounded up to
+     * the next power of two.
+     * @param <T> the value type
+     * @param bufferSize the ring buffer capacity, positive
+     * @return the new MulticastProcessor
+     */
+    public static <T> MulticastProcessor<T> create(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize > 0 required but it was " + bufferSize);
+        }
+        RingState<T> state = new RingState<>(Pow2.roundToPowerOfTwo(bufferSize));
+        return new MulticastProcessor<>(s -> state.subscribe(s, null), state);
+    }
+
+    final RingState<T> state;
+
+    private MulticastProcessor(OnSubscribe<T> onSubscribe, RingState<T> state) {
+        super(onSubscribe);
+        this.state = state;
+    }
+
+    /**
+     * Returns an Observable which, when subscribed to, consumes this processor's ring
+     * buffer in batches on a Worker of the given Scheduler.
+     * <p>
+     * Unlike {@code processor.observeOn(scheduler)}, the items are not copied into an
+     * intermediate queue.
+     * @param scheduler the scheduler to drain the ring on
+     * @return the Observable draining the ring on the given scheduler
+     */
+    public Observable<T> observeOnRing(Scheduler scheduler) {
+        Objects.requireNonNull(scheduler);
+        RingState<T> state = this.state;
+        return create(s -> state.subscribe(s, scheduler.createWorker()));
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        Conformance.subscriptionNonNull(subscription);
+        if (!Conformance.onSubscribeOnce(state.upstream, this)) {
+            subscription.cancel();
+            return;
+        }
+        state.upstream = subscription;
+        state.replenish();
+    }
+    /**
+     * Tries to publish the given item into the ring buffer.
+     * <p>
+     * Must be called in a serialized fashion with respect to the other
+     * {@code onXXX} methods.
+     * @param item the item to publish, not null
+     * @return true if the item was published, false if the ring is full
+     * because the slowest Subscriber hasn't consumed enough items yet
+     */
+    public boolean offer(T item) {
+        Conformance.itemNonNull(item);
+        if (state.terminal != null) {
+            return false;
+        }
+        return state.offer(item);
+    }
+    @Override
+    public void onNext(T item) {
+        Conformance.itemNonNull(item);
+        if (state.terminal != null) {
+            return;
+        }
+        if (!state.offer(item)) {
+            Subscription s = state.upstream;
+            if (s != null) {
+                s.cancel();
+            }
+            onError(Conformance.mustRequestFirst());
+        }
+    }
+    @Override
+    public void onError(Throwable throwable) {
+        Conformance.throwableNonNull(throwable);
+        state.terminate(state.nl.error(throwable));
+    }
+    @Override
+    public void onComplete() {
+        state.terminate(state.nl.complete());
+    }
+    @Override
+    public boolean hasSubscribers() {
+        return state.array().length != 0;
+    }
+    @Override
+    public boolean hasThrowable() {
+        return state.nl.isError(state.terminal);
+    }
+    @Override
+    public boolean hasComplete() {
+        return state.nl.isCompleted(state.terminal);
+    }
+    @Override
+    public Throwable getThrowable() {
+        Object o = state.terminal;
+        if (state.nl.isError(o)) {
+            return state.nl.getError(o);
+        }
+        return null;
+    }
+    /**
+     * Returns the capacity of the ring buffer.
+     * @return the capacity of the ring buffer
+     */
+    public int capacity() {
+        return state.capacity;
+    }
+
+    /**
+     * Holds the ring buffer, the producer sequence and the array of consumers.
+     * @param <T> the value type
+     */
+    static final class RingState<T> extends AbstractArrayManager<RingSubscription<T>> {
+        final int capacity;
+        final int mask;
+        final Object[] buffer;
+        /** Replenish the upstream only if at least this many items can be requested. */
+        final int limit;
+        final NotificationLite<T> nl = NotificationLite.instance();
+
+        /** The sequence of the next item to be published, written only by the producer. */
+        volatile long producerIndex;
+        static final long PRODUCER_INDEX = addressOf(RingState.class, "producerIndex");
+
+        /** The upstream has been requested up to (exclusive) this sequence. */
+        volatile long requestedIndex;
+        static final long REQUESTED_INDEX = addressOf(RingState.class, "requestedIndex");
+
+        /** Holds the terminal NotificationLite event. */
+        volatile Object terminal;
+
+        /** The optional upstream subscription, set once in onSubscribe. */
+        volatile Subscription upstream;
+
+        /** The consumer array the gatingSequence was calculated from, accessed by the producer only. */
+        RingSubscription<T>[] gatingArray;
+        /** The cached minimum of the consumer sequences, accessed by the producer only. */
+        long gatingSequence;
+
+        @SuppressWarnings("unchecked")
+        public RingState(int capacity) {
+            super(i -> new RingSubscription[i]);
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.buffer = new Object[capacity];
+            this.limit = capacity - (capacity >> 2);
+        }
+
+        void subscribe(Subscriber<? super T> subscriber, Scheduler.Worker worker) {
+            RingSubscription<T> rs = new RingSubscription<>(subscriber, this, worker);
+            // hold the drain until onSubscribe returns, the signals in the meantime are counted as missed
+            UNSAFE.putOrderedInt(rs, RingSubscription.WIP, 1);
+            UNSAFE.putOrderedLong(rs, RingSubscription.SEQUENCE, producerIndex);
+            add(rs);
+            // the producer might have lapped the sequence read before the add became visible;
+            // no drain can run yet so this can't overwrite a newer sequence
+            UNSAFE.putOrderedLong(rs, RingSubscription.SEQUENCE, producerIndex);
+            subscriber.onSubscribe(rs);
+            rs.drainHeld();
+        }
+
+        boolean offer(T item) {
+            long p = producerIndex;
+            RingSubscription<T>[] a = array();
+            int n = a.length;
+            if (n != 0) {
+                long wrap = p - capacity;
+                if (a != gatingArray || wrap >= gatingSequence) {
+                    long min = minSequence(a, p);
+                    gatingArray = a;
+                    gatingSequence = min;
+                    if (wrap >= min) {
+                        return false;
+                    }
+                }
+            }
+            buffer[(int)p & mask] = item;
+            UNSAFE.putOrderedLong(this, PRODUCER_INDEX, p + 1);
+            if (n == 0) {
+                // nobody is listening so the item is dropped, ask for a replacement
+                replenish();
+            } else {
+                for (RingSubscription<T> rs : a) {
+                    rs.signal();
+                }
+            }
+            return true;
+        }
+
+        static <T> long minSequence(RingSubscription<T>[] a, long min) {
+            for (RingSubscription<T> rs : a) {
+                long s = rs.sequence;
+                if (s < min) {
+                    min = s;
+                }
+            }
+            return min;
+        }
+
+        void terminate(Object event) {
+            if (terminal == null) {
+                terminal = event;
+                for (RingSubscription<T> rs : getAndTerminate()) {
+                    rs.signal();
+                }
+            }
+        }
+
+        /**
+         * Requests more from the upstream in case the slowest consumer's progress
+         * opened up enough free slots in the ring.
+         */
+        void replenish() {
+            Subscription s = upstream;
+            if (s == null) {
+                return;
+            }
+            RingSubscription<T>[] a = array();
+            long target = minSequence(a, producerIndex) + capacity;
+            for (;;) {
+                long r = requestedIndex;
+                long d = target - r;
+                if (d < limit) {
+                    return;
+                }
+                if (UNSAFE.compareAndSwapLong(this, REQUESTED_INDEX, r, target)) {
+                    s.request(d);
+                    return;
+                }
+            }
+        }
+
+        void remove(RingSubscription<T> rs, boolean replenish) {
+            if (remove(rs) && replenish) {
+                replenish();
+            }
+        }
+    }
+
+    /**
+     * The per-Subscriber state: its sequence into the ring, its requested amount
+     * and the optional Worker to drain the ring on.
+     * @param <T> the value type
+     */
+    static final class RingSubscription<T> implements Subscription, Runnable {
+        final Subscriber<? super T> actual;
+        final RingState<T> state;
+        final Scheduler.Worker worker;
+
+        /** The sequence of the next item to consume. */
+        volatile long sequence;
+        static final long SEQUENCE = addressOf(RingSubscription.class, "sequence");
+
+        volatile long requested;
+        static final long REQUESTED = addressOf(RingSubscription.class, "requested");
+
+        volatile int wip;
+        static final long WIP = addressOf(RingSubscription.class, "wip");
+
+        /** Set when the terminal event has been delivered, accessed from the drain loop only. */
+        boolean done;
+
+        public RingSubscription(Subscriber<? super T> actual, RingState<T> state, Scheduler.Worker worker) {
+            this.actual = actual;
+            this.state = state;
+            this.worker = worker;
+        }
+
+        @Override
+        public void request(long n) {
+            if (!Conformance.requestPositive(n, actual)) {
+                cancel();
+                return;
+            }
+            if (TerminalAtomics.request(this, REQUESTED, n) != TerminalAtomics.CANCELLED) {
+                signal();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (TerminalAtomics.cancel(this, REQUESTED)) {
+                state.remove(this, true);
+                if (worker != null) {
+                    worker.dispose();
+                }
+            }
+        }
+
+        boolean isCancelled() {
+            return requested == TerminalAtomics.CANCELLED;
+        }
+
+        void signal() {
+            if (UNSAFE.getAndAddInt(this, WIP, 1) == 0) {
+                if (worker != null) {
+                    worker.schedule(this);
+                } else {
+                    run();
+                }
+            }
+        }
+
+        /** Runs the drain whose wip was taken before this subscription became visible. */
+        void drainHeld() {
+            if (worker != null) {
+                worker.schedule(this);
+            } else {
+                run();
+            }
+        }
+
+        @Override
+        public void run() {
+            final RingState<T> state = this.state;
+            final NotificationLite<T> nl = state.nl;
+            final Subscriber<? super T> actual = this.actual;
+            final Object[] buffer = state.buffer;
+            final int mask = state.mask;
+            int missed = 1;
+
+            for (;;) {
+                if (done) {
+                    return;
+                }
+                long r = requested;
+                if (r == TerminalAtomics.CANCELLED) {
+                    return;
+                }
+                boolean unbounded = r == Long.MAX_VALUE;
+
+                // the terminal event has to be read before the producer index
+                Object term = state.terminal;
+                if (term != null && nl.isError(term)) {
+                    terminate(term);
+                    return;
+                }
+                long seq = sequence;
+                long end = state.producerIndex;
+
+                if (seq == end) {
+                    if (term != null) {
+                        terminate(term);
+                        return;
+                    }
+                } else
+                if (r != 0L) {
+                    if (end - seq > r) {
+                        end = seq + r;
+                    }
+                    long e = end - seq;
+
+                    while (seq != end) {
+                        @SuppressWarnings("unchecked")
+                        T v = (T)buffer[(int)seq & mask];
+                        try {
+                            actual.onNext(v);
+                        } catch (Throwable ex) {
+                            done = true;
+                            cancel();
+                            actual.onError(Conformance.onNextThrew(ex));
+                            return;
+                        }
+                        seq++;
+                    }
+                    UNSAFE.putOrderedLong(this, SEQUENCE, seq);
+
+                    if (!unbounded) {
+                        TerminalAtomics.produced(this, REQUESTED, e);
+                    }
+                    state.replenish();
+                    // more might have become available during the batch
+                    continue;
+                }
+
+                missed = UNSAFE.getAndAddInt(this, WIP, -missed) - missed;
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        void terminate(Object term) {
+            done = true;
+            if (TerminalAtomics.cancel(this, REQUESTED)) {
+                state.remove(this, false);
+                try {
+                    state.nl.accept(actual, term);
+                } catch (Throwable ex) {
+                    Exceptions.handleUncaught(ex);
+                }
+                if (worker != null) {
+                    worker.dispose();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.util;
+
+import java.util.*;
+
+/**
+ * A probabilistic set which may claim to contain an element that was never added, with a false
+ * positive rate of about the configured value as long as no more than the expected number of
+ * elements were added, but never forgets an added element.
+ * <p>
+ * With {@code distinct}, a false positive drops an item which was in fact distinct; in exchange the
+ * memory use is fixed: about {@code -ln(fpp) / ln(2)^2} bits per expected element, i.e., about 1.2 bytes
+ * for 1% or 1.8 bytes for 0.1%. The elements are hashed by their {@link Object#hashCode()}, therefore
+ * elements with colliding hash codes always collide.
+ * <p>
+ * The elements can't be removed nor enumerated. This class is not thread-safe.
+ *
+ * @param <E> the element type
+ */
+public final class BloomFilterSet<E> extends AbstractSet<E> {
+    final long[] bits;
+    final long bitCount;
+    final int hashCount;
+    /** The number of additions which changed the filter. */
+    int count;
+    
+    /**
+     * Constructs an empty BloomFilterSet sized for the given number of elements and false positive rate.
+     * @param expectedElements the number of elements expected to be added, positive
+     * @param fpp the acceptable false positive probability, between 0 and 1 exclusive
+     */
+    public BloomFilterSet(long expectedElements, double fpp) {
+        if (expectedElements <= 0) {
+            throw new IllegalArgumentException("expectedElements > 0 required but it was " + expectedElements);
+        }
+        if (!(fpp > 0d && fpp < 1d)) {
+            throw new IllegalArgumentException("0 < fpp < 1 required but it was " + fpp);
+        }
+        double ln2 = Math.log(2);
+        long m = (long)Math.ceil(-expectedElements * Math.log(fpp) / (ln2 * ln2));
+        m = Math.max(64, (m + 63) & ~63L);
+        if (m / 64 > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("The filter would be too large: " + m + " bits");
+        }
+        this.bits = new long[(int)(m / 64)];
+        this.bitCount = m;
+        this.hashCount = Math.max(1, (int)Math.round((double)m / expectedElements * ln2));
+    }
+    
+    /** The murmur3 64 bit finalizer. */
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    /**
+     * Sets the bits of the element.
+     * @param e the element
+     * @return true if the element was definitely not present before
+     */
+    @Override
+    public boolean add(E e) {
+        long h = mix(e.hashCode());
+        long h1 = h;
+        long h2 = (h >>> 32) | 1L;
+        final long[] a = bits;
+        final long m = bitCount;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % m;
+            int idx = (int)(bit >>> 6);
+            long mask = 1L << bit;
+            long w = a[idx];
+            if ((w & mask) == 0L) {
+                a[idx] = w | mask;
+                changed = true;
+            }
+        }
+        if (changed) {
+            count++;
+        }
+        return changed;
+    }
+    
+    /**
+     * Checks if the element may have been added.
+     * @param o the element
+     * @return false if the element was definitely not added, true if it was probably added
+     */
+    @Override
+    public boolean contains(Object o) {
+        long h = mix(o.hashCode());
+        long h1 = h;
+        long h2 = (h >>> 32) | 1L;
+        final long[] a = bits;
+        final long m = bitCount;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % m;
+            if ((a[(int)(bit >>> 6)] & (1L << bit)) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+    
+    @Override
+    public void clear() {
+        Arrays.fill(bits, 0L);
+        count = 0;
+    }
+    
+    /**
+     * Returns the number of elements added which were definitely not present before; this
+     * underestimates the number of distinct elements by the false positives.
+     * @return the number of accepted additions
+     */
+    @Override
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * Not supported.
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public Iterator<E> iterator() {
+        throw new UnsupportedOperationException();
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        return o == this;
+    }
+    
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+    
+    @Override
+    public String toString() {
+        return "BloomFilterSet[bits=" + bitCount + ", hashes=" + hashCount + ", added=" + count + "]";
+    }
+    
+    /**
+     * Returns the number of bits of the filter.
+     * @return the number of bits
+     */
+    public long bitSize() {
+        return bitCount;
+    }
+    
+    /**
+     * Returns the number of hash functions per element.
+     * @return the number of hash functions
+     */
+    public int hashFunctions() {
+        return hashCount;
+    }
+}
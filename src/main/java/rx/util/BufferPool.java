@@ -0,0 +1,82 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.util;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import rx.internal.queues.MpmcArrayQueue;
+
+/**
+ * A bounded pool of reusable buffer containers for
+ * {@link rx.Observable#buffer(int, Supplier) buffer(count, bufferSupplier)}.
+ * <p>
+ * The operator takes a container from the pool for each buffer; the consumer hands the container back
+ * with {@link #recycle(Collection)} once it has processed it and no longer references it. When the pool
+ * is empty, a new container is created; when it is full, the recycled container is dropped.
+ * <pre>
+ * BufferPool&lt;List&lt;Row&gt;&gt; pool = new BufferPool&lt;&gt;(() -&gt; new ArrayList&lt;&gt;(1000), 16);
+ * rows.buffer(1000, pool).subscribe(list -&gt; {
+ *     database.insertAll(list);
+ *     pool.recycle(list);
+ * });
+ * </pre>
+ * <p>
+ * This class is thread-safe: the containers can be taken and recycled from different threads and the pool
+ * may be shared between subscriptions.
+ *
+ * @param <C> the container type
+ */
+public final class BufferPool<C extends Collection<?>> implements Supplier<C> {
+    final Supplier<? extends C> factory;
+    final Queue<C> pool;
+    
+    /**
+     * Constructs an empty pool.
+     * @param factory creates a new, empty container when the pool is empty
+     * @param capacity the maximum number of idle containers kept, positive; rounded up to a power of 2
+     */
+    public BufferPool(Supplier<? extends C> factory, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity > 0 required but it was " + capacity);
+        }
+        this.factory = Objects.requireNonNull(factory);
+        this.pool = new MpmcArrayQueue<>(capacity);
+    }
+    
+    /**
+     * Returns an idle container or a new one if there are none.
+     * @return the empty container
+     */
+    @Override
+    public C get() {
+        C c = pool.poll();
+        if (c == null) {
+            c = factory.get();
+        }
+        return c;
+    }
+    
+    /**
+     * Clears the container and keeps it for reuse unless the pool is full.
+     * @param container the container no longer used by the caller
+     */
+    public void recycle(C container) {
+        container.clear();
+        pool.offer(container);
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.util;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import rx.schedulers.Scheduler;
+
+/**
+ * A set whose elements expire after a given time since they were last added.
+ * <p>
+ * With {@code distinct}, this suppresses the repetitions of a key arriving within the given time of
+ * its previous occurrence. The expired elements are removed whenever the set is modified or queried,
+ * oldest first, at amortized constant cost per element.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @param <E> the element type
+ */
+public final class ExpiringSet<E> extends AbstractSet<E> {
+    /** Element to the time it was last added; access ordered, the eldest expires first. */
+    final LinkedHashMap<E, long[]> map;
+    final long ttlMillis;
+    final Scheduler scheduler;
+    
+    /**
+     * Constructs an empty ExpiringSet which uses the clock of the given scheduler.
+     * @param ttl the time an element stays in the set after it was last added, positive
+     * @param unit the time unit of {@code ttl}
+     * @param scheduler the scheduler whose clock to use
+     */
+    public ExpiringSet(long ttl, TimeUnit unit, Scheduler scheduler) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("ttl > 0 required but it was " + ttl);
+        }
+        this.ttlMillis = unit.toMillis(ttl);
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.map = new LinkedHashMap<>(16, 0.75f, true);
+    }
+    
+    /**
+     * Removes the elements added more than the time-to-live ago.
+     */
+    public void expire() {
+        expire(scheduler.now());
+    }
+    
+    void expire(long now) {
+        Iterator<long[]> it = map.values().iterator();
+        while (it.hasNext()) {
+            if (it.next()[0] + ttlMillis > now) {
+                break;
+            }
+            it.remove();
+        }
+    }
+    
+    /**
+     * Adds the element or, if already present, restarts its time-to-live.
+     * @param e the element
+     * @return true if the element was not present
+     */
+    @Override
+    public boolean add(E e) {
+        long now = scheduler.now();
+        expire(now);
+        long[] t = map.get(e);
+        if (t != null) {
+            t[0] = now;
+            return false;
+        }
+        map.put(e, new long[] { now });
+        return true;
+    }
+    
+    @Override
+    public boolean contains(Object o) {
+        expire();
+        return map.containsKey(o);
+    }
+    
+    @Override
+    public boolean remove(Object o) {
+        return map.remove(o) != null;
+    }
+    
+    @Override
+    public void clear() {
+        map.clear();
+    }
+    
+    @Override
+    public int size() {
+        expire();
+        return map.size();
+    }
+    
+    @Override
+    public Iterator<E> iterator() {
+        expire();
+        return map.keySet().iterator();
+    }
+}
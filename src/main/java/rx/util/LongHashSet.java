@@ -0,0 +1,259 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.util;
+
+import java.util.*;
+
+import rx.internal.Pow2;
+
+/**
+ * A set of primitive {@code long} values using open addressing with linear probing in a single
+ * {@code long[]}, taking 8 to 16 bytes per element instead of a boxed key plus a hash map node.
+ * <p>
+ * The {@link Set} methods accept {@link Long} instances; the {@code long}-typed overloads avoid boxing.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class LongHashSet extends AbstractSet<Long> {
+    /** Marks an empty slot; the value 0 itself is tracked by {@link #hasZero}. */
+    static final long EMPTY = 0L;
+    static final float LOAD_FACTOR = 0.75f;
+    
+    long[] keys;
+    int mask;
+    /** The number of non-zero elements. */
+    int count;
+    int threshold;
+    boolean hasZero;
+    
+    /**
+     * Constructs an empty LongHashSet.
+     */
+    public LongHashSet() {
+        this(16);
+    }
+    
+    /**
+     * Constructs an empty LongHashSet which can hold the given number of elements without resizing.
+     * @param capacityHint the expected number of elements
+     */
+    public LongHashSet(int capacityHint) {
+        int c = Pow2.roundToPowerOfTwo(Math.max(2, (int)Math.min(1 << 30, (long)(capacityHint / LOAD_FACTOR) + 1)));
+        this.keys = new long[c];
+        this.mask = c - 1;
+        this.threshold = (int)(c * LOAD_FACTOR);
+    }
+    
+    static int mix(long x) {
+        long h = x * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int)(h ^ (h >>> 16));
+    }
+    
+    /**
+     * Adds the value to this set.
+     * @param value the value
+     * @return true if the value was not present
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            return true;
+        }
+        final long[] a = keys;
+        final int m = mask;
+        int i = mix(value) & m;
+        for (;;) {
+            long k = a[i];
+            if (k == EMPTY) {
+                a[i] = value;
+                if (++count >= threshold) {
+                    rehash();
+                }
+                return true;
+            }
+            if (k == value) {
+                return false;
+            }
+            i = (i + 1) & m;
+        }
+    }
+    
+    /**
+     * Checks if the value is in this set.
+     * @param value the value
+     * @return true if the value is present
+     */
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return hasZero;
+        }
+        final long[] a = keys;
+        final int m = mask;
+        int i = mix(value) & m;
+        for (;;) {
+            long k = a[i];
+            if (k == EMPTY) {
+                return false;
+            }
+            if (k == value) {
+                return true;
+            }
+            i = (i + 1) & m;
+        }
+    }
+    
+    /**
+     * Removes the value from this set.
+     * @param value the value
+     * @return true if the value was present
+     */
+    public boolean remove(long value) {
+        if (value == EMPTY) {
+            boolean z = hasZero;
+            hasZero = false;
+            return z;
+        }
+        final long[] a = keys;
+        final int m = mask;
+        int i = mix(value) & m;
+        for (;;) {
+            long k = a[i];
+            if (k == EMPTY) {
+                return false;
+            }
+            if (k == value) {
+                removeAt(i);
+                return true;
+            }
+            i = (i + 1) & m;
+        }
+    }
+    
+    /** Removes the slot by shifting back the following entries of the probe sequence. */
+    void removeAt(int i) {
+        final long[] a = keys;
+        final int m = mask;
+        count--;
+        for (;;) {
+            int last = i;
+            i = (i + 1) & m;
+            long k;
+            for (;;) {
+                k = a[i];
+                if (k == EMPTY) {
+                    a[last] = EMPTY;
+                    return;
+                }
+                int home = mix(k) & m;
+                // move k back if its home slot is not within (last, i]
+                if (last <= i ? (last >= home || home > i) : (last >= home && home > i)) {
+                    break;
+                }
+                i = (i + 1) & m;
+            }
+            a[last] = k;
+        }
+    }
+    
+    void rehash() {
+        final long[] old = keys;
+        int c = old.length << 1;
+        if (c < 0) {
+            throw new IllegalStateException("Set too large");
+        }
+        final long[] a = new long[c];
+        final int m = c - 1;
+        for (long k : old) {
+            if (k != EMPTY) {
+                int i = mix(k) & m;
+                while (a[i] != EMPTY) {
+                    i = (i + 1) & m;
+                }
+                a[i] = k;
+            }
+        }
+        keys = a;
+        mask = m;
+        threshold = (int)(c * LOAD_FACTOR);
+    }
+    
+    @Override
+    public boolean add(Long e) {
+        return add(e.longValue());
+    }
+    
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains(((Long)o).longValue());
+    }
+    
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Long && remove(((Long)o).longValue());
+    }
+    
+    @Override
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        count = 0;
+        hasZero = false;
+    }
+    
+    @Override
+    public int size() {
+        return count + (hasZero ? 1 : 0);
+    }
+    
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<Long>() {
+            final long[] a = keys;
+            /** -1 stands for the zero element. */
+            int index = hasZero ? -1 : next(0);
+            
+            int next(int i) {
+                while (i < a.length && a[i] == EMPTY) {
+                    i++;
+                }
+                return i;
+            }
+            
+            @Override
+            public boolean hasNext() {
+                return index < a.length;
+            }
+            
+            @Override
+            public Long next() {
+                int i = index;
+                if (i >= a.length) {
+                    throw new NoSuchElementException();
+                }
+                if (i < 0) {
+                    index = next(0);
+                    return EMPTY;
+                }
+                index = next(i + 1);
+                return a[i];
+            }
+        };
+    }
+}
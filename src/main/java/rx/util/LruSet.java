@@ -0,0 +1,98 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.util;
+
+import java.util.*;
+
+/**
+ * A set which holds at most a given number of elements and evicts the least recently added or
+ * re-added element when it overflows.
+ * <p>
+ * With {@code distinct}, this suppresses the repetition of recently seen keys only: a key evicted
+ * this way is considered distinct again.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @param <E> the element type
+ */
+public final class LruSet<E> extends AbstractSet<E> {
+    final Map<E, Boolean> map;
+    final int capacity;
+    
+    /**
+     * Constructs an empty LruSet with the given maximum size.
+     * @param capacity the maximum number of elements, positive
+     */
+    public LruSet(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity > 0 required but it was " + capacity);
+        }
+        this.capacity = capacity;
+        this.map = new LinkedHashMap<E, Boolean>(Math.min(capacity, 16), 0.75f, true) {
+            /** */
+            private static final long serialVersionUID = -1447212226734389934L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<E, Boolean> eldest) {
+                return size() > LruSet.this.capacity;
+            }
+        };
+    }
+    
+    /**
+     * Adds the element or, if already present, marks it as the most recently used.
+     * @param e the element
+     * @return true if the element was not present
+     */
+    @Override
+    public boolean add(E e) {
+        return map.put(e, Boolean.TRUE) == null;
+    }
+    
+    @Override
+    public boolean contains(Object o) {
+        return map.containsKey(o);
+    }
+    
+    @Override
+    public boolean remove(Object o) {
+        return map.remove(o) != null;
+    }
+    
+    @Override
+    public void clear() {
+        map.clear();
+    }
+    
+    @Override
+    public int size() {
+        return map.size();
+    }
+    
+    @Override
+    public Iterator<E> iterator() {
+        return map.keySet().iterator();
+    }
+    
+    /**
+     * Returns the maximum number of elements this set holds.
+     * @return the maximum number of elements
+     */
+    public int capacity() {
+        return capacity;
+    }
+}
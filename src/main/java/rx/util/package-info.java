@@ -0,0 +1,23 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Helper data structures to be used with operators, such as memory-bounded sets for
+ * {@link rx.Observable#distinct(java.util.function.Function, java.util.function.Supplier) distinct}, and
+ * pools of reusable containers for
+ * {@link rx.Observable#buffer(int, java.util.function.Supplier) buffer}.
+ */
+package rx.util;
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import rx.internal.queues.TimedRingBuffer;
+
+public class TimedRingBufferTest {
+    @Test
+    public void testOfferPoll() {
+        TimedRingBuffer<Integer> b = new TimedRingBuffer<>(4);
+        assertTrue(b.isEmpty());
+        assertNull(b.peek());
+        assertNull(b.poll());
+        
+        for (int i = 0; i < 3; i++) {
+            b.offer(i * 10, i);
+        }
+        assertEquals(3, b.size());
+        assertEquals(0, b.peek().intValue());
+        assertEquals(20L, b.timeAt(2));
+        
+        assertEquals(0, b.poll().intValue());
+        assertEquals(1, b.poll().intValue());
+        assertEquals(2, b.poll().intValue());
+        assertTrue(b.isEmpty());
+    }
+    
+    @Test
+    public void testGrowKeepsOrderAcrossTheWrap() {
+        TimedRingBuffer<Integer> b = new TimedRingBuffer<>(4);
+        for (int i = 0; i < 3; i++) {
+            b.offer(i, i);
+        }
+        b.poll();
+        b.poll();
+        // head is now in the middle of the array
+        for (int i = 3; i < 20; i++) {
+            b.offer(i, i);
+        }
+        assertEquals(18, b.size());
+        for (int i = 0; i < 18; i++) {
+            assertEquals(i + 2, b.get(i).intValue());
+            assertEquals(i + 2L, b.timeAt(i));
+        }
+    }
+    
+    @Test
+    public void testSearchAndEvict() {
+        TimedRingBuffer<Integer> b = new TimedRingBuffer<>(8);
+        for (int i = 0; i < 10; i++) {
+            b.offer(i / 2, i);
+        }
+        // timestamps: 0 0 1 1 2 2 3 3 4 4
+        assertEquals(0, b.search(-1));
+        assertEquals(0, b.search(0));
+        assertEquals(4, b.search(2));
+        assertEquals(10, b.search(5));
+        
+        assertEquals(5, b.search(3) - 1);
+        assertEquals(6, b.evictBefore(3));
+        assertEquals(4, b.size());
+        assertEquals(6, b.peek().intValue());
+        
+        assertEquals(0, b.evictBefore(3));
+        assertEquals(4, b.evictBefore(100));
+        assertTrue(b.isEmpty());
+    }
+    
+    @Test
+    public void testTimestampsAreClamped() {
+        TimedRingBuffer<Integer> b = new TimedRingBuffer<>(4);
+        b.offer(10, 1);
+        b.offer(5, 2);
+        b.offer(12, 3);
+        
+        assertEquals(10L, b.timeAt(1));
+        assertEquals(1, b.evictBefore(11) - 1);
+        assertEquals(3, b.peek().intValue());
+    }
+    
+    @Test
+    public void testTrimAndClear() {
+        TimedRingBuffer<Integer> b = new TimedRingBuffer<>(4);
+        for (int i = 0; i < 6; i++) {
+            b.offer(i, i);
+        }
+        b.trim(10);
+        assertEquals(6, b.size());
+        b.trim(2);
+        assertEquals(2, b.size());
+        assertEquals(4, b.poll().intValue());
+        
+        b.clear();
+        assertTrue(b.isEmpty());
+        assertNull(b.poll());
+        
+        b.offer(100, 100);
+        assertEquals(100, b.peek().intValue());
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OnSubscribeCombineLatestFlowTest {
+    @Test
+    public void testCombine2() {
+        PublishSubject<Integer> a = PublishSubject.create();
+        PublishSubject<String> b = PublishSubject.create();
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        Observable.combineLatest(a, b, (x, y) -> x + y).subscribe(ts);
+        
+        a.onNext(1);
+        a.onNext(2);
+        ts.assertNoValues();
+        
+        b.onNext("a");
+        b.onNext("b");
+        a.onNext(3);
+        
+        ts.assertValues("2a", "2b", "3b");
+        ts.assertNoTerminalEvent();
+        
+        a.onComplete();
+        b.onNext("c");
+        ts.assertNoTerminalEvent();
+        
+        b.onComplete();
+        ts.assertValues("2a", "2b", "3b", "3c");
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testCombine3And4() {
+        TestSubscriber<String> ts3 = new TestSubscriber<>();
+        TestSubscriber<String> ts4 = new TestSubscriber<>();
+        
+        Observable.combineLatest(Observable.just(1), Observable.just("a"), Observable.range(5, 2), 
+                (a, b, c) -> a + b + c).subscribe(ts3);
+        Observable.combineLatest(Observable.just(1), Observable.just("a"), Observable.just(5), Observable.just("x", "y"), 
+                (a, b, c, d) -> a + b + c + d).subscribe(ts4);
+        
+        ts3.assertValues("1a5", "1a6");
+        ts3.assertComplete();
+        ts4.assertValues("1a5x", "1a5y");
+        ts4.assertComplete();
+    }
+    
+    @Test
+    public void testListRowsAreCopies() {
+        PublishSubject<Integer> a = PublishSubject.create();
+        PublishSubject<Integer> b = PublishSubject.create();
+        TestSubscriber<Object[]> ts = new TestSubscriber<>();
+        
+        Observable.combineLatest(Arrays.asList(a, b), v -> v).subscribe(ts);
+        
+        a.onNext(1);
+        b.onNext(2);
+        a.onNext(3);
+        
+        List<Object[]> rows = ts.getValues();
+        assertEquals(2, rows.size());
+        assertArrayEquals(new Object[] { 1, 2 }, rows.get(0));
+        assertArrayEquals(new Object[] { 3, 2 }, rows.get(1));
+    }
+    
+    @Test
+    public void testEmptyList() {
+        TestSubscriber<Object> ts = new TestSubscriber<>();
+        
+        Observable.combineLatest(Collections.<Observable<Integer>>emptyList(), v -> v).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testEmptySourceCompletesAndCancelsOthers() {
+        PublishSubject<Integer> a = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.combineLatest(a, Observable.<Integer>empty(), (x, y) -> x + y).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertNoErrors();
+        ts.assertComplete();
+        assertFalse(a.hasSubscribers());
+    }
+    
+    @Test
+    public void testError() {
+        PublishSubject<Integer> a = PublishSubject.create();
+        PublishSubject<Integer> b = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.combineLatest(a, b, (x, y) -> x + y).subscribe(ts);
+        
+        a.onNext(1);
+        b.onNext(2);
+        a.onError(new TestException());
+        
+        ts.assertValues(3);
+        ts.assertError(TestException.class);
+        assertFalse(b.hasSubscribers());
+    }
+    
+    @Test
+    public void testCombinerThrows() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.<Integer, Integer, Integer>combineLatest(Observable.just(1), Observable.range(1, 5), (x, y) -> {
+            if (y == 2) {
+                throw new TestException();
+            }
+            return x + y;
+        }).subscribe(ts);
+        
+        ts.assertValues(2);
+        ts.assertError(TestException.class);
+    }
+    
+    @Test
+    public void testBackpressureEmitsEveryCombination() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        Observable.combineLatest(Observable.just(100), Observable.range(1, 1000), (x, y) -> x + y).subscribe(ts);
+        
+        ts.assertNoValues();
+        
+        ts.requestMore(2);
+        ts.assertValues(101, 102);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(Long.MAX_VALUE);
+        ts.assertValueCount(1000);
+        assertEquals(1100, ts.getValues().get(999).intValue());
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testCoalesceKeepsNewestOnly() {
+        PublishSubject<Integer> a = PublishSubject.create();
+        PublishSubject<Integer> b = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        Observable.combineLatest(a, b, (x, y) -> x * 10 + y, true).subscribe(ts);
+        
+        a.onNext(1);
+        b.onNext(1);
+        a.onNext(2);
+        b.onNext(2);
+        ts.assertNoValues();
+        
+        ts.requestMore(1);
+        ts.assertValues(22);
+        
+        ts.requestMore(1);
+        ts.assertValues(22);
+        
+        a.onNext(3);
+        ts.assertValues(22, 32);
+        
+        b.onNext(4);
+        b.onNext(5);
+        a.onComplete();
+        b.onComplete();
+        ts.assertValues(22, 32);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(5);
+        ts.assertValues(22, 32, 35);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testCoalesceConsumesSourcesUnbounded() {
+        TestSubscriber<Object[]> ts = new TestSubscriber<>(0);
+        
+        Observable.combineLatest(Arrays.asList(Observable.range(1, 100000), Observable.just(0)), v -> v, true)
+        .subscribe(ts);
+        
+        ts.assertNoTerminalEvent();
+        ts.requestMore(1);
+        
+        ts.assertValueCount(1);
+        assertArrayEquals(new Object[] { 100000, 0 }, ts.getValues().get(0));
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testCancel() {
+        PublishSubject<Integer> a = PublishSubject.create();
+        PublishSubject<Integer> b = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.combineLatest(a, b, (x, y) -> x + y).subscribe(ts);
+        
+        assertTrue(a.hasSubscribers());
+        assertTrue(b.hasSubscribers());
+        
+        ts.cancel();
+        
+        assertFalse(a.hasSubscribers());
+        assertFalse(b.hasSubscribers());
+    }
+    
+    @Test
+    public void testAsyncSources() {
+        for (boolean coalesce : new boolean[] { false, true }) {
+            TestSubscriber<Integer> ts = new TestSubscriber<>();
+            
+            Observable.combineLatest(
+                    Observable.range(1, 1000).subscribeOn(Schedulers.computation()), 
+                    Observable.range(1, 1000).subscribeOn(Schedulers.computation()), 
+                    (x, y) -> x + y, coalesce).observeOn(Schedulers.newThread())
+            .subscribe(ts);
+            
+            ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+            ts.assertNoErrors();
+            ts.assertComplete();
+            List<Integer> list = ts.getValues();
+            assertFalse(list.isEmpty());
+            assertEquals(2000, list.get(list.size() - 1).intValue());
+            assertTrue(list.size() <= 1999);
+            if (!coalesce) {
+                // the items of one source before the other's first item don't form a combination
+                assertTrue(list.size() >= 1000);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.*;
+
+import rx.Observable;
+import rx.schedulers.Schedulers;
+import rx.subscribers.TestSubscriber;
+
+/**
+ * Measures the throughput and the bytes allocated per source item of the keyed {@code join}
+ * with different numbers of matches per key.
+ */
+@Ignore
+// since this doesn't do any automatic testing
+public class OnSubscribeHashJoinPerf {
+    static final int COUNT = 1_000_000;
+    static final int ROUNDS = 10;
+    
+    @Test
+    public void uniqueKeys() {
+        run("join, 1 match/item", () -> join(COUNT));
+    }
+    
+    @Test
+    public void tenPerKey() {
+        run("join, 10 matches/item", () -> join(COUNT / 10));
+    }
+    
+    @Test
+    public void uniqueKeysAsync() {
+        run("join async, 1 match/item", () -> Observable.range(0, COUNT).subscribeOn(Schedulers.computation())
+                .join(Observable.range(0, COUNT).subscribeOn(Schedulers.computation()), 
+                        v -> v, v -> v, 1, 1, TimeUnit.DAYS, (a, b) -> a));
+    }
+    
+    static Observable<Integer> join(int keys) {
+        return Observable.range(0, COUNT).join(Observable.range(0, COUNT), 
+                v -> v % keys, v -> v % keys, 1, 1, TimeUnit.DAYS, (a, b) -> a);
+    }
+    
+    static void run(String name, Supplier<Observable<Integer>> chain) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        for (int r = 0; r < ROUNDS; r++) {
+            TestSubscriber<Integer> ts = new TestSubscriber<Integer>() {
+                @Override
+                public void onNext(Integer item) {
+                    // don't keep the results
+                }
+            };
+            long b = allocated(mx);
+            long t = System.nanoTime();
+            chain.get().subscribe(ts);
+            ts.awaitTerminalEvent();
+            t = System.nanoTime() - t;
+            b = allocated(mx) - b;
+            
+            ts.assertNoErrors();
+            System.out.printf("%s: %,.3f items/s, %,.1f bytes/item%n", name, 2 * COUNT * 1e9 / t, (double)b / (2 * COUNT));
+        }
+    }
+    
+    static long allocated(com.sun.management.ThreadMXBean mx) {
+        long sum = 0L;
+        for (long b : mx.getThreadAllocatedBytes(mx.getAllThreadIds())) {
+            if (b > 0) {
+                sum += b;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.*;
+import rx.schedulers.*;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OnSubscribeHashJoinTest {
+    static Observable<String> join(Observable<String> left, Observable<String> right, 
+            long leftWindow, long rightWindow, TestScheduler scheduler) {
+        return left.join(right, v -> v.charAt(0), v -> v.charAt(0), leftWindow, rightWindow, 
+                TimeUnit.MILLISECONDS, scheduler, (a, b) -> a + b);
+    }
+    
+    @Test
+    public void testMatchesByKey() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> left = PublishSubject.create();
+        PublishSubject<String> right = PublishSubject.create();
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        join(left, right, 100, 100, scheduler).subscribe(ts);
+        
+        left.onNext("a1");
+        left.onNext("b1");
+        right.onNext("a2");
+        right.onNext("c2");
+        left.onNext("a3");
+        
+        ts.assertValues("a1a2", "a3a2");
+        ts.assertNoTerminalEvent();
+    }
+    
+    @Test
+    public void testWindowsExpire() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> left = PublishSubject.create();
+        PublishSubject<String> right = PublishSubject.create();
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        join(left, right, 100, 50, scheduler).subscribe(ts);
+        
+        left.onNext("a1");
+        scheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+        right.onNext("a2");
+        ts.assertValues("a1a2");
+        
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        right.onNext("a3");
+        ts.assertValues("a1a2");
+        
+        // a2 is live before 149, a3 before 150
+        scheduler.advanceTimeBy(48, TimeUnit.MILLISECONDS);
+        left.onNext("a4");
+        ts.assertValues("a1a2", "a4a2", "a4a3");
+        
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        left.onNext("a5");
+        ts.assertValues("a1a2", "a4a2", "a4a3", "a5a3");
+        
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        left.onNext("a6");
+        ts.assertValueCount(4);
+    }
+    
+    @Test
+    public void testZeroWindowMatchesSameInstantOnly() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> left = PublishSubject.create();
+        PublishSubject<String> right = PublishSubject.create();
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        join(left, right, 0, 100, scheduler).subscribe(ts);
+        
+        left.onNext("a1");
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        right.onNext("a2");
+        ts.assertNoValues();
+        
+        left.onNext("a3");
+        ts.assertValues("a3a2");
+    }
+    
+    @Test
+    public void testSameInstantMatchesInAnyOrder() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> left = PublishSubject.create();
+        PublishSubject<String> right = PublishSubject.create();
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        join(left, right, 0, 100, scheduler).subscribe(ts);
+        
+        // the zero-window left item is drained before the right item of the same instant
+        left.onNext("a1");
+        right.onNext("a2");
+        ts.assertValues("a1a2");
+        
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        right.onNext("b1");
+        left.onNext("b2");
+        ts.assertValues("a1a2", "b2b1");
+        
+        // a1 is gone once the right side moved past its instant
+        right.onNext("a3");
+        ts.assertValues("a1a2", "b2b1");
+        ts.assertNoErrors();
+    }
+    
+    @Test
+    public void testZeroWindowsNeverMatch() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> left = PublishSubject.create();
+        PublishSubject<String> right = PublishSubject.create();
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        join(left, right, 0, 0, scheduler).subscribe(ts);
+        
+        left.onNext("a1");
+        right.onNext("a2");
+        left.onNext("a3");
+        
+        ts.assertNoValues();
+        ts.assertNoErrors();
+    }
+    
+    @Test
+    public void testIndexBoundedWhileOtherSideSilent() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> left = PublishSubject.create();
+        PublishSubject<String> right = PublishSubject.create();
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        OnSubscribeHashJoin.JoinCoordinator<String, String, Character, String> parent = 
+                new OnSubscribeHashJoin.JoinCoordinator<>(ts, v -> v.charAt(0), v -> v.charAt(0), 
+                TimeUnit.MILLISECONDS.toNanos(50), TimeUnit.MILLISECONDS.toNanos(50), scheduler, (a, b) -> a + b);
+        ts.onSubscribe(parent);
+        left.unsafeSubscribe(parent.leftSide);
+        right.unsafeSubscribe(parent.rightSide);
+        
+        long bound = TimeUnit.NANOSECONDS.toMillis(OnSubscribeHashJoin.REORDER_GRACE) + 50 + 1;
+        for (int i = 0; i < 10_000; i++) {
+            left.onNext("a" + i);
+            scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+            assertTrue(parent.leftIndex.byTime.size() + " > " + bound, parent.leftIndex.byTime.size() <= bound);
+        }
+        assertTrue(parent.leftIndex.byKey.get('a').size() <= bound);
+        
+        // the recent entries are still matched
+        right.onNext("a");
+        assertEquals(49, ts.getValues().size());
+        ts.assertNoErrors();
+    }
+    
+    @Test
+    public void testCompletesWhenNothingCanMatch() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> left = PublishSubject.create();
+        PublishSubject<String> right = PublishSubject.create();
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        join(left, right, 100, 100, scheduler).subscribe(ts);
+        
+        right.onNext("a1");
+        right.onComplete();
+        ts.assertNoTerminalEvent();
+        
+        left.onNext("a2");
+        left.onComplete();
+        
+        ts.assertValues("a2a1");
+        ts.assertNoErrors();
+        ts.assertComplete();
+        
+        PublishSubject<String> left2 = PublishSubject.create();
+        PublishSubject<String> right2 = PublishSubject.create();
+        TestSubscriber<String> ts2 = new TestSubscriber<>();
+        join(left2, right2, 100, 100, scheduler).subscribe(ts2);
+        
+        left2.onComplete();
+        ts2.assertComplete();
+        assertFalse(right2.hasSubscribers());
+    }
+    
+    @Test
+    public void testError() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> left = PublishSubject.create();
+        PublishSubject<String> right = PublishSubject.create();
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        join(left, right, 100, 100, scheduler).subscribe(ts);
+        
+        right.onError(new TestException());
+        
+        ts.assertError(TestException.class);
+        assertFalse(left.hasSubscribers());
+    }
+    
+    @Test
+    public void testMissingBackpressure() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> left = PublishSubject.create();
+        PublishSubject<String> right = PublishSubject.create();
+        TestSubscriber<String> ts = new TestSubscriber<>(1);
+        
+        join(left, right, 100, 100, scheduler).subscribe(ts);
+        
+        left.onNext("a1");
+        left.onNext("a2");
+        right.onNext("a3");
+        
+        ts.assertValues("a1a3");
+        ts.assertError(MissingBackpressureException.class);
+        assertFalse(left.hasSubscribers());
+        assertFalse(right.hasSubscribers());
+    }
+    
+    @Test
+    public void testCancel() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<String> left = PublishSubject.create();
+        PublishSubject<String> right = PublishSubject.create();
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        join(left, right, 100, 100, scheduler).subscribe(ts);
+        
+        ts.cancel();
+        
+        assertFalse(left.hasSubscribers());
+        assertFalse(right.hasSubscribers());
+    }
+    
+    @Test
+    public void testAsync() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        int n = 10000;
+        
+        Observable<Integer> left = Observable.range(0, n).subscribeOn(Schedulers.computation());
+        Observable<Integer> right = Observable.range(0, n).subscribeOn(Schedulers.computation());
+        
+        left.join(right, v -> v, v -> v, 1, 1, TimeUnit.DAYS, (a, b) -> a - b).subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        ts.assertValueCount(n);
+        for (Integer v : ts.getValues()) {
+            assertEquals(0, v.intValue());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+
+import rx.Observable;
+import rx.observables.RefCountObservable;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OnSubscribeRefCountWithGraceTest {
+    @Test
+    public void subscriberWithinGracePeriodReusesConnection() {
+        TestScheduler scheduler = new TestScheduler();
+        AtomicInteger subscriptions = new AtomicInteger();
+        PublishSubject<Integer> ps = PublishSubject.create();
+        
+        RefCountObservable<Integer> rc = Observable.<Integer>create(s -> {
+            subscriptions.getAndIncrement();
+            ps.unsafeSubscribe(s);
+        }).publish().refCount(100, TimeUnit.MILLISECONDS, scheduler);
+        
+        TestSubscriber<Integer> ts1 = new TestSubscriber<>();
+        rc.subscribe(ts1);
+        
+        ps.onNext(1);
+        ts1.cancel();
+        
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        
+        Assert.assertTrue(ps.hasSubscribers());
+        
+        TestSubscriber<Integer> ts2 = new TestSubscriber<>();
+        rc.subscribe(ts2);
+        
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        
+        Assert.assertTrue(ps.hasSubscribers());
+        
+        ps.onNext(2);
+        
+        ts1.assertValues(1);
+        ts2.assertValues(2);
+        
+        Assert.assertEquals(1, subscriptions.get());
+        Assert.assertEquals(0, rc.reconnectCount());
+        Assert.assertEquals(1, rc.avoidedReconnectCount());
+    }
+    @Test
+    public void disconnectAfterGracePeriod() {
+        TestScheduler scheduler = new TestScheduler();
+        AtomicInteger subscriptions = new AtomicInteger();
+        PublishSubject<Integer> ps = PublishSubject.create();
+        
+        RefCountObservable<Integer> rc = Observable.<Integer>create(s -> {
+            subscriptions.getAndIncrement();
+            ps.unsafeSubscribe(s);
+        }).publish().refCount(100, TimeUnit.MILLISECONDS, scheduler);
+        
+        TestSubscriber<Integer> ts1 = new TestSubscriber<>();
+        rc.subscribe(ts1);
+        ts1.cancel();
+        
+        scheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+        
+        Assert.assertTrue(ps.hasSubscribers());
+        
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        
+        Assert.assertFalse(ps.hasSubscribers());
+        
+        TestSubscriber<Integer> ts2 = new TestSubscriber<>();
+        rc.subscribe(ts2);
+        
+        Assert.assertTrue(ps.hasSubscribers());
+        Assert.assertEquals(2, subscriptions.get());
+        Assert.assertEquals(1, rc.reconnectCount());
+        Assert.assertEquals(0, rc.avoidedReconnectCount());
+    }
+    @Test
+    public void completionDuringGracePeriodReconnects() {
+        TestScheduler scheduler = new TestScheduler();
+        AtomicInteger subscriptions = new AtomicInteger();
+        PublishSubject<Integer> ps = PublishSubject.create();
+        
+        RefCountObservable<Integer> rc = Observable.<Integer>create(s -> {
+            subscriptions.getAndIncrement();
+            ps.unsafeSubscribe(s);
+        }).publish().refCount(100, TimeUnit.MILLISECONDS, scheduler);
+        
+        TestSubscriber<Integer> ts1 = new TestSubscriber<>();
+        rc.subscribe(ts1);
+        ts1.cancel();
+        
+        ps.onComplete();
+        
+        TestSubscriber<Integer> ts2 = new TestSubscriber<>();
+        rc.subscribe(ts2);
+        
+        Assert.assertEquals(2, subscriptions.get());
+        Assert.assertEquals(1, rc.reconnectCount());
+        Assert.assertEquals(0, rc.avoidedReconnectCount());
+    }
+}
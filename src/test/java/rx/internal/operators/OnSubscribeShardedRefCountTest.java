@@ -0,0 +1,118 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+
+import rx.Observable;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OnSubscribeShardedRefCountTest {
+    @Test
+    public void singleUpstreamConnection() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        PublishSubject<Integer> ps = PublishSubject.create();
+        Observable<Integer> source = Observable.create(s -> {
+            subscriptions.getAndIncrement();
+            ps.unsafeSubscribe(s);
+        });
+        
+        Observable<Integer> shared = source.share(4);
+        
+        TestSubscriber<Integer>[] ts = createSubscribers(10);
+        for (TestSubscriber<Integer> t : ts) {
+            shared.subscribe(t);
+        }
+        
+        Assert.assertEquals(1, subscriptions.get());
+        
+        ps.onNext(1);
+        ps.onNext(2);
+        ps.onComplete();
+        
+        for (TestSubscriber<Integer> t : ts) {
+            t.assertValues(1, 2);
+            t.assertNoErrors();
+            t.assertComplete();
+        }
+    }
+    @Test
+    public void disconnectWhenAllShardsEmpty() {
+        PublishSubject<Integer> ps = PublishSubject.create();
+        
+        Observable<Integer> shared = ps.share(3);
+        
+        TestSubscriber<Integer>[] ts = createSubscribers(5);
+        for (TestSubscriber<Integer> t : ts) {
+            shared.subscribe(t);
+        }
+        
+        Assert.assertTrue(ps.hasSubscribers());
+        
+        ps.onNext(1);
+        
+        for (int i = 0; i < ts.length - 1; i++) {
+            ts[i].cancel();
+        }
+        
+        Assert.assertTrue(ps.hasSubscribers());
+        
+        ps.onNext(2);
+        
+        ts[ts.length - 1].cancel();
+        
+        Assert.assertFalse(ps.hasSubscribers());
+        
+        for (int i = 0; i < ts.length - 1; i++) {
+            ts[i].assertValues(1);
+        }
+        ts[ts.length - 1].assertValues(1, 2);
+    }
+    @Test
+    public void reconnect() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        Observable<Integer> source = Observable.create(s -> {
+            subscriptions.getAndIncrement();
+            Observable.range(1, 10).unsafeSubscribe(s);
+        });
+        
+        Observable<Integer> shared = source.share(2);
+        
+        for (int i = 0; i < 3; i++) {
+            TestSubscriber<Integer> ts = new TestSubscriber<>();
+            shared.subscribe(ts);
+            
+            ts.assertValues(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+            ts.assertNoErrors();
+            ts.assertComplete();
+        }
+        
+        Assert.assertEquals(3, subscriptions.get());
+    }
+    
+    @SuppressWarnings("unchecked")
+    static TestSubscriber<Integer>[] createSubscribers(int n) {
+        TestSubscriber<Integer>[] ts = new TestSubscriber[n];
+        for (int i = 0; i < n; i++) {
+            ts[i] = new TestSubscriber<>();
+        }
+        return ts;
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+import rx.util.BufferPool;
+
+public class OperatorBufferWithSizeFlowTest {
+    @Test
+    public void testExact() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 5).buffer(2).subscribe(ts);
+        
+        ts.assertValues(asList(1, 2), asList(3, 4), asList(5));
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testSkipLargerThanCount() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 8).buffer(2, 3).subscribe(ts);
+        
+        ts.assertValues(asList(1, 2), asList(4, 5), asList(7, 8));
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testOverlappingViews() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 5).buffer(3, 1).subscribe(ts);
+        
+        ts.assertValues(asList(1, 2, 3), asList(2, 3, 4), asList(3, 4, 5), asList(4, 5), asList(5));
+        ts.assertComplete();
+        
+        try {
+            ts.getValues().get(0).add(6);
+            fail("Views should be read-only");
+        } catch (UnsupportedOperationException expected) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testOverlappingViewsAcrossSegments() {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(i);
+        }
+        int[][] shapes = { { 2, 1 }, { 10, 3 }, { 33, 32 }, { 100, 7 } };
+        for (int[] shape : shapes) {
+            int count = shape[0];
+            int skip = shape[1];
+            
+            List<List<Integer>> expected = new ArrayList<>();
+            for (int start = 0; start < items.size(); start += skip) {
+                expected.add(new ArrayList<>(items.subList(start, Math.min(start + count, items.size()))));
+            }
+            
+            TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+            Observable.from(items).buffer(count, skip).subscribe(ts);
+            
+            // the emitted views must not change after later items arrive
+            assertEquals("count " + count + ", skip " + skip, expected, ts.getValues());
+        }
+    }
+    
+    @Test
+    public void testCustomContainer() {
+        TestSubscriber<Set<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.just(1, 1, 2, 3, 3, 3).buffer(3, 2, () -> new TreeSet<Integer>()).subscribe(ts);
+        
+        ts.assertValues(new TreeSet<>(asList(1, 2)), new TreeSet<>(asList(2, 3)), new TreeSet<>(asList(3)));
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testRecycling() {
+        int[] created = { 0 };
+        BufferPool<List<Integer>> pool = new BufferPool<>(() -> {
+            created[0]++;
+            return new ArrayList<>(10);
+        }, 4);
+        List<Integer> sums = new ArrayList<>();
+        
+        Observable.range(1, 100).buffer(10, pool).subscribe(list -> {
+            int sum = 0;
+            for (Integer v : list) {
+                sum += v;
+            }
+            sums.add(sum);
+            pool.recycle(list);
+        });
+        
+        assertEquals(10, sums.size());
+        assertEquals(55, sums.get(0).intValue());
+        assertEquals(955, sums.get(9).intValue());
+        // each buffer was returned before the next one was needed
+        assertEquals(1, created[0]);
+    }
+    
+    @Test
+    public void testBackpressure() {
+        List<Long> requests = new ArrayList<>();
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>(0);
+        
+        Observable.range(1, 5).doOnRequest(requests::add).buffer(3, 1).subscribe(ts);
+        
+        ts.requestMore(2);
+        ts.assertValues(asList(1, 2, 3), asList(2, 3, 4));
+        
+        ts.requestMore(1);
+        ts.assertValueCount(3);
+        ts.assertNoTerminalEvent();
+        assertEquals(asList(4L, 1L), requests);
+        
+        ts.requestMore(2);
+        ts.assertValues(asList(1, 2, 3), asList(2, 3, 4), asList(3, 4, 5), asList(4, 5), asList(5));
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testErrorDropsCurrentBuffers() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        source.buffer(3, 1, ArrayList::new).subscribe(ts);
+        
+        source.onNext(1);
+        source.onNext(2);
+        source.onNext(3);
+        source.onNext(4);
+        source.onError(new TestException());
+        
+        ts.assertValues(asList(1, 2, 3), asList(2, 3, 4));
+        ts.assertError(TestException.class);
+    }
+    
+    @Test
+    public void testSupplierThrows() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        source.buffer(2, (Supplier<List<Integer>>)() -> {
+            throw new TestException();
+        }).subscribe(ts);
+        
+        source.onNext(1);
+        
+        ts.assertNoValues();
+        ts.assertError(TestException.class);
+        assertFalse(source.hasSubscribers());
+    }
+}
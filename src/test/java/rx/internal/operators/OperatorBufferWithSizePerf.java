@@ -0,0 +1,66 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import org.junit.*;
+
+import rx.Observable;
+import rx.util.BufferPool;
+
+/**
+ * Compares fresh and pooled containers for exact buffers, and shared views with per-buffer copies
+ * for overlapping buffers.
+ */
+@Ignore
+// since this doesn't do any automatic testing
+public class OperatorBufferWithSizePerf {
+    static final int COUNT = 10_000_000;
+    
+    @Test
+    public void exactFresh() {
+        run("buffer(100)", v -> Observable.range(0, COUNT).buffer(100).subscribe(list -> { }));
+    }
+    
+    @Test
+    public void exactPooled() {
+        BufferPool<List<Integer>> pool = new BufferPool<>(() -> new ArrayList<>(100), 4);
+        run("buffer(100, pool)", v -> Observable.range(0, COUNT).buffer(100, pool).subscribe(pool::recycle));
+    }
+    
+    @Test
+    public void overlappingViews() {
+        run("buffer(100, 10)", v -> Observable.range(0, COUNT).buffer(100, 10).subscribe(list -> { }));
+    }
+    
+    @Test
+    public void overlappingCopies() {
+        run("buffer(100, 10, ArrayList::new)", v -> Observable.range(0, COUNT)
+                .buffer(100, 10, () -> new ArrayList<Integer>(100)).subscribe(list -> { }));
+    }
+    
+    static void run(String name, Consumer<Void> chain) {
+        for (int r = 0; r < 5; r++) {
+            long t = System.nanoTime();
+            chain.accept(null);
+            t = System.nanoTime() - t;
+            System.out.printf("%s: %,.3f ms, %,.3f items/s%n", name, t / 1e6, COUNT * 1e9 / t);
+        }
+    }
+}
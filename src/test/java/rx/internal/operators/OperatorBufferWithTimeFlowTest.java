@@ -0,0 +1,241 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.*;
+import rx.internal.operators.OperatorDebounceWithTimeFlowTest.CountingScheduler;
+import rx.schedulers.*;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorBufferWithTimeFlowTest {
+    @Test
+    public void testExact() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        source.buffer(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        source.onNext(2);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues(asList(1, 2));
+        
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        source.onNext(3);
+        source.onComplete();
+        
+        ts.assertValues(asList(1, 2), Collections.<Integer>emptyList(), asList(3));
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testExactWithCount() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        source.buffer(100, TimeUnit.MILLISECONDS, 2, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        source.onNext(2);
+        source.onNext(3);
+        ts.assertValues(asList(1, 2));
+        
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues(asList(1, 2), asList(3));
+        
+        source.onComplete();
+        ts.assertValues(asList(1, 2), asList(3), Collections.<Integer>emptyList());
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testOverlapping() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        source.buffer(300, 100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        source.onNext(2);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        source.onNext(3);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues(asList(1, 2, 3));
+        
+        source.onNext(4);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues(asList(1, 2, 3), asList(2, 3, 4));
+        
+        source.onComplete();
+        ts.assertValues(asList(1, 2, 3), asList(2, 3, 4), asList(3, 4), asList(4), 
+                Collections.<Integer>emptyList());
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testGaps() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        source.buffer(100, 200, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(150, TimeUnit.MILLISECONDS);
+        source.onNext(2);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        source.onNext(3);
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        
+        ts.assertValues(asList(1), asList(3));
+        ts.assertNoTerminalEvent();
+    }
+    
+    @Test
+    public void testSingleTimerWhenOverlapping() {
+        TestScheduler test = new TestScheduler();
+        CountingScheduler scheduler = new CountingScheduler(test);
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        source.buffer(300, 100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        for (int i = 0; i < 10; i++) {
+            source.onNext(i);
+            test.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        }
+        
+        ts.assertValueCount(8);
+        // one task re-armed once per open or close instant
+        assertTrue("" + scheduler.scheduled.get(), scheduler.scheduled.get() <= 11);
+    }
+    
+    @Test
+    public void testCoprimeTimespanAndTimeshift() {
+        TestScheduler test = new TestScheduler();
+        CountingScheduler scheduler = new CountingScheduler(test);
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        source.buffer(1000, 999, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        test.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+        source.onNext(2);
+        test.advanceTimeBy(499, TimeUnit.MILLISECONDS);
+        // the second buffer opened at 999
+        source.onNext(3);
+        test.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        ts.assertValues(asList(1, 2, 3));
+        
+        test.advanceTimeBy(999, TimeUnit.MILLISECONDS);
+        ts.assertValues(asList(1, 2, 3), asList(3));
+        
+        test.advanceTimeBy(8000, TimeUnit.MILLISECONDS);
+        ts.assertValueCount(10);
+        ts.assertNoErrors();
+        // re-armed for the open and close instants only, not for every 1 ms tick
+        assertTrue("" + scheduler.scheduled.get(), scheduler.scheduled.get() <= 21);
+    }
+    
+    @Test
+    public void testError() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        source.buffer(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        source.onError(new TestException());
+        
+        ts.assertNoValues();
+        ts.assertError(TestException.class);
+        assertFalse(source.hasSubscribers());
+    }
+    
+    @Test
+    public void testMissingBackpressure() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>(1);
+        
+        source.buffer(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues(asList(1));
+        
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertError(MissingBackpressureException.class);
+        assertFalse(source.hasSubscribers());
+    }
+    
+    @Test
+    public void testCancel() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        source.buffer(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        ts.cancel();
+        assertFalse(source.hasSubscribers());
+        
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        ts.assertNoValues();
+        ts.assertNoTerminalEvent();
+    }
+    
+    @Test
+    public void testAsync() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 100000)
+        .buffer(1, TimeUnit.MILLISECONDS, Schedulers.computation())
+        .subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        
+        int expected = 0;
+        for (List<Integer> list : ts.getValues()) {
+            for (Integer v : list) {
+                assertEquals(expected++, v.intValue());
+            }
+        }
+        assertEquals(100000, expected);
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorConcatMapEagerTest {
+    @Test
+    public void testSubscribesEagerlyEmitsInOrder() {
+        List<PublishSubject<Integer>> subjects = Arrays.asList(PublishSubject.create(), PublishSubject.create());
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 2).concatMapEager(subjects::get).subscribe(ts);
+        
+        assertTrue(subjects.get(0).hasSubscribers());
+        assertTrue(subjects.get(1).hasSubscribers());
+        
+        subjects.get(1).onNext(10);
+        subjects.get(1).onNext(11);
+        subjects.get(1).onComplete();
+        
+        ts.assertNoValues();
+        
+        subjects.get(0).onNext(1);
+        
+        ts.assertValues(1);
+        
+        subjects.get(0).onComplete();
+        
+        ts.assertValues(1, 10, 11);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testMaxConcurrency() {
+        List<PublishSubject<Integer>> subjects = Arrays.asList(PublishSubject.create(), PublishSubject.create(), PublishSubject.create());
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 3).concatMapEager(subjects::get, 2, 16).subscribe(ts);
+        
+        assertTrue(subjects.get(0).hasSubscribers());
+        assertTrue(subjects.get(1).hasSubscribers());
+        assertFalse(subjects.get(2).hasSubscribers());
+        
+        subjects.get(0).onComplete();
+        
+        assertTrue(subjects.get(2).hasSubscribers());
+        
+        subjects.get(2).onNext(3);
+        subjects.get(2).onComplete();
+        subjects.get(1).onNext(2);
+        subjects.get(1).onComplete();
+        
+        ts.assertValues(2, 3);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testRequestCarriesAcrossInners() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        Observable.range(1, 3).concatMapEager(v -> Observable.range(v * 10, 2)).subscribe(ts);
+        
+        ts.assertNoValues();
+        
+        ts.requestMore(3);
+        
+        ts.assertValues(10, 11, 20);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(3);
+        
+        ts.assertValues(10, 11, 20, 21, 30, 31);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testPrefetchReplenished() {
+        List<Long> requests = new ArrayList<>();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        Observable.range(0, 2).concatMapEager(v -> Observable.range(0, 100).doOnRequest(requests::add), 2, 16)
+        .subscribe(ts);
+        
+        assertEquals(Arrays.asList(16L, 16L), requests);
+        
+        ts.requestMore(12);
+        
+        assertEquals(Arrays.asList(16L, 16L, 12L), requests);
+        
+        ts.requestMore(Long.MAX_VALUE);
+        
+        ts.assertValueCount(200);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testInnerErrorCancelsOthers() {
+        PublishSubject<Integer> ps1 = PublishSubject.create();
+        PublishSubject<Integer> ps2 = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 2).concatMapEager(v -> v == 0 ? ps1 : ps2).subscribe(ts);
+        
+        ps2.onError(new TestException());
+        
+        ts.assertError(TestException.class);
+        assertFalse(ps1.hasSubscribers());
+    }
+    
+    @Test
+    public void testMapperThrows() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 2).<Integer>concatMapEager(v -> {
+            throw new TestException();
+        }).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertError(TestException.class);
+    }
+    
+    @Test
+    public void testCancelCancelsInners() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        PublishSubject<Integer> ps1 = PublishSubject.create();
+        PublishSubject<Integer> ps2 = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.concatMapEager(v -> v == 0 ? ps1 : ps2).subscribe(ts);
+        
+        source.onNext(0);
+        source.onNext(1);
+        
+        ts.cancel();
+        
+        assertFalse(source.hasSubscribers());
+        assertFalse(ps1.hasSubscribers());
+        assertFalse(ps2.hasSubscribers());
+    }
+    
+    @Test
+    public void testAsyncInnersKeepOrder() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 100).concatMapEager(v -> Observable.range(v * 1000, 100).subscribeOn(Schedulers.computation()), 8, 32)
+        .subscribe(ts);
+        
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 100; j++) {
+                expected.add(i * 1000 + j);
+            }
+        }
+        ts.assertValues(expected);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxConcurrencyInvalid() {
+        Observable.range(0, 2).concatMapEager(v -> Observable.just(v), 0, 16);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrefetchInvalid() {
+        Observable.range(0, 2).concatMapEager(v -> Observable.just(v), 2, 0);
+    }
+}
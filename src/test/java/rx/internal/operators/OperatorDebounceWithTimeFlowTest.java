@@ -0,0 +1,216 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.disposables.Disposable;
+import rx.exceptions.TestException;
+import rx.schedulers.*;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorDebounceWithTimeFlowTest {
+    /** Counts the timer tasks scheduled through its workers. */
+    static final class CountingScheduler implements Scheduler {
+        final Scheduler actual;
+        final AtomicInteger scheduled = new AtomicInteger();
+        
+        CountingScheduler(Scheduler actual) {
+            this.actual = actual;
+        }
+        
+        @Override
+        public Worker createWorker() {
+            Worker w = actual.createWorker();
+            return new Worker() {
+                @Override
+                public Disposable schedule(Runnable task) {
+                    scheduled.getAndIncrement();
+                    return w.schedule(task);
+                }
+                @Override
+                public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+                    scheduled.getAndIncrement();
+                    return w.schedule(task, delay, unit);
+                }
+                @Override
+                public long now() {
+                    return w.now();
+                }
+                @Override
+                public void dispose() {
+                    w.dispose();
+                }
+                @Override
+                public boolean isDisposed() {
+                    return w.isDisposed();
+                }
+            };
+        }
+        
+        @Override
+        public long now() {
+            return actual.now();
+        }
+    }
+    
+    @Test
+    public void testDebounce() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.debounce(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        source.onNext(2);
+        scheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+        ts.assertNoValues();
+        
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        ts.assertValues(2);
+        
+        source.onNext(3);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues(2, 3);
+        
+        source.onNext(4);
+        source.onComplete();
+        ts.assertValues(2, 3, 4);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testThrottleWithTimeoutIsDebounce() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.throttleWithTimeout(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        for (int i = 0; i < 10; i++) {
+            source.onNext(i);
+            scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        }
+        ts.assertNoValues();
+        
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues(9);
+    }
+    
+    @Test
+    public void testBurstReusesTheTimer() {
+        TestScheduler test = new TestScheduler();
+        CountingScheduler scheduler = new CountingScheduler(test);
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.debounce(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        // 1000 items over 1 second
+        for (int i = 0; i < 1000; i++) {
+            source.onNext(i);
+            test.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        }
+        test.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        
+        ts.assertValues(999);
+        // one arm plus one re-arm per timeout period instead of one timer per item
+        assertTrue(String.valueOf(scheduler.scheduled.get()), scheduler.scheduled.get() <= 12);
+    }
+    
+    @Test
+    public void testError() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.debounce(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        source.onError(new TestException());
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        
+        ts.assertNoValues();
+        ts.assertError(TestException.class);
+    }
+    
+    @Test
+    public void testDueItemWaitsForRequest() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        source.debounce(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertNoValues();
+        ts.assertNoErrors();
+        
+        ts.requestMore(1);
+        ts.assertValues(1);
+        
+        source.onNext(2);
+        source.onComplete();
+        ts.assertValues(1);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(1);
+        ts.assertValues(1, 2);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testCancel() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.debounce(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        ts.cancel();
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        
+        ts.assertNoValues();
+        assertFalse(source.hasSubscribers());
+    }
+    
+    @Test
+    public void testAsync() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 100000).subscribeOn(Schedulers.computation())
+        .debounce(50, TimeUnit.MILLISECONDS, Schedulers.computation())
+        .subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertValues(100000);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.internal.operators.OperatorDebounceWithTimeFlowTest.CountingScheduler;
+import rx.schedulers.*;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorDelayFlowTest {
+    @Test
+    public void testDelay() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.delay(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        source.onNext(2);
+        source.onComplete();
+        
+        scheduler.advanceTimeBy(49, TimeUnit.MILLISECONDS);
+        ts.assertNoValues();
+        
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        ts.assertValues(1);
+        ts.assertNoTerminalEvent();
+        
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        ts.assertValues(1, 2);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testSingleTimerForBurst() {
+        TestScheduler test = new TestScheduler();
+        CountingScheduler scheduler = new CountingScheduler(test);
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 100).delay(1, TimeUnit.SECONDS, scheduler).subscribe(ts);
+        
+        ts.assertNoValues();
+        test.advanceTimeBy(1, TimeUnit.SECONDS);
+        
+        ts.assertValueCount(100);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        assertEquals(1, scheduler.scheduled.get());
+    }
+    
+    @Test
+    public void testBackpressure() {
+        TestScheduler scheduler = new TestScheduler();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        Observable.range(1, 1000).delay(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        ts.assertNoValues();
+        
+        ts.requestMore(10);
+        ts.assertValueCount(10);
+        
+        ts.requestMore(Long.MAX_VALUE);
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        ts.assertValueCount(1000);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testErrorNotDelayed() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.delay(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        source.onError(new TestException());
+        
+        ts.assertNoValues();
+        ts.assertError(TestException.class);
+        
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        ts.assertNoValues();
+    }
+    
+    @Test
+    public void testCancel() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.delay(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        ts.cancel();
+        assertFalse(source.hasSubscribers());
+        
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        ts.assertNoValues();
+        ts.assertNoTerminalEvent();
+    }
+    
+    @Test
+    public void testAsync() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 100000).delay(10, TimeUnit.MILLISECONDS, Schedulers.computation()).subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        ts.assertValueCount(100000);
+        int i = 0;
+        for (Integer v : ts.getValues()) {
+            assertEquals(i++, v.intValue());
+        }
+    }
+}
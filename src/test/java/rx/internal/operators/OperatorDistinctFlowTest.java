@@ -0,0 +1,114 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.subscribers.TestSubscriber;
+import rx.util.*;
+
+public class OperatorDistinctFlowTest {
+    @Test
+    public void testDistinct() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.just(1, 2, 1, 3, 2, 4).distinct().subscribe(ts);
+        
+        ts.assertValues(1, 2, 3, 4);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testBackpressure() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>(2);
+        
+        Observable.just(1, 1, 1, 2, 2, 3).distinct().subscribe(ts);
+        
+        ts.assertValues(1, 2);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(1);
+        ts.assertValues(1, 2, 3);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testLruSet() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.just(1, 2, 1, 3, 1, 2).distinct(v -> v, () -> new LruSet<>(2)).subscribe(ts);
+        
+        ts.assertValues(1, 2, 3, 2);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testLongHashSet() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 100).distinct(v -> (long)(v % 10), LongHashSet::new).subscribe(ts);
+        
+        ts.assertValues(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testBloomFilterSet() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.just(1, 2, 1, 2, 3).distinct(v -> v, () -> new BloomFilterSet<>(1000, 0.001)).subscribe(ts);
+        
+        ts.assertValues(1, 2, 3);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testFusedWithFilter() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 20).filter(v -> v % 2 == 0).distinct(v -> v % 3, HashSet::new)
+        .map(v -> v + 1).subscribe(ts);
+        
+        ts.assertValues(1, 3, 5);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testSetSupplierFails() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.just(1).distinct(v -> v, () -> { throw new TestException(); }).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertError(TestException.class);
+    }
+    
+    @Test
+    public void testKeySelectorFails() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.just(1).distinct(v -> { throw new TestException(); }).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertError(TestException.class);
+    }
+}
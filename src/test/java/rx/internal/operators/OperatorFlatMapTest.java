@@ -15,6 +15,7 @@
  */
 package rx.internal.operators;
 
+import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
@@ -394,4 +395,60 @@ public class OperatorFlatMapTest {
         verify(o, never()).onNext(5);
         verify(o, never()).onError(any(Throwable.class));
     }
+    
+    @Test
+    public void testFlatMapPrefetchReplenishesInBatches() {
+        List<Long> requests = Collections.synchronizedList(new ArrayList<>());
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        // a non-scalar outer so the merge is not optimized away
+        Observable.range(0, 2)
+        .flatMap(i -> i == 0 ? Observable.range(0, 100).doOnRequest(requests::add) : Observable.<Integer>empty(), 1, 16)
+        .subscribe(ts);
+        
+        assertEquals(Arrays.asList(16L), requests);
+        
+        ts.requestMore(11);
+        ts.assertValueCount(11);
+        assertEquals(Arrays.asList(16L), requests);
+        
+        ts.requestMore(1);
+        ts.assertValueCount(12);
+        assertEquals(Arrays.asList(16L, 12L), requests);
+        
+        ts.requestMore(Long.MAX_VALUE);
+        ts.assertValueCount(100);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testFlatMapPrefetchOne() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 100).flatMap(i -> Observable.range(i * 10, 10), 3, 1).subscribe(ts);
+        
+        ts.assertValueCount(1000);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testFlatMapPrefetchAsync() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 100)
+        .flatMap(i -> Observable.range(i * 1000, 1000).subscribeOn(Schedulers.computation()), 8, 32)
+        .subscribe(ts);
+        
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertValueCount(100000);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testFlatMapPrefetchInvalid() {
+        Observable.range(0, 10).flatMap(i -> Observable.just(i), 1, 0);
+    }
 }
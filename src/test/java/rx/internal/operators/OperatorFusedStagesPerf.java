@@ -0,0 +1,116 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.*;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.Observable;
+
+/**
+ * Compares a 10 stage map/filter/doOnNext chain fused at assembly time with the
+ * same chain where a pass-through operator between the stages prevents the fusion.
+ * <p>
+ * Prints the bytes allocated per subscription, the call stack depth at the
+ * consumer's onNext and the throughput.
+ */
+@Ignore
+// since this doesn't do any automatic testing
+public class OperatorFusedStagesPerf {
+    static final int COUNT = 1_000_000;
+    static final int SUBSCRIBES = 100_000;
+    static final int ROUNDS = 10;
+    
+    static Observable<Integer> chain(Observable<Integer> source, boolean fused) {
+        Observable<Integer> o = source;
+        for (int i = 0; i < 10; i++) {
+            if (!fused) {
+                o = o.lift(QueueFusionPerf.hide());
+            }
+            switch (i % 3) {
+            case 0:
+                o = o.map(v -> v + 1);
+                break;
+            case 1:
+                o = o.filter(v -> v >= 0);
+                break;
+            default:
+                o = o.doOnNext(v -> { });
+            }
+        }
+        return o;
+    }
+    
+    @Test
+    public void subscribeAllocation() {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        for (boolean fused : new boolean[] { false, true }) {
+            Observable<Integer> o = chain(Observable.from(1), fused);
+            for (int r = 0; r < ROUNDS; r++) {
+                CountingSubscriber cs = new CountingSubscriber();
+                long b = mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+                for (int i = 0; i < SUBSCRIBES; i++) {
+                    o.unsafeSubscribe(cs);
+                }
+                b = mx.getThreadAllocatedBytes(Thread.currentThread().getId()) - b;
+                System.out.printf("fused = %s: %,.1f bytes/subscription, stack depth at onNext = %d%n", 
+                        fused, (double)b / SUBSCRIBES, cs.depth);
+            }
+        }
+    }
+    
+    @Test
+    public void throughput() {
+        for (boolean fused : new boolean[] { false, true }) {
+            Observable<Integer> o = chain(Observable.range(0, COUNT), fused);
+            for (int r = 0; r < ROUNDS; r++) {
+                CountingSubscriber cs = new CountingSubscriber();
+                long t = System.nanoTime();
+                o.unsafeSubscribe(cs);
+                t = System.nanoTime() - t;
+                System.out.printf("fused = %s: %,.3f items/s%n", fused, cs.count * 1e9 / t);
+            }
+        }
+    }
+    
+    static final class CountingSubscriber implements Subscriber<Integer> {
+        int count;
+        int depth;
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+        @Override
+        public void onNext(Integer item) {
+            if (depth == 0) {
+                depth = Thread.currentThread().getStackTrace().length;
+            }
+            count++;
+        }
+        @Override
+        public void onError(Throwable throwable) {
+            throwable.printStackTrace();
+        }
+        @Override
+        public void onComplete() {
+            
+        }
+    }
+}
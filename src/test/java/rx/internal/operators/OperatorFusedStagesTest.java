@@ -0,0 +1,188 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.*;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.plugins.*;
+import rx.schedulers.Schedulers;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorFusedStagesTest {
+    @Test
+    public void testFusionOnlyWithDefaultHook() {
+        assertTrue(RxJavaPlugins.isDefault(RxJavaPlugins.getInstance().getObservableExecutionHook()));
+        assertFalse(RxJavaPlugins.isDefault(new RxJavaObservableExecutionHook() { }));
+    }
+    
+    @Test
+    public void testFuseRecognizesStages() {
+        Function<Integer, Integer> f = v -> v + 1;
+        Predicate<Integer> p = v -> v > 1;
+        OperatorDoOnEach<Integer> peek = new OperatorDoOnEach<>(v -> { }, e -> { }, () -> { });
+        
+        OperatorFusedStages<?, ?> op = (OperatorFusedStages<?, ?>)OperatorFusedStages.fuse(new OperatorMap<>(f), new OperatorFilter<>(p));
+        assertArrayEquals(new int[] { OperatorFusedStages.MAP, OperatorFusedStages.FILTER }, op.kinds);
+        
+        op = (OperatorFusedStages<?, ?>)OperatorFusedStages.fuse(op, peek);
+        assertArrayEquals(new int[] { OperatorFusedStages.MAP, OperatorFusedStages.FILTER, OperatorFusedStages.PEEK }, op.kinds);
+        assertTrue(op.hasPeek);
+        
+        assertNull(OperatorFusedStages.fuse(new OperatorMap<>(f), new OperatorObserveOn<>(Schedulers.computation())));
+    }
+    
+    @Test
+    public void testChainValues() {
+        List<Integer> peeked = new ArrayList<>();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.from(1, 2, 3, 4, 5, 6)
+        .map(v -> v * 10)
+        .filter(v -> v % 20 == 0)
+        .doOnNext(peeked::add)
+        .map(v -> v + 1)
+        .subscribe(ts);
+        
+        ts.assertValues(21, 41, 61);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        assertEquals(Arrays.asList(20, 40, 60), peeked);
+    }
+    
+    @Test
+    public void testFilterReplenishesRejected() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>(2);
+        
+        Observable.range(1, 10).map(v -> v + 1).filter(v -> v % 3 == 0).subscribe(ts);
+        
+        ts.assertValues(3, 6);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(2);
+        ts.assertValues(3, 6, 9);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testMapErrorReachesLaterStagesOnly() {
+        List<String> events = new ArrayList<>();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 5)
+        .doOnError(e -> events.add("before"))
+        .map(v -> {
+            if (v == 3) {
+                throw new TestException();
+            }
+            return v;
+        })
+        .doOnError(e -> events.add("after"))
+        .subscribe(ts);
+        
+        ts.assertValues(1, 2);
+        ts.assertError(TestException.class);
+        assertEquals(Arrays.asList("after"), events);
+    }
+    
+    @Test
+    public void testDoOnNextErrorRunsItsOwnOnError() {
+        List<String> events = new ArrayList<>();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 5)
+        .doOnEach(v -> {
+            if (v == 2) {
+                throw new TestException();
+            }
+        }, e -> events.add("own"), () -> events.add("complete"))
+        .map(v -> v)
+        .doOnError(e -> events.add("after"))
+        .subscribe(ts);
+        
+        ts.assertValues(1);
+        ts.assertError(TestException.class);
+        assertEquals(Arrays.asList("own", "after"), events);
+    }
+    
+    @Test
+    public void testCompletionOrder() {
+        List<String> events = new ArrayList<>();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 2)
+        .doOnComplete(() -> events.add("first"))
+        .filter(v -> true)
+        .doOnComplete(() -> events.add("second"))
+        .subscribe(ts);
+        
+        ts.assertValues(1, 2);
+        ts.assertComplete();
+        assertEquals(Arrays.asList("first", "second"), events);
+    }
+    
+    @Test
+    public void testCompletionCallbackThrows() {
+        List<String> events = new ArrayList<>();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 2)
+        .doOnComplete(() -> {
+            throw new TestException();
+        })
+        .map(v -> v)
+        .doOnError(e -> events.add("error"))
+        .doOnComplete(() -> events.add("complete"))
+        .subscribe(ts);
+        
+        ts.assertValues(1, 2);
+        ts.assertError(TestException.class);
+        assertEquals(Arrays.asList("error"), events);
+    }
+    
+    @Test
+    public void testFusedStagesKeepQueueFusion() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 100).map(v -> v * 2).filter(v -> v % 4 == 0).map(v -> v / 4)
+        .observeOn(Schedulers.computation())
+        .subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertValueCount(50);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        
+        ts = new TestSubscriber<>();
+        List<Integer> peeked = Collections.synchronizedList(new ArrayList<>());
+        Observable.range(1, 100).map(v -> v * 2).doOnNext(peeked::add)
+        .observeOn(Schedulers.computation())
+        .subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertValueCount(100);
+        ts.assertComplete();
+        assertEquals(100, peeked.size());
+    }
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import rx.Flow;
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.observables.*;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorGroupByEvictionTest {
+    @Test
+    public void testGroupsInterleaved() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 9).groupBy(v -> v % 3)
+        .flatMap(g -> g.map(v -> g.getKey() * 100 + v))
+        .subscribe(ts);
+        
+        ts.assertValues(101, 202, 3, 104, 205, 6, 107, 208, 9);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testSharedBudgetHoldsWhileGroupsNotConsuming() {
+        List<Long> requests = new ArrayList<>();
+        List<TestSubscriber<Integer>> groups = new ArrayList<>();
+        TestSubscriber<GroupedObservable<Integer, Integer>> ts = new TestSubscriber<GroupedObservable<Integer, Integer>>() {
+            @Override
+            public void onNext(GroupedObservable<Integer, Integer> item) {
+                super.onNext(item);
+                TestSubscriber<Integer> gs = new TestSubscriber<>(0);
+                groups.add(gs);
+                item.subscribe(gs);
+            }
+        };
+        
+        Observable.range(1, 1000).doOnRequest(requests::add)
+        .groupBy(v -> v % 2)
+        .subscribe(ts);
+        
+        int n = Flow.defaultBufferSize();
+        
+        assertEquals(Arrays.asList((long)n), requests);
+        assertEquals(2, groups.size());
+        groups.get(0).assertNoValues();
+        groups.get(1).assertNoValues();
+        
+        groups.get(0).requestMore(n / 2);
+        groups.get(1).requestMore(n / 2);
+        
+        // three quarters of the budget consumed triggers replenishment
+        assertEquals(2, requests.size());
+        groups.get(0).assertValueCount(n / 2);
+        groups.get(1).assertValueCount(n / 2);
+        
+        groups.get(0).requestMore(Long.MAX_VALUE);
+        groups.get(1).requestMore(Long.MAX_VALUE);
+        
+        groups.get(0).assertValueCount(500);
+        groups.get(1).assertValueCount(500);
+        groups.get(0).assertComplete();
+        groups.get(1).assertComplete();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testMainBackpressured() {
+        TestSubscriber<GroupedObservable<Integer, Integer>> ts = new TestSubscriber<>(1);
+        
+        Observable.range(1, 10).groupBy(v -> v % 5).subscribe(ts);
+        
+        ts.assertValueCount(1);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(10);
+        
+        ts.assertValueCount(5);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testGroupAllowsOnlyOneSubscriber() {
+        TestSubscriber<Integer> ts1 = new TestSubscriber<>();
+        TestSubscriber<Integer> ts2 = new TestSubscriber<>();
+        
+        Observable.range(1, 5).groupBy(v -> 1).subscribe(g -> {
+            g.subscribe(ts1);
+            g.subscribe(ts2);
+        });
+        
+        ts1.assertValues(1, 2, 3, 4, 5);
+        ts1.assertComplete();
+        ts2.assertError(IllegalStateException.class);
+    }
+    
+    @Test
+    public void testCancelledGroupIsRecreated() {
+        PublishSubject<Integer> ps = PublishSubject.create();
+        List<TestSubscriber<Integer>> groups = new ArrayList<>();
+        TestSubscriber<GroupedObservable<Integer, Integer>> ts = new TestSubscriber<GroupedObservable<Integer, Integer>>() {
+            @Override
+            public void onNext(GroupedObservable<Integer, Integer> item) {
+                super.onNext(item);
+                TestSubscriber<Integer> gs = new TestSubscriber<>();
+                groups.add(gs);
+                item.subscribe(gs);
+            }
+        };
+        
+        ps.groupBy(v -> v % 2).subscribe(ts);
+        
+        ps.onNext(1);
+        groups.get(0).cancel();
+        ps.onNext(3);
+        ps.onComplete();
+        
+        ts.assertValueCount(2);
+        assertEquals(Integer.valueOf(1), ts.getValues().get(0).getKey());
+        assertEquals(Integer.valueOf(1), ts.getValues().get(1).getKey());
+        groups.get(0).assertValues(1);
+        groups.get(0).assertNoTerminalEvent();
+        groups.get(1).assertValues(3);
+        groups.get(1).assertComplete();
+    }
+    
+    @Test
+    public void testCancelMainKeepsOpenGroups() {
+        PublishSubject<Integer> ps = PublishSubject.create();
+        TestSubscriber<Integer> gs = new TestSubscriber<>();
+        TestSubscriber<GroupedObservable<Integer, Integer>> ts = new TestSubscriber<GroupedObservable<Integer, Integer>>() {
+            @Override
+            public void onNext(GroupedObservable<Integer, Integer> item) {
+                super.onNext(item);
+                item.subscribe(gs);
+                cancel();
+            }
+        };
+        
+        ps.groupBy(v -> v % 2).subscribe(ts);
+        
+        ps.onNext(1);
+        ps.onNext(2);
+        ps.onNext(3);
+        
+        assertTrue(ps.hasSubscribers());
+        ts.assertValueCount(1);
+        gs.assertValues(1, 3);
+        
+        gs.cancel();
+        
+        assertFalse(ps.hasSubscribers());
+    }
+    
+    @Test
+    public void testEvictLeastRecentlyUsed() {
+        Map<String, List<String>> values = new LinkedHashMap<>();
+        List<String> completed = new ArrayList<>();
+        
+        Observable.from(Arrays.asList("a1", "b1", "a2", "c1", "b2"))
+        .groupBy(v -> v.substring(0, 1), v -> v, 2, GroupEvictionPolicy.LEAST_RECENTLY_USED)
+        .subscribe(g -> {
+            List<String> list = new ArrayList<>();
+            values.put(g.getKey() + values.size(), list);
+            g.subscribe(list::add, Throwable::printStackTrace, () -> completed.add(g.getKey()));
+        });
+        
+        assertEquals(Arrays.asList("a0", "b1", "c2", "b3"), new ArrayList<>(values.keySet()));
+        assertEquals(Arrays.asList("a1", "a2"), values.get("a0"));
+        assertEquals(Arrays.asList("b1"), values.get("b1"));
+        assertEquals(Arrays.asList("c1"), values.get("c2"));
+        assertEquals(Arrays.asList("b2"), values.get("b3"));
+        // b was evicted by c, a by the second b, the rest completed by the source
+        assertEquals(Arrays.asList("b", "a", "c", "b"), completed);
+    }
+    
+    @Test
+    public void testEvictOldest() {
+        List<String> keys = new ArrayList<>();
+        List<String> completed = new ArrayList<>();
+        
+        Observable.from(Arrays.asList("a1", "b1", "a2", "c1", "a3"))
+        .groupBy(v -> v.substring(0, 1), v -> v, 2, GroupEvictionPolicy.OLDEST)
+        .subscribe(g -> {
+            keys.add(g.getKey());
+            g.subscribe(v -> { }, Throwable::printStackTrace, () -> completed.add(g.getKey()));
+        });
+        
+        assertEquals(Arrays.asList("a", "b", "c", "a"), keys);
+        assertEquals(Arrays.asList("a", "b", "c", "a"), completed);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxGroupsInvalid() {
+        Observable.just(1).groupBy(v -> v, v -> v, 0, GroupEvictionPolicy.OLDEST);
+    }
+    
+    @Test
+    public void testKeySelectorThrows() {
+        PublishSubject<Integer> ps = PublishSubject.create();
+        TestSubscriber<Integer> gs = new TestSubscriber<>();
+        TestSubscriber<GroupedObservable<Integer, Integer>> ts = new TestSubscriber<GroupedObservable<Integer, Integer>>() {
+            @Override
+            public void onNext(GroupedObservable<Integer, Integer> item) {
+                super.onNext(item);
+                item.subscribe(gs);
+            }
+        };
+        
+        ps.groupBy(v -> {
+            if (v == 2) {
+                throw new TestException();
+            }
+            return v;
+        }).subscribe(ts);
+        
+        ps.onNext(1);
+        ps.onNext(2);
+        
+        assertFalse(ps.hasSubscribers());
+        ts.assertError(TestException.class);
+        gs.assertValues(1);
+        gs.assertError(TestException.class);
+    }
+    
+    @Test
+    public void testNullKey() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 4).groupBy(v -> v % 2 == 0 ? null : "odd")
+        .flatMap(g -> g.map(v -> g.getKey() == null ? -v : v))
+        .subscribe(ts);
+        
+        ts.assertValues(1, -2, 3, -4);
+        ts.assertComplete();
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import org.junit.*;
+
+import rx.Observable;
+import rx.schedulers.Schedulers;
+import rx.subscribers.TestSubscriber;
+
+/**
+ * Measures the throughput of {@code flatMap} with 1, 1000 and 100000 inner sources
+ * emitting 1M items in total, with synchronous and asynchronous inner sources.
+ */
+@Ignore
+// since this doesn't do any automatic testing
+public class OperatorMergePerf {
+    static final int COUNT = 1_000_000;
+    static final int ROUNDS = 10;
+    
+    @Test
+    public void synchronousInners() {
+        for (int inners : new int[] { 1, 1000, 100_000 }) {
+            int n = COUNT / inners;
+            run("sync", inners, Observable.range(0, inners).flatMap(i -> Observable.range(i, n)));
+        }
+    }
+    
+    @Test
+    public void asynchronousInners() {
+        for (int inners : new int[] { 1, 1000, 100_000 }) {
+            int n = COUNT / inners;
+            run("async", inners, Observable.range(0, inners)
+                    .flatMap(i -> Observable.range(i, n).subscribeOn(Schedulers.computation())));
+        }
+    }
+    
+    static void run(String name, int inners, Observable<Integer> source) {
+        for (int r = 0; r < ROUNDS; r++) {
+            TestSubscriber<Integer> ts = new TestSubscriber<>();
+            long t = System.nanoTime();
+            source.subscribe(ts);
+            ts.awaitTerminalEvent();
+            t = System.nanoTime() - t;
+            
+            ts.assertNoErrors();
+            System.out.printf("flatMap %s, inners = %d: %,.3f items/s%n", name, inners, ts.getValues().size() * 1e9 / t);
+        }
+    }
+}
@@ -30,6 +30,7 @@ import rx.*;
 import rx.Flow.Subscriber;
 import rx.Observable.OnSubscribe;
 import rx.disposables.Disposable;
+import rx.exceptions.TestException;
 import rx.internal.subscriptions.*;
 import rx.schedulers.*;
 import rx.subscribers.*;
@@ -1128,6 +1129,79 @@ public class OperatorMergeTest {
         assertTrue(latch.await(10, TimeUnit.SECONDS));
     }
 
+    @Test
+    public void testMergeManyInnersBackpressured() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        Observable.range(0, 1000).flatMap(i -> Observable.range(i * 10, 10)).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.requestMore(1);
+        ts.assertValueCount(1);
+        
+        for (int i = 0; i < 10; i++) {
+            ts.requestMore(999);
+        }
+        ts.assertValueCount(9991);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(9);
+        ts.assertValueCount(10000);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        
+        Set<Integer> set = new HashSet<>(ts.getValues());
+        assertEquals(10000, set.size());
+    }
+    
+    @Test
+    public void testMergeReusesFreedSlots() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        Observable.range(0, 100000).flatMap(i -> Observable.range(i, 2), 2).subscribe(ts);
+        
+        ts.assertValueCount(200000);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testMergeManyAsyncInners() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        Observable.range(0, 1000)
+        .flatMap(i -> Observable.range(i * 100, 100).subscribeOn(Schedulers.computation()))
+        .subscribe(ts);
+        
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertValueCount(100000);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testMergeCancelCancelsAllInners() {
+        AtomicInteger cancelled = new AtomicInteger();
+        Observable<Integer> never = Observable.create(s -> 
+            s.onSubscribe(AbstractSubscription.create(s, (n, self) -> { }, cancelled::getAndIncrement)));
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        Observable.range(0, 10).flatMap(i -> never).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.cancel();
+        
+        assertEquals(10, cancelled.get());
+        ts.assertNoTerminalEvent();
+    }
+    
+    @Test
+    public void testMergeInnerErrorEager() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        Observable.range(0, 10)
+        .flatMap(i -> i == 5 ? Observable.<Integer>error(new TestException()) : Observable.just(i, i))
+        .subscribe(ts);
+        
+        ts.assertValueCount(10);
+        ts.assertError(TestException.class);
+    }
+
     private static Consumer<Integer> printCount() {
         return new Consumer<Integer>() {
             long count;
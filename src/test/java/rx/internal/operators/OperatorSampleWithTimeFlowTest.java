@@ -0,0 +1,132 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.exceptions.TestException;
+import rx.internal.operators.OperatorDebounceWithTimeFlowTest.CountingScheduler;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorSampleWithTimeFlowTest {
+    @Test
+    public void testSample() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.sample(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        source.onNext(2);
+        scheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+        ts.assertNoValues();
+        
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        ts.assertValues(2);
+        
+        // nothing new during the second period
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues(2);
+        
+        // the sampling instants stay aligned to the subscription time
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        source.onNext(3);
+        scheduler.advanceTimeBy(49, TimeUnit.MILLISECONDS);
+        ts.assertValues(2);
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        ts.assertValues(2, 3);
+        
+        source.onNext(4);
+        source.onComplete();
+        ts.assertValues(2, 3);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testIdleSourceDoesNotTick() {
+        TestScheduler test = new TestScheduler();
+        CountingScheduler scheduler = new CountingScheduler(test);
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.sample(10, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        test.advanceTimeBy(10, TimeUnit.SECONDS);
+        ts.assertValues(1);
+        
+        assertEquals(1, scheduler.scheduled.get());
+    }
+    
+    @Test
+    public void testError() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.sample(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        source.onError(new TestException());
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        
+        ts.assertNoValues();
+        ts.assertError(TestException.class);
+    }
+    
+    @Test
+    public void testSampleWaitsForRequest() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        source.sample(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        source.onNext(2);
+        ts.assertNoValues();
+        ts.assertNoErrors();
+        
+        ts.requestMore(1);
+        ts.assertValues(2);
+    }
+    
+    @Test
+    public void testCancel() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.sample(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        ts.cancel();
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        
+        ts.assertNoValues();
+        assertFalse(source.hasSubscribers());
+    }
+}
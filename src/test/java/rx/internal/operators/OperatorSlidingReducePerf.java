@@ -0,0 +1,98 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+import rx.Observable;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+/**
+ * Compares the sliding aggregation with materialized windows and the boxed aggregator with the
+ * primitive one.
+ */
+@Ignore
+// since this doesn't do any automatic testing
+public class OperatorSlidingReducePerf {
+    static final int COUNT = 10_000_000;
+    static final int TICKS = 20_000;
+    static final int OVERLAP = 1000;
+    
+    @Test
+    public void countBoxed() {
+        for (int r = 0; r < 5; r++) {
+            TestSubscriber<Long> ts = new TestSubscriber<>();
+            long t = System.nanoTime();
+            Observable.range(0, COUNT).map(v -> (long)v).slidingReduce(OVERLAP, 1, 0L, Long::sum).subscribe(ts);
+            print("slidingReduce boxed", COUNT, System.nanoTime() - t);
+        }
+    }
+    
+    @Test
+    public void countPrimitive() {
+        for (int r = 0; r < 5; r++) {
+            TestSubscriber<Long> ts = new TestSubscriber<>();
+            long t = System.nanoTime();
+            Observable.range(0, COUNT).slidingReduceLong(OVERLAP, 1, v -> v, 0L, Long::sum).subscribe(ts);
+            print("slidingReduceLong", COUNT, System.nanoTime() - t);
+        }
+    }
+    
+    @Test
+    public void timedWindowFlatMap() {
+        for (int r = 0; r < 5; r++) {
+            TestScheduler scheduler = new TestScheduler();
+            PublishSubject<Integer> source = PublishSubject.create();
+            TestSubscriber<Long> ts = new TestSubscriber<>();
+            source.window(OVERLAP, 1, TimeUnit.MILLISECONDS, scheduler)
+            .flatMap(w -> w.reduce(0L, (a, b) -> a + b)).subscribe(ts);
+            long t = System.nanoTime();
+            drive(source, scheduler);
+            print("window + flatMap(reduce)", TICKS, System.nanoTime() - t);
+        }
+    }
+    
+    @Test
+    public void timedSliding() {
+        for (int r = 0; r < 5; r++) {
+            TestScheduler scheduler = new TestScheduler();
+            PublishSubject<Integer> source = PublishSubject.create();
+            TestSubscriber<Long> ts = new TestSubscriber<>();
+            source.slidingReduceLong(OVERLAP, 1, TimeUnit.MILLISECONDS, scheduler, v -> v, 0L, Long::sum)
+            .subscribe(ts);
+            long t = System.nanoTime();
+            drive(source, scheduler);
+            print("slidingReduceLong timed", TICKS, System.nanoTime() - t);
+        }
+    }
+    
+    static void drive(PublishSubject<Integer> source, TestScheduler scheduler) {
+        for (int i = 0; i < TICKS; i++) {
+            source.onNext(i);
+            scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        }
+        source.onComplete();
+    }
+    
+    static void print(String name, int count, long time) {
+        System.out.printf("%s: %,.3f ms, %,.3f items/s%n", name, time / 1e6, count * 1e9 / time);
+    }
+}
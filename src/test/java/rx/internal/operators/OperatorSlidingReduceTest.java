@@ -0,0 +1,170 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorSlidingReduceTest {
+    @Test
+    public void testOverlappingSum() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 5).slidingReduce(3, 1, 0, Integer::sum).subscribe(ts);
+        
+        // the last two are the partial windows open at completion
+        ts.assertValues(6, 9, 12, 9, 5);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testExact() {
+        TestSubscriber<Long> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 7).slidingReduceLong(3, 3, v -> v, 0L, Long::sum).subscribe(ts);
+        
+        ts.assertValues(6L, 15L, 7L);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testSkipLargerThanSize() {
+        TestSubscriber<Long> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 10).slidingReduceLong(2, 3, v -> v, 0L, Long::sum).subscribe(ts);
+        
+        ts.assertValues(3L, 9L, 15L, 10L);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testCombinesInArrivalOrder() {
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        Observable.just("a", "b", "c", "d", "e").slidingReduce(3, 1, "", String::concat).subscribe(ts);
+        
+        ts.assertValues("abc", "bcd", "cde", "de", "e");
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testAverage() {
+        TestSubscriber<Double> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 5).slidingAverage(2, 2, v -> v).subscribe(ts);
+        
+        ts.assertValues(1.5, 3.5, 5.0);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testMatchesRecomputation() {
+        Random random = new Random(0);
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            items.add(random.nextInt(10000) - 5000);
+        }
+        int[][] shapes = { { 1, 1 }, { 16, 1 }, { 100, 7 }, { 5, 5 }, { 3, 8 }, { 1000, 999 } };
+        for (int[] shape : shapes) {
+            int size = shape[0];
+            int skip = shape[1];
+            
+            List<Long> expectedMin = new ArrayList<>();
+            List<Double> expectedSum = new ArrayList<>();
+            for (int start = 0; start < items.size(); start += skip) {
+                long min = Long.MAX_VALUE;
+                double sum = 0;
+                for (int i = start; i < Math.min(start + size, items.size()); i++) {
+                    min = Math.min(min, items.get(i));
+                    sum += items.get(i);
+                }
+                expectedMin.add(min);
+                expectedSum.add(sum);
+            }
+            
+            TestSubscriber<Long> ts1 = new TestSubscriber<>();
+            Observable.from(items).slidingReduceLong(size, skip, v -> v, Long.MAX_VALUE, Math::min).subscribe(ts1);
+            assertEquals("size " + size + ", skip " + skip, expectedMin, ts1.getValues());
+            
+            TestSubscriber<Double> ts2 = new TestSubscriber<>();
+            Observable.from(items).slidingReduceDouble(size, skip, v -> v, 0d, Double::sum).subscribe(ts2);
+            assertEquals("size " + size + ", skip " + skip, expectedSum, ts2.getValues());
+        }
+    }
+    
+    @Test
+    public void testBackpressure() {
+        List<Long> requests = new ArrayList<>();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        Observable.range(1, 5).doOnRequest(requests::add)
+        .slidingReduce(3, 1, 0, Integer::sum).subscribe(ts);
+        
+        ts.assertNoValues();
+        
+        ts.requestMore(1);
+        ts.assertValues(6);
+        
+        ts.requestMore(2);
+        ts.assertValues(6, 9, 12);
+        ts.assertNoTerminalEvent();
+        
+        // the first window needs 3 items, each further window 1 more
+        assertEquals(Arrays.asList(3L, 2L), requests);
+        
+        ts.requestMore(1);
+        ts.assertValues(6, 9, 12, 9);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(1);
+        ts.assertValues(6, 9, 12, 9, 5);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testCombinerThrows() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.slidingReduce(2, 1, 0, (a, b) -> {
+            if (b == 3) {
+                throw new TestException();
+            }
+            return a + b;
+        }).subscribe(ts);
+        
+        source.onNext(1);
+        source.onNext(2);
+        source.onNext(3);
+        
+        ts.assertValues(3);
+        ts.assertError(TestException.class);
+        assertFalse(source.hasSubscribers());
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.exceptions.MissingBackpressureException;
+import rx.internal.operators.OperatorDebounceWithTimeFlowTest.CountingScheduler;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorSlidingReduceTimedTest {
+    @Test
+    public void testOverlapping() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.slidingReduce(300, 100, TimeUnit.MILLISECONDS, scheduler, 0, Integer::sum).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        source.onNext(2);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        source.onNext(3);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        // [0, 300)
+        ts.assertValues(6);
+        
+        source.onNext(4);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        // [100, 400)
+        ts.assertValues(6, 9);
+        
+        source.onComplete();
+        // [200, 500), [300, 600) and [400, 700) are still open
+        ts.assertValues(6, 9, 7, 4, 0);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testEmptyWindowsEmitIdentity() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Long> ts = new TestSubscriber<>();
+        
+        source.slidingReduceLong(100, 100, TimeUnit.MILLISECONDS, scheduler, v -> v, Long.MIN_VALUE, Math::max)
+        .subscribe(ts);
+        
+        source.onNext(5);
+        source.onNext(3);
+        scheduler.advanceTimeBy(200, TimeUnit.MILLISECONDS);
+        
+        ts.assertValues(5L, Long.MIN_VALUE);
+        ts.assertNoTerminalEvent();
+    }
+    
+    @Test
+    public void testGapBetweenWindows() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.slidingReduce(100, 200, TimeUnit.MILLISECONDS, scheduler, 0, Integer::sum).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        // in no window
+        source.onNext(10);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        source.onNext(2);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        
+        ts.assertValues(1, 2);
+        
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        source.onNext(20);
+        source.onComplete();
+        
+        ts.assertValues(1, 2);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testAverageOfEmptyWindowIsNaN() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Double> ts = new TestSubscriber<>();
+        
+        source.slidingAverage(200, 100, TimeUnit.MILLISECONDS, scheduler, v -> v).subscribe(ts);
+        
+        source.onNext(1);
+        source.onNext(2);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        source.onNext(6);
+        scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS);
+        
+        ts.assertValues(3.0, 6.0, Double.NaN);
+        ts.assertNoErrors();
+    }
+    
+    @Test
+    public void testManyOverlappingWindows() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Long> ts = new TestSubscriber<>();
+        
+        source.slidingReduceLong(1000, 1, TimeUnit.MILLISECONDS, scheduler, v -> v, 0L, Long::sum).subscribe(ts);
+        
+        for (int i = 0; i < 3000; i++) {
+            source.onNext(1);
+            scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        }
+        
+        assertEquals(2001, ts.getValues().size());
+        for (Long v : ts.getValues()) {
+            assertEquals(1000L, v.longValue());
+        }
+        ts.assertNoErrors();
+    }
+    
+    @Test
+    public void testCoprimeTimespanAndTimeshift() {
+        TestScheduler test = new TestScheduler();
+        CountingScheduler scheduler = new CountingScheduler(test);
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.slidingReduce(1000, 999, TimeUnit.MILLISECONDS, scheduler, 0, Integer::sum).subscribe(ts);
+        
+        source.onNext(1);
+        test.advanceTimeBy(999, TimeUnit.MILLISECONDS);
+        source.onNext(2);
+        test.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        // [0, 1000)
+        ts.assertValues(3);
+        
+        test.advanceTimeBy(999, TimeUnit.MILLISECONDS);
+        // [999, 1999)
+        ts.assertValues(3, 2);
+        
+        test.advanceTimeBy(8000, TimeUnit.MILLISECONDS);
+        ts.assertValueCount(10);
+        ts.assertNoErrors();
+        assertTrue("" + scheduler.scheduled.get(), scheduler.scheduled.get() <= 21);
+    }
+    
+    @Test
+    public void testMissingBackpressure() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        source.slidingReduce(100, 100, TimeUnit.MILLISECONDS, scheduler, 0, Integer::sum).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        
+        ts.assertNoValues();
+        ts.assertError(MissingBackpressureException.class);
+        assertFalse(source.hasSubscribers());
+    }
+}
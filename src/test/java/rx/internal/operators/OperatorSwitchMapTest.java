@@ -0,0 +1,320 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Flow.Subscriber;
+import rx.Observable;
+import rx.Observable.OnSubscribe;
+import rx.exceptions.TestException;
+import rx.internal.subscriptions.AbstractSubscription;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorSwitchMapTest {
+    @Test
+    public void testSwitchDropsStaleInner() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        PublishSubject<Integer> ps1 = PublishSubject.create();
+        PublishSubject<Integer> ps2 = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.switchMap(v -> v == 1 ? ps1 : ps2).subscribe(ts);
+        
+        source.onNext(1);
+        ps1.onNext(10);
+        
+        source.onNext(2);
+        
+        assertFalse(ps1.hasSubscribers());
+        assertTrue(ps2.hasSubscribers());
+        
+        ps1.onNext(11);
+        ps2.onNext(20);
+        
+        ts.assertValues(10, 20);
+        
+        source.onComplete();
+        
+        ts.assertNoTerminalEvent();
+        
+        ps2.onComplete();
+        
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testBufferedItemsOfStaleInnerDropped() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        PublishSubject<Integer> ps1 = PublishSubject.create();
+        PublishSubject<Integer> ps2 = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        source.switchMap(v -> v == 1 ? ps1 : ps2).subscribe(ts);
+        
+        source.onNext(1);
+        ps1.onNext(10);
+        ps1.onNext(11);
+        
+        source.onNext(2);
+        ps2.onNext(20);
+        
+        ts.requestMore(10);
+        
+        ts.assertValues(20);
+    }
+    
+    @Test
+    public void testBackpressure() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        Observable.range(1, 2).switchMap(v -> Observable.range(v * 10, 5)).subscribe(ts);
+        
+        ts.assertNoValues();
+        
+        ts.requestMore(3);
+        
+        ts.assertValues(20, 21, 22);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(2);
+        
+        ts.assertValues(20, 21, 22, 23, 24);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testPrefetchReplenished() {
+        List<Long> requests = new ArrayList<>();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 2).switchMap(v -> Observable.range(0, 40).doOnRequest(requests::add), 16).subscribe(ts);
+        
+        ts.assertValueCount(80);
+        ts.assertComplete();
+        assertEquals(Arrays.asList(16L, 12L, 12L, 12L, 16L, 12L, 12L, 12L), requests);
+    }
+    
+    @Test
+    public void testEmptyInners() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 3).switchMap(v -> Observable.<Integer>empty()).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testInnerErrorCancelsSource() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        PublishSubject<Integer> ps1 = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.switchMap(v -> ps1).subscribe(ts);
+        
+        source.onNext(1);
+        ps1.onError(new TestException());
+        
+        ts.assertError(TestException.class);
+        assertFalse(source.hasSubscribers());
+    }
+    
+    @Test
+    public void testStaleInnerSignalsIgnored() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        List<Subscriber<? super Integer>> inners = new ArrayList<>();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.switchMap(v -> Observable.create((OnSubscribe<Integer>)s -> {
+            AbstractSubscription.setEmptyOn(s);
+            inners.add(s);
+        })).subscribe(ts);
+        
+        source.onNext(1);
+        source.onNext(2);
+        
+        inners.get(0).onNext(10);
+        inners.get(0).onError(new TestException());
+        
+        ts.assertNoValues();
+        ts.assertNoErrors();
+        
+        inners.get(1).onNext(20);
+        inners.get(1).onComplete();
+        source.onComplete();
+        
+        ts.assertValues(20);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testCancelCancelsActive() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        PublishSubject<Integer> ps1 = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.switchMap(v -> ps1).subscribe(ts);
+        
+        source.onNext(1);
+        ts.cancel();
+        
+        assertFalse(source.hasSubscribers());
+        assertFalse(ps1.hasSubscribers());
+    }
+    
+    @Test
+    public void testAsyncSwitching() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 1000).switchMap(v -> Observable.range(v * 10, 10).subscribeOn(Schedulers.computation()))
+        .observeOn(Schedulers.computation())
+        .subscribe(ts);
+        
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        
+        List<Integer> values = ts.getValues();
+        for (int i = 1; i < values.size(); i++) {
+            assertTrue(values.get(i - 1) + " < " + values.get(i), values.get(i - 1) < values.get(i));
+        }
+        assertEquals(Integer.valueOf(9999), values.get(values.size() - 1));
+    }
+    
+    /** A scalar source which counts the times it was subscribed to. */
+    static final class CountingScalar<T> extends Observable<T> implements ScalarSource<T> {
+        final T value;
+        final int[] subscriptions;
+        CountingScalar(T value, int[] subscriptions) {
+            super(s -> {
+                subscriptions[0]++;
+                Observable.just(value).unsafeSubscribe(s);
+            });
+            this.value = value;
+            this.subscriptions = subscriptions;
+        }
+        @Override
+        public boolean isScalar() {
+            return true;
+        }
+        @Override
+        public T scalarValue() {
+            return value;
+        }
+    }
+    
+    @Test
+    public void testScalarInnersNotSubscribed() {
+        int[] subscriptions = { 0 };
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 5).switchMap(v -> new CountingScalar<>(v, subscriptions)).subscribe(ts);
+        
+        ts.assertValues(1, 2, 3, 4, 5);
+        ts.assertComplete();
+        assertEquals(0, subscriptions[0]);
+    }
+    
+    @Test
+    public void testScalarInnersBackpressured() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        source.switchMap(v -> Observable.just(v)).subscribe(ts);
+        
+        source.onNext(1);
+        source.onNext(2);
+        ts.assertNoValues();
+        
+        ts.requestMore(1);
+        ts.assertValues(2);
+        
+        source.onNext(3);
+        source.onComplete();
+        ts.assertValues(2);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(1);
+        ts.assertValues(2, 3);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testScalarInnersUnbounded() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 5).switchMap(v -> v % 2 == 0 ? Observable.<Integer>empty() : Observable.just(v * 10))
+        .subscribe(ts);
+        
+        ts.assertValues(10, 30, 50);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testScalarInnerCancelsActive() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        PublishSubject<Integer> ps = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.switchMap(v -> v == 1 ? ps : Observable.just(v)).subscribe(ts);
+        
+        source.onNext(1);
+        ps.onNext(10);
+        assertTrue(ps.hasSubscribers());
+        
+        source.onNext(2);
+        assertFalse(ps.hasSubscribers());
+        
+        source.onNext(1);
+        ps.onNext(11);
+        source.onComplete();
+        ps.onComplete();
+        
+        ts.assertValues(10, 2, 11);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testStaleScalarDropped() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        PublishSubject<Integer> ps = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        source.switchMap(v -> v == 0 ? ps : Observable.just(v)).subscribe(ts);
+        
+        source.onNext(1);
+        source.onNext(0);
+        ts.requestMore(1);
+        ts.assertNoValues();
+        
+        ps.onNext(20);
+        ts.assertValues(20);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrefetchInvalid() {
+        Observable.range(0, 2).switchMap(v -> Observable.just(v), 0);
+    }
+}
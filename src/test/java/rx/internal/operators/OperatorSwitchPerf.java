@@ -0,0 +1,84 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+import org.junit.*;
+
+import rx.Observable;
+import rx.subscribers.TestSubscriber;
+
+/**
+ * Measures the throughput and the bytes allocated per switch of {@code switchMap}
+ * with short synchronous inner sources.
+ */
+@Ignore
+// since this doesn't do any automatic testing
+public class OperatorSwitchPerf {
+    static final int COUNT = 1_000_000;
+    static final int ROUNDS = 10;
+    
+    @Test
+    public void switchToJust() {
+        run("switchMap(just)", () -> Observable.range(0, COUNT).switchMap(v -> Observable.just(v)));
+    }
+    
+    @Test
+    public void switchToJustSubscribed() {
+        // hides the ScalarSource so each switch subscribes an inner, for comparison with switchToJust
+        run("switchMap(just) subscribed", () -> Observable.range(0, COUNT)
+                .switchMap(v -> Observable.<Integer>create(s -> Observable.just(v).unsafeSubscribe(s))));
+    }
+    
+    @Test
+    public void switchToRange() {
+        run("switchMap(range(2))", () -> Observable.range(0, COUNT).switchMap(v -> Observable.range(v, 2)));
+    }
+    
+    @Test
+    public void switchToRangeBackpressured() {
+        run("switchMap(range(2)) prefetch 4", () -> Observable.range(0, COUNT).switchMap(v -> Observable.range(v, 2), 4));
+    }
+    
+    static void run(String name, Supplier<Observable<Integer>> chain) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        for (int r = 0; r < ROUNDS; r++) {
+            TestSubscriber<Integer> ts = new TestSubscriber<>();
+            long b = allocated(mx);
+            long t = System.nanoTime();
+            chain.get().subscribe(ts);
+            ts.awaitTerminalEvent();
+            t = System.nanoTime() - t;
+            b = allocated(mx) - b;
+            
+            ts.assertNoErrors();
+            System.out.printf("%s: %,.3f switches/s, %,.1f bytes/switch%n", name, COUNT * 1e9 / t, (double)b / COUNT);
+        }
+    }
+    
+    static long allocated(com.sun.management.ThreadMXBean mx) {
+        long sum = 0L;
+        for (long b : mx.getThreadAllocatedBytes(mx.getAllThreadIds())) {
+            if (b > 0) {
+                sum += b;
+            }
+        }
+        return sum;
+    }
+}
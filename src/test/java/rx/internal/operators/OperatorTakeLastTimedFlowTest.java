@@ -0,0 +1,106 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.exceptions.TestException;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorTakeLastTimedFlowTest {
+    @Test
+    public void testTakeLastTimed() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.takeLast(1, TimeUnit.SECONDS, scheduler).subscribe(ts);
+        
+        for (int i = 0; i < 10; i++) {
+            source.onNext(i);
+            scheduler.advanceTimeBy(250, TimeUnit.MILLISECONDS);
+        }
+        ts.assertNoValues();
+        
+        // T = 2500ms, the window starts at 1500ms
+        source.onComplete();
+        
+        ts.assertValues(6, 7, 8, 9);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testTakeLastTimedWithCount() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.takeLast(2, 1, TimeUnit.SECONDS, scheduler).subscribe(ts);
+        
+        for (int i = 0; i < 10; i++) {
+            source.onNext(i);
+            scheduler.advanceTimeBy(250, TimeUnit.MILLISECONDS);
+        }
+        source.onComplete();
+        
+        ts.assertValues(8, 9);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testBackpressure() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        source.takeLast(1, TimeUnit.SECONDS, scheduler).subscribe(ts);
+        
+        for (int i = 0; i < 1000; i++) {
+            source.onNext(i);
+        }
+        source.onComplete();
+        ts.assertNoValues();
+        
+        ts.requestMore(2);
+        ts.assertValues(0, 1);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(Long.MAX_VALUE);
+        ts.assertValueCount(1000);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testError() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.takeLast(1, TimeUnit.SECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        source.onError(new TestException());
+        
+        ts.assertNoValues();
+        ts.assertError(TestException.class);
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.internal.operators.OperatorDebounceWithTimeFlowTest.CountingScheduler;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorTimeoutFlowTest {
+    @Test
+    public void testNoTimeout() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.timeout(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        for (int i = 0; i < 10; i++) {
+            scheduler.advanceTimeBy(90, TimeUnit.MILLISECONDS);
+            source.onNext(i);
+        }
+        source.onComplete();
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        
+        ts.assertValues(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testTimeout() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.timeout(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        source.onNext(2);
+        scheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+        ts.assertNoTerminalEvent();
+        
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        ts.assertValues(1, 2);
+        ts.assertError(TimeoutException.class);
+        assertFalse(source.hasSubscribers());
+        
+        source.onNext(3);
+        ts.assertValues(1, 2);
+    }
+    
+    @Test
+    public void testSwitchToOther() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.timeout(100, TimeUnit.MILLISECONDS, Observable.just(10, 11), scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        
+        ts.assertValues(1, 10, 11);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        assertFalse(source.hasSubscribers());
+    }
+    
+    @Test
+    public void testTimerReArmsInsteadOfPerItem() {
+        TestScheduler test = new TestScheduler();
+        CountingScheduler scheduler = new CountingScheduler(test);
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.timeout(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        for (int i = 0; i < 1000; i++) {
+            source.onNext(i);
+        }
+        test.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 1000; i++) {
+            source.onNext(i);
+        }
+        test.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        
+        ts.assertValueCount(2000);
+        ts.assertError(TimeoutException.class);
+        // the initial arming and one re-arming
+        assertEquals(2, scheduler.scheduled.get());
+    }
+    
+    @Test
+    public void testErrorAndCompleteCancelTimer() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.timeout(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onError(new TestException());
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        
+        ts.assertError(TestException.class);
+        
+        TestSubscriber<Integer> ts2 = new TestSubscriber<>();
+        PublishSubject<Integer> source2 = PublishSubject.create();
+        source2.timeout(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts2);
+        source2.onComplete();
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        
+        ts2.assertNoErrors();
+        ts2.assertComplete();
+    }
+    
+    @Test
+    public void testBackpressureAcrossSwitch() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(2);
+        
+        source.timeout(100, TimeUnit.MILLISECONDS, Observable.range(10, 5), scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValues(1, 10);
+        
+        ts.requestMore(10);
+        ts.assertValues(1, 10, 11, 12, 13, 14);
+        ts.assertComplete();
+    }
+}
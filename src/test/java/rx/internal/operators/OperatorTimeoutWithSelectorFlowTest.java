@@ -0,0 +1,117 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorTimeoutWithSelectorFlowTest {
+    @Test
+    public void testFirstTimeout() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        PublishSubject<Integer> first = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.timeout(() -> first, v -> Observable.<Integer>never()).subscribe(ts);
+        
+        assertTrue(first.hasSubscribers());
+        first.onNext(1);
+        
+        ts.assertNoValues();
+        ts.assertError(TimeoutException.class);
+        assertFalse(source.hasSubscribers());
+        assertFalse(first.hasSubscribers());
+    }
+    
+    @Test
+    public void testStaleWindowIgnored() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        PublishSubject<Integer> w1 = PublishSubject.create();
+        PublishSubject<Integer> w2 = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.timeout(() -> Observable.<Integer>never(), v -> v == 1 ? w1 : w2).subscribe(ts);
+        
+        source.onNext(1);
+        assertTrue(w1.hasSubscribers());
+        source.onNext(2);
+        assertFalse(w1.hasSubscribers());
+        assertTrue(w2.hasSubscribers());
+        
+        w1.onNext(1);
+        ts.assertNoTerminalEvent();
+        
+        w2.onComplete();
+        ts.assertValues(1, 2);
+        ts.assertError(TimeoutException.class);
+    }
+    
+    @Test
+    public void testSwitchToOther() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        PublishSubject<Integer> w = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.timeout(null, v -> w, Observable.just(10)).subscribe(ts);
+        
+        source.onNext(1);
+        w.onNext(1);
+        
+        ts.assertValues(1, 10);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        assertFalse(source.hasSubscribers());
+    }
+    
+    @Test
+    public void testSelectorThrows() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.timeout(null, v -> { throw new TestException(); }).subscribe(ts);
+        
+        source.onNext(1);
+        
+        ts.assertValues(1);
+        ts.assertError(TestException.class);
+        assertFalse(source.hasSubscribers());
+    }
+    
+    @Test
+    public void testCompleteCancelsWindow() {
+        PublishSubject<Integer> source = PublishSubject.create();
+        PublishSubject<Integer> w = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        source.timeout(null, v -> w).subscribe(ts);
+        
+        source.onNext(1);
+        source.onComplete();
+        
+        assertFalse(w.hasSubscribers());
+        ts.assertValues(1);
+        ts.assertComplete();
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorToObservableSortedListFlowTest {
+    @Test
+    public void testNaturalOrder() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.just(5, 1, 3, 2, 4).toSortedList().subscribe(ts);
+        
+        ts.assertValues(asList(1, 2, 3, 4, 5));
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testComparatorAndCapacity() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.just(5, 1, 3, 2, 4).toSortedList(Comparator.<Integer>reverseOrder(), 2).subscribe(ts);
+        
+        ts.assertValues(asList(5, 4, 3, 2, 1));
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testLargeParallel() {
+        int n = 1_000_000;
+        Random rnd = new Random(0);
+        List<Integer> source = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            source.add(rnd.nextInt());
+        }
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.from(source).toSortedList(Comparator.naturalOrder(), n).subscribe(ts);
+        
+        ts.assertValueCount(1);
+        List<Integer> list = ts.getValues().get(0);
+        assertEquals(n, list.size());
+        for (int i = 1; i < n; i++) {
+            assertTrue(list.get(i - 1) <= list.get(i));
+        }
+    }
+    
+    @Test
+    public void testStable() {
+        TestSubscriber<List<String>> ts = new TestSubscriber<>();
+        
+        Observable.just("b1", "a1", "b2", "a2").toSortedList((x, y) -> x.charAt(0) - y.charAt(0), 4).subscribe(ts);
+        
+        ts.assertValues(asList("a1", "a2", "b1", "b2"));
+    }
+    
+    @Test
+    public void testBackpressure() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>(0);
+        
+        Observable.just(2, 1).toSortedList().subscribe(ts);
+        ts.assertNoValues();
+        
+        ts.requestMore(1);
+        ts.assertValues(asList(1, 2));
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testComparatorThrows() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.just(2, 1).toSortedList((a, b) -> { throw new TestException(); }, 16).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertError(TestException.class);
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.just(2, 1).toSortedList().subscribe(ts);
+        
+        ts.getValues().get(0).add(3);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.*;
+import java.util.function.Supplier;
+
+import org.junit.*;
+
+import rx.Observable;
+import rx.subscribers.TestSubscriber;
+
+/**
+ * Compares {@code topK} with sorting everything, and the parallel {@code toSortedList} with a
+ * sequential sort, on 10 million pseudo-random items.
+ */
+@Ignore
+// since this doesn't do any automatic testing
+public class OperatorTopKPerf {
+    static final int COUNT = 10_000_000;
+    static final int ROUNDS = 5;
+    
+    static Observable<Integer> source() {
+        // a cheap bijective scramble of the range
+        return Observable.range(0, COUNT).map(v -> v * 0x9E3779B1);
+    }
+    
+    @Test
+    public void topK() {
+        run("topK(100)", () -> source().topK(100, Comparator.naturalOrder()));
+    }
+    
+    @Test
+    public void sortThenTake() {
+        run("toSortedList + take 100", () -> source().toSortedList(Comparator.<Integer>reverseOrder(), COUNT)
+                .map(list -> list.subList(0, 100)));
+    }
+    
+    @Test
+    public void toSortedListParallel() {
+        run("toSortedList(comparator, 10M)", () -> source().toSortedList(Comparator.naturalOrder(), COUNT));
+    }
+    
+    @Test
+    public void toSortedListSequential() {
+        run("toList + List.sort", () -> source().toList()
+                .map(list -> {
+                    list.sort(Comparator.naturalOrder());
+                    return list;
+                }));
+    }
+    
+    static void run(String name, Supplier<Observable<List<Integer>>> chain) {
+        for (int r = 0; r < ROUNDS; r++) {
+            TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+            long t = System.nanoTime();
+            chain.get().subscribe(ts);
+            ts.awaitTerminalEvent();
+            t = System.nanoTime() - t;
+            
+            ts.assertNoErrors();
+            System.out.printf("%s: %,.3f ms, %,.3f items/s%n", name, t / 1e6, COUNT * 1e9 / t);
+        }
+    }
+}
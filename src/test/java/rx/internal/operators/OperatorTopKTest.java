@@ -0,0 +1,120 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorTopKTest {
+    @Test
+    public void testTopK() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.just(5, 1, 9, 3, 7, 2, 8).topK(3, Comparator.naturalOrder()).subscribe(ts);
+        
+        ts.assertValues(asList(9, 8, 7));
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testFewerThanK() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.just(2, 3, 1).topK(5, Comparator.naturalOrder()).subscribe(ts);
+        
+        ts.assertValues(asList(3, 2, 1));
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testEmpty() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.<Integer>empty().topK(5, Comparator.naturalOrder()).subscribe(ts);
+        
+        ts.assertValues(Collections.<Integer>emptyList());
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testReverseComparator() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 1000).topK(4, Comparator.<Integer>reverseOrder()).subscribe(ts);
+        
+        ts.assertValues(asList(0, 1, 2, 3));
+    }
+    
+    @Test
+    public void testRandomAgainstSort() {
+        Random rnd = new Random(0);
+        for (int round = 0; round < 50; round++) {
+            int n = rnd.nextInt(2000);
+            int k = 1 + rnd.nextInt(100);
+            List<Integer> source = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                source.add(rnd.nextInt(500));
+            }
+            List<Integer> expected = new ArrayList<>(source);
+            expected.sort(Comparator.reverseOrder());
+            expected = expected.subList(0, Math.min(k, n));
+            
+            TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+            Observable.from(source).topK(k, Comparator.naturalOrder()).subscribe(ts);
+            
+            ts.assertValues(expected);
+        }
+    }
+    
+    @Test
+    public void testBackpressure() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>(0);
+        
+        Observable.range(0, 10).topK(2, Comparator.naturalOrder()).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(1);
+        ts.assertValues(asList(9, 8));
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testComparatorThrows() {
+        TestSubscriber<List<Integer>> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 10).topK(2, (a, b) -> { throw new TestException(); }).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertError(TestException.class);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidK() {
+        Observable.range(0, 10).topK(0, Comparator.naturalOrder());
+    }
+}
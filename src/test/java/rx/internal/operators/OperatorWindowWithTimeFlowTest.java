@@ -0,0 +1,210 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.*;
+import rx.internal.operators.OperatorDebounceWithTimeFlowTest.CountingScheduler;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorWindowWithTimeFlowTest {
+    /** Subscribes a TestSubscriber to each window as it arrives. */
+    static <T> TestSubscriber<Observable<T>> windows(List<TestSubscriber<T>> inners) {
+        return new TestSubscriber<Observable<T>>() {
+            @Override
+            public void onNext(Observable<T> item) {
+                super.onNext(item);
+                TestSubscriber<T> inner = new TestSubscriber<>();
+                inners.add(inner);
+                item.subscribe(inner);
+            }
+        };
+    }
+    
+    @Test
+    public void testExact() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        List<TestSubscriber<Integer>> inners = new ArrayList<>();
+        TestSubscriber<Observable<Integer>> ts = windows(inners);
+        
+        source.window(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        ts.assertValueCount(1);
+        
+        source.onNext(1);
+        source.onNext(2);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertValueCount(2);
+        inners.get(0).assertValues(1, 2);
+        inners.get(0).assertComplete();
+        
+        source.onNext(3);
+        source.onComplete();
+        
+        inners.get(1).assertValues(3);
+        inners.get(1).assertComplete();
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testExactWithCount() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        List<TestSubscriber<Integer>> inners = new ArrayList<>();
+        TestSubscriber<Observable<Integer>> ts = windows(inners);
+        
+        source.window(100, TimeUnit.MILLISECONDS, 2, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        source.onNext(2);
+        source.onNext(3);
+        ts.assertValueCount(2);
+        inners.get(0).assertValues(1, 2);
+        inners.get(0).assertComplete();
+        inners.get(1).assertValues(3);
+        inners.get(1).assertNoTerminalEvent();
+        
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        inners.get(1).assertComplete();
+        ts.assertValueCount(3);
+    }
+    
+    @Test
+    public void testOverlapping() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        List<TestSubscriber<Integer>> inners = new ArrayList<>();
+        TestSubscriber<Observable<Integer>> ts = windows(inners);
+        
+        source.window(200, 100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        source.onNext(2);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        source.onNext(3);
+        source.onComplete();
+        
+        ts.assertValueCount(3);
+        inners.get(0).assertValues(1, 2);
+        inners.get(1).assertValues(2, 3);
+        inners.get(2).assertValues(3);
+        for (TestSubscriber<Integer> inner : inners) {
+            inner.assertComplete();
+        }
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testWindowBuffersUntilRequested() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        List<Observable<Integer>> windows = new ArrayList<>();
+        TestSubscriber<Observable<Integer>> ts = new TestSubscriber<Observable<Integer>>() {
+            @Override
+            public void onNext(Observable<Integer> item) {
+                super.onNext(item);
+                windows.add(item);
+            }
+        };
+        
+        source.window(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        source.onNext(2);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        
+        TestSubscriber<Integer> inner = new TestSubscriber<>(1);
+        windows.get(0).subscribe(inner);
+        inner.assertValues(1);
+        inner.assertNoTerminalEvent();
+        
+        inner.requestMore(1);
+        inner.assertValues(1, 2);
+        inner.assertComplete();
+        
+        TestSubscriber<Integer> second = new TestSubscriber<>();
+        windows.get(0).subscribe(second);
+        second.assertError(IllegalStateException.class);
+    }
+    
+    @Test
+    public void testSingleTimerWhenOverlapping() {
+        TestScheduler test = new TestScheduler();
+        CountingScheduler scheduler = new CountingScheduler(test);
+        PublishSubject<Integer> source = PublishSubject.create();
+        List<TestSubscriber<Integer>> inners = new ArrayList<>();
+        TestSubscriber<Observable<Integer>> ts = windows(inners);
+        
+        source.window(300, 100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        for (int i = 0; i < 10; i++) {
+            source.onNext(i);
+            test.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        }
+        
+        ts.assertValueCount(11);
+        inners.get(0).assertValues(0, 1, 2);
+        inners.get(7).assertValues(7, 8, 9);
+        // one task re-armed once per open or close instant
+        assertTrue("" + scheduler.scheduled.get(), scheduler.scheduled.get() <= 11);
+    }
+    
+    @Test
+    public void testError() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        List<TestSubscriber<Integer>> inners = new ArrayList<>();
+        TestSubscriber<Observable<Integer>> ts = windows(inners);
+        
+        source.window(200, 100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        
+        source.onNext(1);
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        source.onError(new TestException());
+        
+        inners.get(0).assertValues(1);
+        inners.get(0).assertError(TestException.class);
+        inners.get(1).assertError(TestException.class);
+        ts.assertError(TestException.class);
+        assertFalse(source.hasSubscribers());
+    }
+    
+    @Test
+    public void testMissingBackpressure() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishSubject<Integer> source = PublishSubject.create();
+        TestSubscriber<Observable<Integer>> ts = new TestSubscriber<>(1);
+        
+        source.window(100, TimeUnit.MILLISECONDS, scheduler).subscribe(ts);
+        ts.assertValueCount(1);
+        
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        ts.assertError(MissingBackpressureException.class);
+        assertFalse(source.hasSubscribers());
+    }
+}
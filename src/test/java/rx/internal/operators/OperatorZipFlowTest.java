@@ -0,0 +1,204 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Flow;
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class OperatorZipFlowTest {
+    @Test
+    public void testZip2() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.zip(Observable.range(1, 5), Observable.range(10, 3), (a, b) -> a + b).subscribe(ts);
+        
+        ts.assertValues(11, 13, 15);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testZip3And4() {
+        TestSubscriber<String> ts3 = new TestSubscriber<>();
+        TestSubscriber<String> ts4 = new TestSubscriber<>();
+        
+        Observable.zip(Observable.range(1, 2), Observable.just("a", "b"), Observable.range(5, 2), 
+                (a, b, c) -> a + b + c).subscribe(ts3);
+        Observable.zip(Observable.range(1, 2), Observable.just("a", "b"), Observable.range(5, 2), Observable.just("x", "y"), 
+                (a, b, c, d) -> a + b + c + d).subscribe(ts4);
+        
+        ts3.assertValues("1a5", "2b6");
+        ts3.assertComplete();
+        ts4.assertValues("1a5x", "2b6y");
+        ts4.assertComplete();
+    }
+    
+    @Test
+    public void testZipIterableRowsAreCopies() {
+        TestSubscriber<Object[]> ts = new TestSubscriber<>();
+        
+        Observable.zip(Arrays.asList(Observable.range(1, 3), Observable.range(4, 3), Observable.range(7, 3)), a -> a)
+        .subscribe(ts);
+        
+        ts.assertValueCount(3);
+        ts.assertComplete();
+        
+        List<Object[]> rows = ts.getValues();
+        assertArrayEquals(new Object[] { 1, 4, 7 }, rows.get(0));
+        assertArrayEquals(new Object[] { 2, 5, 8 }, rows.get(1));
+        assertArrayEquals(new Object[] { 3, 6, 9 }, rows.get(2));
+    }
+    
+    @Test
+    public void testBackpressure() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        Observable.zip(Observable.range(1, 5), Observable.range(1, 5), (a, b) -> a * b).subscribe(ts);
+        
+        ts.assertNoValues();
+        
+        ts.requestMore(2);
+        
+        ts.assertValues(1, 4);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(3);
+        
+        ts.assertValues(1, 4, 9, 16, 25);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testSourcesReplenishedInBatches() {
+        List<Long> requests = new ArrayList<>();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        int n = Flow.defaultBufferSize();
+        int limit = n - (n >> 2);
+        
+        Observable.zip(Observable.range(0, n * 2).doOnRequest(requests::add), Observable.range(0, n * 2), (a, b) -> a)
+        .subscribe(ts);
+        
+        ts.assertValueCount(n * 2);
+        ts.assertComplete();
+        
+        assertEquals(Long.valueOf(n), requests.get(0));
+        for (int i = 1; i < requests.size(); i++) {
+            assertEquals(Long.valueOf(limit), requests.get(i));
+        }
+    }
+    
+    @Test
+    public void testScalarSourceNotSubscribed() {
+        PublishSubject<Integer> ps = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.zip(Observable.just(10), ps, (a, b) -> a + b).subscribe(ts);
+        
+        ps.onNext(1);
+        
+        ts.assertValues(11);
+        ts.assertComplete();
+        assertFalse(ps.hasSubscribers());
+    }
+    
+    @Test
+    public void testEmptySourceCompletesImmediately() {
+        PublishSubject<Integer> ps = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.zip(ps, Observable.<Integer>empty(), (a, b) -> a + b).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertComplete();
+        assertFalse(ps.hasSubscribers());
+    }
+    
+    @Test
+    public void testShorterSourceCompletionCancelsOthers() {
+        PublishSubject<Integer> ps1 = PublishSubject.create();
+        PublishSubject<Integer> ps2 = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.zip(ps1, ps2, (a, b) -> a + b).subscribe(ts);
+        
+        ps1.onNext(1);
+        ps1.onComplete();
+        
+        ts.assertNoTerminalEvent();
+        
+        ps2.onNext(2);
+        
+        ts.assertValues(3);
+        ts.assertComplete();
+        assertFalse(ps2.hasSubscribers());
+    }
+    
+    @Test
+    public void testErrorCancelsOthers() {
+        PublishSubject<Integer> ps1 = PublishSubject.create();
+        PublishSubject<Integer> ps2 = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.zip(ps1, ps2, (a, b) -> a + b).subscribe(ts);
+        
+        ps1.onError(new TestException());
+        
+        ts.assertError(TestException.class);
+        assertFalse(ps2.hasSubscribers());
+    }
+    
+    @Test
+    public void testZipFunctionThrows() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.zip(Observable.range(1, 5), Observable.range(1, 5), (a, b) -> {
+            if (a == 3) {
+                throw new TestException();
+            }
+            return a + b;
+        }).subscribe(ts);
+        
+        ts.assertValues(2, 4);
+        ts.assertError(TestException.class);
+    }
+    
+    @Test
+    public void testAsyncSources() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.zip(Observable.range(0, 10000).subscribeOn(Schedulers.computation()), 
+                Observable.range(0, 10000).subscribeOn(Schedulers.computation()), (a, b) -> a - b)
+        .subscribe(ts);
+        
+        ts.awaitTerminalEvent(10, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        ts.assertValueCount(10000);
+        assertEquals(Collections.singleton(0), new HashSet<>(ts.getValues()));
+    }
+}
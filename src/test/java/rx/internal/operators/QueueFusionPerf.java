@@ -0,0 +1,116 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+import org.junit.*;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.Observable;
+import rx.Observable.Operator;
+import rx.schedulers.Schedulers;
+import rx.subscribers.TestSubscriber;
+
+/**
+ * Compares operator chains over fuseable sources with the same chains where the
+ * fusion is prevented by a pass-through operator hiding the subscription.
+ * <p>
+ * Prints the throughput and the bytes allocated by all threads per item.
+ */
+@Ignore
+// since this doesn't do any automatic testing
+public class QueueFusionPerf {
+    static final int COUNT = 1_000_000;
+    static final int ROUNDS = 10;
+    
+    @Test
+    public void rangeObserveOn() {
+        run("range.observeOn fused", () -> Observable.range(0, COUNT)
+                .observeOn(Schedulers.computation()));
+        run("range.observeOn hidden", () -> Observable.range(0, COUNT).lift(hide())
+                .observeOn(Schedulers.computation()));
+    }
+    
+    @Test
+    public void flatMapRanges() {
+        run("flatMap(range.map) fused", () -> Observable.range(0, COUNT / 10)
+                .flatMap(i -> Observable.range(i, 10).map(v -> v + 1)));
+        run("flatMap(range.map) hidden", () -> Observable.range(0, COUNT / 10)
+                .flatMap(i -> Observable.range(i, 10).lift(hide()).map(v -> v + 1)));
+    }
+    
+    static void run(String name, Supplier<Observable<Integer>> chain) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        for (int r = 0; r < ROUNDS; r++) {
+            TestSubscriber<Integer> ts = new TestSubscriber<>();
+            long b = allocated(mx);
+            long t = System.nanoTime();
+            chain.get().subscribe(ts);
+            ts.awaitTerminalEvent();
+            t = System.nanoTime() - t;
+            b = allocated(mx) - b;
+            
+            ts.assertNoErrors();
+            int n = ts.getValues().size();
+            System.out.printf("%s: %,.3f items/s, %,.1f bytes/item%n", name, n * 1e9 / t, (double)b / n);
+        }
+    }
+    
+    static long allocated(com.sun.management.ThreadMXBean mx) {
+        long sum = 0L;
+        for (long b : mx.getThreadAllocatedBytes(mx.getAllThreadIds())) {
+            if (b > 0) {
+                sum += b;
+            }
+        }
+        return sum;
+    }
+    
+    /** Returns an operator which forwards everything but hides the upstream's queue view. */
+    static <T> Operator<T, T> hide() {
+        return child -> new Subscriber<T>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                child.onSubscribe(new Subscription() {
+                    @Override
+                    public void request(long n) {
+                        subscription.request(n);
+                    }
+                    @Override
+                    public void cancel() {
+                        subscription.cancel();
+                    }
+                });
+            }
+            @Override
+            public void onNext(T item) {
+                child.onNext(item);
+            }
+            @Override
+            public void onError(Throwable throwable) {
+                child.onError(throwable);
+            }
+            @Override
+            public void onComplete() {
+                child.onComplete();
+            }
+        };
+    }
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.internal.subscriptions.QueueSubscription;
+import rx.observables.ConnectableObservable;
+import rx.schedulers.Schedulers;
+import rx.subscribers.TestSubscriber;
+
+public class QueueFusionTest {
+    /** Requests synchronous fusion and records the queue view it received. */
+    static final class FusingSubscriber<T> implements Subscriber<T> {
+        final int requestedMode;
+        QueueSubscription<T> qs;
+        int mode;
+        FusingSubscriber() {
+            this(QueueSubscription.SYNC);
+        }
+        FusingSubscriber(int requestedMode) {
+            this.requestedMode = requestedMode;
+        }
+        @SuppressWarnings("unchecked")
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            if (subscription instanceof QueueSubscription) {
+                qs = (QueueSubscription<T>)subscription;
+                mode = qs.requestFusion(requestedMode);
+            }
+        }
+        @Override
+        public void onNext(T item) {
+            fail("Should have been fused");
+        }
+        @Override
+        public void onError(Throwable throwable) {
+            fail("Should have been fused");
+        }
+        @Override
+        public void onComplete() {
+            fail("Should have been fused");
+        }
+        List<T> pollAll() {
+            List<T> list = new ArrayList<>();
+            T v;
+            while ((v = qs.poll()) != null) {
+                list.add(v);
+            }
+            return list;
+        }
+    }
+    
+    @Test
+    public void testRangeMapFilterFusesIntoPoll() {
+        FusingSubscriber<Integer> fs = new FusingSubscriber<>();
+        Observable.range(1, 10).map(v -> v * 10).filter(v -> v % 20 == 0).unsafeSubscribe(fs);
+        
+        assertEquals(QueueSubscription.SYNC, fs.mode);
+        assertEquals(Arrays.asList(20, 40, 60, 80, 100), fs.pollAll());
+        assertTrue(fs.qs.isEmpty());
+    }
+    
+    @Test
+    public void testArrayAndIterableFuse() {
+        FusingSubscriber<Integer> fs = new FusingSubscriber<>();
+        Observable.from(1, 2, 3).map(v -> v + 1).unsafeSubscribe(fs);
+        
+        assertEquals(QueueSubscription.SYNC, fs.mode);
+        assertEquals(Arrays.asList(2, 3, 4), fs.pollAll());
+        
+        fs = new FusingSubscriber<>();
+        Observable.from(Arrays.asList(1, 2, 3)).filter(v -> v != 2).unsafeSubscribe(fs);
+        
+        assertEquals(QueueSubscription.SYNC, fs.mode);
+        assertEquals(Arrays.asList(1, 3), fs.pollAll());
+    }
+    
+    @Test
+    public void testBoundaryRefusedByUserCode() {
+        int boundary = QueueSubscription.SYNC | QueueSubscription.BOUNDARY;
+        
+        FusingSubscriber<Integer> fs = new FusingSubscriber<>(boundary);
+        Observable.range(1, 3).unsafeSubscribe(fs);
+        assertEquals(QueueSubscription.SYNC, fs.mode);
+        
+        fs = new FusingSubscriber<>(boundary);
+        Observable.from(1, 2, 3).unsafeSubscribe(fs);
+        assertEquals(QueueSubscription.SYNC, fs.mode);
+        
+        fs = new FusingSubscriber<>(boundary);
+        Observable.from(Arrays.asList(1, 2, 3)).unsafeSubscribe(fs);
+        assertEquals(QueueSubscription.NONE, fs.mode);
+        
+        fs = new FusingSubscriber<>(boundary);
+        Observable.range(1, 3).map(v -> v + 1).unsafeSubscribe(fs);
+        assertEquals(QueueSubscription.NONE, fs.mode);
+        
+        fs = new FusingSubscriber<>(boundary);
+        Observable.range(1, 3).filter(v -> v != 2).unsafeSubscribe(fs);
+        assertEquals(QueueSubscription.NONE, fs.mode);
+    }
+    
+    @Test
+    public void testObserveOnKeepsMapOnProducingThread() {
+        Thread caller = Thread.currentThread();
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        Observable.range(1, 10).map(v -> {
+            threads.add(Thread.currentThread());
+            return v;
+        })
+        .observeOn(Schedulers.computation())
+        .subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertValues(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        ts.assertComplete();
+        assertEquals(Collections.nCopies(10, caller), threads);
+    }
+    
+    @Test
+    public void testPublishKeepsMapOnProducingThread() {
+        Thread caller = Thread.currentThread();
+        List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+        ConnectableObservable<Integer> co = Observable.range(1, 5).map(v -> {
+            threads.add(Thread.currentThread());
+            return v;
+        }).publish();
+        
+        TestSubscriber<Integer> ts = new TestSubscriber<>(1);
+        co.subscribe(ts);
+        co.connect();
+        ts.assertValues(1);
+        
+        // the rest is dispatched on the requesting thread
+        new Thread(() -> ts.requestMore(4)).start();
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertValues(1, 2, 3, 4, 5);
+        assertEquals(Collections.nCopies(5, caller), threads);
+    }
+    
+    @Test
+    public void testObserveOnFused() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        Observable.range(1, 1000).map(v -> v + 1).filter(v -> v % 2 == 0)
+        .observeOn(Schedulers.computation())
+        .subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertValueCount(500);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        assertEquals(2, ts.getValues().get(0).intValue());
+    }
+    
+    @Test
+    public void testObserveOnFusedBackpressured() throws InterruptedException {
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        Observable.range(1, 10).observeOn(Schedulers.computation()).subscribe(ts);
+        
+        ts.requestMore(3);
+        Thread.sleep(200);
+        ts.assertValues(1, 2, 3);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(7);
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertValues(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testObserveOnMapThrows() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        Observable.range(1, 10).map(v -> {
+            if (v == 3) {
+                throw new TestException();
+            }
+            return v;
+        })
+        .observeOn(Schedulers.computation())
+        .subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        // the map is not fused across observeOn and the error may cut ahead of the queued values
+        assertEquals(Arrays.asList(1, 2).subList(0, ts.getValues().size()), ts.getValues());
+        ts.assertError(TestException.class);
+    }
+    
+    @Test
+    public void testFlatMapFusedInners() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        Observable.range(0, 10).flatMap(i -> Observable.range(i * 10, 10).map(v -> v + 1)).subscribe(ts);
+        
+        ts.requestMore(15);
+        ts.assertValueCount(15);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(Long.MAX_VALUE);
+        ts.assertValueCount(100);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        
+        assertEquals(100, new HashSet<>(ts.getValues()).size());
+    }
+    
+    @Test
+    public void testFlatMapFusedInnerThrows() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        Observable.range(0, 10).flatMap(i -> Observable.range(i * 10, 10).map(v -> {
+            if (v == 55) {
+                throw new TestException();
+            }
+            return v;
+        })).subscribe(ts);
+        
+        ts.assertValueCount(55);
+        ts.assertError(TestException.class);
+    }
+    
+    @Test
+    public void testPublishFused() {
+        ConnectableObservable<Integer> co = Observable.range(1, 5).map(v -> v * 2).publish();
+        
+        TestSubscriber<Integer> ts1 = new TestSubscriber<>();
+        TestSubscriber<Integer> ts2 = new TestSubscriber<>(3);
+        co.subscribe(ts1);
+        co.subscribe(ts2);
+        
+        co.connect();
+        
+        ts1.assertValues(2, 4, 6);
+        ts2.assertValues(2, 4, 6);
+        ts1.assertNoTerminalEvent();
+        
+        ts2.requestMore(2);
+        
+        ts1.assertValues(2, 4, 6, 8, 10);
+        ts2.assertValues(2, 4, 6, 8, 10);
+        ts1.assertComplete();
+        ts2.assertComplete();
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.internal.operators;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+
+import rx.Observable;
+import rx.subjects.AsyncSubject;
+import rx.subscribers.TestSubscriber;
+
+public class ScalarSourceTest {
+    @Test
+    public void sourcesAreScalar() {
+        Assert.assertEquals(1, ScalarSource.scalarValueOf(Observable.just(1)));
+        Assert.assertNull(ScalarSource.scalarValueOf(Observable.empty()));
+        Assert.assertEquals(1, ScalarSource.scalarValueOf(Observable.from(CompletableFuture.completedFuture(1))));
+        Assert.assertSame(ScalarSource.NOT_SCALAR, ScalarSource.scalarValueOf(Observable.from(new CompletableFuture<>())));
+        Assert.assertSame(ScalarSource.NOT_SCALAR, ScalarSource.scalarValueOf(Observable.range(1, 2)));
+    }
+    @Test
+    public void asyncSubjectScalarOnlyWhenCompleted() {
+        AsyncSubject<Integer> as = AsyncSubject.create();
+        
+        Assert.assertFalse(as.isScalar());
+        
+        as.onNext(1);
+        
+        Assert.assertFalse(as.isScalar());
+        
+        as.onComplete();
+        
+        Assert.assertTrue(as.isScalar());
+        Assert.assertEquals((Integer)1, as.scalarValue());
+        
+        AsyncSubject<Integer> empty = AsyncSubject.create();
+        empty.onComplete();
+        
+        Assert.assertTrue(empty.isScalar());
+        Assert.assertNull(empty.scalarValue());
+        
+        AsyncSubject<Integer> error = AsyncSubject.create();
+        error.onError(new RuntimeException());
+        
+        Assert.assertFalse(error.isScalar());
+    }
+    @Test
+    public void flatMapScalarInners() {
+        AsyncSubject<Integer> as = AsyncSubject.create();
+        as.onNext(4);
+        as.onComplete();
+        
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 4).flatMap(v -> {
+            switch (v) {
+            case 1: return Observable.just(1);
+            case 2: return Observable.empty();
+            case 3: return Observable.from(CompletableFuture.completedFuture(3));
+            default: return as;
+            }
+        }).subscribe(ts);
+        
+        ts.assertValues(1, 3, 4);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    @Test
+    public void flatMapScalarInnersBackpressured() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        Observable.range(1, 10).flatMap(v -> Observable.just(v)).subscribe(ts);
+        
+        ts.assertNoValues();
+        
+        ts.requestMore(5);
+        
+        ts.assertValues(1, 2, 3, 4, 5);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(5);
+        
+        ts.assertValues(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        ts.assertComplete();
+    }
+    @Test
+    public void scalarOuterFlatMapIsLazy() {
+        AtomicInteger calls = new AtomicInteger();
+        
+        Observable<Integer> o = Observable.just(1).flatMap(v -> {
+            calls.getAndIncrement();
+            return Observable.range(v, 2);
+        });
+        
+        Assert.assertEquals(0, calls.get());
+        
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        o.subscribe(ts);
+        
+        Assert.assertEquals(1, calls.get());
+        ts.assertValues(1, 2);
+        ts.assertComplete();
+    }
+    @Test
+    public void scalarOuterFlatMapScalarInner() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.just(1).flatMap(v -> Observable.just(v + 1)).subscribe(ts);
+        
+        ts.assertValues(2);
+        ts.assertComplete();
+    }
+    @Test
+    public void emptyOuterFlatMap() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.<Integer>empty().flatMap(v -> Observable.just(v + 1)).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertComplete();
+    }
+    @Test
+    public void scalarOuterFlatMapThrows() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.just(1).<Integer>flatMap(v -> {
+            throw new IllegalArgumentException();
+        }).subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertError(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.observables;
+
+import org.junit.*;
+
+import rx.Observable;
+import rx.schedulers.Schedulers;
+import rx.subscribers.TestSubscriber;
+
+/**
+ * Measures how a CPU-heavy {@code map} scales from 1 rail up to the number of available
+ * processors, compared to a plain sequential {@code map}.
+ */
+@Ignore
+// since this doesn't do any automatic testing
+public class ParallelObservablePerf {
+    static final int COUNT = 100_000;
+    static final int WORK = 2_000;
+    static final int ROUNDS = 5;
+    
+    /** Burns roughly the same amount of CPU time for each item. */
+    static int work(int v) {
+        int x = v;
+        for (int i = 0; i < WORK; i++) {
+            x = x * 31 + i ^ (x >>> 7);
+        }
+        return x;
+    }
+    
+    @Test
+    public void scaling() {
+        run("sequential", Observable.range(0, COUNT).map(ParallelObservablePerf::work));
+        int cpus = Runtime.getRuntime().availableProcessors();
+        for (int rails = 1; ; rails = Math.min(rails * 2, cpus)) {
+            run("rails = " + rails, Observable.range(0, COUNT).parallel(rails, Schedulers.computation(), 128)
+                    .map(ParallelObservablePerf::work).sequential());
+            if (rails == cpus) {
+                break;
+            }
+        }
+    }
+    
+    static void run(String name, Observable<Integer> source) {
+        for (int r = 0; r < ROUNDS; r++) {
+            TestSubscriber<Integer> ts = new TestSubscriber<>();
+            long t = System.nanoTime();
+            source.subscribe(ts);
+            ts.awaitTerminalEvent();
+            t = System.nanoTime() - t;
+            
+            ts.assertNoErrors();
+            System.out.printf("map %s: %,.3f items/s%n", name, ts.getValues().size() * 1e9 / t);
+        }
+    }
+}
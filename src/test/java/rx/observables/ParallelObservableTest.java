@@ -0,0 +1,268 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.observables;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.exceptions.TestException;
+import rx.schedulers.*;
+import rx.subjects.PublishSubject;
+import rx.subscribers.TestSubscriber;
+
+public class ParallelObservableTest {
+    @Test
+    public void testMapSequential() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 1000).parallel(4).map(v -> v * 2).sequential().subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        
+        Set<Integer> set = new HashSet<>(ts.getValues());
+        assertEquals(1000, ts.getValues().size());
+        for (int i = 1; i <= 1000; i++) {
+            assertTrue(set.contains(i * 2));
+        }
+    }
+    
+    @Test
+    public void testRailsRunOnTheirOwnWorker() {
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 400).parallel(4, Schedulers.newThread(), 16)
+        .map(v -> Thread.currentThread().getName())
+        .sequential().subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertValueCount(400);
+        
+        assertEquals(4, new HashSet<>(ts.getValues()).size());
+    }
+    
+    @Test
+    public void testByKeyKeepsKeysOnOneRail() {
+        TestSubscriber<String> ts = new TestSubscriber<>();
+        
+        Observable.range(0, 1000).parallel(3, v -> v % 10, Schedulers.newThread(), 32)
+        .map(v -> (v % 10) + ":" + Thread.currentThread().getName())
+        .sequential().subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertValueCount(1000);
+        
+        Map<String, String> threadOfKey = new HashMap<>();
+        for (String s : ts.getValues()) {
+            String[] parts = s.split(":", 2);
+            String prev = threadOfKey.put(parts[0], parts[1]);
+            if (prev != null) {
+                assertEquals(prev, parts[1]);
+            }
+        }
+        assertEquals(10, threadOfKey.size());
+    }
+    
+    @Test
+    public void testFilterReduce() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 100).parallel(3).filter(v -> v % 2 == 0).reduce(Integer::sum).subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertValues(2550);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testReduceEmpty() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.<Integer>empty().parallel(3).reduce(Integer::sum).subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertNoValues();
+        ts.assertError(NoSuchElementException.class);
+    }
+    
+    @Test
+    public void testReducePerRail() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.range(1, 10).parallel(2, Schedulers.immediate(), 16)
+        .reduce(() -> 0, (a, v) -> a + v).sequential().subscribe(ts);
+        
+        ts.assertNoErrors();
+        ts.assertComplete();
+        
+        List<Integer> list = new ArrayList<>(ts.getValues());
+        Collections.sort(list);
+        // round-robin: 1, 3, 5, 7, 9 and 2, 4, 6, 8, 10
+        assertEquals(Arrays.asList(25, 30), list);
+    }
+    
+    @Test
+    public void testSorted() {
+        List<Integer> list = new ArrayList<>();
+        Random rnd = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            list.add(rnd.nextInt(500));
+        }
+        List<Integer> expected = new ArrayList<>(list);
+        Collections.sort(expected);
+        
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        Observable.from(list).parallel(4).sorted(Comparator.naturalOrder()).subscribe(ts);
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertNoErrors();
+        ts.assertComplete();
+        ts.assertValues(expected);
+    }
+    
+    @Test
+    public void testSortedBackpressured() {
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        Observable.range(1, 20).map(v -> 21 - v).parallel(3, Schedulers.immediate(), 8)
+        .sorted(Comparator.naturalOrder()).subscribe(ts);
+        
+        ts.assertNoValues();
+        
+        ts.requestMore(5);
+        
+        ts.assertValues(1, 2, 3, 4, 5);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(15);
+        
+        ts.assertValueCount(20);
+        ts.assertComplete();
+    }
+    
+    @Test
+    public void testPrefetchIsSharedBudget() {
+        List<Long> requests = new ArrayList<>();
+        @SuppressWarnings("unchecked")
+        TestSubscriber<Integer>[] rails = new TestSubscriber[] { new TestSubscriber<>(0), new TestSubscriber<>(0) };
+        
+        Observable.range(1, 100).doOnRequest(requests::add)
+        .parallel(2, Schedulers.immediate(), 16).subscribe(rails);
+        
+        assertEquals(Arrays.asList(16L), requests);
+        
+        rails[0].requestMore(8);
+        rails[1].requestMore(8);
+        
+        rails[0].assertValues(1, 3, 5, 7, 9, 11, 13, 15);
+        rails[1].assertValues(2, 4, 6, 8, 10, 12, 14, 16);
+        assertEquals(Arrays.asList(16L, 16L), requests);
+        
+        rails[0].requestMore(Long.MAX_VALUE);
+        rails[1].requestMore(Long.MAX_VALUE);
+        
+        rails[0].assertValueCount(50);
+        rails[1].assertValueCount(50);
+        rails[0].assertComplete();
+        rails[1].assertComplete();
+    }
+    
+    @Test
+    public void testCancelRailWithQueuedItemsReturnsThemToBudget() {
+        TestScheduler scheduler = new TestScheduler();
+        @SuppressWarnings("unchecked")
+        TestSubscriber<Integer>[] rails = new TestSubscriber[] { 
+                new TestSubscriber<>(), new TestSubscriber<>(), new TestSubscriber<>() };
+        
+        Observable.range(1, 100).parallel(3, scheduler, 16).subscribe(rails);
+        
+        // the first rail has 6 of the 16 prefetched items queued and its drain pending
+        rails[0].cancel();
+        
+        scheduler.triggerActions();
+        
+        rails[0].assertNoValues();
+        rails[1].assertValueCount(33);
+        rails[2].assertValueCount(33);
+        rails[1].assertComplete();
+        rails[2].assertComplete();
+    }
+    
+    @Test
+    public void testSubscriberCountMismatch() {
+        @SuppressWarnings("unchecked")
+        TestSubscriber<Integer>[] rails = new TestSubscriber[] { new TestSubscriber<>(), new TestSubscriber<>() };
+        
+        Observable.range(1, 10).parallel(3).subscribe(rails);
+        
+        rails[0].assertError(IllegalArgumentException.class);
+        rails[1].assertError(IllegalArgumentException.class);
+    }
+    
+    @Test
+    public void testError() {
+        PublishSubject<Integer> ps = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        ps.parallel(2).map(v -> v + 1).sequential().subscribe(ts);
+        
+        ps.onNext(1);
+        ps.onError(new TestException());
+        
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertError(TestException.class);
+    }
+    
+    @Test
+    public void testCancelSequentialCancelsSource() {
+        PublishSubject<Integer> ps = PublishSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        ps.parallel(2, Schedulers.immediate(), 16).sequential().subscribe(ts);
+        
+        assertTrue(ps.hasSubscribers());
+        
+        ps.onNext(1);
+        ps.onNext(2);
+        
+        ts.assertValues(1, 2);
+        
+        ts.cancel();
+        
+        assertFalse(ps.hasSubscribers());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testRailsInvalid() {
+        Observable.range(1, 10).parallel(0);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrefetchInvalid() {
+        Observable.range(1, 10).parallel(2).sequential(0);
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.subjects;
+
+import org.junit.*;
+
+import rx.Observable;
+import rx.subscribers.TestSubscriber;
+
+public class CoalescingSubjectTest {
+    @Test
+    public void unboundedSubscriberReceivesEverything() {
+        CoalescingSubject<Integer> cs = CoalescingSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        cs.subscribe(ts);
+        
+        Observable.range(1, 10).subscribe(cs);
+        
+        ts.assertValues(1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    @Test
+    public void slowSubscriberReceivesLatest() {
+        CoalescingSubject<Integer> cs = CoalescingSubject.create();
+        TestSubscriber<Integer> fast = new TestSubscriber<>();
+        TestSubscriber<Integer> slow = new TestSubscriber<>(0);
+        
+        cs.subscribe(fast);
+        cs.subscribe(slow);
+        
+        cs.onNext(1);
+        cs.onNext(2);
+        cs.onNext(3);
+        
+        slow.assertNoValues();
+        
+        slow.requestMore(1);
+        
+        slow.assertValues(3);
+        
+        slow.requestMore(1);
+        
+        slow.assertValues(3);
+        
+        cs.onNext(4);
+        cs.onNext(5);
+        
+        slow.assertValues(3, 4);
+        
+        cs.onComplete();
+        
+        slow.assertNoTerminalEvent();
+        
+        slow.requestMore(1);
+        
+        slow.assertValues(3, 4, 5);
+        slow.assertNoErrors();
+        slow.assertComplete();
+        
+        fast.assertValues(1, 2, 3, 4, 5);
+        fast.assertComplete();
+    }
+    @Test
+    public void completeWithoutPendingValue() {
+        CoalescingSubject<Integer> cs = CoalescingSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        cs.subscribe(ts);
+        cs.onComplete();
+        
+        ts.assertNoValues();
+        ts.assertComplete();
+        Assert.assertTrue(cs.hasComplete());
+    }
+    @Test
+    public void errorCutsAhead() {
+        CoalescingSubject<Integer> cs = CoalescingSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        cs.subscribe(ts);
+        cs.onNext(1);
+        cs.onError(new RuntimeException("Forced failure"));
+        
+        ts.assertNoValues();
+        ts.assertError(RuntimeException.class);
+        Assert.assertTrue(cs.hasThrowable());
+    }
+    @Test
+    public void keyedLatest() {
+        CoalescingSubject<Integer> cs = CoalescingSubject.createKeyed(v -> v % 3);
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        cs.subscribe(ts);
+        
+        for (int i = 1; i <= 10; i++) {
+            cs.onNext(i);
+        }
+        
+        ts.requestMore(2);
+        
+        ts.assertValues(10, 8);
+        
+        cs.onNext(11);
+        cs.onComplete();
+        
+        ts.requestMore(1);
+        
+        ts.assertValues(10, 8, 9);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(1);
+        
+        ts.assertValues(10, 8, 9, 11);
+        ts.assertComplete();
+    }
+    @Test
+    public void keySelectorThrows() {
+        CoalescingSubject<Integer> cs = CoalescingSubject.createKeyed(v -> {
+            throw new IllegalArgumentException();
+        });
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        
+        cs.subscribe(ts);
+        cs.onNext(1);
+        
+        ts.assertNoValues();
+        ts.assertError(IllegalArgumentException.class);
+    }
+    @Test
+    public void lateSubscriber() {
+        CoalescingSubject<Integer> cs = CoalescingSubject.create();
+        cs.onNext(1);
+        cs.onComplete();
+        
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        cs.subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertComplete();
+    }
+    @Test
+    public void cancelRemoves() {
+        CoalescingSubject<Integer> cs = CoalescingSubject.create();
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        cs.subscribe(ts);
+        
+        Assert.assertTrue(cs.hasSubscribers());
+        
+        ts.cancel();
+        
+        Assert.assertFalse(cs.hasSubscribers());
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.subjects;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+import rx.*;
+import rx.Flow.Processor;
+import rx.schedulers.Schedulers;
+import rx.subscribers.TestSubscriber;
+
+/**
+ * Compares the throughput and the end-to-end latency of {@link MulticastProcessor}
+ * against {@link PublishSubject} + {@code observeOn} with 1 and 4 consumers.
+ * <p>
+ * The items are the {@code System.nanoTime()} of their emission so the consumers
+ * can measure the latency. The producer is paced in bursts of half the default buffer size.
+ */
+@Ignore
+// since this doesn't do any automatic testing
+public class MulticastProcessorPerf {
+    static final int COUNT = 2_000_000;
+    static final int ROUNDS = 10;
+    static final int BURST = Flow.defaultBufferSize() / 2;
+    
+    @Test
+    public void publishSubjectObserveOn() {
+        for (int consumers : new int[] { 1, 4 }) {
+            run("PublishSubject + observeOn", consumers, () -> {
+                PublishSubject<Long> ps = PublishSubject.create();
+                return new Pair(ps, ps.observeOn(Schedulers.computation()));
+            });
+        }
+    }
+    
+    @Test
+    public void multicastProcessor() {
+        for (int consumers : new int[] { 1, 4 }) {
+            run("MulticastProcessor", consumers, () -> {
+                MulticastProcessor<Long> mp = MulticastProcessor.create();
+                return new Pair(mp, mp.observeOnRing(Schedulers.computation()));
+            });
+        }
+    }
+    
+    static final class Pair {
+        final Processor<Long, Long> processor;
+        final Observable<Long> output;
+        Pair(Processor<Long, Long> processor, Observable<Long> output) {
+            this.processor = processor;
+            this.output = output;
+        }
+    }
+    
+    interface PairFactory {
+        Pair create();
+    }
+    
+    static void run(String name, int consumers, PairFactory factory) {
+        for (int r = 0; r < ROUNDS; r++) {
+            Pair p = factory.create();
+            
+            LatencySubscriber[] ts = new LatencySubscriber[consumers];
+            for (int i = 0; i < consumers; i++) {
+                ts[i] = new LatencySubscriber();
+                p.output.subscribe(ts[i]);
+            }
+            
+            long t = System.nanoTime();
+            for (int i = 1; i <= COUNT; i++) {
+                p.processor.onNext(System.nanoTime());
+                // PublishSubject doesn't support backpressure so the producer is paced
+                // to not overflow observeOn's queue
+                if (i % BURST == 0) {
+                    for (LatencySubscriber s : ts) {
+                        while (s.received < i) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            }
+            p.processor.onComplete();
+            
+            long latency = 0;
+            for (LatencySubscriber s : ts) {
+                s.awaitTerminalEvent(60, TimeUnit.SECONDS);
+                s.assertNoErrors();
+                latency += s.latency;
+            }
+            t = System.nanoTime() - t;
+            
+            System.out.printf("%s, consumers = %d: %,.3f items/s, average latency %,d ns%n", 
+                    name, consumers, COUNT * 1e9 / t, latency / (consumers * (long)COUNT));
+        }
+    }
+    
+    static final class LatencySubscriber extends TestSubscriber<Long> {
+        long latency;
+        volatile long received;
+        @Override
+        public void onNext(Long item) {
+            latency += System.nanoTime() - item;
+            received++;
+        }
+    }
+}
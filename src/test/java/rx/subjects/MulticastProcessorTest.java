@@ -0,0 +1,248 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.subjects;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+import rx.Flow.Subscriber;
+import rx.Flow.Subscription;
+import rx.Observable;
+import rx.exceptions.MissingBackpressureException;
+import rx.schedulers.*;
+import rx.subscribers.TestSubscriber;
+
+public class MulticastProcessorTest {
+    @Test
+    public void capacityRoundedToPowerOfTwo() {
+        Assert.assertEquals(16, MulticastProcessor.create(10).capacity());
+        Assert.assertEquals(16, MulticastProcessor.create(16).capacity());
+    }
+    @Test
+    public void multipleSubscribers() {
+        MulticastProcessor<Integer> mp = MulticastProcessor.create(16);
+        TestSubscriber<Integer> ts1 = new TestSubscriber<>();
+        TestSubscriber<Integer> ts2 = new TestSubscriber<>();
+        
+        mp.subscribe(ts1);
+        mp.subscribe(ts2);
+        
+        Assert.assertTrue(mp.hasSubscribers());
+        
+        Observable.range(1, 100).subscribe(mp);
+        
+        ts1.assertValueCount(100);
+        ts1.assertNoErrors();
+        ts1.assertComplete();
+        ts2.assertValueCount(100);
+        ts2.assertNoErrors();
+        ts2.assertComplete();
+        
+        Assert.assertTrue(mp.hasComplete());
+        Assert.assertFalse(mp.hasSubscribers());
+    }
+    @Test
+    public void slowestSubscriberGatesTheProducer() {
+        MulticastProcessor<Integer> mp = MulticastProcessor.create(4);
+        TestSubscriber<Integer> ts1 = new TestSubscriber<>();
+        TestSubscriber<Integer> ts2 = new TestSubscriber<>(2);
+        
+        mp.subscribe(ts1);
+        mp.subscribe(ts2);
+        
+        for (int i = 1; i <= 6; i++) {
+            Assert.assertTrue(mp.offer(i));
+        }
+        Assert.assertFalse(mp.offer(7));
+        
+        ts1.assertValues(1, 2, 3, 4, 5, 6);
+        ts2.assertValues(1, 2);
+        
+        ts2.requestMore(1);
+        ts2.assertValues(1, 2, 3);
+        
+        Assert.assertTrue(mp.offer(7));
+        Assert.assertFalse(mp.offer(8));
+        
+        ts2.cancel();
+        
+        Assert.assertTrue(mp.offer(8));
+        ts1.assertValues(1, 2, 3, 4, 5, 6, 7, 8);
+    }
+    @Test
+    public void upstreamRequestsFollowTheSlowestSubscriber() {
+        MulticastProcessor<Integer> mp = MulticastProcessor.create(8);
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        mp.subscribe(ts);
+        
+        Observable.range(1, 100).subscribe(mp);
+        
+        ts.assertNoValues();
+        
+        ts.requestMore(10);
+        
+        ts.assertValueCount(10);
+        ts.assertNoTerminalEvent();
+        
+        ts.requestMore(90);
+        
+        ts.assertValueCount(100);
+        ts.assertNoErrors();
+        ts.assertComplete();
+    }
+    @Test
+    public void overflowSignalsError() {
+        MulticastProcessor<Integer> mp = MulticastProcessor.create(2);
+        TestSubscriber<Integer> ts = new TestSubscriber<>(0);
+        
+        mp.subscribe(ts);
+        
+        mp.onNext(1);
+        mp.onNext(2);
+        mp.onNext(3);
+        
+        ts.assertNoValues();
+        ts.assertError(MissingBackpressureException.class);
+        Assert.assertTrue(mp.hasThrowable());
+    }
+    @Test
+    public void errorCutsAhead() {
+        MulticastProcessor<Integer> mp = MulticastProcessor.create(4);
+        TestSubscriber<Integer> ts = new TestSubscriber<>(1);
+        
+        mp.subscribe(ts);
+        
+        mp.onNext(1);
+        mp.onNext(2);
+        mp.onError(new RuntimeException("Forced failure"));
+        
+        ts.assertValues(1);
+        ts.assertError(RuntimeException.class);
+    }
+    @Test
+    public void lateSubscriberReceivesTerminalEventOnly() {
+        MulticastProcessor<Integer> mp = MulticastProcessor.create();
+        
+        mp.onNext(1);
+        mp.onComplete();
+        
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        mp.subscribe(ts);
+        
+        ts.assertNoValues();
+        ts.assertComplete();
+    }
+    @Test
+    public void itemsWithoutSubscribersAreDropped() {
+        MulticastProcessor<Integer> mp = MulticastProcessor.create(2);
+        
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(mp.offer(i));
+        }
+        
+        TestSubscriber<Integer> ts = new TestSubscriber<>();
+        mp.subscribe(ts);
+        
+        mp.onNext(10);
+        mp.onComplete();
+        
+        ts.assertValues(10);
+        ts.assertComplete();
+    }
+    /** Requests and emits into the processor from within onSubscribe, recording where the values arrive. */
+    static final class ReentrantSubscriber implements Subscriber<Integer> {
+        final MulticastProcessor<Integer> mp;
+        final List<Integer> values = new ArrayList<>();
+        boolean inOnSubscribe;
+        boolean completed;
+        ReentrantSubscriber(MulticastProcessor<Integer> mp) {
+            this.mp = mp;
+        }
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            inOnSubscribe = true;
+            subscription.request(Long.MAX_VALUE);
+            mp.onNext(1);
+            mp.onNext(2);
+            inOnSubscribe = false;
+        }
+        @Override
+        public void onNext(Integer item) {
+            Assert.assertFalse("onNext from within onSubscribe", inOnSubscribe);
+            values.add(item);
+        }
+        @Override
+        public void onError(Throwable throwable) {
+            throwable.printStackTrace();
+        }
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+    @Test
+    public void signalsFromOnSubscribeDeliveredOnceAfterIt() {
+        MulticastProcessor<Integer> mp = MulticastProcessor.create(16);
+        ReentrantSubscriber rs = new ReentrantSubscriber(mp);
+        
+        mp.subscribe(rs);
+        mp.onNext(3);
+        mp.onComplete();
+        
+        Assert.assertEquals(Arrays.asList(1, 2, 3), rs.values);
+        Assert.assertTrue(rs.completed);
+    }
+    @Test
+    public void signalsFromOnSubscribeDeliveredOnceAfterItOnWorker() {
+        TestScheduler scheduler = new TestScheduler();
+        MulticastProcessor<Integer> mp = MulticastProcessor.create(16);
+        ReentrantSubscriber rs = new ReentrantSubscriber(mp);
+        
+        mp.observeOnRing(scheduler).subscribe(rs);
+        mp.onNext(3);
+        mp.onComplete();
+        
+        scheduler.triggerActions();
+        
+        Assert.assertEquals(Arrays.asList(1, 2, 3), rs.values);
+        Assert.assertTrue(rs.completed);
+    }
+    @Test
+    public void observeOnRing() {
+        MulticastProcessor<Integer> mp = MulticastProcessor.create(32);
+        TestSubscriber<Integer> ts1 = new TestSubscriber<>();
+        TestSubscriber<Integer> ts2 = new TestSubscriber<>();
+        
+        mp.observeOnRing(Schedulers.computation()).subscribe(ts1);
+        mp.observeOnRing(Schedulers.computation()).subscribe(ts2);
+        
+        Observable.range(1, 100_000).subscribe(mp);
+        
+        ts1.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts2.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        
+        ts1.assertValueCount(100_000);
+        ts1.assertNoErrors();
+        ts1.assertComplete();
+        ts2.assertValueCount(100_000);
+        ts2.assertNoErrors();
+        ts2.assertComplete();
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.util;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.*;
+
+import rx.schedulers.Schedulers;
+
+/**
+ * Measures the retained heap per million distinct {@code Long} keys of the sets usable with {@code distinct}.
+ */
+@Ignore
+// since this doesn't do any automatic testing
+public class BoundedSetsMemoryPerf {
+    static final int COUNT = 1_000_000;
+    static final int ROUNDS = 3;
+    
+    @Test
+    public void hashSet() {
+        run("HashSet", HashSet::new);
+    }
+    
+    @Test
+    public void lruSet() {
+        run("LruSet(1M)", () -> new LruSet<>(COUNT));
+    }
+    
+    @Test
+    public void expiringSet() {
+        run("ExpiringSet(1 hour)", () -> new ExpiringSet<>(1, TimeUnit.HOURS, Schedulers.immediate()));
+    }
+    
+    @Test
+    public void longHashSet() {
+        run("LongHashSet", LongHashSet::new);
+    }
+    
+    @Test
+    public void bloomFilterSet1() {
+        run("BloomFilterSet(1M, 1%)", () -> new BloomFilterSet<>(COUNT, 0.01));
+    }
+    
+    @Test
+    public void bloomFilterSet01() {
+        run("BloomFilterSet(1M, 0.1%)", () -> new BloomFilterSet<>(COUNT, 0.001));
+    }
+    
+    static void run(String name, Supplier<Set<Long>> supplier) {
+        for (int r = 0; r < ROUNDS; r++) {
+            long before = used();
+            Set<Long> set = supplier.get();
+            Random rnd = new Random(r);
+            int accepted = 0;
+            for (int i = 0; i < COUNT; i++) {
+                if (set.add(rnd.nextLong())) {
+                    accepted++;
+                }
+            }
+            long after = used();
+            
+            System.out.printf("%s: %,.1f MB per million keys, %,.1f bytes/key, %d keys rejected%n", 
+                    name, (after - before) / 1024d / 1024d, (after - before) / (double)COUNT, COUNT - accepted);
+            // keep the set reachable during the measurement
+            if (set.hashCode() == 42) {
+                System.out.print("");
+            }
+        }
+    }
+    
+    static long used() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
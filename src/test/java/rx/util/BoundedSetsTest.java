@@ -0,0 +1,121 @@
+/**
+ * Copyright 2015 David Karnok
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package rx.util;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.schedulers.TestScheduler;
+
+public class BoundedSetsTest {
+    @Test
+    public void lruEvictsLeastRecentlyAdded() {
+        LruSet<Integer> set = new LruSet<>(2);
+        
+        assertTrue(set.add(1));
+        assertTrue(set.add(2));
+        assertFalse(set.add(1));
+        assertTrue(set.add(3));
+        
+        assertEquals(2, set.size());
+        assertTrue(set.contains(1));
+        assertFalse(set.contains(2));
+        assertTrue(set.contains(3));
+    }
+    
+    @Test
+    public void expiringSetForgetsOldElements() {
+        TestScheduler scheduler = new TestScheduler();
+        ExpiringSet<Integer> set = new ExpiringSet<>(100, TimeUnit.MILLISECONDS, scheduler);
+        
+        assertTrue(set.add(1));
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        assertTrue(set.add(2));
+        assertFalse(set.add(1));
+        
+        // 1 was re-added at 50
+        scheduler.advanceTimeBy(99, TimeUnit.MILLISECONDS);
+        assertEquals(2, set.size());
+        
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertEquals(0, set.size());
+        assertTrue(set.add(1));
+    }
+    
+    @Test
+    public void longHashSet() {
+        LongHashSet set = new LongHashSet(4);
+        Set<Long> expected = new HashSet<>();
+        Random rnd = new Random(0);
+        
+        for (int i = 0; i < 10000; i++) {
+            long v = rnd.nextInt(2000) - 1000;
+            assertEquals(expected.add(v), set.add(v));
+        }
+        assertEquals(expected.size(), set.size());
+        assertEquals(expected, new HashSet<>(set));
+        
+        for (int i = 0; i < 10000; i++) {
+            long v = rnd.nextInt(2000) - 1000;
+            assertEquals(expected.remove(v), set.remove(v));
+            assertEquals(expected.size(), set.size());
+        }
+        for (long v = -1000; v < 1000; v++) {
+            assertEquals(expected.contains(v), set.contains(v));
+        }
+        
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(0L));
+    }
+    
+    @Test
+    public void bloomFilterHasNoFalseNegatives() {
+        int n = 100000;
+        BloomFilterSet<Integer> set = new BloomFilterSet<>(n, 0.01);
+        
+        int rejected = 0;
+        for (int i = 0; i < n; i++) {
+            if (!set.add(i * 7919)) {
+                rejected++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            assertTrue(set.contains(i * 7919));
+            assertFalse(set.add(i * 7919));
+        }
+        
+        int falsePositives = 0;
+        for (int i = 0; i < n; i++) {
+            if (set.contains(-i - 1)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("" + falsePositives, falsePositives < n * 2 / 100);
+        assertTrue("" + rejected, rejected < n * 2 / 100);
+        assertEquals(n - rejected, set.size());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void bloomFilterInvalidRate() {
+        new BloomFilterSet<>(100, 1.0);
+    }
+}